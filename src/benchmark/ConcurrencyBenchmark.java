@@ -0,0 +1,125 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.joda.time.LocalDate;
+
+import controller.Controller;
+import model.bike.Bike;
+import model.customer.Customer;
+import model.hire.Hire;
+import model.invoice.InvoiceIn;
+import model.invoice.InvoiceOut;
+
+/*
+ * Measures the throughput of desks (threads) making and returning hires
+ * on one Controller as the number of desks grows, with the journal on.
+ * Each desk works with its own customers and bikes. For comparison, the
+ * same work is also run with every desk holding one global lock, as a
+ * Controller locked as a whole would.
+ *
+ * Writes the snapshot and journal to the working directory, so run it
+ * from an empty one.
+ *
+ * Usage: ConcurrencyBenchmark [maxDesks] [hiresPerDesk]
+ */
+public class ConcurrencyBenchmark
+{
+	private static final Object GLOBAL = new Object();
+
+	public static void main(String[] args) throws Exception
+	{
+		int maxDesks = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		int hires = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+		Controller controller = Controller.getInstance();
+		controller.serialiseBikeHireData();
+
+		// Warm up both ways first, so the first row is not timing the JIT
+		run(controller, 1, hires, false);
+		run(controller, 1, hires, true);
+
+		System.out.printf("%6s %14s %14s%n", "desks", "striped ops/s", "global ops/s");
+
+		for (int desks = 1; desks <= maxDesks; desks *= 2)
+		{
+			long striped = run(controller, desks, hires, false);
+			long global = run(controller, desks, hires, true);
+
+			System.out.printf("%6d %,14d %,14d%n", desks, striped, global);
+		}
+	}
+
+	/*
+	 * @return	the changes (journal records) made per second.
+	 */
+	private static long run(final Controller controller, int desks, final int hires,
+			final boolean global) throws InterruptedException
+	{
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<Thread>();
+
+		for (int d = 0; d < desks; d++)
+		{
+			Thread thread = new Thread()
+			{
+				public void run()
+				{
+					try
+					{
+						start.await();
+					} catch (InterruptedException e)
+					{
+						return;
+					}
+
+					for (int i = 0; i < hires; i++)
+					{
+						if (global)
+						{
+							synchronized (GLOBAL)
+							{
+								hire(controller);
+							}
+						}
+						else
+							hire(controller);
+					}
+				}
+			};
+			thread.start();
+			threads.add(thread);
+		}
+
+		long begin = System.nanoTime();
+		start.countDown();
+
+		for (Thread thread : threads)
+			thread.join();
+
+		long nanos = System.nanoTime() - begin;
+
+		// Six changes per hire
+		return (long) (desks * hires * 6 * 1e9 / nanos);
+	}
+
+	private static void hire(Controller controller)
+	{
+		Customer customer = new Customer("First", "Last", "1 High Street",
+				"Northampton", "NN1 1AB");
+		controller.addCustomer(customer);
+		Bike bike = new Bike("Make", "Model", "Road", "Men", "Red", 10, 50);
+		controller.addBike(bike);
+
+		Hire hire = new Hire(customer, bike, LocalDate.now().plusDays(3));
+		hire.payForHire();
+		controller.addHire(hire);
+		controller.addInvoiceOut(new InvoiceOut(hire));
+
+		controller.returnHire(hire, false);
+		controller.addInvoiceIn(new InvoiceIn(hire));
+	}
+
+}
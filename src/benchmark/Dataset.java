@@ -0,0 +1,71 @@
+package benchmark;
+
+import java.util.Random;
+
+import org.joda.time.LocalDate;
+
+import controller.Controller;
+import model.bike.Bike;
+import model.customer.Customer;
+import model.hire.Hire;
+import model.invoice.InvoiceIn;
+import model.invoice.InvoiceOut;
+
+/*
+ * Builds synthetic application data for the benchmarks: one customer
+ * per ten hires, one bike per hundred hires (at least ten), and an
+ * InvoiceOut and InvoiceIn for every hire. All hires are complete.
+ */
+public class Dataset
+{
+	private static final String[] MAKES = {"Scott", "Breezer", "Cannondale", "Alliant", "Giant", "Trek"};
+	private static final String[] MODELS = {"Ransom", "Beamer", "Road Warrior 500", "XPRESS Pro", "Venturi", "Areva 24"};
+	private static final String[] FUNCTIONS = {"mountain", "hybrid", "BMX", "racing", "touring"};
+	private static final String[] DEMOGRAPHICS = {"adult", "children", "men", "women", "boy", "girl"};
+	private static final String[] COLOURS = {"silver", "purple pearl", "dark green", "chrome", "sky blue", "blue", "red"};
+	private static final String[] TOWNS = {"Northampton", "Corby", "Luton", "Buckingham", "Great Barford", "Newton Longville"};
+
+	public static void populate(Controller controller, int hires)
+	{
+		Random random = new Random(42);
+		int customers = Math.max(1, hires / 10);
+		int bikes = Math.max(10, hires / 100);
+
+		for (int i = 0; i < customers; i++)
+			controller.addCustomer(new Customer("First" + i, "Last" + i, i + " High Street",
+					pick(random, TOWNS), "NN" + (i % 20) + " " + (i % 9) + "AB"));
+
+		for (int i = 0; i < bikes; i++)
+			controller.addBike(new Bike(pick(random, MAKES), pick(random, MODELS),
+					pick(random, FUNCTIONS), pick(random, DEMOGRAPHICS),
+					pick(random, COLOURS), 10 + random.nextInt(50), 20 + random.nextInt(80)));
+
+		LocalDate today = LocalDate.now();
+
+		for (int i = 0; i < hires; i++)
+		{
+			LocalDate start = today.minusDays(hires - i / 2);
+			Hire hire = new Hire(controller.getCustomers().get(random.nextInt(customers)),
+					controller.getBikes().get(random.nextInt(bikes)), start,
+					start.plusDays(1 + random.nextInt(7)), false);
+			controller.addHire(hire);
+			controller.addInvoiceOut(new InvoiceOut(hire));
+			controller.addInvoiceIn(new InvoiceIn(hire));
+		}
+	}
+
+	public static void clear(Controller controller)
+	{
+		controller.getInvoicesIn().clear();
+		controller.getInvoicesOut().clear();
+		controller.getHires().clear();
+		controller.getBikes().clear();
+		controller.getCustomers().clear();
+	}
+
+	private static String pick(Random random, String[] values)
+	{
+		return values[random.nextInt(values.length)];
+	}
+
+}
@@ -0,0 +1,134 @@
+package benchmark;
+
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+
+import model.bike.Bike;
+import model.customer.Customer;
+import model.hire.Complete;
+import model.hire.EpochDay;
+import model.hire.Hire;
+
+/*
+ * Compares the throughput of Hire.getCost() and Hire.getDaysLate(),
+ * which subtract epoch days, with the same calculations made on
+ * LocalDate fields with Days.daysBetween, as Hire used to make them.
+ *
+ * Each measurement is repeated after a warm-up, so that both are
+ * compiled before they are timed; the best round is reported.
+ *
+ * Usage: HireDateBenchmark [hires] [rounds]
+ */
+public class HireDateBenchmark
+{
+	private static long sink;
+
+	public static void main(String[] args)
+	{
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		Customer customer = new Customer(1, "First", "Last", "1 High Street",
+				"Northampton", "NN1 1AB");
+		Bike bike = new Bike(1, "Make", "Model", "Road", "Men", "Red", 10, 50);
+		int today = EpochDay.today();
+
+		Hire[] hires = new Hire[size];
+		DateHire[] dateHires = new DateHire[size];
+
+		for (int i = 0; i < size; i++)
+		{
+			int start = today - 100 + i % 90;
+			int end = start + 1 + i % 7;
+			int returned = end + i % 3;
+
+			hires[i] = new Hire(i + 1, customer, bike, start, end, returned);
+			hires[i].setState(Complete.STATE);
+			dateHires[i] = new DateHire(bike, EpochDay.toDate(start), EpochDay.toDate(end),
+					EpochDay.toDate(returned));
+		}
+
+		System.out.printf("%-14s %16s %16s%n", "", "epoch days ops/s", "LocalDate ops/s");
+		System.out.printf("%-14s %,16d %,16d%n", "getCost", best(hires, null, true, rounds),
+				best(null, dateHires, true, rounds));
+		System.out.printf("%-14s %,16d %,16d%n", "getDaysLate", best(hires, null, false, rounds),
+				best(null, dateHires, false, rounds));
+
+		if (sink == 42)
+			System.out.println();
+	}
+
+	/*
+	 * @return	the best calls per second over the rounds, after as many
+	 * 			rounds of warm-up.
+	 */
+	private static long best(Hire[] hires, DateHire[] dateHires, boolean cost, int rounds)
+	{
+		long best = 0;
+
+		for (int r = 0; r < rounds * 2; r++)
+		{
+			long started = System.nanoTime();
+			int calls = 0;
+
+			while (System.nanoTime() - started < 100000000L)
+			{
+				if (hires != null)
+				{
+					for (Hire hire : hires)
+						sink += cost ? (long) hire.getCost() : hire.getDaysLate();
+
+					calls += hires.length;
+				}
+				else
+				{
+					for (DateHire hire : dateHires)
+						sink += cost ? (long) hire.getCost() : hire.getDaysLate();
+
+					calls += dateHires.length;
+				}
+			}
+
+			long rate = (long) (calls * 1e9 / (System.nanoTime() - started));
+
+			if (r >= rounds)
+				best = Math.max(best, rate);
+		}
+
+		return best;
+	}
+
+	/*
+	 * A returned hire's dates held as LocalDates, with Hire's former
+	 * calculations.
+	 */
+	private static class DateHire
+	{
+		private final Bike bike;
+		private final LocalDate startDate;
+		private final LocalDate endDate;
+		private final LocalDate dateReturned;
+
+		private DateHire(Bike bike, LocalDate startDate, LocalDate endDate, LocalDate dateReturned)
+		{
+			this.bike = bike;
+			this.startDate = startDate;
+			this.endDate = endDate;
+			this.dateReturned = dateReturned;
+		}
+
+		private double getCost()
+		{
+			return bike.getDailyRate() * Days.daysBetween(startDate, endDate).getDays();
+		}
+
+		private int getDaysLate()
+		{
+			if (dateReturned.isAfter(endDate))
+				return Days.daysBetween(endDate, dateReturned).getDays();
+
+			return 0;
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+package benchmark;
+
+import controller.Controller;
+import model.bike.Bike;
+import model.customer.Customer;
+import model.hire.Complete;
+import model.hire.EpochDay;
+import model.hire.Hire;
+import model.invoice.InvoiceIn;
+import model.invoice.InvoiceOut;
+
+/*
+ * Measures the heap held by the Controller for returned hires, each
+ * with an InvoiceOut and an InvoiceIn, restored in batches as they are
+ * from a snapshot. Once its InvoiceIn is added, each hire is moved into
+ * the HireHistory and released by the hire list and both invoices.
+ *
+ * "released" measures the Controller as it is. "held" also keeps every
+ * Hire reachable, as the lists and invoices did before hires were
+ * released, and subtracts the array that holds them; the difference
+ * is the heap that releasing the hires saves. Also times the Report's
+ * count of late returns, which scans the history's flags.
+ *
+ * The customers and bikes are few and shared, so nearly all of the
+ * heap measured is the hires and their invoices. Each mode is run in a
+ * JVM of its own, as emptied lists keep the arrays they grew.
+ *
+ * Usage: HireHistoryBenchmark [released|held] [hires]
+ * (5,000,000 hires needs around -Xmx4g)
+ */
+public class HireHistoryBenchmark
+{
+	private static final int CUSTOMERS = 1000;
+	private static final int BIKES = 1000;
+	private static final int BATCH = 100000;
+
+	public static void main(String[] args)
+	{
+		boolean held = args.length > 0 && args[0].equals("held");
+		int size = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+
+		Controller controller = Controller.getInstance();
+		Customer[] customers = new Customer[CUSTOMERS];
+		Bike[] bikes = new Bike[BIKES];
+
+		for (int c = 0; c < CUSTOMERS; c++)
+			customers[c] = new Customer(c + 1, "First", "Last", "1 High Street",
+					"Northampton", "NN1 1AB");
+
+		for (int b = 0; b < BIKES; b++)
+			bikes[b] = new Bike(b + 1, "Make", "Model", "Road", "Men", "Red", 10, 50);
+
+		controller.restore(customers);
+		controller.restore(bikes);
+
+		System.out.printf("%8s %12s %16s %12s %8s %10s%n", "mode", "hires", "heap bytes",
+				"per hire", "late", "late ms");
+
+		run(controller, size, held);
+	}
+
+	private static void run(Controller controller, int size, boolean held)
+	{
+		int today = EpochDay.today();
+		long base = usedHeap();
+		Hire[] kept = held ? new Hire[size] : null;
+		long array = usedHeap() - base;
+		Customer[] customers = controller.getCustomers().toArray(new Customer[0]);
+		Bike[] bikes = controller.getBikes().toArray(new Bike[0]);
+
+		for (int from = 0; from < size; from += BATCH)
+		{
+			int count = Math.min(BATCH, size - from);
+			Hire[] hires = new Hire[count];
+			InvoiceOut[] out = new InvoiceOut[count];
+			InvoiceIn[] in = new InvoiceIn[count];
+
+			for (int i = 0; i < count; i++)
+			{
+				int n = from + i;
+				int start = today - 1000 + n % 900;
+				int end = start + 1 + n % 7;
+				int late = n % 4 == 0 ? 1 : 0;
+
+				hires[i] = new Hire(n + 1, customers[n % CUSTOMERS], bikes[n % BIKES], start,
+						end, end + late);
+				hires[i].setState(Complete.STATE);
+				out[i] = new InvoiceOut(n + 1, hires[i], 1000, 1000 * (end - start), 5000);
+				in[i] = new InvoiceIn(n + 1, hires[i], n % 10 == 0, 1000, 5000, late);
+
+				if (held)
+					kept[n] = hires[i];
+			}
+
+			controller.restore(hires);
+			controller.restore(out);
+			controller.restore(in);
+		}
+
+		long heap = usedHeap() - base - array;
+
+		long started = System.nanoTime();
+		int late = controller.getReport().getNoOfLateReturns();
+		long nanos = System.nanoTime() - started;
+
+		if (late != (size + 3) / 4 || controller.getHireHistory().size() != size)
+			throw new IllegalStateException(late + " late of " + controller.getHireHistory().size());
+
+		System.out.printf("%8s %,12d %,16d %12.1f %,8d %,10d%n", held ? "held" : "released",
+				size, heap, (double) heap / size, late, nanos / 1000000);
+
+		// Kept reachable until measured
+		if (held && kept[size - 1] == null)
+			throw new IllegalStateException();
+	}
+
+	private static long usedHeap()
+	{
+		Runtime runtime = Runtime.getRuntime();
+
+		for (int i = 0; i < 3; i++)
+			System.gc();
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
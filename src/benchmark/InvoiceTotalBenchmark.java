@@ -0,0 +1,184 @@
+package benchmark;
+
+import java.text.DecimalFormat;
+
+import model.bike.Bike;
+import model.customer.Customer;
+import model.hire.Complete;
+import model.hire.EpochDay;
+import model.hire.Hire;
+import model.invoice.Money;
+
+/*
+ * Compares totalling and formatting invoice amounts as long pence with
+ * Money, as the invoices now do, against the same with doubles of
+ * pounds and DecimalFormat, as they used to:
+ *
+ * 	total		sums each hire's cost plus deposit (InvoiceOut.getTotal)
+ * 	late fees	sums each hire's late fee (InvoiceIn.getLateFee)
+ * 	format		formats each total, as each invoice's toString() does
+ *
+ * Each measurement is repeated after a warm-up, so that both are
+ * compiled before they are timed; the best round is reported.
+ *
+ * Usage: InvoiceTotalBenchmark [hires] [rounds]
+ */
+public class InvoiceTotalBenchmark
+{
+	private static final int TOTAL = 0;
+	private static final int LATE_FEES = 1;
+	private static final int FORMAT = 2;
+
+	private static long sink;
+
+	public static void main(String[] args)
+	{
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		Customer customer = new Customer(1, "First", "Last", "1 High Street",
+				"Northampton", "NN1 1AB");
+		Bike[] bikes = new Bike[100];
+
+		for (int b = 0; b < bikes.length; b++)
+			bikes[b] = new Bike(b + 1, "Make", "Model", "Road", "Men", "Red",
+					5 + b * 0.25, 20 + b % 10 * 5);
+
+		int today = EpochDay.today();
+		Hire[] hires = new Hire[size];
+
+		for (int i = 0; i < size; i++)
+		{
+			int start = today - 100 + i % 90;
+			int end = start + 1 + i % 7;
+
+			hires[i] = new Hire(i + 1, customer, bikes[i % bikes.length], start, end, end + i % 3);
+			hires[i].setState(Complete.STATE);
+		}
+
+		System.out.printf("%-10s %16s %16s%n", "", "pence ops/s", "double ops/s");
+		System.out.printf("%-10s %,16d %,16d%n", "total", best(hires, TOTAL, true, rounds),
+				best(hires, TOTAL, false, rounds));
+		System.out.printf("%-10s %,16d %,16d%n", "late fees", best(hires, LATE_FEES, true, rounds),
+				best(hires, LATE_FEES, false, rounds));
+		System.out.printf("%-10s %,16d %,16d%n", "format", best(hires, FORMAT, true, rounds),
+				best(hires, FORMAT, false, rounds));
+
+		if (sink == 42)
+			System.out.println();
+	}
+
+	/*
+	 * @return	the best invoices per second over the rounds, after as
+	 * 			many rounds of warm-up.
+	 */
+	private static long best(Hire[] hires, int measure, boolean pence, int rounds)
+	{
+		DecimalFormat pound = new DecimalFormat("£###,###,#00.00");
+		StringBuilder text = new StringBuilder(32);
+		long best = 0;
+
+		for (int r = 0; r < rounds * 2; r++)
+		{
+			long started = System.nanoTime();
+			long calls = 0;
+
+			while (System.nanoTime() - started < 100000000L)
+			{
+				if (measure == FORMAT)
+					sink += pence ? formatPence(hires, text) : formatPounds(hires, pound);
+				else if (pence)
+					sink += measure == TOTAL ? totalPence(hires) : lateFeesPence(hires);
+				else
+					sink += (long) (measure == TOTAL ? totalPounds(hires) : lateFeesPounds(hires));
+
+				calls += hires.length;
+			}
+
+			long rate = (long) (calls * 1e9 / (System.nanoTime() - started));
+
+			if (r >= rounds)
+				best = Math.max(best, rate);
+		}
+
+		return best;
+	}
+
+	private static long totalPence(Hire[] hires)
+	{
+		long total = 0;
+
+		for (Hire hire : hires)
+			total += hire.getCostPence() + hire.getBike().getDepositPence();
+
+		return total;
+	}
+
+	/*
+	 * As InvoiceOut.getTotal() used to: the bike's rates held as doubles.
+	 */
+	private static double totalPounds(Hire[] hires)
+	{
+		double total = 0;
+
+		for (Hire hire : hires)
+		{
+			Bike bike = hire.getBike();
+			total += bike.getDailyRate() * hire.getDuration() + bike.getDeposit();
+		}
+
+		return total;
+	}
+
+	private static long lateFeesPence(Hire[] hires)
+	{
+		long total = 0;
+
+		for (Hire hire : hires)
+			total += Money.lateFee(hire.getDaysLate(), hire.getBike().getDailyRatePence());
+
+		return total;
+	}
+
+	/*
+	 * As InvoiceIn.getLateFee() used to.
+	 */
+	private static double lateFeesPounds(Hire[] hires)
+	{
+		double total = 0;
+
+		for (Hire hire : hires)
+			total += (hire.getDaysLate() * hire.getBike().getDailyRate()) * 1.5;
+
+		return total;
+	}
+
+	private static long formatPence(Hire[] hires, StringBuilder text)
+	{
+		long length = 0;
+
+		for (Hire hire : hires)
+		{
+			text.setLength(0);
+			length += Money.append(text, hire.getCostPence() + hire.getBike().getDepositPence())
+					.length();
+		}
+
+		return length;
+	}
+
+	private static long formatPounds(Hire[] hires, DecimalFormat pound)
+	{
+		long length = 0;
+
+		for (Hire hire : hires)
+		{
+			Bike bike = hire.getBike();
+			length += pound.format(bike.getDailyRate() * hire.getDuration() + bike.getDeposit())
+					.length();
+		}
+
+		return length;
+	}
+
+}
@@ -0,0 +1,107 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import controller.Controller;
+import model.customer.Customer;
+
+/*
+ * Measures the latency of finding a customer by ID as the number of
+ * customers grows, against the linear scan the panels used to do.
+ * The scan is only timed up to 100,000 customers.
+ *
+ * Usage: LookupBenchmark [maxCustomers] [lookups]
+ * (10,000,000 customers needs around -Xmx4g)
+ */
+public class LookupBenchmark
+{
+	private static final int SCAN_LIMIT = 100000;
+
+	public static void main(String[] args)
+	{
+		int max = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+
+		Controller controller = Controller.getInstance();
+		Random random = new Random(42);
+
+		System.out.printf("%12s %12s %12s%n", "customers", "find ns", "scan ns");
+
+		for (int size = 1000; size <= max; size *= 10)
+		{
+			while (controller.getCustomers().size() < size)
+				controller.addCustomer(new Customer("First", "Last", "1 High Street",
+						"Northampton", "NN1 1AB"));
+
+			String[] ids = new String[Math.min(lookups, 100000)];
+
+			for (int i = 0; i < ids.length; i++)
+				ids[i] = "cust" + (1 + random.nextInt(size));
+
+			// Warm up, then time
+			find(controller, ids, lookups);
+			long findNanos = find(controller, ids, lookups);
+
+			String scan = "-";
+
+			if (size <= SCAN_LIMIT)
+			{
+				int scans = Math.max(100, lookups / size);
+				scan(controller, ids, scans);
+				scan = String.format("%,d", scan(controller, ids, scans));
+			}
+
+			System.out.printf("%,12d %,12d %12s%n", size, findNanos, scan);
+		}
+	}
+
+	/*
+	 * @return	the mean nanoseconds per lookup.
+	 */
+	private static long find(Controller controller, String[] ids, int lookups)
+	{
+		int found = 0;
+		long start = System.nanoTime();
+
+		for (int i = 0; i < lookups; i++)
+			if (controller.findCustomer(ids[i % ids.length]) != null)
+				found++;
+
+		long nanos = (System.nanoTime() - start) / lookups;
+
+		if (found != lookups)
+			throw new IllegalStateException("Lookups failed: " + (lookups - found));
+
+		return nanos;
+	}
+
+	private static long scan(Controller controller, String[] ids, int lookups)
+	{
+		ArrayList<Customer> customers = controller.getCustomers();
+		int found = 0;
+		long start = System.nanoTime();
+
+		for (int i = 0; i < lookups; i++)
+		{
+			String id = ids[i % ids.length];
+
+			for (int c = 0; c < customers.size(); c++)
+			{
+				if (id.compareToIgnoreCase(customers.get(c).getCustomerID()) == 0)
+				{
+					found++;
+					break;
+				}
+			}
+		}
+
+		long nanos = (System.nanoTime() - start) / lookups;
+
+		if (found != lookups)
+			throw new IllegalStateException("Scans failed: " + (lookups - found));
+
+		return nanos;
+	}
+
+}
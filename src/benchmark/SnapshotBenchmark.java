@@ -0,0 +1,86 @@
+package benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import controller.Controller;
+import controller.persistence.SnapshotCodec;
+
+/*
+ * Compares the load time and file size of the binary snapshot
+ * against Java serialization of the whole Controller.
+ *
+ * Usage: SnapshotBenchmark [hires] [iterations]
+ */
+public class SnapshotBenchmark
+{
+
+	public static void main(String[] args) throws Exception
+	{
+		int hires = args.length > 0 ? Integer.parseInt(args[0]) : 300000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		Controller controller = Controller.getInstance();
+		Dataset.populate(controller, hires);
+
+		File legacy = File.createTempFile("bench", ".dat");
+		File snapshot = File.createTempFile("bench", ".snapshot");
+		legacy.deleteOnExit();
+		snapshot.deleteOnExit();
+
+		writeLegacy(controller, legacy);
+		SnapshotCodec.write(controller, 0, snapshot);
+
+		System.out.printf("%,d hires%n", hires);
+		System.out.printf("Java serialization: %,12d bytes%n", legacy.length());
+		System.out.printf("Binary snapshot:    %,12d bytes%n", snapshot.length());
+
+		long legacyBest = Long.MAX_VALUE;
+		long snapshotBest = Long.MAX_VALUE;
+
+		for (int i = 0; i < iterations; i++)
+		{
+			Dataset.clear(controller);
+			long start = System.nanoTime();
+			readLegacy(legacy);
+			legacyBest = Math.min(legacyBest, System.nanoTime() - start);
+
+			Dataset.clear(controller);
+			start = System.nanoTime();
+			SnapshotCodec.read(controller, snapshot);
+			snapshotBest = Math.min(snapshotBest, System.nanoTime() - start);
+		}
+
+		System.out.printf("Java serialization load: %,8d ms%n", legacyBest / 1000000);
+		System.out.printf("Binary snapshot load:    %,8d ms%n", snapshotBest / 1000000);
+	}
+
+	private static void writeLegacy(Controller controller, File file) throws IOException
+	{
+		ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
+		try
+		{
+			out.writeObject(controller);
+		} finally
+		{
+			out.close();
+		}
+	}
+
+	private static Object readLegacy(File file) throws IOException, ClassNotFoundException
+	{
+		ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
+		try
+		{
+			return in.readObject();
+		} finally
+		{
+			in.close();
+		}
+	}
+
+}
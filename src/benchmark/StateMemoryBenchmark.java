@@ -0,0 +1,258 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+
+import org.joda.time.LocalDate;
+
+import model.bike.Available;
+import model.bike.Bike;
+import model.bike.BikeState;
+import model.bike.Damaged;
+import model.bike.OnHire;
+import model.customer.Customer;
+import model.hire.Active;
+import model.hire.Complete;
+import model.hire.Hire;
+import model.hire.HireState;
+import model.hire.Late;
+import model.hire.PaymentPending;
+
+/*
+ * Compares the heap held by hires and their bikes when their states
+ * are the shared state objects with the heap held when each hire and
+ * bike has a state object of its own, as every transition used to
+ * create (reproduced here, since the states can no longer be made). Also reports the bytes allocated while hires are paid for
+ * and returned.
+ *
+ * A quarter of the hires are left in each hire state.
+ *
+ * Usage: StateMemoryBenchmark [hires]
+ * (1,000,000 hires needs around -Xmx2g)
+ */
+public class StateMemoryBenchmark
+{
+
+	public static void main(String[] args)
+	{
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+		Customer customer = new Customer("First", "Last", "1 High Street",
+				"Northampton", "NN1 1AB");
+		LocalDate due = LocalDate.now().plusDays(3);
+		LocalDate overdue = LocalDate.now().minusDays(1);
+
+		long base = usedHeap();
+		Hire[] hires = new Hire[size];
+
+		for (int i = 0; i < size; i++)
+			hires[i] = new Hire(customer, new Bike("Make", "Model", "Road", "Men",
+					"Red", 10, 50), i % 4 == 2 ? overdue : due);
+
+		long before = allocatedBytes();
+
+		for (int i = 0; i < size; i++)
+		{
+			if (i % 4 == 0)
+				continue;
+
+			hires[i].payForHire();
+
+			if (i % 4 == 2)
+				hires[i].isLate();
+			else if (i % 4 == 3)
+				hires[i].returnHire(i % 8 == 7);
+		}
+
+		long allocated = allocatedBytes() - before;
+		long shared = usedHeap() - base;
+
+		for (int i = 0; i < size; i++)
+			separateStates(hires[i]);
+
+		long separate = usedHeap() - base;
+
+		System.out.printf("%,d hires%n", size);
+		System.out.printf("shared states:   %,14d bytes%n", shared);
+		System.out.printf("separate states: %,14d bytes (+%,d)%n", separate, separate - shared);
+
+		if (allocated >= 0)
+			System.out.printf("allocated paying for and returning hires: %,d bytes (%.1f per hire)%n",
+					allocated, allocated / (size * 0.75));
+	}
+
+	/*
+	 * Gives a hire and its bike state objects of their own, as the
+	 * states' constructors used to, each holding a reference back to
+	 * its hire or bike. The hire's bike is already in the state the
+	 * constructors would move it to.
+	 */
+	private static void separateStates(Hire hire)
+	{
+		Bike bike = hire.getBike();
+
+		if (bike.getState() instanceof OnHire)
+			bike.setState(new OwnBikeState(bike)
+			{
+				BikeState shared()
+				{
+					return OnHire.STATE;
+				}
+			});
+		else if (bike.getState() instanceof Damaged)
+			bike.setState(new OwnBikeState(bike)
+			{
+				BikeState shared()
+				{
+					return Damaged.STATE;
+				}
+			});
+		else
+			bike.setState(new OwnBikeState(bike)
+			{
+				BikeState shared()
+				{
+					return Available.STATE;
+				}
+			});
+
+		if (hire.getState() instanceof Active)
+			hire.setState(new OwnHireState(hire)
+			{
+				HireState shared()
+				{
+					return Active.STATE;
+				}
+			});
+		else if (hire.getState() instanceof Late)
+			hire.setState(new OwnHireState(hire)
+			{
+				HireState shared()
+				{
+					return Late.STATE;
+				}
+			});
+		else if (hire.getState() instanceof Complete)
+			hire.setState(new OwnHireState(hire)
+			{
+				HireState shared()
+				{
+					return Complete.STATE;
+				}
+			});
+		else
+			hire.setState(new OwnHireState(hire)
+			{
+				HireState shared()
+				{
+					return PaymentPending.STATE;
+				}
+			});
+	}
+
+	private static long usedHeap()
+	{
+		Runtime runtime = Runtime.getRuntime();
+
+		for (int i = 0; i < 3; i++)
+			System.gc();
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/*
+	 * @return	the bytes allocated by this thread so far. -1 if the
+	 * 			virtual machine does not count them.
+	 */
+	private static long allocatedBytes()
+	{
+		Object threads = ManagementFactory.getThreadMXBean();
+
+		if (threads instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) threads)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+
+		return -1;
+	}
+
+	/*
+	 * A hire state of a hire's own, the size of the per-hire states
+	 * every transition used to allocate, behaving as the shared state.
+	 */
+	private static abstract class OwnHireState implements HireState
+	{
+		final Hire hire;
+
+		OwnHireState(Hire hire)
+		{
+			this.hire = hire;
+		}
+
+		abstract HireState shared();
+
+		public boolean payForHire(Hire hire)
+		{
+			return shared().payForHire(hire);
+		}
+
+		public boolean isLate(Hire hire)
+		{
+			return shared().isLate(hire);
+		}
+
+		public boolean returnHire(Hire hire, boolean bikeIsDamaged)
+		{
+			return shared().returnHire(hire, bikeIsDamaged);
+		}
+
+		public String getStatus(Hire hire)
+		{
+			return shared().getStatus(hire);
+		}
+
+		public int getCode()
+		{
+			return shared().getCode();
+		}
+	}
+
+	/*
+	 * A bike state of a bike's own, as OwnHireState is for hires.
+	 */
+	private static abstract class OwnBikeState implements BikeState
+	{
+		final Bike bike;
+
+		OwnBikeState(Bike bike)
+		{
+			this.bike = bike;
+		}
+
+		abstract BikeState shared();
+
+		public boolean collectBike(Bike bike)
+		{
+			return shared().collectBike(bike);
+		}
+
+		public boolean returnBike(Bike bike, boolean isDamaged)
+		{
+			return shared().returnBike(bike, isDamaged);
+		}
+
+		public boolean repairBike(Bike bike)
+		{
+			return shared().repairBike(bike);
+		}
+
+		public boolean isDamaged()
+		{
+			return shared().isDamaged();
+		}
+
+		public int getCode()
+		{
+			return shared().getCode();
+		}
+	}
+
+}
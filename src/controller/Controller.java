@@ -1,25 +1,56 @@
 package controller;
 
 import model.hire.Active;
+import model.hire.Complete;
+import model.hire.EpochDay;
 import model.hire.Hire;
+import model.hire.HireState;
+import model.hire.HireStateListener;
+import model.hire.Late;
+import model.hire.PaymentPending;
 import model.invoice.InvoiceIn;
 import model.invoice.InvoiceOut;
 
-import java.io.FileInputStream;
+import java.io.DataInput;
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.joda.time.LocalDate;
 
+import model.bike.Available;
 import model.bike.Bike;
+import model.bike.BikeState;
+import model.bike.BikeStateListener;
 import model.bike.Damaged;
 import model.bike.OnHire;
+import model.bike.Reserved;
 import model.customer.Customer;
+import controller.index.BikeBitmaps;
+import controller.index.CustomerSearch;
+import controller.index.EntityID;
+import controller.index.HireHistory;
+import controller.index.Ledger;
+import controller.index.IndexedList;
+import controller.index.IntIndex;
+import controller.index.PositionIndex;
+import controller.index.Sequence;
+import controller.index.StateCounter;
+import controller.persistence.Journal;
+import controller.persistence.Mutation;
+import controller.persistence.SnapshotCodec;
+import controller.persistence.legacy.LegacyConverter;
 
 /**
  * Controller is a serializable class that manages the rental system's
@@ -28,23 +59,88 @@ import model.customer.Customer;
  * Implements the singleton design pattern to ensure that only one instance is
  * created per runtime.
  * 
- * Implements serializable to enable permanent storage and retrieval of the
- * Controller object and its data.
+ * The application data is stored permanently as a binary snapshot, and
+ * every mutation made between snapshots is appended to a journal, so that
+ * a crash loses nothing.
+ * 
+ * The Controller may be used from several threads (e.g. one per reception
+ * desk). Changes lock only the stripes of the customer and bike involved,
+ * so changes to different customers and bikes proceed in parallel, and
+ * lookups and counts take no lock at all. Taking a snapshot waits for the
+ * changes in progress to finish.
+ * 
+ * Entity numbers are handed out by a sequence per kind of entity, in blocks
+ * per thread. The highest number handed out is kept in the snapshot and
+ * journal, so no number is handed out twice, even across restarts.
+ * 
+ * Each list of entities is indexed by entity number, so that an entity can
+ * be found by its ID in constant time. Hires are also indexed by customer and
+ * by bike, and invoices by hire, so that a customer's or bike's history is
+ * found in time proportional to its length. Bikes are also indexed by each
+ * attribute value and state in BikeBitmaps, so that bikes can be searched
+ * for by several attributes at once without scanning the bikes, and
+ * customers by the words of their names and address in CustomerSearch.
+ * 
+ * The number of hires and bikes in each state is counted as they change
+ * state, so that the Report's statistics take constant time. Active hires
+ * are queued by end date, so that only hires falling due are checked for
+ * lateness.
+ * 
+ * Once a hire is complete and its InvoiceIn issued, it is moved into
+ * columns of primitives (the HireHistory), which statistics over past
+ * hires scan, and neither the hire list nor the invoices hold the Hire
+ * any longer: it is read from its row through a stand-in Hire made when
+ * it is got or found, so that past hires take a fraction of the heap.
+ * 
+ * Each invoice's payments are posted to its customer's account in the
+ * Ledger, which keeps running balances, so a customer's balance takes
+ * constant time and a page of their payment history time proportional
+ * to the page.
+ * 
+ * Views register a DataListener to be told when entities are added or
+ * change state, so that they can update the rows they show in place.
  */
 public class Controller implements Serializable
 {
 
 	private static final long serialVersionUID = 1L;
-	private static Controller instance;
-	private String dataFile = "BikeHireData.dat";
+	private static volatile Controller instance;
+	private String dataFile = "BikeHireData.snapshot";
+	private String legacyDataFile = "BikeHireData.dat";
+	private String journalFile = "BikeHireData.journal";
 	private Report report = new Report(this);
 
+	// Journal records are folded into a new snapshot after this many
+	private static final int SNAPSHOT_INTERVAL = 5000;
+	private transient volatile Journal journal;
+	// After a snapshot fails, none is tried until the journal holds this
+	// many records
+	private transient volatile long snapshotRetryAt;
+	private long journalSeq;
+
+	// The snapshot's invoices, until they are first needed
+	private transient volatile SnapshotCodec.DeferredInvoices deferredInvoices;
+
+	// Changes hold the read lock, and snapshots the write lock
+	private transient ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
+	// Number of lock stripes for customers and for bikes (a power of 2)
+	private static final int STRIPES = 64;
+	private transient Object[] customerStripes = stripes();
+	private transient Object[] bikeStripes = stripes();
+
+	// Customers' payments, taken from both lists of invoices
+	private transient Ledger ledger = new Ledger();
+
+	// Views notified of changes to the data
+	private transient DataListeners listeners = new DataListeners();
+
 	// Application data
-	private ArrayList<Customer> customers = new ArrayList<Customer>();
-	private ArrayList<Bike> bikes = new ArrayList<Bike>();
-	private ArrayList<Hire> hires = new ArrayList<Hire>();
-	private ArrayList<InvoiceOut> invoicesOut = new ArrayList<InvoiceOut>();
-	private ArrayList<InvoiceIn> invoicesIn = new ArrayList<InvoiceIn>();
+	private CustomerList customers = new CustomerList();
+	private BikeList bikes = new BikeList(listeners);
+	private HireList hires = new HireList(listeners, customers, bikes);
+	private InvoiceOutList invoicesOut = new InvoiceOutList(ledger, hires);
+	private InvoiceInList invoicesIn = new InvoiceInList(ledger, hires, invoicesOut);
 
 	/*
 	 * Constructor is private to prevent instantiation by external objects.
@@ -52,7 +148,79 @@ public class Controller implements Serializable
 	 */
 	private Controller()
 	{
+		for (int kind = 0; kind < EntityID.KINDS; kind++)
+			journalSequence(kind);
+	}
+
+	/*
+	 * Journals each advance of an entity number sequence's high-water
+	 * mark before any number in the new block is handed out, so that
+	 * numbers given to entities that are never added (a cancelled hire,
+	 * say) are not handed out again after a restart.
+	 */
+	private void journalSequence(final int kind)
+	{
+		sequence(kind).setListener(new Sequence.Listener()
+		{
+			public void blockClaimed(final long highWater)
+			{
+				change(null, null, new Change()
+				{
+					public boolean apply()
+					{
+						return true;
+					}
+
+					public byte[] record() throws IOException
+					{
+						return Mutation.advanceSequence(kind, highWater);
+					}
+				});
+			}
+		});
+	}
+
+	private Sequence sequence(int kind)
+	{
+		switch (kind)
+		{
+		case EntityID.CUSTOMERS:
+			return customers.getSequence();
+		case EntityID.BIKES:
+			return bikes.getSequence();
+		case EntityID.HIRES:
+			return hires.getSequence();
+		case EntityID.INVOICES_OUT:
+			return invoicesOut.getSequence();
+		case EntityID.INVOICES_IN:
+			return invoicesIn.getSequence();
+		default:
+			throw new IllegalArgumentException("Unknown kind of entity: " + kind);
+		}
+	}
+
+	/*
+	 * @param kind the kind of entity, e.g. EntityID.HIRES.
+	 * 
+	 * @return the highest entity number of that kind handed out so far,
+	 * whether or not the entity was added.
+	 */
+	public long getSequenceHighWater(int kind)
+	{
+		return sequence(kind).getHighWater();
+	}
 
+	/*
+	 * Ensures that entity numbers of a kind are only handed out above a
+	 * high-water mark restored from the snapshot or journal.
+	 * 
+	 * @param kind the kind of entity, e.g. EntityID.HIRES.
+	 * 
+	 * @param highWater the highest number handed out before.
+	 */
+	public void advanceSequence(int kind, long highWater)
+	{
+		sequence(kind).advanceTo(highWater);
 	}
 
 	/*
@@ -64,13 +232,33 @@ public class Controller implements Serializable
 	 */
 	public static Controller getInstance()
 	{
-		if (instance == null)
-			instance = new Controller();
+		Controller current = instance;
+
+		if (current == null)
+		{
+			synchronized (Controller.class)
+			{
+				if (instance == null)
+					instance = new Controller();
+
+				current = instance;
+			}
+		}
+
+		return current;
+	}
+
+	private static Object[] stripes()
+	{
+		Object[] stripes = new Object[STRIPES];
+
+		for (int i = 0; i < STRIPES; i++)
+			stripes[i] = new Object();
 
-		return instance;
+		return stripes;
 	}
 
-	public ArrayList<Customer> getCustomers()
+	public IndexedList<Customer> getCustomers()
 	{
 		return customers;
 	}
@@ -80,9 +268,23 @@ public class Controller implements Serializable
 	 * 
 	 * @param customer the new customer to be added.
 	 */
-	public void addCustomer(Customer customer)
+	public void addCustomer(final Customer customer)
 	{
-		customers.add(customer);
+		change(customer, null, new Change()
+		{
+			public boolean apply()
+			{
+				customers.add(customer);
+				return true;
+			}
+
+			public byte[] record() throws IOException
+			{
+				return Mutation.addCustomer(customer);
+			}
+		});
+
+		listeners.rowsAdded(EntityID.CUSTOMERS);
 	}
 
 	/*
@@ -101,7 +303,57 @@ public class Controller implements Serializable
 		return customers.get(customers.size() - 1).getCustNo();
 	}
 
-	public ArrayList<Bike> getBikes()
+	/*
+	 * Allocates a unique number for a new customer. Unlike
+	 * getLastCustomerNo() + 1, it is never given to two customers created at the same
+	 * time.
+	 * 
+	 * @see customer.Customer#generateCustomerID()
+	 * 
+	 * @return the new customer's number.
+	 */
+	public int nextCustomerNo()
+	{
+		return customers.nextKey();
+	}
+
+	/*
+	 * Finds a customer by ID, ignoring the case of the ID's prefix.
+	 * 
+	 * @param customerID the customer ID, as entered.
+	 * 
+	 * @return the matching customer. null if there is none.
+	 */
+	public Customer findCustomer(String customerID)
+	{
+		return customers.find(EntityID.number(customerID, EntityID.CUSTOMER));
+	}
+
+	public Customer findCustomer(int custNo)
+	{
+		return customers.find(custNo);
+	}
+
+	/*
+	 * Finds customers by the words of their names, postcode and town as
+	 * they are typed, e.g. "jo smi" or "NN1 1", allowing for typing
+	 * mistakes if no customers match exactly.
+	 * 
+	 * @param text the words typed.
+	 * 
+	 * @param limit the most customers to find.
+	 * 
+	 * @return the positions of the customers in the customers list, in
+	 * order of the words they were found by.
+	 * 
+	 * @see controller.index.CustomerSearch
+	 */
+	public int[] searchCustomers(String text, int limit)
+	{
+		return customers.search(text, limit);
+	}
+
+	public IndexedList<Bike> getBikes()
 	{
 		return bikes;
 	}
@@ -111,9 +363,23 @@ public class Controller implements Serializable
 	 * 
 	 * @param bike the new bike to be added.
 	 */
-	public void addBike(Bike bike)
+	public void addBike(final Bike bike)
 	{
-		bikes.add(bike);
+		change(null, bike, new Change()
+		{
+			public boolean apply()
+			{
+				bikes.add(bike);
+				return true;
+			}
+
+			public byte[] record() throws IOException
+			{
+				return Mutation.addBike(bike);
+			}
+		});
+
+		listeners.rowsAdded(EntityID.BIKES);
 	}
 
 	/*
@@ -132,7 +398,69 @@ public class Controller implements Serializable
 		return bikes.get(bikes.size() - 1).getBikeNo();
 	}
 
-	public ArrayList<Hire> getHires()
+	/*
+	 * Allocates a unique number for a new bike. Unlike
+	 * getLastBikeNo() + 1, it is never given to two bikes created at the same
+	 * time.
+	 * 
+	 * @see bike.Bike#generateBikeID()
+	 * 
+	 * @return the new bike's number.
+	 */
+	public int nextBikeNo()
+	{
+		return bikes.nextKey();
+	}
+
+	/*
+	 * Finds a bike by ID, ignoring the case of the ID's prefix.
+	 * 
+	 * @param bikeID the bike ID, as entered.
+	 * 
+	 * @return the matching bike. null if there is none.
+	 */
+	public Bike findBike(String bikeID)
+	{
+		return bikes.find(EntityID.number(bikeID, EntityID.BIKE));
+	}
+
+	public Bike findBike(int bikeNo)
+	{
+		return bikes.find(bikeNo);
+	}
+
+	/*
+	 * Gets the number of bikes in a state, counted as bikes change state.
+	 * 
+	 * @param state the BikeState class (Available, OnHire, Damaged or
+	 * Reserved).
+	 * 
+	 * @return the number of bikes in that state.
+	 */
+	public int getNoOfBikes(Class<? extends BikeState> state)
+	{
+		return bikes.countState(state);
+	}
+
+	/*
+	 * Finds the bikes with the attribute values given, in a state,
+	 * through the bikes' attribute bitmaps.
+	 * 
+	 * @param codes the code wanted for each attribute, indexed by
+	 * BikeBitmaps.MAKE, MODEL, FUNCTION, DEMOGRAPHIC and COLOUR, or
+	 * BikeBitmaps.ANY.
+	 * 
+	 * @param state the BikeState class (Available, OnHire, Damaged or
+	 * Reserved). null for any state.
+	 * 
+	 * @return the positions of the bikes in the bikes list, in order.
+	 */
+	public int[] selectBikes(int[] codes, Class<? extends BikeState> state)
+	{
+		return bikes.select(codes, state);
+	}
+
+	public IndexedList<Hire> getHires()
 	{
 		return hires;
 	}
@@ -142,9 +470,23 @@ public class Controller implements Serializable
 	 * 
 	 * @param hire the new hire to be added.
 	 */
-	public void addHire(Hire hire)
+	public void addHire(final Hire hire)
 	{
-		hires.add(hire);
+		change(hire.getCustomer(), hire.getBike(), new Change()
+		{
+			public boolean apply()
+			{
+				hires.add(hire);
+				return true;
+			}
+
+			public byte[] record() throws IOException
+			{
+				return Mutation.addHire(hire);
+			}
+		});
+
+		listeners.rowsAdded(EntityID.HIRES);
 	}
 
 	/*
@@ -164,20 +506,181 @@ public class Controller implements Serializable
 	}
 
 	/*
-	 * Calls the isLate() method for all Hire objects in the hires list. This
-	 * ensures that each hire's state is accurate in relation to the current
-	 * date.
+	 * Allocates a unique number for a new hire. Unlike
+	 * getLastHireNo() + 1, it is never given to two hires created at the same
+	 * time.
+	 * 
+	 * @see hire.Hire#generateHireID()
+	 * 
+	 * @return the new hire's number.
+	 */
+	public int nextHireNo()
+	{
+		return hires.nextKey();
+	}
+
+	/*
+	 * Finds a hire by ID, ignoring the case of the ID's prefix.
+	 * 
+	 * @param hireID the hire ID, as entered.
+	 * 
+	 * @return the matching hire. null if there is none.
+	 */
+	public Hire findHire(String hireID)
+	{
+		return hires.find(EntityID.number(hireID, EntityID.HIRE));
+	}
+
+	public Hire findHire(int hireNo)
+	{
+		return hires.find(hireNo);
+	}
+
+	/*
+	 * Gets the hires made by a customer, in the order they were added.
+	 * 
+	 * @param customer the customer.
+	 * 
+	 * @return an unmodifiable list of the customer's hires.
+	 */
+	public List<Hire> getHiresByCustomer(Customer customer)
+	{
+		return hires.byCustomer(customer.getCustNo());
+	}
+
+	/*
+	 * Gets the hires of a bike, in the order they were added.
+	 * 
+	 * @param bike the bike.
+	 * 
+	 * @return an unmodifiable list of the bike's hires.
+	 */
+	public List<Hire> getHiresByBike(Bike bike)
+	{
+		return hires.byBike(bike.getBikeNo());
+	}
+
+	/*
+	 * Counts the hires of several bikes through the index by bike, in one
+	 * read of the hire list. Used by Popularity.
+	 * 
+	 * @param bikeNos the bikes' numbers.
+	 * 
+	 * @param first the first start day counted, or Integer.MIN_VALUE.
+	 * 
+	 * @param last the last start day counted, or Integer.MAX_VALUE.
+	 * 
+	 * @return the number of hires of each bike, in the order given.
+	 */
+	public int[] countHiresByBike(int[] bikeNos, int first, int last)
+	{
+		return hires.count(bikeNos, first, last);
+	}
+
+	/*
+	 * Finds a customer's hires through the index by customer. Used by
+	 * HireQuery.
+	 * 
+	 * @param custNo the customer's number.
+	 * @return the positions of the customer's hires in the hire list, in
+	 * order.
+	 */
+	public int[] selectHires(int custNo)
+	{
+		return hires.positions(custNo);
+	}
+
+	/*
+	 * Finds the outgoing invoices for a customer's hires through the
+	 * index by customer and the invoices' index by hire. Used by
+	 * InvoiceOutQuery.
+	 * 
+	 * @param custNo the customer's number.
+	 * @return the positions of the invoices in the invoicesOut list, in
+	 * order.
+	 */
+	public int[] selectInvoicesOut(int custNo)
+	{
+		ensureInvoices();
+		return invoicesOut.positions(hires.keys(custNo));
+	}
+
+	/*
+	 * Finds the returns of a customer's hires in the hire history
+	 * through the index by customer. Used by InvoiceInQuery.
+	 * 
+	 * @param custNo the customer's number.
+	 * @return the rows of the returns in the history, in order.
+	 */
+	public int[] selectReturns(int custNo)
+	{
+		ensureInvoices();
+		return hires.returns(custNo);
+	}
+
+	/*
+	 * Gets the number of hires in a state, counted as hires change state.
+	 * 
+	 * @param state the HireState class (PaymentPending, Active, Late or
+	 * Complete).
+	 * 
+	 * @return the number of hires in that state.
+	 */
+	public int getNoOfHires(Class<? extends HireState> state)
+	{
+		return hires.countState(state);
+	}
+
+	/*
+	 * Calls the isLate() method for the active hires whose end date has
+	 * passed. This ensures that each hire's state is accurate in relation to
+	 * the current date. Only hires falling due since the last refresh are
+	 * visited.
 	 * 
 	 * @see hire.HireState#isLate()
+	 * @see controller.LateHireScheduler
 	 */
 	public void refreshLateHires()
 	{
-		for (int i = 0; i < hires.size(); i++)
-			hires.get(i).isLate();
+		int today = EpochDay.today();
+
+		for (Hire hire : hires.takeDue(today))
+		{
+			synchronized (customerLock(hire.getCustomer()))
+			{
+				synchronized (bikeLock(hire.getBike()))
+				{
+					if (!(hire.getState() instanceof Active))
+						continue;
+
+					// Requeue a hire whose end date has changed since
+					if (hire.getEndDay() < today)
+						hire.isLate();
+					else
+						hires.requeue(hire);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Releases the reservations that have run out, so that the bikes are
+	 * counted and found as available without waiting for their states to
+	 * be read. Only reservations expiring since the last release are
+	 * visited.
+	 * 
+	 * @see bike.Bike#getState()
+	 * @see controller.LateHireScheduler
+	 */
+	public void releaseExpiredReservations()
+	{
+		for (Bike bike : bikes.takeExpired())
+			bike.getState();
 	}
 
-	public ArrayList<InvoiceOut> getInvoicesOut()
+	public IndexedList<InvoiceOut> getInvoicesOut()
 	{
+		ensureInvoices();
 		return invoicesOut;
 	}
 
@@ -186,9 +689,23 @@ public class Controller implements Serializable
 	 * 
 	 * @param invoic the new invoice to be added.
 	 */
-	public void addInvoiceOut(InvoiceOut invoice)
+	public void addInvoiceOut(final InvoiceOut invoice)
 	{
-		invoicesOut.add(invoice);
+		change(invoice.getHire().getCustomer(), invoice.getHire().getBike(), new Change()
+		{
+			public boolean apply()
+			{
+				invoicesOut.add(invoice);
+				return true;
+			}
+
+			public byte[] record() throws IOException
+			{
+				return Mutation.addInvoiceOut(invoice);
+			}
+		});
+
+		listeners.rowsAdded(EntityID.INVOICES_OUT);
 	}
 
 	/*
@@ -201,13 +718,61 @@ public class Controller implements Serializable
 	 */
 	public int getLastInvoiceOutNo()
 	{
+		ensureInvoices();
 		if (invoicesOut.isEmpty())
 			return 0;
 		return invoicesOut.get(invoicesOut.size() - 1).getInvoiceNo();
 	}
 
-	public ArrayList<InvoiceIn> getInvoicesIn()
+	/*
+	 * Allocates a unique number for a new InvoiceOut. Unlike
+	 * getLastInvoiceOutNo() + 1, it is never given to two InvoiceOuts created at the same
+	 * time.
+	 * 
+	 * @see invoice.InvoiceOut#generateInvoiceOutID()
+	 * 
+	 * @return the new InvoiceOut's number.
+	 */
+	public int nextInvoiceOutNo()
+	{
+		return invoicesOut.nextKey();
+	}
+
+	/*
+	 * Finds an InvoiceOut by ID, ignoring the case of the ID's prefix.
+	 * 
+	 * @param invoiceID the invoice ID, as entered.
+	 * 
+	 * @return the matching invoice. null if there is none.
+	 */
+	public InvoiceOut findInvoiceOut(String invoiceID)
+	{
+		ensureInvoices();
+		return invoicesOut.find(EntityID.number(invoiceID, EntityID.INVOICE_OUT));
+	}
+
+	public InvoiceOut findInvoiceOut(int invoiceNo)
 	{
+		ensureInvoices();
+		return invoicesOut.find(invoiceNo);
+	}
+
+	/*
+	 * Gets the InvoiceOut issued when a hire was paid for.
+	 * 
+	 * @param hire the hire.
+	 * 
+	 * @return the hire's InvoiceOut. null if it has not been paid for.
+	 */
+	public InvoiceOut getInvoiceOut(Hire hire)
+	{
+		ensureInvoices();
+		return invoicesOut.byHire(hire.getHireNo());
+	}
+
+	public IndexedList<InvoiceIn> getInvoicesIn()
+	{
+		ensureInvoices();
 		return invoicesIn;
 	}
 
@@ -216,9 +781,23 @@ public class Controller implements Serializable
 	 * 
 	 * @param invoic the new invoice to be added.
 	 */
-	public void addInvoiceIn(InvoiceIn invoice)
+	public void addInvoiceIn(final InvoiceIn invoice)
 	{
-		invoicesIn.add(invoice);
+		change(invoice.getHire().getCustomer(), invoice.getHire().getBike(), new Change()
+		{
+			public boolean apply()
+			{
+				invoicesIn.add(invoice);
+				return true;
+			}
+
+			public byte[] record() throws IOException
+			{
+				return Mutation.addInvoiceIn(invoice);
+			}
+		});
+
+		listeners.rowsAdded(EntityID.INVOICES_IN);
 	}
 
 	/*
@@ -231,208 +810,1611 @@ public class Controller implements Serializable
 	 */
 	public int getLastInvoiceInNo()
 	{
+		ensureInvoices();
 		if (invoicesIn.isEmpty())
 			return 0;
 		return invoicesIn.get(invoicesIn.size() - 1).getInvoiceNo();
 	}
 
-	public Report getReport()
+	/*
+	 * Allocates a unique number for a new InvoiceIn. Unlike
+	 * getLastInvoiceInNo() + 1, it is never given to two InvoiceIns created at the same
+	 * time.
+	 * 
+	 * @see invoice.InvoiceIn#generateInvoiceInID()
+	 * 
+	 * @return the new InvoiceIn's number.
+	 */
+	public int nextInvoiceInNo()
 	{
-		return report;
+		return invoicesIn.nextKey();
 	}
 
 	/*
-	 * Serializes this Controller object to enable permanent storage of the
-	 * application data.
+	 * Finds an InvoiceIn by ID, ignoring the case of the ID's prefix.
 	 * 
-	 * @throws FileNotFoundException if Controller.dat cannot be created.
+	 * @param invoiceID the invoice ID, as entered.
 	 * 
-	 * @throws IOException if Controller.dat serialization fails during an I/O
-	 * operation.
+	 * @return the matching invoice. null if there is none.
 	 */
-	public void serialiseBikeHireData() throws FileNotFoundException,
-			IOException
+	public InvoiceIn findInvoiceIn(String invoiceID)
+	{
+		ensureInvoices();
+		return invoicesIn.find(EntityID.number(invoiceID, EntityID.INVOICE_IN));
+	}
+
+	public InvoiceIn findInvoiceIn(int invoiceNo)
 	{
-		FileOutputStream outStream = new FileOutputStream(dataFile);
-		ObjectOutputStream objOut = new ObjectOutputStream(outStream);
-		objOut.writeObject(this);
-		objOut.close();
+		ensureInvoices();
+		return invoicesIn.find(invoiceNo);
 	}
 
 	/*
-	 * Deserializes the Controller object to enable retrieval of the application
-	 * data serialized by the serialiseBikeHireData() method.
-	 * 
-	 * @throws ClassNotFoundException if the the class within the serialized
-	 * Controller object cannot be found.
+	 * Gets the InvoiceIn issued when a hire was returned.
 	 * 
-	 * @throws FileNotFoundException if Controller.dat is not found in the
-	 * current directory.
+	 * @param hire the hire.
 	 * 
-	 * @throws IOException if Controller.dat serialization fails during an I/O
-	 * operation.
+	 * @return the hire's InvoiceIn. null if it has not been returned.
 	 */
-	public void deserialiseBikeHireData() throws FileNotFoundException,
-			IOException, ClassNotFoundException
+	public InvoiceIn getInvoiceIn(Hire hire)
 	{
-		FileInputStream inStream = new FileInputStream(dataFile);
-		ObjectInputStream objIn = new ObjectInputStream(inStream);
-
-		Controller previous = (Controller) objIn.readObject();
-		setData(previous);
-		instance = this;
+		ensureInvoices();
+		return invoicesIn.byHire(hire.getHireNo());
+	}
 
-		objIn.close();
+	/*
+	 * Gets the history of returned hires, which holds a row for each
+	 * InvoiceIn, in the order the invoices were added.
+	 * 
+	 * @return the history. It is replaced if the hire list is cleared, so
+	 * it should not be kept.
+	 */
+	public HireHistory getHireHistory()
+	{
+		ensureInvoices();
+		return hires.history();
 	}
 
 	/*
-	 * Assigns all lists to the previous controller's lists accordingly.
+	 * Adds customers read from a snapshot in bulk, without recording
+	 * them in the journal, which must not be open. Each kind of entity
+	 * is restored by its own method, and the methods may be called at
+	 * the same time from different threads, except that incoming
+	 * invoices must be restored after their hires, which they release.
+	 * Used by SnapshotCodec.
 	 * 
-	 * @param previous the controller serialized by the previous application
-	 * usage.
+	 * @param restored the customers, in order.
 	 */
-	private void setData(Controller previous)
+	public void restore(Customer[] restored)
 	{
-		this.customers = previous.getCustomers();
-		this.hires = previous.getHires();
-		this.bikes = previous.getBikes();
-		this.invoicesIn = previous.getInvoicesIn();
-		this.invoicesOut = previous.getInvoicesOut();
+		customers.append(restored);
+		listeners.rowsAdded(EntityID.CUSTOMERS);
 	}
 
-	public boolean generateData()
+	public void restore(Bike[] restored)
 	{
+		bikes.append(restored);
+		listeners.rowsAdded(EntityID.BIKES);
+	}
 
-		/******************************************************************************
-		 * CUSTOMERS
-		 ******************************************************************************/
-		Customer c1F = new Customer("Jane", "North", "5 Newton Road",
-				"Newton Longville", "MK17 9GQ");
-		addCustomer(c1F);
+	public void restore(Hire[] restored)
+	{
+		hires.append(restored);
+		listeners.rowsAdded(EntityID.HIRES);
+	}
 
-		Customer c2M = new Customer("Elvis", "Blakeland", "49 Roxton Road",
-				"Great Barford", "MK44 5YJ");
-		addCustomer(c2M);
+	public void restore(InvoiceOut[] restored)
+	{
+		invoicesOut.append(restored);
+		listeners.rowsAdded(EntityID.INVOICES_OUT);
+	}
 
-		Customer c3F = new Customer("Samantha", "Heyman", "16 Orchard Way",
-				"Buckingham", "MK18 2NG");
-		addCustomer(c3F);
+	public void restore(InvoiceIn[] restored)
+	{
+		invoicesIn.append(restored);
+		listeners.rowsAdded(EntityID.INVOICES_IN);
+	}
 
-		Customer c4M = new Customer("Christopher", "Hamelton",
-				"28 Clovelly Court", "Corby", "NN18 8EF");
-		addCustomer(c4M);
+	/*
+	 * Defers the invoices of a snapshot being read, which are then read
+	 * by loadInvoices(). Until then, the balances they make up are
+	 * carried in the ledger. Used by SnapshotCodec.
+	 * 
+	 * @param deferred the snapshot's unread invoices.
+	 */
+	public void deferInvoices(SnapshotCodec.DeferredInvoices deferred)
+	{
+		invoicesOut.ensureLedger();
+		invoicesIn.ensureLedger();
+		deferred.carryBalances(ledger);
+		deferredInvoices = deferred;
+	}
 
-		Customer c5F = new Customer("Nicky", "Stern", "59 Kingsway", "Luton",
-				"LU4 8AU");
-		addCustomer(c5F);
+	/*
+	 * Reads the invoices deferred when the snapshot was read, if they have
+	 * not been read yet, ahead of any added since. Adding invoices,
+	 * allocating their numbers and customers' balances do not need them;
+	 * every other use of the invoices, the hire history or the payment
+	 * history reads them first, so this need only be called to read them
+	 * ahead of that (e.g. in the background).
+	 * 
+	 * @throws IOException if the snapshot's invoices are corrupt, in which
+	 * case they are left unread.
+	 */
+	public void loadInvoices() throws IOException
+	{
+		SnapshotCodec.DeferredInvoices deferred = deferredInvoices;
 
-		/******************************************************************************
-		 * BIKES
-		 ******************************************************************************/
-		Bike b1m = new Bike("Scott", "Ransom", "mountain", "men", "silver", 30,
-				50);
-		addBike(b1m);
+		if (deferred == null)
+			return;
 
-		Bike b2w = new Bike("Breezer", "Beamer", "mountain", "women",
-				"purple pearl", 26.40, 38);
-		addBike(b2w);
+		synchronized (deferred)
+		{
+			if (deferredInvoices != deferred)
+				return;
 
-		Bike b3a = new Bike("Cannondale", "Road Warrior 500", "hybrid",
-				"adult", "dark green", 20, 32);
-		addBike(b3a);
+			InvoiceOut[] out = deferred.readInvoicesOut();
+			InvoiceIn[] in = deferred.readInvoicesIn();
 
-		Bike b4b = new Bike("Alliant", "XPRESS Pro", "BMX", "boy", "chrome",
-				12.70, 20);
-		addBike(b4b);
+			// Rebuilding the ledger from the lists drops the carried balances
+			invoicesOut.prepend(out);
+			invoicesIn.prepend(in);
+			deferredInvoices = null;
+		}
 
-		Bike b5g = new Bike("Breezer", "Venturi", "racing", "girl", "sky blue",
-				59, 100);
-		addBike(b5g);
+		listeners.rowsUpdated(EntityID.INVOICES_OUT);
+		listeners.rowsUpdated(EntityID.INVOICES_IN);
+	}
 
-		Bike b6c = new Bike("Giant", "Areva 24", "mountain", "children",
-				"blue", 14.25, 23);
-		addBike(b6c);
+	/*
+	 * @return true if invoices deferred by the snapshot are still unread.
+	 */
+	public boolean hasDeferredInvoices()
+	{
+		return deferredInvoices != null;
+	}
 
-		/******************************************************************************
-		 * HIRES
-		 ******************************************************************************/
-		LocalDate now = LocalDate.now();
+	private void ensureInvoices()
+	{
+		try
+		{
+			loadInvoices();
+		} catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
 
-		Hire pastHireOnTimeNotDamaged = new Hire(c1F, b2w, now.minusDays(50),
-				now.minusDays(45), false);
-		addHire(pastHireOnTimeNotDamaged);
+	/*
+	 * Gets a customer's balance: the net amount they have paid in
+	 * charges, deposits and late fees, less deposits refunded.
+	 * 
+	 * @param custNo the customer's number.
+	 * @return the balance in pence.
+	 */
+	public long getBalance(int custNo)
+	{
+		invoicesOut.ensureLedger();
+		invoicesIn.ensureLedger();
+		return ledger.balance(custNo);
+	}
 
-		Hire pastHireOnTimeDamaged = new Hire(c2M, b1m, now.minusDays(47),
-				now.minusDays(46), false);
-		b1m.setState(new Damaged(b1m));
-		addHire(pastHireOnTimeDamaged);
+	/*
+	 * Gets the part of a customer's balance paid on outgoing invoices
+	 * (charges and deposits), or on incoming ones (late fees less
+	 * deposits refunded). Used by SnapshotCodec.
+	 * 
+	 * @param custNo the customer's number.
+	 * @param invoicesOut true for outgoing invoices, false for incoming.
+	 * @return the balance in pence.
+	 */
+	public long getBalance(int custNo, boolean invoicesOut)
+	{
+		return ledger().balance(custNo, invoicesOut);
+	}
 
-		Hire pastHireLateNotDamaged = new Hire(c1F, b3a, now.minusDays(20),
-				now.minusDays(17), true);
-		pastHireLateNotDamaged.setDateReturned(now.minusDays(15));
-		addHire(pastHireLateNotDamaged);
+	/*
+	 * @param custNo the customer's number.
+	 * @return the number of entries in the customer's payment history.
+	 */
+	public int getNoOfPayments(int custNo)
+	{
+		return ledger().size(custNo);
+	}
 
-		Hire pastHireLateDamaged = new Hire(c3F, b5g, now.minusDays(10),
-				now.minusDays(7), true);
-		b1m.setState(new Damaged(b5g));
-		pastHireLateDamaged.setDateReturned(now.minusDays(2));
-		addHire(pastHireLateDamaged);
+	/*
+	 * Gets a page of a customer's payment history, oldest first.
+	 * 
+	 * @param custNo the customer's number.
+	 * @param from the index of the first entry, from 0.
+	 * @param count the most entries to get.
+	 * @return the entries.
+	 */
+	public List<Ledger.Entry> getPayments(int custNo, int from, int count)
+	{
+		return ledger().page(custNo, from, count);
+	}
 
-		Hire activeHireOnTimeDueToday = new Hire(c4M, b6c, now.minusDays(4),
-				now, false);
-		b6c.setState(new OnHire(b6c));
-		activeHireOnTimeDueToday.setState(new Active(activeHireOnTimeDueToday));
-		activeHireOnTimeDueToday.setDateReturned(null);
-		addHire(activeHireOnTimeDueToday);
+	/*
+	 * @return the ledger, once it holds the entries of every invoice.
+	 */
+	private Ledger ledger()
+	{
+		ensureInvoices();
+		invoicesOut.ensureLedger();
+		invoicesIn.ensureLedger();
+		return ledger;
+	}
 
-		Hire activeHireOnTimeDueTomorrow = new Hire(c1F, b5g, now.minusDays(2),
-				now.plusDays(1), false);
-		b5g.setState(new OnHire(b5g));
-		activeHireOnTimeDueTomorrow.setState(new Active(
-				activeHireOnTimeDueTomorrow));
-		activeHireOnTimeDueTomorrow.setDateReturned(null);
-		addHire(activeHireOnTimeDueTomorrow);
+	public Report getReport()
+	{
+		return report;
+	}
 
-		Hire activeHireLate = new Hire(c5F, b2w, now.minusDays(6),
-				now.minusDays(2), true);
-		b2w.setState(new OnHire(b2w));
-		activeHireLate.setState(new Active(activeHireLate));
-		activeHireLate.setDateReturned(null);
-		addHire(activeHireLate);
+	/*
+	 * Registers a listener to be notified of changes to the data.
+	 * 
+	 * @see DataListener
+	 */
+	public void addDataListener(DataListener listener)
+	{
+		listeners.add(listener);
+	}
 
-		/******************************************************************************
-		 * INVOICES
-		 ******************************************************************************/
-		// Past hires out
-		addInvoiceOut(new InvoiceOut(pastHireOnTimeNotDamaged));
-		addInvoiceOut(new InvoiceOut(pastHireOnTimeDamaged));
-		addInvoiceOut(new InvoiceOut(pastHireLateNotDamaged));
-		addInvoiceOut(new InvoiceOut(pastHireLateDamaged));
+	public void removeDataListener(DataListener listener)
+	{
+		listeners.remove(listener);
+	}
 
-		// Past hires in
-		addInvoiceIn(new InvoiceIn(pastHireOnTimeNotDamaged));
-		addInvoiceIn(new InvoiceIn(pastHireOnTimeDamaged));
-		addInvoiceIn(new InvoiceIn(pastHireLateNotDamaged));
-		addInvoiceIn(new InvoiceIn(pastHireLateDamaged));
+	/*
+	 * Returns a hire, recording the return in the journal.
+	 * 
+	 * @see hire.HireState#returnHire(boolean)
+	 * 
+	 * @param hire the hire being returned.
+	 * 
+	 * @param bikeIsDamaged true if the bike has been returned damaged. false
+	 * otherwise.
+	 * 
+	 * @return true if the hire's state allowed it to be returned. false
+	 * otherwise.
+	 */
+	public boolean returnHire(final Hire hire, final boolean bikeIsDamaged)
+	{
+		return change(hire.getCustomer(), hire.getBike(), new Change()
+		{
+			public boolean apply()
+			{
+				return hire.returnHire(bikeIsDamaged);
+			}
 
-		// Active hire out (yet to be returned)
-		addInvoiceOut(new InvoiceOut(activeHireOnTimeDueToday));
-		addInvoiceOut(new InvoiceOut(activeHireOnTimeDueTomorrow));
-		addInvoiceOut(new InvoiceOut(activeHireLate));
+			public byte[] record() throws IOException
+			{
+				return Mutation.returnHire(hire, bikeIsDamaged);
+			}
+		});
+	}
 
-		/******************************************************************************
-		 * END
-		 ******************************************************************************/
+	/*
+	 * Repairs a bike, recording the repair in the journal.
+	 * 
+	 * @see bike.BikeState#repairBike()
+	 * 
+	 * @param bike the bike being repaired.
+	 * 
+	 * @return true if the bike was damaged and has been repaired. false
+	 * otherwise.
+	 */
+	public boolean repairBike(final Bike bike)
+	{
+		return change(null, bike, new Change()
+		{
+			public boolean apply()
+			{
+				return bike.repairBike();
+			}
 
-		// Serialise the controller - save the data to disk
+			public byte[] record() throws IOException
+			{
+				return Mutation.repairBike(bike);
+			}
+		});
+	}
+
+	/*
+	 * A change to the data, made by change(Customer, Bike, Change).
+	 */
+	private interface Change
+	{
+		/*
+		 * Makes the change, with the locks it needs held.
+		 * 
+		 * @return true if the change was made. false if it was not allowed,
+		 * in which case nothing is recorded.
+		 */
+		public boolean apply();
+
+		/*
+		 * @return the journal record of the change, once made.
+		 */
+		public byte[] record() throws IOException;
+	}
+
+	/*
+	 * Makes a change and records it in the journal. The change is made, and
+	 * its record queued, holding the snapshot's read lock and the lock
+	 * stripes of the customer and bike it involves; the wait for the record
+	 * to be durable is made once they are released.
+	 * 
+	 * @see #await(Journal, long)
+	 * 
+	 * @param customer the customer whose stripe is locked. null for none.
+	 * 
+	 * @param bike the bike whose stripe is locked, after the customer's. null
+	 * for none.
+	 * 
+	 * @param change the change.
+	 * 
+	 * @return true if the change was made. false otherwise.
+	 */
+	private boolean change(Customer customer, Bike bike, Change change)
+	{
+		Journal current;
+		long seq;
+
+		snapshotLock.readLock().lock();
 		try
 		{
-			serialiseBikeHireData();
-			return true;
-		} catch (IOException e)
+			current = journal;
+
+			if (customer == null)
+				seq = change(bike, change, current);
+			else
+			{
+				synchronized (customerLock(customer))
+				{
+					seq = change(bike, change, current);
+				}
+			}
+		} finally
 		{
-			e.printStackTrace();
+			snapshotLock.readLock().unlock();
+		}
+
+		if (seq < 0)
 			return false;
+
+		await(current, seq);
+		return true;
+	}
+
+	/*
+	 * @return the record's sequence number in the journal. 0 if none was
+	 * queued, and -1 if the change was not made.
+	 */
+	private long change(Bike bike, Change change, Journal current)
+	{
+		if (bike != null)
+		{
+			synchronized (bikeLock(bike))
+			{
+				return change(null, change, current);
+			}
+		}
+
+		if (!change.apply())
+			return -1;
+
+		if (current == null)
+			return 0;
+
+		try
+		{
+			return current.queue(change.record());
+		} catch (IOException e)
+		{
+			journalFailed(current, e);
+			return 0;
+		}
+	}
+
+	/*
+	 * Blocks until a mutation queued to the journal is durable, and folds
+	 * the journal into a new snapshot once it grows long enough.
+	 * 
+	 * Mutations queue their records while holding the locks that order
+	 * them (a hire is only found once its customer and bike are added), so
+	 * the records are replayed in an order that reapplies cleanly. The wait
+	 * for the disk is made after the locks are released, so that other
+	 * mutations can share the same write.
+	 * 
+	 * @param journal the journal the record was queued to. null if none.
+	 * 
+	 * @param seq the record's sequence number. 0 if none was queued.
+	 */
+	private void await(Journal journal, long seq)
+	{
+		if (journal == null || seq == 0)
+			return;
+
+		try
+		{
+			journal.await(seq);
+		} catch (IOException e)
+		{
+			journalFailed(journal, e);
+			return;
+		}
+
+		if (snapshotDue(journal))
+			snapshotIfDue();
+	}
+
+	private boolean snapshotDue(Journal journal)
+	{
+		return journal.getRecordCount() >= Math.max(SNAPSHOT_INTERVAL, snapshotRetryAt);
+	}
+
+	/*
+	 * Folds the journal into a new snapshot if it is still due. A snapshot
+	 * that cannot be written (e.g. because the disk is full) leaves the
+	 * previous snapshot and the journal as they were, so journalling goes
+	 * on and the snapshot is tried again once as many records again have
+	 * been added.
+	 */
+	private void snapshotIfDue()
+	{
+		snapshotLock.writeLock().lock();
+		try
+		{
+			Journal current = journal;
+
+			if (current != null && snapshotDue(current))
+			{
+				try
+				{
+					serialiseBikeHireData();
+				} catch (IOException e)
+				{
+					e.printStackTrace();
+					snapshotRetryAt = current.getRecordCount() + SNAPSHOT_INTERVAL;
+				}
+			}
+		} finally
+		{
+			snapshotLock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Stops journalling after a write failure. The data is still held in
+	 * memory and is saved in full by serialiseBikeHireData() on exit.
+	 * 
+	 * @param failed the journal that failed. Nothing is done if it has
+	 * already been replaced.
+	 */
+	private synchronized void journalFailed(Journal failed, IOException e)
+	{
+		if (journal != failed)
+			return;
+
+		e.printStackTrace();
+
+		try
+		{
+			failed.close();
+		} catch (IOException closeFailure)
+		{
+			closeFailure.printStackTrace();
+		}
+
+		journal = null;
+	}
+
+	/*
+	 * The lock stripes guarding changes to customers and bikes, and to the
+	 * hires and invoices of each. A change that involves both takes the
+	 * customer's lock first.
+	 */
+	private Object customerLock(Customer customer)
+	{
+		return customerStripes[customer.getCustNo() & (STRIPES - 1)];
+	}
+
+	private Object bikeLock(Bike bike)
+	{
+		return bikeStripes[bike.getBikeNo() & (STRIPES - 1)];
+	}
+
+	/*
+	 * Writes a binary snapshot of the application data to enable permanent
+	 * storage, then empties the journal, whose records are now covered by the
+	 * snapshot. The journal is opened if it is not already, so that every
+	 * later mutation is recorded.
+	 * 
+	 * The snapshot is written to a temporary file which then replaces the
+	 * previous one, so a crash part way through leaves the previous snapshot
+	 * and the journal intact.
+	 * 
+	 * @see controller.persistence.SnapshotCodec
+	 * 
+	 * @throws FileNotFoundException if the snapshot cannot be created.
+	 * 
+	 * @throws IOException if the snapshot cannot be written.
+	 */
+	public void serialiseBikeHireData() throws FileNotFoundException,
+			IOException
+	{
+		loadInvoices();
+
+		snapshotLock.writeLock().lock();
+		try
+		{
+			if (journal != null)
+				journalSeq = journal.getLastSeq();
+
+			File snapshot = new File(dataFile);
+			File temp = new File(dataFile + ".tmp");
+
+			SnapshotCodec.write(this, journalSeq, temp);
+			Files.move(temp.toPath(), snapshot.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+
+			if (journal == null)
+				journal = new Journal(new File(journalFile), journalSeq);
+
+			journal.truncate();
+			snapshotRetryAt = 0;
+		} finally
+		{
+			snapshotLock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Reads the application data written by the serialiseBikeHireData()
+	 * method, then replays the journal to reapply every mutation made after
+	 * that snapshot was taken. The journal is left open to record subsequent
+	 * mutations.
+	 * 
+	 * If there is no snapshot but there is a data file from before the
+	 * binary format, that file is converted to a snapshot first.
+	 * 
+	 * @throws ClassNotFoundException if a legacy data file holds classes that
+	 * cannot be found.
+	 * 
+	 * @throws FileNotFoundException if no snapshot, legacy data file or
+	 * journal is found in the current directory.
+	 * 
+	 * @throws IOException if the data cannot be read.
+	 */
+	public void deserialiseBikeHireData() throws FileNotFoundException,
+			IOException, ClassNotFoundException
+	{
+		deserialiseBikeHireData(false);
+	}
+
+	/*
+	 * Reads the application data as deserialiseBikeHireData() does, but
+	 * may leave the snapshot's invoices to be read when they are first
+	 * needed (see loadInvoices()). Invoices the journal records since the
+	 * snapshot are added meanwhile.
+	 * 
+	 * @param deferInvoices true to defer reading the invoices.
+	 */
+	public void deserialiseBikeHireData(boolean deferInvoices)
+			throws FileNotFoundException, IOException, ClassNotFoundException
+	{
+		File snapshot = new File(dataFile);
+		File legacy = new File(legacyDataFile);
+		File log = new File(journalFile);
+
+		if (snapshot.exists())
+			journalSeq = SnapshotCodec.read(this, snapshot, deferInvoices);
+		else if (legacy.exists())
+			journalSeq = convertLegacyData(legacy);
+		else if (!log.exists())
+			throw new FileNotFoundException(dataFile);
+
+		instance = this;
+
+		Journal replayed = new Journal(log, journalSeq);
+		try
+		{
+			replayed.replay(journalSeq, new Journal.RecordHandler()
+			{
+				public void apply(long seq, DataInput in) throws IOException
+				{
+					Mutation.apply(Controller.this, in);
+				}
+			});
+		} catch (IOException e)
+		{
+			replayed.close();
+			throw e;
+		}
+
+		journal = replayed;
+
+		for (int kind = 0; kind < EntityID.KINDS; kind++)
+			listeners.rowsUpdated(kind);
+	}
+
+	/*
+	 * Reads a data file written by Java serialization of the Controller and
+	 * saves it as a binary snapshot. The legacy file is left in place.
+	 * 
+	 * @return the last journal sequence number covered by the legacy file.
+	 */
+	private long convertLegacyData(File legacy) throws IOException,
+			ClassNotFoundException
+	{
+		long seq = LegacyConverter.convert(legacy, this);
+
+		File temp = new File(dataFile + ".tmp");
+		SnapshotCodec.write(this, seq, temp);
+		Files.move(temp.toPath(), new File(dataFile).toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+
+		return seq;
+	}
+
+	/*
+	 * Moves the snapshot and journal aside after they could not be read,
+	 * and drops whatever was read from them, so that a fresh store can be
+	 * started without writing over them. The journal may hold the only
+	 * copy of the changes made since the snapshot. A data file from before
+	 * the binary format is only ever read, so it is left in place.
+	 *
+	 * @return the suffix added to the name of each file moved aside.
+	 *
+	 * @throws IOException if a file cannot be moved, in which case nothing
+	 * should be saved over it.
+	 */
+	public String setAsideBikeHireData() throws IOException
+	{
+		String suffix = ".unreadable-" + System.currentTimeMillis();
+
+		snapshotLock.writeLock().lock();
+		try
+		{
+			if (journal != null)
+				journal.close();
+
+			journal = null;
+			deferredInvoices = null;
+
+			invoicesIn.clear();
+			invoicesOut.clear();
+			hires.clear();
+			bikes.clear();
+			customers.clear();
+
+			for (String name : new String[] {dataFile, journalFile})
+			{
+				File file = new File(name);
+
+				if (file.exists())
+					Files.move(file.toPath(), new File(name + suffix).toPath(),
+							StandardCopyOption.ATOMIC_MOVE);
+			}
+		} finally
+		{
+			snapshotLock.writeLock().unlock();
+		}
+
+		return suffix;
+	}
+
+	public boolean generateData()
+	{
+
+		/******************************************************************************
+		 * CUSTOMERS
+		 ******************************************************************************/
+		Customer c1F = new Customer("Jane", "North", "5 Newton Road",
+				"Newton Longville", "MK17 9GQ");
+		addCustomer(c1F);
+
+		Customer c2M = new Customer("Elvis", "Blakeland", "49 Roxton Road",
+				"Great Barford", "MK44 5YJ");
+		addCustomer(c2M);
+
+		Customer c3F = new Customer("Samantha", "Heyman", "16 Orchard Way",
+				"Buckingham", "MK18 2NG");
+		addCustomer(c3F);
+
+		Customer c4M = new Customer("Christopher", "Hamelton",
+				"28 Clovelly Court", "Corby", "NN18 8EF");
+		addCustomer(c4M);
+
+		Customer c5F = new Customer("Nicky", "Stern", "59 Kingsway", "Luton",
+				"LU4 8AU");
+		addCustomer(c5F);
+
+		/******************************************************************************
+		 * BIKES
+		 ******************************************************************************/
+		Bike b1m = new Bike("Scott", "Ransom", "mountain", "men", "silver", 30,
+				50);
+		addBike(b1m);
+
+		Bike b2w = new Bike("Breezer", "Beamer", "mountain", "women",
+				"purple pearl", 26.40, 38);
+		addBike(b2w);
+
+		Bike b3a = new Bike("Cannondale", "Road Warrior 500", "hybrid",
+				"adult", "dark green", 20, 32);
+		addBike(b3a);
+
+		Bike b4b = new Bike("Alliant", "XPRESS Pro", "BMX", "boy", "chrome",
+				12.70, 20);
+		addBike(b4b);
+
+		Bike b5g = new Bike("Breezer", "Venturi", "racing", "girl", "sky blue",
+				59, 100);
+		addBike(b5g);
+
+		Bike b6c = new Bike("Giant", "Areva 24", "mountain", "children",
+				"blue", 14.25, 23);
+		addBike(b6c);
+
+		/******************************************************************************
+		 * HIRES
+		 ******************************************************************************/
+		LocalDate now = LocalDate.now();
+
+		Hire pastHireOnTimeNotDamaged = new Hire(c1F, b2w, now.minusDays(50),
+				now.minusDays(45), false);
+		addHire(pastHireOnTimeNotDamaged);
+
+		Hire pastHireOnTimeDamaged = new Hire(c2M, b1m, now.minusDays(47),
+				now.minusDays(46), false);
+		b1m.setState(Damaged.STATE);
+		addHire(pastHireOnTimeDamaged);
+
+		Hire pastHireLateNotDamaged = new Hire(c1F, b3a, now.minusDays(20),
+				now.minusDays(17), true);
+		pastHireLateNotDamaged.setDateReturned(now.minusDays(15));
+		addHire(pastHireLateNotDamaged);
+
+		Hire pastHireLateDamaged = new Hire(c3F, b5g, now.minusDays(10),
+				now.minusDays(7), true);
+		b1m.setState(Damaged.STATE);
+		pastHireLateDamaged.setDateReturned(now.minusDays(2));
+		addHire(pastHireLateDamaged);
+
+		Hire activeHireOnTimeDueToday = new Hire(c4M, b6c, now.minusDays(4),
+				now, false);
+		b6c.setState(OnHire.STATE);
+		activeHireOnTimeDueToday.setState(Active.STATE);
+		activeHireOnTimeDueToday.setDateReturned(null);
+		addHire(activeHireOnTimeDueToday);
+
+		Hire activeHireOnTimeDueTomorrow = new Hire(c1F, b5g, now.minusDays(2),
+				now.plusDays(1), false);
+		b5g.setState(OnHire.STATE);
+		activeHireOnTimeDueTomorrow.setState(Active.STATE);
+		activeHireOnTimeDueTomorrow.setDateReturned(null);
+		addHire(activeHireOnTimeDueTomorrow);
+
+		Hire activeHireLate = new Hire(c5F, b2w, now.minusDays(6),
+				now.minusDays(2), true);
+		b2w.setState(OnHire.STATE);
+		activeHireLate.setState(Active.STATE);
+		activeHireLate.setDateReturned(null);
+		addHire(activeHireLate);
+
+		/******************************************************************************
+		 * INVOICES
+		 ******************************************************************************/
+		// Past hires out
+		addInvoiceOut(new InvoiceOut(pastHireOnTimeNotDamaged));
+		addInvoiceOut(new InvoiceOut(pastHireOnTimeDamaged));
+		addInvoiceOut(new InvoiceOut(pastHireLateNotDamaged));
+		addInvoiceOut(new InvoiceOut(pastHireLateDamaged));
+
+		// Past hires in
+		addInvoiceIn(new InvoiceIn(pastHireOnTimeNotDamaged));
+		addInvoiceIn(new InvoiceIn(pastHireOnTimeDamaged));
+		addInvoiceIn(new InvoiceIn(pastHireLateNotDamaged));
+		addInvoiceIn(new InvoiceIn(pastHireLateDamaged));
+
+		// Active hire out (yet to be returned)
+		addInvoiceOut(new InvoiceOut(activeHireOnTimeDueToday));
+		addInvoiceOut(new InvoiceOut(activeHireOnTimeDueTomorrow));
+		addInvoiceOut(new InvoiceOut(activeHireLate));
+
+		/******************************************************************************
+		 * END
+		 ******************************************************************************/
+
+		// Serialise the controller - save the data to disk
+		try
+		{
+			serialiseBikeHireData();
+			return true;
+		} catch (IOException e)
+		{
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/*
+	 * The entity lists, indexed by entity number. Customers are further
+	 * indexed by the words of their names and address for searching, hires
+	 * by the customer and bike they were added with, and invoices by hire.
+	 */
+	private static class CustomerList extends IndexedList<Customer>
+	{
+		private static final long serialVersionUID = 1L;
+		private transient CustomerSearch search;
+
+		protected int keyOf(Customer customer)
+		{
+			return customer.getCustNo();
+		}
+
+		protected void indexAdded(Customer customer)
+		{
+			search.add(customer);
+		}
+
+		protected void indexCleared()
+		{
+			search = new CustomerSearch();
+		}
+
+		private int[] search(String text, int limit)
+		{
+			ensureIndexed();
+			return search.search(text, limit);
+		}
+	}
+
+	/*
+	 * Bikes and hires are counted by state as they are added and as they
+	 * report their changes of state. Each rebuild of a list's indexes starts
+	 * a new counter, so a bike or hire that has since been removed from the
+	 * list only updates a counter that is no longer read. Bikes are indexed
+	 * by attribute value and state in BikeBitmaps alongside their counter.
+	 */
+	private static class BikeList extends IndexedList<Bike>
+	{
+		private static final long serialVersionUID = 1L;
+		private transient BikeCounter counter;
+		private transient BikeBitmaps bitmaps;
+		private transient DataListener listener;
+
+		private BikeList(DataListener listener)
+		{
+			this.listener = listener;
+		}
+
+		protected int keyOf(Bike bike)
+		{
+			return bike.getBikeNo();
+		}
+
+		protected void indexAdded(Bike bike)
+		{
+			BikeState state = bike.getState();
+			counter.states.add(state);
+			bitmaps.add(bike);
+			bike.setStateListener(counter);
+
+			if (state instanceof Reserved)
+				counter.reserved(bike, (Reserved) state);
+		}
+
+		protected void indexCleared()
+		{
+			bitmaps = new BikeBitmaps(Available.class, OnHire.class, Damaged.class, Reserved.class);
+			counter = new BikeCounter(bitmaps, listener);
+		}
+
+		private int countState(Class<? extends BikeState> state)
+		{
+			ensureIndexed();
+			return counter.states.count(state);
+		}
+
+		private int[] select(int[] codes, Class<? extends BikeState> state)
+		{
+			ensureIndexed();
+			return bitmaps.select(codes, state);
+		}
+
+		private List<Bike> takeExpired()
+		{
+			ensureIndexed();
+			return counter.takeExpired();
+		}
+	}
+
+	private static class BikeCounter implements BikeStateListener
+	{
+		private final StateCounter states = new StateCounter(Available.class,
+				OnHire.class, Damaged.class, Reserved.class);
+		private final BikeBitmaps bitmaps;
+		private final DataListener listener;
+		private final PriorityQueue<Expiry> expiries = new PriorityQueue<Expiry>();
+
+		private BikeCounter(BikeBitmaps bitmaps, DataListener listener)
+		{
+			this.bitmaps = bitmaps;
+			this.listener = listener;
+		}
+
+		public void bikeStateChanged(Bike bike, BikeState previous, BikeState state)
+		{
+			states.move(previous, state);
+			bitmaps.move(bike);
+
+			if (state instanceof Reserved)
+				reserved(bike, (Reserved) state);
+
+			listener.rowsUpdated(EntityID.BIKES);
+		}
+
+		private synchronized void reserved(Bike bike, Reserved reservation)
+		{
+			expiries.add(new Expiry(bike, reservation));
+		}
+
+		/*
+		 * @return the bikes whose reservations have expired, which are
+		 * taken off the queue. Some may since have been collected or
+		 * released.
+		 */
+		private synchronized List<Bike> takeExpired()
+		{
+			List<Bike> taken = new ArrayList<Bike>();
+
+			while (!expiries.isEmpty() && expiries.peek().reservation.hasExpired())
+				taken.add(expiries.poll().bike);
+
+			return taken;
+		}
+	}
+
+	/*
+	 * A bike's reservation, queued by the time it runs out.
+	 */
+	private static class Expiry implements Comparable<Expiry>
+	{
+		private final Bike bike;
+		private final Reserved reservation;
+
+		private Expiry(Bike bike, Reserved reservation)
+		{
+			this.bike = bike;
+			this.reservation = reservation;
+		}
+
+		public int compareTo(Expiry other)
+		{
+			// Compared by difference, as System.nanoTime() values may wrap
+			return Long.signum(reservation.getExpiresAt() - other.reservation.getExpiresAt());
+		}
+	}
+
+	/*
+	 * A hire whose InvoiceIn is added once it is complete is moved into the
+	 * history and released from the list, which then reads it from its
+	 * row. The indexes by customer and by bike hold positions in the list,
+	 * so that they do not hold released hires either.
+	 */
+	private static class HireList extends IndexedList<Hire>
+	{
+		private static final long serialVersionUID = 1L;
+		private transient IntIndex<Positions> byCustomer;
+		private transient IntIndex<Positions> byBike;
+		private transient HireHistory history;
+		// Each hire's row in the history plus one, by position; 0 for none
+		private transient int[] rows;
+		private transient HireTracker tracker;
+		private transient DataListener listener;
+		private transient CustomerList customers;
+		private transient BikeList bikes;
+
+		private HireList(DataListener listener, CustomerList customers, BikeList bikes)
+		{
+			this.listener = listener;
+			this.customers = customers;
+			this.bikes = bikes;
+		}
+
+		protected int keyOf(Hire hire)
+		{
+			return hire.getHireNo();
+		}
+
+		protected void indexAdded(Hire hire, int position)
+		{
+			group(byCustomer, hire.getCustomer().getCustNo()).add(position);
+			group(byBike, hire.getBike().getBikeNo()).add(position, hire.getStartDay());
+			tracker.added(hire);
+			hire.setStateListener(tracker);
+		}
+
+		/*
+		 * The history, and the rows of released hires, are kept while the
+		 * indexes are rebuilt, unless the list has been cleared.
+		 */
+		protected void indexCleared()
+		{
+			byCustomer = new IntIndex<Positions>();
+			byBike = new IntIndex<Positions>();
+			tracker = new HireTracker(listener);
+
+			if (history == null || size() == 0)
+			{
+				history = new HireHistory();
+				rows = new int[0];
+			}
+		}
+
+		/*
+		 * A stand-in for a released hire, made from its row.
+		 */
+		protected Hire released(int position)
+		{
+			HireHistory.Row row = history.row().moveTo(rows[position] - 1);
+			Hire hire = new Hire(row.getHireNo(), customers.find(row.getCustomerNo()),
+					bikes.find(row.getBikeNo()), row.getStartDay(), row.getEndDay(),
+					row.getReturnedDay());
+			hire.setState(Complete.STATE);
+			return hire;
+		}
+
+		/*
+		 * Records the return of a hire in the history, once for each hire,
+		 * and releases the hire if it is complete.
+		 * 
+		 * @return true if the hire has been released, so that its invoices
+		 * should no longer hold it.
+		 */
+		private boolean retire(final InvoiceIn invoice)
+		{
+			return release(invoice.getHireNo(), new Releaser<Hire>()
+			{
+				public boolean release(Hire hire, int position)
+				{
+					if (position >= rows.length)
+						rows = Arrays.copyOf(rows, Math.max(position + 1, rows.length * 2));
+
+					if (rows[position] == 0)
+					{
+						rows[position] = history.size() + 1;
+						history.add(invoice.getInvoiceNo(), hire, invoice.wasBikeDamaged(),
+								invoice.getLateFeePence());
+					}
+
+					return hire.getState() instanceof Complete
+							&& hire.getReturnedDay() != EpochDay.NONE;
+				}
+			});
+		}
+
+		private boolean isRetired(int hireNo)
+		{
+			return isReleased(hireNo);
+		}
+
+		private HireHistory history()
+		{
+			ensureIndexed();
+			return history;
+		}
+
+		private int countState(Class<? extends HireState> state)
+		{
+			ensureIndexed();
+			return tracker.states.count(state);
+		}
+
+		private List<Hire> takeDue(int today)
+		{
+			ensureIndexed();
+			return tracker.takeDue(today);
+		}
+
+		private void requeue(Hire hire)
+		{
+			ensureIndexed();
+			tracker.requeue(hire);
+		}
+
+		private List<Hire> byCustomer(final int custNo)
+		{
+			return read(new Reader<List<Hire>>()
+			{
+				public List<Hire> read()
+				{
+					return view(byCustomer.get(custNo));
+				}
+			});
+		}
+
+		private List<Hire> byBike(final int bikeNo)
+		{
+			return read(new Reader<List<Hire>>()
+			{
+				public List<Hire> read()
+				{
+					return view(byBike.get(bikeNo));
+				}
+			});
+		}
+
+		/*
+		 * @return	the number of hires of each of the bikes, counting only
+		 * 			those started from the first day to the last.
+		 */
+		private int[] count(final int[] bikeNos, final int first, final int last)
+		{
+			return read(new Reader<int[]>()
+			{
+				public int[] read()
+				{
+					int[] counts = new int[bikeNos.length];
+
+					for (int i = 0; i < bikeNos.length; i++)
+					{
+						Positions group = byBike.get(bikeNos[i]);
+
+						if (group != null)
+							counts[i] = group.count(first, last);
+					}
+
+					return counts;
+				}
+			});
+		}
+
+		/*
+		 * @return	the positions of the customer's hires, in order.
+		 */
+		private int[] positions(final int custNo)
+		{
+			return read(new Reader<int[]>()
+			{
+				public int[] read()
+				{
+					Positions group = byCustomer.get(custNo);
+					return group == null ? new int[0] : group.copy();
+				}
+			});
+		}
+
+		/*
+		 * @return	the hire numbers of the customer's hires.
+		 */
+		private int[] keys(final int custNo)
+		{
+			return read(new Reader<int[]>()
+			{
+				public int[] read()
+				{
+					Positions group = byCustomer.get(custNo);
+					int[] keys = new int[group == null ? 0 : group.size];
+
+					for (int i = 0; i < keys.length; i++)
+						keys[i] = element(group.at[i]).getHireNo();
+
+					return keys;
+				}
+			});
+		}
+
+		/*
+		 * @return	the rows of the customer's returns in the history, in
+		 * 			order.
+		 */
+		private int[] returns(final int custNo)
+		{
+			return read(new Reader<int[]>()
+			{
+				public int[] read()
+				{
+					Positions group = byCustomer.get(custNo);
+					int[] found = new int[group == null ? 0 : group.size];
+					int count = 0;
+
+					for (int i = 0; i < found.length; i++)
+						if (group.at[i] < rows.length && rows[group.at[i]] != 0)
+							found[count++] = rows[group.at[i]] - 1;
+
+					found = Arrays.copyOf(found, count);
+					Arrays.sort(found);
+					return found;
+				}
+			});
+		}
+
+		private static Positions group(IntIndex<Positions> index, int key)
+		{
+			Positions group = index.get(key);
+
+			if (group == null)
+			{
+				group = new Positions();
+				index.put(key, group);
+			}
+
+			return group;
+		}
+
+		/*
+		 * Copies the hires of a group, which may grow once the lock is
+		 * released.
+		 */
+		private List<Hire> view(Positions group)
+		{
+			if (group == null)
+				return Collections.emptyList();
+
+			List<Hire> hires = new ArrayList<Hire>(group.size);
+
+			for (int i = 0; i < group.size; i++)
+				hires.add(element(group.at[i]));
+
+			return Collections.unmodifiableList(hires);
+		}
+	}
+
+	/*
+	 * The positions of a customer's or a bike's hires in the hire list,
+	 * in the order added. A bike's group also keeps its hires' start days,
+	 * sorted, so that the hires started in a window are counted by binary
+	 * search.
+	 */
+	private static class Positions
+	{
+		private int[] at = new int[4];
+		private int size;
+		private int[] days;
+
+		private void add(int position)
+		{
+			if (size == at.length)
+				at = Arrays.copyOf(at, size * 2);
+
+			at[size++] = position;
+		}
+
+		/*
+		 * Adds a position with its hire's start day. Hires are mostly
+		 * added in order of start day, so the day is usually inserted
+		 * last.
+		 */
+		private void add(int position, int day)
+		{
+			add(position);
+
+			if (days == null || days.length < at.length)
+				days = days == null ? new int[at.length] : Arrays.copyOf(days, at.length);
+
+			int i = size - 1;
+
+			for (; i > 0 && days[i - 1] > day; i--)
+				days[i] = days[i - 1];
+
+			days[i] = day;
+		}
+
+		/*
+		 * @return	the number of positions added with a day from first to
+		 * 			last, or all of them if the days are not kept.
+		 */
+		private int count(int first, int last)
+		{
+			if (days == null || (first == Integer.MIN_VALUE && last == Integer.MAX_VALUE))
+				return size;
+
+			if (first > last)
+				return 0;
+
+			return (last == Integer.MAX_VALUE ? size : below(last + 1)) - below(first);
+		}
+
+		/*
+		 * @return	the number of days kept that are before the day given.
+		 */
+		private int below(int day)
+		{
+			int low = 0;
+			int high = size;
+
+			while (low < high)
+			{
+				int middle = (low + high) >>> 1;
+
+				if (days[middle] < day)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+
+			return low;
+		}
+
+		private int[] copy()
+		{
+			return Arrays.copyOf(at, size);
+		}
+
+		/*
+		 * @return	the positions stored under the keys that have one,
+		 * 			in order.
+		 */
+		private static int[] find(PositionIndex index, int[] keys)
+		{
+			int[] found = new int[keys.length];
+			int count = 0;
+
+			for (int key : keys)
+				if (index.get(key) >= 0)
+					found[count++] = index.get(key);
+
+			found = Arrays.copyOf(found, count);
+			Arrays.sort(found);
+			return found;
+		}
+	}
+
+	/*
+	 * Counts hires by state and queues active hires by end date. A hire is
+	 * only taken off the queue once it falls due; if it is no longer active
+	 * by then, it is simply dropped. The queue is guarded by the tracker,
+	 * which is never locked while waiting for another lock.
+	 */
+	private static class HireTracker implements HireStateListener
+	{
+		private final StateCounter states = new StateCounter(
+				PaymentPending.class, Active.class, Late.class, Complete.class);
+		private final PriorityQueue<Due> due = new PriorityQueue<Due>();
+		private final DataListener listener;
+
+		private HireTracker(DataListener listener)
+		{
+			this.listener = listener;
+		}
+
+		private synchronized void added(Hire hire)
+		{
+			states.add(hire.getState());
+
+			if (hire.getState() instanceof Active)
+				due.add(new Due(hire));
+		}
+
+		public synchronized void hireStateChanged(Hire hire, HireState previous)
+		{
+			states.move(previous, hire.getState());
+
+			if (hire.getState() instanceof Active && !(previous instanceof Active))
+				due.add(new Due(hire));
+
+			listener.rowsUpdated(EntityID.HIRES);
+		}
+
+		/*
+		 * @return the hires queued with an end date before today, which
+		 * are taken off the queue.
+		 */
+		private synchronized List<Hire> takeDue(int today)
+		{
+			List<Hire> taken = new ArrayList<Hire>();
+
+			while (!due.isEmpty() && due.peek().endDay < today)
+				taken.add(due.poll().hire);
+
+			return taken;
+		}
+
+		private synchronized void requeue(Hire hire)
+		{
+			due.add(new Due(hire));
+		}
+	}
+
+	/*
+	 * An active hire queued by the end date it had when queued.
+	 */
+	private static class Due implements Comparable<Due>
+	{
+		private final int endDay;
+		private final Hire hire;
+
+		private Due(Hire hire)
+		{
+			this.hire = hire;
+			endDay = hire.getEndDay();
+		}
+
+		public int compareTo(Due other)
+		{
+			return Integer.compare(endDay, other.endDay);
+		}
+	}
+
+	/*
+	 * The listeners registered with addDataListener, notified in turn.
+	 * Changes are far more frequent than registrations, so each
+	 * notification reads the list without locking it.
+	 */
+	private static class DataListeners implements DataListener
+	{
+		private final List<DataListener> registered = new CopyOnWriteArrayList<DataListener>();
+
+		private void add(DataListener listener)
+		{
+			registered.add(listener);
+		}
+
+		private void remove(DataListener listener)
+		{
+			registered.remove(listener);
+		}
+
+		public void rowsAdded(int kind)
+		{
+			for (DataListener listener : registered)
+				listener.rowsAdded(kind);
+		}
+
+		public void rowsUpdated(int kind)
+		{
+			for (DataListener listener : registered)
+				listener.rowsUpdated(kind);
+		}
+	}
+
+	/*
+	 * Each invoice added is also posted to the ledger, and no longer holds
+	 * its hire if the hire has been released.
+	 */
+	private static class InvoiceOutList extends IndexedList<InvoiceOut>
+	{
+		private static final long serialVersionUID = 1L;
+		private transient PositionIndex byHire;
+		private transient Ledger ledger;
+		private transient HireList hires;
+
+		private InvoiceOutList(Ledger ledger, HireList hires)
+		{
+			this.ledger = ledger;
+			this.hires = hires;
+		}
+
+		protected int keyOf(InvoiceOut invoice)
+		{
+			return invoice.getInvoiceNo();
+		}
+
+		protected void indexAdded(InvoiceOut invoice, int position)
+		{
+			byHire.put(invoice.getHireNo(), position);
+			ledger.record(invoice);
+
+			if (hires.isRetired(invoice.getHireNo()))
+				invoice.detachHire();
+		}
+
+		protected void indexCleared()
+		{
+			byHire = new PositionIndex();
+			ledger.clear(true);
+		}
+
+		protected void indexGrowing(int count)
+		{
+			byHire.ensureCapacity(byHire.size() + count);
+		}
+
+		private void ensureLedger()
+		{
+			ensureIndexed();
+		}
+
+		private InvoiceOut byHire(final int hireNo)
+		{
+			return read(new Reader<InvoiceOut>()
+			{
+				public InvoiceOut read()
+				{
+					return element(byHire.get(hireNo));
+				}
+			});
+		}
+
+		/*
+		 * @return	the positions of the hires' invoices, in order.
+		 */
+		private int[] positions(final int[] hireNos)
+		{
+			return read(new Reader<int[]>()
+			{
+				public int[] read()
+				{
+					return Positions.find(byHire, hireNos);
+				}
+			});
+		}
+	}
+
+	/*
+	 * Each invoice added is also posted to the ledger, and its hire's
+	 * return recorded in the hire history. Once the hire is released, the
+	 * hire's invoices no longer hold it. The hire list's lock is released
+	 * before the outgoing invoices are read, so no list's lock is held
+	 * while waiting for one taken before it.
+	 */
+	private static class InvoiceInList extends IndexedList<InvoiceIn>
+	{
+		private static final long serialVersionUID = 1L;
+		private transient PositionIndex byHire;
+		private transient Ledger ledger;
+		private transient HireList hires;
+		private transient InvoiceOutList invoicesOut;
+
+		private InvoiceInList(Ledger ledger, HireList hires, InvoiceOutList invoicesOut)
+		{
+			this.ledger = ledger;
+			this.hires = hires;
+			this.invoicesOut = invoicesOut;
+		}
+
+		protected int keyOf(InvoiceIn invoice)
+		{
+			return invoice.getInvoiceNo();
+		}
+
+		protected void indexAdded(InvoiceIn invoice, int position)
+		{
+			byHire.put(invoice.getHireNo(), position);
+			ledger.record(invoice);
+
+			if (hires.retire(invoice))
+			{
+				invoice.detachHire();
+				InvoiceOut out = invoicesOut.byHire(invoice.getHireNo());
+
+				if (out != null)
+					out.detachHire();
+			}
+		}
+
+		protected void indexCleared()
+		{
+			byHire = new PositionIndex();
+			ledger.clear(false);
+		}
+
+		protected void indexGrowing(int count)
+		{
+			byHire.ensureCapacity(byHire.size() + count);
+		}
+
+		private InvoiceIn byHire(final int hireNo)
+		{
+			return read(new Reader<InvoiceIn>()
+			{
+				public InvoiceIn read()
+				{
+					return element(byHire.get(hireNo));
+				}
+			});
+		}
+
+		private void ensureLedger()
+		{
+			ensureIndexed();
 		}
 	}
 
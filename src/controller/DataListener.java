@@ -0,0 +1,33 @@
+package controller;
+
+/**
+ * DataListener is notified when the Controller's data changes, so that
+ * views can update the rows they show rather than reading every list
+ * again. Lists are identified by their kind of entity, e.g.
+ * EntityID.HIRES; the history of returned hires changes with
+ * EntityID.INVOICES_IN.
+ *
+ * Notifications are made on whichever thread made the change, after
+ * it has been made, and may be made while the Controller holds locks;
+ * a listener should hand them on (to the event dispatch thread, say)
+ * rather than read the Controller's data there and then.
+ */
+public interface DataListener
+{
+	/*
+	 * Called after entities have been appended to a list.
+	 *
+	 * @param	kind	the kind of entity added.
+	 */
+	public void rowsAdded(int kind);
+
+	/*
+	 * Called after entities already in a list have changed, e.g. a
+	 * hire's or bike's state, or after the list has been replaced
+	 * (when data is loaded, say), so that it may also be shorter.
+	 *
+	 * @param	kind	the kind of entity changed.
+	 */
+	public void rowsUpdated(int kind);
+
+}
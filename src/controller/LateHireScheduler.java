@@ -0,0 +1,108 @@
+package controller;
+
+import java.awt.EventQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.LocalDate;
+
+/*
+ * LateHireScheduler refreshes the controller's late hires at
+ * each day rollover, so that hires become late at midnight
+ * rather than the next time the hires are viewed. Every
+ * second in between, it releases the bike reservations that
+ * have run out, so that bikes are counted and found as
+ * available once their reservations expire.
+ *
+ * The refresh runs on the scheduler's own thread: the
+ * controller takes the locks of each hire's customer and bike
+ * as it refreshes, so refreshLateHires() may be called from
+ * any thread (the report's, say, before counting late hires).
+ * Only onRefresh is run on the event dispatch thread.
+ */
+public class LateHireScheduler
+{
+
+	// How often expired reservations are released
+	private static final long RELEASE_MILLIS = 1000;
+
+	private Controller controller;
+	private Runnable onRefresh;
+	private ScheduledExecutorService timer;
+
+	/*
+	 * @param	controller	the controller whose hires are refreshed.
+	 * @param	onRefresh	run on the event dispatch thread after each
+	 * 						refresh (to update the view). May be null.
+	 */
+	public LateHireScheduler(Controller controller, Runnable onRefresh)
+	{
+		this.controller = controller;
+		this.onRefresh = onRefresh;
+	}
+
+	/*
+	 * Starts refreshing at each midnight, local time, and releasing
+	 * expired reservations.
+	 */
+	public void start()
+	{
+		if (timer != null)
+			return;
+
+		timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "late-hires");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		scheduleNext(timer);
+		timer.scheduleWithFixedDelay(new Runnable()
+		{
+			public void run()
+			{
+				controller.releaseExpiredReservations();
+			}
+		}, RELEASE_MILLIS, RELEASE_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	public void stop()
+	{
+		if (timer != null)
+			timer.shutdownNow();
+
+		timer = null;
+	}
+
+	/*
+	 * The delay is worked out afresh each day, so that days of 23 or 25
+	 * hours are handled. It runs a second past midnight in case the
+	 * timer fires a little early.
+	 */
+	private void scheduleNext(final ScheduledExecutorService current)
+	{
+		long midnight = LocalDate.now().plusDays(1).toDateTimeAtStartOfDay().getMillis();
+		long delay = Math.max(0, midnight - System.currentTimeMillis()) + 1000;
+
+		current.schedule(new Runnable()
+		{
+			public void run()
+			{
+				controller.refreshLateHires();
+
+				if (onRefresh != null)
+					EventQueue.invokeLater(onRefresh);
+
+				if (!current.isShutdown())
+					scheduleNext(current);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+}
@@ -0,0 +1,299 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.joda.time.LocalDate;
+
+import controller.index.AttributeDictionary;
+import controller.index.IndexedList;
+import model.bike.Bike;
+import model.hire.EpochDay;
+
+/*
+ * Popularity ranks bikes, and the values of their attributes, by 
+ * their number of hires.
+ * 
+ * The hire list keeps each bike's number of hires, and their start
+ * days sorted, in its index by bike, so a ranking reads no hires: it
+ * costs one pass over the bikes, with a binary search of each bike's
+ * days for a date window. The top or bottom K bikes are selected with
+ * a heap of K entries. Rankings are made on the Report's thread, so the
+ * bikes are read through the list's published copy.
+ * 
+ * Bikes with equal numbers of hires are ranked in the order they 
+ * were added to the controller. Breakdowns total the hires by the 
+ * attribute's dictionary code, in an array.
+ */
+public class Popularity
+{
+
+	// Attributes that hires can be broken down by
+	public static final int MAKE = 0;
+	public static final int FUNCTION = 1;
+	public static final int DEMOGRAPHIC = 2;
+	public static final int COLOUR = 3;
+
+	private Controller controller;
+
+	public Popularity(Controller controller)
+	{
+		this.controller = controller;
+	}
+
+	/*
+	 * Ranks the most hired bikes.
+	 * 
+	 * @param	k	the maximum number of bikes to rank.
+	 * @return	up to k bikes, most hired first.
+	 */
+	public List<Ranking> getMostPopular(int k)
+	{
+		return rank(k, true, null, null);
+	}
+
+	/*
+	 * Ranks the least hired bikes.
+	 * 
+	 * @param	k	the maximum number of bikes to rank.
+	 * @return	up to k bikes, least hired first.
+	 */
+	public List<Ranking> getLeastPopular(int k)
+	{
+		return rank(k, false, null, null);
+	}
+
+	/*
+	 * Ranks the bikes most hired in a date window.
+	 * 
+	 * @param	k		the maximum number of bikes to rank.
+	 * @param	from	the first start date counted (inclusive).
+	 * @param	to		the last start date counted (inclusive).
+	 * @return	up to k bikes, most hired first.
+	 */
+	public List<Ranking> getMostPopular(int k, LocalDate from, LocalDate to)
+	{
+		return rank(k, true, from, to);
+	}
+
+	public List<Ranking> getLeastPopular(int k, LocalDate from, LocalDate to)
+	{
+		return rank(k, false, from, to);
+	}
+
+	/*
+	 * Breaks the hires down by an attribute of the hired bike.
+	 * 
+	 * @param	attribute	MAKE, FUNCTION, DEMOGRAPHIC or COLOUR.
+	 * @return	each value of the attribute with its number of hires,
+	 * 			most hired first.
+	 */
+	public List<Ranking> getBreakdown(int attribute)
+	{
+		return getBreakdown(attribute, null, null);
+	}
+
+	/*
+	 * Breaks the hires starting in a date window down by an attribute
+	 * of the hired bike.
+	 * 
+	 * @param	attribute	MAKE, FUNCTION, DEMOGRAPHIC or COLOUR.
+	 * @param	from		the first start date counted (inclusive).
+	 * @param	to			the last start date counted (inclusive).
+	 * @return	each value of the attribute with its number of hires,
+	 * 			most hired first.
+	 */
+	public List<Ranking> getBreakdown(int attribute, LocalDate from, LocalDate to)
+	{
+		AttributeDictionary dictionary = dictionary(attribute);
+		Bike[] bikes = bikes();
+		int[] hires = countHires(bikes, from, to);
+
+		// Indexed by code + 1, so that NULL is index 0
+		int[] totals = new int[dictionary.size() + 1];
+		boolean[] seen = new boolean[totals.length];
+		int[] order = new int[totals.length];
+		int values = 0;
+
+		for (int i = 0; i < bikes.length; i++)
+		{
+			int index = code(bikes[i], attribute) + 1;
+
+			// A bike added since may have a new value
+			if (index >= totals.length)
+			{
+				int length = Math.max(index + 1, dictionary.size() + 1);
+				totals = Arrays.copyOf(totals, length);
+				seen = Arrays.copyOf(seen, length);
+				order = Arrays.copyOf(order, length);
+			}
+
+			if (!seen[index])
+			{
+				seen[index] = true;
+				order[values++] = index;
+			}
+
+			totals[index] += hires[i];
+		}
+
+		List<Ranking> breakdown = new ArrayList<Ranking>(values);
+
+		for (int v = 0; v < values; v++)
+			breakdown.add(new Ranking(dictionary.value(order[v] - 1), totals[order[v]]));
+
+		// The sort is stable, so ties keep their first appearance order
+		Collections.sort(breakdown, new Comparator<Ranking>()
+		{
+			public int compare(Ranking a, Ranking b)
+			{
+				return b.getHires() - a.getHires();
+			}
+		});
+
+		return breakdown;
+	}
+
+	/*
+	 * Selects the top (or bottom) k bikes with a heap whose head is the
+	 * weakest of the bikes selected so far.
+	 */
+	private List<Ranking> rank(int k, final boolean most, LocalDate from, LocalDate to)
+	{
+		Bike[] bikes = bikes();
+
+		if (k <= 0 || bikes.length == 0)
+			return new ArrayList<Ranking>();
+
+		int[] hires = countHires(bikes, from, to);
+
+		// Ranks entries from best to worst
+		final Comparator<Entry> order = new Comparator<Entry>()
+		{
+			public int compare(Entry a, Entry b)
+			{
+				if (a.hires != b.hires)
+					return most ? b.hires - a.hires : a.hires - b.hires;
+
+				return a.position - b.position;
+			}
+		};
+
+		PriorityQueue<Entry> heap = new PriorityQueue<Entry>(Math.min(k, bikes.length),
+				Collections.reverseOrder(order));
+
+		for (int i = 0; i < bikes.length; i++)
+		{
+			Entry entry = new Entry(i, hires[i]);
+
+			if (heap.size() < k)
+				heap.add(entry);
+			else if (order.compare(entry, heap.peek()) < 0)
+			{
+				heap.poll();
+				heap.add(entry);
+			}
+		}
+
+		Entry[] selected = heap.toArray(new Entry[heap.size()]);
+		Arrays.sort(selected, order);
+
+		List<Ranking> ranking = new ArrayList<Ranking>(selected.length);
+
+		for (Entry entry : selected)
+			ranking.add(new Ranking(bikes[entry.position].getBikeID(), entry.hires));
+
+		return ranking;
+	}
+
+	/*
+	 * @return	the bikes in the list's published copy, in order.
+	 */
+	private Bike[] bikes()
+	{
+		IndexedList<Bike> list = controller.getBikes();
+		Bike[] bikes = new Bike[list.publishedSize()];
+		int count = 0;
+
+		for (int i = 0; i < bikes.length; i++)
+		{
+			Bike bike = list.getPublished(i);
+
+			if (bike != null)
+				bikes[count++] = bike;
+		}
+
+		return Arrays.copyOf(bikes, count);
+	}
+
+	/*
+	 * Counts each bike's hires, or those that started within the window 
+	 * if one is given.
+	 */
+	private int[] countHires(Bike[] bikes, LocalDate from, LocalDate to)
+	{
+		int[] bikeNos = new int[bikes.length];
+
+		for (int i = 0; i < bikes.length; i++)
+			bikeNos[i] = bikes[i].getBikeNo();
+
+		int first = from == null ? Integer.MIN_VALUE : EpochDay.of(from);
+		int last = to == null ? Integer.MAX_VALUE : EpochDay.of(to);
+
+		return controller.countHiresByBike(bikeNos, first, last);
+	}
+
+	private static int code(Bike bike, int attribute)
+	{
+		switch (attribute)
+		{
+		case MAKE:
+			return bike.getMakeCode();
+		case FUNCTION:
+			return bike.getFunctionCode();
+		case DEMOGRAPHIC:
+			return bike.getDemographicCode();
+		case COLOUR:
+			return bike.getColourCode();
+		default:
+			throw new IllegalArgumentException("Unknown bike attribute: " + attribute);
+		}
+	}
+
+	private static AttributeDictionary dictionary(int attribute)
+	{
+		switch (attribute)
+		{
+		case MAKE:
+			return AttributeDictionary.BIKE_MAKES;
+		case FUNCTION:
+			return AttributeDictionary.BIKE_FUNCTIONS;
+		case DEMOGRAPHIC:
+			return AttributeDictionary.BIKE_DEMOGRAPHICS;
+		case COLOUR:
+			return AttributeDictionary.BIKE_COLOURS;
+		default:
+			throw new IllegalArgumentException("Unknown bike attribute: " + attribute);
+		}
+	}
+
+	/*
+	 * A bike's position among the bikes ranked and its number of hires.
+	 */
+	private static class Entry
+	{
+		private final int position;
+		private final int hires;
+
+		private Entry(int position, int hires)
+		{
+			this.position = position;
+			this.hires = hires;
+		}
+	}
+
+}
@@ -0,0 +1,34 @@
+package controller;
+
+/*
+ * Ranking is an entry in a popularity ranking: a bike ID, 
+ * or a value of a bike attribute, with its number of hires.
+ */
+public class Ranking
+{
+
+	private String name;
+	private int hires;
+
+	public Ranking(String name, int hires)
+	{
+		this.name = name;
+		this.hires = hires;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public int getHires()
+	{
+		return hires;
+	}
+
+	public String toString()
+	{
+		return name + " (" + hires + ")";
+	}
+	
+}
@@ -1,26 +1,49 @@
 package controller;
 
 import java.io.Serializable;
-
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
+
+import controller.index.HireHistory;
 import model.hire.Active;
 import model.hire.Complete;
-import model.hire.Hire;
 import model.hire.Late;
 import model.bike.Available;
-import model.bike.Bike;
 import model.bike.Damaged;
 import model.bike.OnHire;
+import model.invoice.InvoiceOut;
 
 /*
  * Report is a serializable class that offers 
  * statistics based on the contents of the lists 
  * stored in a controller object.
+ * 
+ * Statistics may be read directly, or in a query 
+ * submitted to run on the report's background 
+ * thread, so that a view need not wait for them.
  */
 public class Report implements Serializable
 {
 
 	private static final long serialVersionUID = 1L;
 	private Controller controller;
+	private transient Popularity popularity;
+
+	// Runs submitted queries one at a time, in order
+	private static final ExecutorService queries = Executors.newSingleThreadExecutor(
+			new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "report");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
 
 	/*
 	 * Constructs a Report object.
@@ -33,6 +56,20 @@ public class Report implements Serializable
 		this.controller = controller;
 	}
 
+	/*
+	 * Runs a query of the statistics on the report's 
+	 * background thread. Queries run in the order they 
+	 * are submitted, so the results of a later query 
+	 * are never overtaken by those of an earlier one.
+	 * 
+	 * @param	query	reads the statistics wanted.
+	 * @return	the future result of the query.
+	 */
+	public <T> CompletableFuture<T> submit(Supplier<T> query)
+	{
+		return CompletableFuture.supplyAsync(query, queries);
+	}
+
 	/*
 	 * Calculates the total amount of hires currently 
 	 * stored in the controller's hires list.
@@ -74,19 +111,7 @@ public class Report implements Serializable
 	 */
 	public int getNoOfActiveHires()
 	{
-		int count = 0;
-		int size = getTotalHires();
-		Hire temp;
-
-		for (int i = 0; i < size; i++)
-		{
-			temp = controller.getHires().get(i);
-
-			if (temp.getState() instanceof Active)
-				count++;
-		}
-
-		return count;
+		return controller.getNoOfHires(Active.class);
 	}
 	
 	/*
@@ -98,19 +123,7 @@ public class Report implements Serializable
 
 	public int getNoOfLateHires()
 	{
-		int count = 0;
-		int size = getTotalHires();
-		Hire temp;
-
-		for (int i = 0; i < size; i++)
-		{
-			temp = controller.getHires().get(i);
-
-			if (temp.getState() instanceof Late)
-				count++;
-		}
-
-		return count;
+		return controller.getNoOfHires(Late.class);
 	}
 
 	/*
@@ -121,19 +134,75 @@ public class Report implements Serializable
 	 */
 	public int getNoOfCompleteHires()
 	{
-		int count = 0;
-		int size = getTotalHires();
-		Hire temp;
+		return controller.getNoOfHires(Complete.class);
+	}
 
-		for (int i = 0; i < size; i++)
-		{
-			temp = controller.getHires().get(i);
+	/*
+	 * Calculates the total amount of hires that were
+	 * returned late.
+	 * 
+	 * @return	total amount of late returns
+	 */
+	public int getNoOfLateReturns()
+	{
+		return controller.getHireHistory().count(HireHistory.LATE);
+	}
 
-			if (temp.getState() instanceof Complete)
-				count++;
-		}
+	/*
+	 * Calculates the total amount of hires whose bike
+	 * was returned damaged.
+	 * 
+	 * @return	total amount of damaged returns
+	 */
+	public int getNoOfDamagedReturns()
+	{
+		return controller.getHireHistory().count(HireHistory.DAMAGED);
+	}
+
+	/*
+	 * Calculates the average number of days by which
+	 * returned hires were late, counting those returned
+	 * on time as 0.
+	 * 
+	 * @return	average days late. 0 if no hire has been
+	 * 			returned.
+	 */
+	public double getAverageDaysLate()
+	{
+		HireHistory history = controller.getHireHistory();
 
-		return count;
+		if (history.size() == 0)
+			return 0;
+
+		return (double) history.totalDaysLate() / history.size();
+	}
+
+	/*
+	 * Calculates the total charged for hires, excluding
+	 * deposits, over all outgoing invoices.
+	 * 
+	 * @return	total hire revenue in pence
+	 */
+	public long getHireRevenue()
+	{
+		List<InvoiceOut> invoices = controller.getInvoicesOut();
+		long total = 0;
+
+		for (int i = 0; i < invoices.size(); i++)
+			total += invoices.get(i).getCostPence();
+
+		return total;
+	}
+
+	/*
+	 * Calculates the total charged in late fees over
+	 * all incoming invoices.
+	 * 
+	 * @return	total late fees in pence
+	 */
+	public long getLateFeeRevenue()
+	{
+		return controller.getHireHistory().totalLateFees();
 	}
 
 	/*
@@ -144,19 +213,7 @@ public class Report implements Serializable
 	 */
 	public int getNoOfBikesAvailable()
 	{
-		int count = 0;
-		int size = getTotalBikes();
-		Bike temp;
-
-		for (int i = 0; i < size; i++)
-		{
-			temp = controller.getBikes().get(i);
-
-			if (temp.getState() instanceof Available)
-				count++;
-		}
-
-		return count;
+		return controller.getNoOfBikes(Available.class);
 	}
 
 	/*
@@ -167,19 +224,7 @@ public class Report implements Serializable
 	 */
 	public int getNoOfBikesOnHire()
 	{
-		int count = 0;
-		int size = getTotalBikes();
-		Bike temp;
-
-		for (int i = 0; i < size; i++)
-		{
-			temp = controller.getBikes().get(i);
-
-			if (temp.getState() instanceof OnHire)
-				count++;
-		}
-
-		return count;
+		return controller.getNoOfBikes(OnHire.class);
 	}
 
 	/*
@@ -190,19 +235,20 @@ public class Report implements Serializable
 	 */
 	public int getNoOfBikesDamaged()
 	{
-		int count = 0;
-		int size = getTotalBikes();
-		Bike temp;
-
-		for (int i = 0; i < size; i++)
-		{
-			temp = controller.getBikes().get(i);
+		return controller.getNoOfBikes(Damaged.class);
+	}
 
-			if (temp.getState() instanceof Damaged)
-				count++;
-		}
+	/*
+	 * Gets the popularity rankings of the bikes and their attributes.
+	 * 
+	 * @return	the Popularity for the controller's bikes.
+	 */
+	public Popularity getPopularity()
+	{
+		if (popularity == null)
+			popularity = new Popularity(controller);
 
-		return count;
+		return popularity;
 	}
 
 	/*
@@ -212,51 +258,12 @@ public class Report implements Serializable
 	 */
 	public String getMostPopularBike()
 	{
-		int hireSize = getTotalHires();
-		int bikeSize = getTotalBikes();
+		List<Ranking> ranking = getPopularity().getMostPopular(1);
 
-		if(bikeSize == 0)
+		if (ranking.isEmpty())
 			return "N/A";
 
-		// Assume the first bike is the most popular
-		Bike mostPopular = controller.getBikes().get(0);
-
-		if(bikeSize == 1)
-			return mostPopular.getBikeID();
-
-		Hire hireTemp;
-		Bike bikeTemp;
-		int count;
-		int most = -1;
-
-		for (int i = 0; i < bikeSize; i++)
-		{
-			count = 0;
-			bikeTemp = controller.getBikes().get(i);
-
-			for (int j = 0; j < hireSize; j++)
-			{
-				hireTemp = controller.getHires().get(j);
-
-				if (hireTemp.getBike().getBikeID().equals(bikeTemp.getBikeID()))
-					count++;
-			}
-
-			// First iteration; initialise most popular variables
-			if (most == -1)
-			{
-				mostPopular = bikeTemp;
-				most = count;
-			}
-
-			if(count > most)
-			{
-				most = count;
-				mostPopular = bikeTemp;
-			}
-		}
-
-		return mostPopular.getBikeID();
+		return ranking.get(0).getName();
 	}
 
 	/*
@@ -266,52 +273,12 @@ public class Report implements Serializable
 	 */
 	public String getLeastPopularBike()
 	{
+		List<Ranking> ranking = getPopularity().getLeastPopular(1);
 
-		int hireSize = getTotalHires();
-		int bikeSize = getTotalBikes();
-
-		if(bikeSize == 0)
+		if (ranking.isEmpty())
 			return "N/A";
 
-		// Assume the first bike is the least popular
-		Bike leastPopular = controller.getBikes().get(0);
-
-		if(bikeSize == 1)
-			return leastPopular.getBikeID();
-
-		Hire hireTemp;
-		Bike bikeTemp;
-		int count;
-		int least = -1;
-
-		for (int i = 0; i < bikeSize; i++)
-		{
-			count = 0;
-			bikeTemp = controller.getBikes().get(i);
-
-			for (int j = 0; j < hireSize; j++)
-			{
-				hireTemp = controller.getHires().get(j);
-
-				if (hireTemp.getBike().getBikeID().equals(bikeTemp.getBikeID()))
-					count++;
-			}
-
-			// First iteration; initialise least popular variables
-			if (least == -1)
-			{
-				leastPopular = bikeTemp;
-				least = count;
-			}
-
-			if(count < least)
-			{
-				least = count;
-				leastPopular = bikeTemp;
-			}
-		}
-
-		return leastPopular.getBikeID();
+		return ranking.get(0).getName();
 	}
 	
 }
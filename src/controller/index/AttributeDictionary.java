@@ -0,0 +1,139 @@
+package controller.index;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * AttributeDictionary maps the values of a descriptive attribute, such
+ * as a bike's colour or a customer's town, to small int codes, so that
+ * each distinct value is held once however many entities share it.
+ * Entities hold the codes, and comparing or grouping by an attribute
+ * compares ints.
+ *
+ * Codes are given in order of first appearance, from 0, and are never
+ * reused or removed. null is coded as NULL.
+ *
+ * Values are looked up without locking; only a new value takes the
+ * dictionary's lock.
+ */
+public class AttributeDictionary
+{
+	public static final int NULL = -1;
+	public static final int MISSING = -2;
+
+	// Shared dictionaries of the entity attributes
+	public static final AttributeDictionary BIKE_MAKES = new AttributeDictionary();
+	public static final AttributeDictionary BIKE_MODELS = new AttributeDictionary();
+	public static final AttributeDictionary BIKE_FUNCTIONS = new AttributeDictionary();
+	public static final AttributeDictionary BIKE_DEMOGRAPHICS = new AttributeDictionary();
+	public static final AttributeDictionary BIKE_COLOURS = new AttributeDictionary();
+	public static final AttributeDictionary CUSTOMER_TOWNS = new AttributeDictionary();
+
+	private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<String, Integer>();
+	private volatile String[] values = new String[16];
+	private volatile int size;
+
+	/*
+	 * @param	value	the attribute value.
+	 * @return	the value's code, which is given to it if it has none.
+	 */
+	public int code(String value)
+	{
+		if (value == null)
+			return NULL;
+
+		Integer code = codes.get(value);
+
+		if (code != null)
+			return code;
+
+		return add(value);
+	}
+
+	/*
+	 * Looks a value up without giving it a code, e.g. to search for it.
+	 *
+	 * @param	value	the attribute value.
+	 * @return	the value's code. NULL if the value is null, MISSING if
+	 * 			it has no code.
+	 */
+	public int find(String value)
+	{
+		if (value == null)
+			return NULL;
+
+		Integer code = codes.get(value);
+
+		return code == null ? MISSING : code;
+	}
+
+	/*
+	 * Ranks the values in order, so that values can be sorted by
+	 * comparing the ranks of their codes.
+	 *
+	 * @return	the rank of each code's value, indexed by code, from 0
+	 * 			for the lowest value.
+	 */
+	public int[] ranks()
+	{
+		final String[] current = values;
+		int count = size;
+		Integer[] codes = new Integer[count];
+
+		for (int c = 0; c < count; c++)
+			codes[c] = c;
+
+		Arrays.sort(codes, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				return current[a].compareTo(current[b]);
+			}
+		});
+
+		int[] ranks = new int[count];
+
+		for (int r = 0; r < count; r++)
+			ranks[codes[r]] = r;
+
+		return ranks;
+	}
+
+	private synchronized int add(String value)
+	{
+		Integer code = codes.get(value);
+
+		if (code != null)
+			return code;
+
+		if (size == values.length)
+			values = Arrays.copyOf(values, size * 2);
+
+		// The value is in place before its code can be found
+		values[size] = value;
+		codes.put(value, size);
+		return size++;
+	}
+
+	/*
+	 * @param	code	a code given by this dictionary.
+	 * @return	the value with the code. null if the code is NULL.
+	 */
+	public String value(int code)
+	{
+		if (code == NULL)
+			return null;
+
+		return values[code];
+	}
+
+	/*
+	 * @return	the number of values, one more than the highest code.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+}
@@ -0,0 +1,312 @@
+package controller.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import model.bike.Bike;
+
+/**
+ * BikeBitmaps indexes bikes by the value of each of their attributes
+ * (make, model, function, demographic and colour) and by state, as a
+ * set of the bikes' list positions for each value. A search for bikes
+ * with several values is then the intersection of their sets, taken a
+ * word of 64 bikes at a time, however many bikes there are.
+ *
+ * Sets of states, and of values many bikes share, are bitmaps with a
+ * bit per bike. A value few bikes share (a model, say) keeps their
+ * positions in order instead, and becomes a bitmap once that would be
+ * smaller, so the index stays small however many distinct values
+ * there are; such a set is intersected by testing its few positions
+ * against the others.
+ *
+ * Bikes are indexed by the attributes they were added with, and by
+ * their state as it changes. The index is safe to use from several
+ * threads; each use locks it briefly.
+ */
+public class BikeBitmaps
+{
+	// Attributes
+	public static final int MAKE = 0;
+	public static final int MODEL = 1;
+	public static final int FUNCTION = 2;
+	public static final int DEMOGRAPHIC = 3;
+	public static final int COLOUR = 4;
+	public static final int ATTRIBUTES = 5;
+
+	// Matches any value of an attribute
+	public static final int ANY = Integer.MIN_VALUE;
+
+	private final Class<?>[] states;
+	private final long[][] byState;
+
+	// Sets by attribute and code, offset by one for AttributeDictionary.NULL
+	private final List<List<Bitset>> byValue = new ArrayList<List<Bitset>>();
+
+	// Positions by bike number, offset by one so that 0 is no position
+	private int[] positions = new int[16];
+	private int size;
+
+	/*
+	 * @param	states	the state classes to index.
+	 */
+	public BikeBitmaps(Class<?>... states)
+	{
+		this.states = states;
+		byState = new long[states.length][0];
+
+		for (int a = 0; a < ATTRIBUTES; a++)
+			byValue.add(new ArrayList<Bitset>());
+	}
+
+	/*
+	 * Indexes a bike at the next position, which must be its position
+	 * in the list.
+	 */
+	public synchronized void add(Bike bike)
+	{
+		int position = size++;
+
+		value(MAKE, bike.getMakeCode()).add(position);
+		value(MODEL, bike.getModelCode()).add(position);
+		value(FUNCTION, bike.getFunctionCode()).add(position);
+		value(DEMOGRAPHIC, bike.getDemographicCode()).add(position);
+		value(COLOUR, bike.getColourCode()).add(position);
+		setState(bike.getState(), position, true);
+
+		if (bike.getBikeNo() >= positions.length)
+			positions = Arrays.copyOf(positions, Math.max(bike.getBikeNo() + 1, positions.length * 2));
+
+		positions[bike.getBikeNo()] = position + 1;
+	}
+
+	/*
+	 * Indexes an indexed bike under the state it is in now, after it has
+	 * changed state. Changes are made without a lock and reported by the
+	 * thread that made them, so two changes in quick succession may be
+	 * reported in either order; the state is therefore read from the
+	 * bike, which the later report finds in its latest state.
+	 */
+	public synchronized void move(Bike bike)
+	{
+		int bikeNo = bike.getBikeNo();
+
+		if (bikeNo < 0 || bikeNo >= positions.length || positions[bikeNo] == 0)
+			return;
+
+		int position = positions[bikeNo] - 1;
+
+		for (int i = 0; i < states.length; i++)
+			setState(states[i], position, false);
+
+		setState(bike.getState(), position, true);
+	}
+
+	/*
+	 * Finds the bikes with the attribute values given, in a state.
+	 *
+	 * @param	codes	the code wanted for each attribute, indexed by
+	 * 					attribute (MAKE, MODEL...), or ANY.
+	 * @param	state	one of the state classes indexed. null for any
+	 * 					state.
+	 * @return	the positions of the bikes, in order.
+	 */
+	public synchronized int[] select(int[] codes, Class<?> state)
+	{
+		List<Bitset> sets = new ArrayList<Bitset>();
+		Bitset fewest = null;
+
+		for (int a = 0; a < ATTRIBUTES; a++)
+		{
+			if (codes[a] == ANY)
+				continue;
+
+			List<Bitset> values = byValue.get(a);
+			Bitset set = codes[a] + 1 >= 0 && codes[a] + 1 < values.size() ? values.get(codes[a] + 1) : null;
+
+			if (set == null)
+				return new int[0];
+
+			sets.add(set);
+
+			if (set.words == null && (fewest == null || set.count < fewest.count))
+				fewest = set;
+		}
+
+		long[] stateWords = state == null ? null : byState[indexOf(state)];
+
+		if (fewest != null)
+			return probe(fewest, sets, stateWords);
+
+		long[] words = new long[(size + 63) >>> 6];
+
+		if (stateWords == null)
+		{
+			Arrays.fill(words, -1L);
+
+			if ((size & 63) != 0)
+				words[words.length - 1] = (1L << size) - 1;
+		}
+		else
+			System.arraycopy(stateWords, 0, words, 0, Math.min(words.length, stateWords.length));
+
+		for (Bitset set : sets)
+			for (int w = 0; w < words.length; w++)
+				words[w] &= w < set.words.length ? set.words[w] : 0;
+
+		return toPositions(words);
+	}
+
+	/*
+	 * @return	the number of bikes indexed.
+	 */
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	/*
+	 * Tests the few positions of a sparse set against the other sets.
+	 */
+	private int[] probe(Bitset fewest, List<Bitset> sets, long[] stateWords)
+	{
+		int[] found = new int[fewest.count];
+		int count = 0;
+
+		for (int i = 0; i < fewest.count; i++)
+		{
+			int position = fewest.positions[i];
+			boolean all = stateWords == null || isSet(stateWords, position);
+
+			for (int s = 0; all && s < sets.size(); s++)
+				all = sets.get(s) == fewest || sets.get(s).contains(position);
+
+			if (all)
+				found[count++] = position;
+		}
+
+		return Arrays.copyOf(found, count);
+	}
+
+	private static int[] toPositions(long[] words)
+	{
+		int count = 0;
+
+		for (long word : words)
+			count += Long.bitCount(word);
+
+		int[] found = new int[count];
+		int i = 0;
+
+		for (int w = 0; w < words.length; w++)
+		{
+			for (long word = words[w]; word != 0; word &= word - 1)
+				found[i++] = (w << 6) + Long.numberOfTrailingZeros(word);
+		}
+
+		return found;
+	}
+
+	private Bitset value(int attribute, int code)
+	{
+		List<Bitset> values = byValue.get(attribute);
+
+		while (values.size() <= code + 1)
+			values.add(null);
+
+		if (values.get(code + 1) == null)
+			values.set(code + 1, new Bitset());
+
+		return values.get(code + 1);
+	}
+
+	private void setState(Object state, int position, boolean set)
+	{
+		int i = indexOf(state);
+
+		if (i < 0)
+			return;
+
+		long[] words = byState[i];
+
+		if (position >>> 6 >= words.length)
+			words = byState[i] = Arrays.copyOf(words, Math.max((position >>> 6) + 1, words.length * 2));
+
+		if (set)
+			words[position >>> 6] |= 1L << position;
+		else
+			words[position >>> 6] &= ~(1L << position);
+	}
+
+	private int indexOf(Object state)
+	{
+		for (int i = 0; i < states.length; i++)
+			if (states[i] == state || states[i].isInstance(state))
+				return i;
+
+		if (state instanceof Class)
+			throw new IllegalArgumentException("State not indexed: " + ((Class<?>) state).getName());
+
+		return -1;
+	}
+
+	private static boolean isSet(long[] words, int position)
+	{
+		return position >>> 6 < words.length && (words[position >>> 6] & 1L << position) != 0;
+	}
+
+	/*
+	 * The positions of the bikes with one attribute value: in order
+	 * while few, otherwise as a bitmap. Positions are only added, each
+	 * greater than the last.
+	 */
+	private static class Bitset
+	{
+		private int[] positions = new int[4];
+		private long[] words;
+		private int count;
+
+		private void add(int position)
+		{
+			count++;
+
+			if (words == null)
+			{
+				if (count > positions.length)
+					positions = Arrays.copyOf(positions, positions.length * 2);
+
+				positions[count - 1] = position;
+
+				// A bitmap of the positions so far takes no more memory
+				if (count > (position >>> 5) + 64)
+					toWords(position);
+
+				return;
+			}
+
+			if (position >>> 6 >= words.length)
+				words = Arrays.copyOf(words, Math.max((position >>> 6) + 1, words.length * 2));
+
+			words[position >>> 6] |= 1L << position;
+		}
+
+		private void toWords(int last)
+		{
+			words = new long[(last >>> 6) + 1];
+
+			for (int i = 0; i < count; i++)
+				words[positions[i] >>> 6] |= 1L << positions[i];
+
+			positions = null;
+		}
+
+		private boolean contains(int position)
+		{
+			if (words != null)
+				return isSet(words, position);
+
+			return Arrays.binarySearch(positions, 0, count, position) >= 0;
+		}
+	}
+
+}
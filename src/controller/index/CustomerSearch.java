@@ -0,0 +1,660 @@
+package controller.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import model.customer.Customer;
+
+/**
+ * CustomerSearch finds customers by the words of their first name,
+ * last name, postcode and town, as the desk staff type them, e.g.
+ * "jo smi" or "NN1 1". Each word typed must begin a word of the
+ * customer's; words are compared in lower case, ignoring punctuation,
+ * and a postcode also matches without its space.
+ *
+ * The distinct words (terms) are held in a trie, a node per letter,
+ * with each term's customers listed in the order they were added. A
+ * word typed leads to the node of its prefix, under which every term
+ * it begins lies, and each node counts the customers listed under it.
+ * The customers are found from the word typed that the fewest
+ * customers match, and checked against the other words, so a search
+ * reads no more customers than it must, however many there are.
+ *
+ * Where the words typed find no customers, terms beginning within one
+ * or two typing mistakes (letters added, dropped, changed or swapped)
+ * of the words typed are found by walking the trie with the rows of
+ * their edit distance, leaving any branch as soon as it is too far
+ * from the word. The first letter of a word is taken as typed, which
+ * keeps the walk to one branch of the trie.
+ *
+ * The trie is held in arrays of primitives, a slot per node, rather
+ * than as node objects, and a node's child for a letter is found by
+ * hashing rather than by walking its siblings. Customers are indexed
+ * by the details they were added with, by their position in the list.
+ * The index is safe to use from several threads; each use locks it
+ * briefly.
+ */
+public class CustomerSearch
+{
+	// Trie nodes: letter, first and last child, next sibling (in the
+	// order added), the term ending at the node (or -1), and customers
+	// under the node. Node 0 is the root; 0 also stands for no node
+	private char[] letters = new char[1024];
+	private int[] firstChild = new int[1024];
+	private int[] lastChild = new int[1024];
+	private int[] nextSibling = new int[1024];
+	private int[] termAt = new int[1024];
+	private int[] below = new int[1024];
+	private int nodes = 1;
+
+	// Children by parent and letter, hashed: pairs of a (parent << 16 |
+	// letter) key, 0 for an empty slot, and the child
+	private long[] children = new long[4096];
+
+	// Whether the customers under each node have been counted. They are
+	// counted on the first search, and kept counted as customers are
+	// added from then on, so that indexing a whole list does not
+	// revisit the nodes of every term it adds
+	private boolean counted;
+
+	// Terms: their text and customers. Most terms (postcodes, say) are
+	// a single customer's, so the first customer is held apart and the
+	// rest listed only once there are more
+	private String[] terms = new String[256];
+	private int[] firstCustomers = new int[256];
+	private int[][] customers = new int[256][];
+	private int[] customerCounts = new int[256];
+	private int termCount;
+
+	// Each customer's terms, in one array from the customer's start
+	private int[] termStarts = new int[1025];
+	private int[] customerTerms = new int[4096];
+	private int size;
+
+	// Each customer's mark during a search (see mark), otherwise 0, and
+	// how many customers may be marked to save reading one's terms
+	private int[] marked = new int[1024];
+	private static final int MARKED = 4;
+
+	public CustomerSearch()
+	{
+		termAt[0] = -1;
+	}
+
+	/*
+	 * Indexes a customer at the next position, which must be its
+	 * position in the list.
+	 */
+	public synchronized void add(Customer customer)
+	{
+		List<String> words = new ArrayList<String>();
+		words(customer.getFirstName(), words);
+		words(customer.getLastName(), words);
+		words(customer.getAddressTown(), words);
+		words(customer.getAddressPostcode(), words);
+
+		// A postcode may also be typed without its space
+		String postcode = normalise(customer.getAddressPostcode());
+
+		if (!postcode.isEmpty() && !words.contains(postcode))
+			words.add(postcode);
+
+		int position = size++;
+
+		if (size + 1 > termStarts.length)
+			termStarts = Arrays.copyOf(termStarts, termStarts.length * 2);
+
+		int start = termStarts[position];
+
+		if (start + words.size() > customerTerms.length)
+			customerTerms = Arrays.copyOf(customerTerms, Math.max(start + words.size(), customerTerms.length * 2));
+
+		for (int i = 0; i < words.size(); i++)
+			customerTerms[start + i] = addTerm(words.get(i), position);
+
+		termStarts[position + 1] = start + words.size();
+	}
+
+	/*
+	 * @return	the number of customers indexed.
+	 */
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	/*
+	 * Finds the customers with a word beginning each word typed, or if
+	 * there are none, those with a word beginning within a typing
+	 * mistake or two of each word typed.
+	 *
+	 * @param	text	the words typed.
+	 * @param	limit	the most customers to find.
+	 * @return	the positions of the customers, in order of the term
+	 * 			they were found by (a term before the longer ones it
+	 * 			begins), then of position.
+	 */
+	public synchronized int[] search(String text, int limit)
+	{
+		List<String> words = new ArrayList<String>();
+		words(text, words);
+
+		Set<Integer> found = new LinkedHashSet<Integer>();
+
+		if (words.isEmpty() || limit <= 0)
+			return new int[0];
+
+		if (!counted)
+		{
+			count(0);
+			counted = true;
+		}
+
+		// Short words are walked first, being quickest to find and, with
+		// typos, allowed the fewest mistakes
+		Collections.sort(words, new Comparator<String>()
+		{
+			public int compare(String a, String b)
+			{
+				return a.length() - b.length();
+			}
+		});
+
+		find(words, false, found, limit);
+
+		if (found.isEmpty())
+			find(words, true, found, limit);
+
+		int[] positions = new int[found.size()];
+		int i = 0;
+
+		for (int position : found)
+			positions[i++] = position;
+
+		return positions;
+	}
+
+	/*
+	 * Finds the customers matching every word, from the nodes matching
+	 * the word that matches the fewest customers. Those found are
+	 * checked against the other words by reading their terms, or, where
+	 * a word matches few enough customers that marking them all is
+	 * quicker than the reading it saves, by their marks. Were the words
+	 * independent, about size / count customers would be read for each
+	 * one found matching a word of count customers.
+	 */
+	private void find(List<String> words, boolean typos, Set<Integer> found, int limit)
+	{
+		List<List<Integer>> nodesOf = new ArrayList<List<Integer>>();
+		long[] counts = new long[words.size()];
+		int driver = 0;
+
+		for (int w = 0; w < words.size(); w++)
+		{
+			List<Integer> matched = new ArrayList<Integer>();
+			counts[w] = typos ? nearNodes(words.get(w), matched) : prefixNode(words.get(w), matched);
+			nodesOf.add(matched);
+
+			// No customer can match every word
+			if (counts[w] == 0)
+				return;
+
+			if (counts[w] < counts[driver])
+				driver = w;
+		}
+
+		List<List<Integer>> marks = new ArrayList<List<Integer>>();
+		List<String> read = new ArrayList<String>();
+
+		for (int w = 0; w < words.size(); w++)
+		{
+			if (w == driver)
+				continue;
+
+			long reads = Math.min(counts[driver], (long) limit * size / counts[w]);
+
+			if (counts[w] <= MARKED * reads)
+				marks.add(nodesOf.get(w));
+			else
+				read.add(words.get(w));
+		}
+
+		if (marked.length < size)
+			marked = Arrays.copyOf(marked, Math.max(size, marked.length * 2));
+
+		for (int k = 0; k < marks.size(); k++)
+			for (int node : marks.get(k))
+				mark(node, k, k + 1);
+
+		try
+		{
+			for (int node : nodesOf.get(driver))
+				if (collect(node, marks.size(), read, typos, found, limit))
+					return;
+		} finally
+		{
+			// Every customer marked was marked by the first word
+			if (!marks.isEmpty())
+				for (int node : marks.get(0))
+					mark(node, -1, 0);
+		}
+	}
+
+	/*
+	 * Marks the customers of the terms under a node, moving each from
+	 * one mark to the next: 1 for the first word marked, 2 for those
+	 * also of the second, and so on.
+	 *
+	 * @param	from	the mark to move from, or -1 for any.
+	 * @param	to		the mark to move to.
+	 */
+	private void mark(int node, int from, int to)
+	{
+		int term = termAt[node];
+
+		if (term >= 0)
+		{
+			for (int i = 0; i < customerCounts[term]; i++)
+			{
+				int position = i == 0 ? firstCustomers[term] : customers[term][i - 1];
+
+				if (from < 0 || marked[position] == from)
+					marked[position] = to;
+			}
+		}
+
+		for (int child = firstChild[node]; child != 0; child = nextSibling[child])
+			mark(child, from, to);
+	}
+
+	/*
+	 * Adds the customers of the terms under a node, in order, that
+	 * carry every mark and match the words read.
+	 *
+	 * @return	true once the limit is reached.
+	 */
+	private boolean collect(int node, int marks, List<String> read, boolean typos, Set<Integer> found,
+			int limit)
+	{
+		int term = termAt[node];
+
+		if (term >= 0)
+		{
+			for (int i = 0; i < customerCounts[term]; i++)
+			{
+				int position = i == 0 ? firstCustomers[term] : customers[term][i - 1];
+
+				if (marked[position] != marks || found.contains(position)
+						|| !matchesAll(position, read, typos))
+					continue;
+
+				found.add(position);
+
+				if (found.size() == limit)
+					return true;
+			}
+		}
+
+		for (int child = firstChild[node]; child != 0; child = nextSibling[child])
+			if (collect(child, marks, read, typos, found, limit))
+				return true;
+
+		return false;
+	}
+
+	/*
+	 * Finds the node of the prefix a word makes, under which lie all the
+	 * terms it begins.
+	 *
+	 * @return	the number of customers listed under the node.
+	 */
+	private long prefixNode(String word, List<Integer> matched)
+	{
+		int node = 0;
+
+		for (int i = 0; i < word.length(); i++)
+		{
+			node = child(node, word.charAt(i));
+
+			if (node == 0)
+				return 0;
+		}
+
+		matched.add(node);
+		return below[node];
+	}
+
+	/*
+	 * Finds the nodes of the prefixes within the mistakes allowed of a
+	 * word, walking the trie with a row of edit distances per node. No
+	 * node found lies under another.
+	 *
+	 * @return	the number of customers listed under the nodes.
+	 */
+	private long nearNodes(String word, List<Integer> matched)
+	{
+		int edits = mistakes(word);
+
+		if (edits == 0)
+			return prefixNode(word, matched);
+
+		// A row per depth, as no prefix deeper than the word and its
+		// mistakes can be near it
+		int[][] rows = new int[word.length() + edits + 1][word.length() + 1];
+
+		for (int i = 0; i <= word.length(); i++)
+			rows[0][i] = i;
+
+		// The first letter is taken as typed
+		int first = child(0, word.charAt(0));
+
+		return first == 0 ? 0 : near(first, 1, word, rows, 0, edits, matched);
+	}
+
+	/*
+	 * Takes the row of a node from the rows of its parent and the
+	 * parent's parent, so that two letters swapped count as one mistake.
+	 */
+	private long near(int node, int depth, String word, int[][] rows, int parent, int edits,
+			List<Integer> matched)
+	{
+		char letter = letters[node];
+		int[] row = rows[depth];
+		int[] above = rows[depth - 1];
+		int[] aboveThat = depth > 1 ? rows[depth - 2] : null;
+		row[0] = above[0] + 1;
+		int least = row[0];
+
+		for (int i = 1; i < row.length; i++)
+		{
+			int change = above[i - 1] + (word.charAt(i - 1) == letter ? 0 : 1);
+			row[i] = Math.min(change, Math.min(above[i], row[i - 1]) + 1);
+
+			if (aboveThat != null && i > 1 && word.charAt(i - 1) == parent && word.charAt(i - 2) == letter)
+				row[i] = Math.min(row[i], aboveThat[i - 2] + 1);
+
+			least = Math.min(least, row[i]);
+		}
+
+		// The whole word typed is matched: the terms below all begin with it
+		if (row[row.length - 1] <= edits)
+		{
+			matched.add(node);
+			return below[node];
+		}
+
+		if (least > edits || depth + 1 == rows.length)
+			return 0;
+
+		long count = 0;
+
+		for (int child = firstChild[node]; child != 0; child = nextSibling[child])
+			count += near(child, depth + 1, word, rows, letter, edits, matched);
+
+		return count;
+	}
+
+	/*
+	 * Checks a customer's terms against words.
+	 */
+	private boolean matchesAll(int position, List<String> words, boolean typos)
+	{
+		for (String word : words)
+		{
+			boolean matched = false;
+
+			for (int t = termStarts[position]; !matched && t < termStarts[position + 1]; t++)
+			{
+				String term = terms[customerTerms[t]];
+				matched = term.startsWith(word) || typos && term.charAt(0) == word.charAt(0)
+						&& prefixDistance(word, term) <= mistakes(word);
+			}
+
+			if (!matched)
+				return false;
+		}
+
+		return true;
+	}
+
+	/*
+	 * @return	the fewest edits from the word to the start of the term,
+	 * 			counting two letters swapped as one.
+	 */
+	private static int prefixDistance(String word, String term)
+	{
+		int[] aboveThat = null;
+		int[] above = new int[word.length() + 1];
+
+		for (int i = 0; i < above.length; i++)
+			above[i] = i;
+
+		int best = above[word.length()];
+
+		for (int j = 1; j <= term.length(); j++)
+		{
+			int[] row = new int[above.length];
+			row[0] = j;
+
+			for (int i = 1; i <= word.length(); i++)
+			{
+				row[i] = Math.min(above[i - 1] + (word.charAt(i - 1) == term.charAt(j - 1) ? 0 : 1),
+						Math.min(above[i], row[i - 1]) + 1);
+
+				if (aboveThat != null && i > 1 && word.charAt(i - 1) == term.charAt(j - 2)
+						&& word.charAt(i - 2) == term.charAt(j - 1))
+					row[i] = Math.min(row[i], aboveThat[i - 2] + 1);
+			}
+
+			best = Math.min(best, row[word.length()]);
+			aboveThat = above;
+			above = row;
+		}
+
+		return best;
+	}
+
+	/*
+	 * @return	the typing mistakes allowed in a word: none in a word of
+	 * 			up to three letters, one in a short word, two in a long one.
+	 */
+	private static int mistakes(String word)
+	{
+		return word.length() <= 3 ? 0 : word.length() <= 6 ? 1 : 2;
+	}
+
+	/*
+	 * Counts the customers listed under a node and each node below it.
+	 *
+	 * @return	the number of customers listed under the node.
+	 */
+	private int count(int node)
+	{
+		int count = termAt[node] < 0 ? 0 : customerCounts[termAt[node]];
+
+		for (int child = firstChild[node]; child != 0; child = nextSibling[child])
+			count += count(child);
+
+		below[node] = count;
+		return count;
+	}
+
+	private int addTerm(String word, int position)
+	{
+		int node = 0;
+
+		if (counted)
+			below[0]++;
+
+		for (int i = 0; i < word.length(); i++)
+		{
+			int child = child(node, word.charAt(i));
+
+			if (child == 0)
+				child = addChild(node, word.charAt(i));
+
+			node = child;
+
+			if (counted)
+				below[node]++;
+		}
+
+		int term = termAt[node];
+
+		if (term < 0)
+		{
+			term = termCount++;
+
+			if (term == terms.length)
+			{
+				terms = Arrays.copyOf(terms, term * 2);
+				firstCustomers = Arrays.copyOf(firstCustomers, term * 2);
+				customers = Arrays.copyOf(customers, term * 2);
+				customerCounts = Arrays.copyOf(customerCounts, term * 2);
+			}
+
+			terms[term] = word;
+			firstCustomers[term] = position;
+			customerCounts[term] = 1;
+			termAt[node] = term;
+			return term;
+		}
+
+		int count = customerCounts[term]++;
+
+		if (customers[term] == null)
+			customers[term] = new int[4];
+		else if (count - 1 == customers[term].length)
+			customers[term] = Arrays.copyOf(customers[term], customers[term].length * 2);
+
+		customers[term][count - 1] = position;
+		return term;
+	}
+
+	private int child(int node, char letter)
+	{
+		long key = (long) node << 16 | letter;
+
+		for (int slot = slot(key); children[slot] != 0; slot = (slot + 2) & (children.length - 1))
+			if (children[slot] == key)
+				return (int) children[slot + 1];
+
+		return 0;
+	}
+
+	/*
+	 * @return	the slot of the pair a key hashes to.
+	 */
+	private int slot(long key)
+	{
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & (children.length - 2);
+	}
+
+	/*
+	 * Hashes a child under its parent and letter, keeping the table no
+	 * more than half full.
+	 */
+	private void hashChild(int node, char letter, int child)
+	{
+		if (nodes * 4 > children.length)
+		{
+			long[] pairs = children;
+			children = new long[pairs.length * 2];
+
+			for (int i = 0; i < pairs.length; i += 2)
+				if (pairs[i] != 0)
+					putChild(pairs[i], pairs[i + 1]);
+		}
+
+		putChild((long) node << 16 | letter, child);
+	}
+
+	private void putChild(long key, long child)
+	{
+		int slot = slot(key);
+
+		while (children[slot] != 0)
+			slot = (slot + 2) & (children.length - 1);
+
+		children[slot] = key;
+		children[slot + 1] = child;
+	}
+
+	/*
+	 * Adds a child node after its siblings.
+	 */
+	private int addChild(int node, char letter)
+	{
+		if (nodes == letters.length)
+		{
+			int capacity = nodes * 2;
+			letters = Arrays.copyOf(letters, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			lastChild = Arrays.copyOf(lastChild, capacity);
+			nextSibling = Arrays.copyOf(nextSibling, capacity);
+			termAt = Arrays.copyOf(termAt, capacity);
+			below = Arrays.copyOf(below, capacity);
+		}
+
+		int child = nodes++;
+		letters[child] = letter;
+		termAt[child] = -1;
+		hashChild(node, letter, child);
+
+		if (firstChild[node] == 0)
+			firstChild[node] = child;
+		else
+			nextSibling[lastChild[node]] = child;
+
+		lastChild[node] = child;
+		return child;
+	}
+
+	/*
+	 * Splits text into lower case words of letters and digits.
+	 */
+	private static void words(String text, List<String> words)
+	{
+		if (text == null)
+			return;
+
+		StringBuilder word = new StringBuilder();
+
+		for (int i = 0; i <= text.length(); i++)
+		{
+			char c = i < text.length() ? text.charAt(i) : ' ';
+
+			if (Character.isLetterOrDigit(c))
+			{
+				word.append(Character.toLowerCase(c));
+				continue;
+			}
+
+			if (word.length() > 0 && !words.contains(word.toString()))
+				words.add(word.toString());
+
+			word.setLength(0);
+		}
+	}
+
+	/*
+	 * @return	the letters and digits of text, in lower case.
+	 */
+	private static String normalise(String text)
+	{
+		List<String> words = new ArrayList<String>();
+		StringBuilder joined = new StringBuilder();
+		words(text, words);
+
+		for (String word : words)
+			joined.append(word);
+
+		return joined.toString();
+	}
+
+}
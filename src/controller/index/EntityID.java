@@ -0,0 +1,64 @@
+package controller.index;
+
+/**
+ * EntityID extracts the entity number from an entity ID such as
+ * "CUST12" or "INV-OUT-7".
+ *
+ * IDs are matched as the desk staff type them: the prefix ignores
+ * case, but the number must be written exactly as it appears in the
+ * ID it refers to (no sign, spaces or leading zeros).
+ */
+public final class EntityID
+{
+	public static final String CUSTOMER = "CUST";
+	public static final String BIKE = "BIKE";
+	public static final String HIRE = "HIRE";
+	public static final String INVOICE_OUT = "INV-OUT-";
+	public static final String INVOICE_IN = "INV-IN-";
+
+	// Kinds of entity, each numbered by its own sequence
+	public static final int CUSTOMERS = 0;
+	public static final int BIKES = 1;
+	public static final int HIRES = 2;
+	public static final int INVOICES_OUT = 3;
+	public static final int INVOICES_IN = 4;
+	public static final int KINDS = 5;
+
+	private EntityID()
+	{
+
+	}
+
+	/*
+	 * @param	id		the ID entered.
+	 * @param	prefix	the prefix of the kind of entity expected.
+	 * @return	the entity number. -1 if the ID is not of that kind.
+	 */
+	public static int number(String id, String prefix)
+	{
+		if (id == null || !id.regionMatches(true, 0, prefix, 0, prefix.length()))
+			return -1;
+
+		int start = prefix.length();
+		int length = id.length() - start;
+
+		// Entity numbers start at 1 and fit in nine digits without overflow
+		if (length < 1 || length > 9 || id.charAt(start) == '0')
+			return -1;
+
+		int number = 0;
+
+		for (int i = start; i < id.length(); i++)
+		{
+			char c = id.charAt(i);
+
+			if (c < '0' || c > '9')
+				return -1;
+
+			number = number * 10 + (c - '0');
+		}
+
+		return number;
+	}
+
+}
@@ -0,0 +1,296 @@
+package controller.index;
+
+import java.util.Arrays;
+
+import org.joda.time.LocalDate;
+
+import model.hire.EpochDay;
+import model.hire.Hire;
+
+/**
+ * HireHistory keeps the returned hires as columns of primitives, one
+ * row per hire: the number of its incoming invoice, the hire, customer
+ * and bike numbers, the start, end and return dates as days since
+ * 1970-01-01, the late fee charged in pence, and a byte of flags noting
+ * whether the hire was late and the bike damaged. A row takes 37
+ * bytes, where a Hire object with its ID takes around 110, and
+ * scanning a column reads memory in order.
+ *
+ * The Controller's hire list moves each hire into the history once it
+ * is complete and its InvoiceIn issued, and then no longer holds the
+ * Hire: the hire is read from its row, by a stand-in Hire made as
+ * needed, or through a Row.
+ *
+ * The columns are held in chunks of CHUNK rows, so growing the history
+ * never copies the rows already held. Rows are appended by one thread
+ * at a time and may be read by any thread while rows are appended:
+ * a row is complete before it is counted by size().
+ *
+ * Rows are read through a Row, a reusable view of one row at a time.
+ */
+public class HireHistory
+{
+	// Rows per chunk (a power of 2)
+	private static final int CHUNK_BITS = 12;
+	public static final int CHUNK = 1 << CHUNK_BITS;
+
+	// Flags
+	public static final int LATE = 1;
+	public static final int DAMAGED = 2;
+
+	private volatile Chunk[] chunks = new Chunk[0];
+	private volatile int size;
+
+	/*
+	 * Appends the return of a hire. Not to be called by two threads at
+	 * once.
+	 *
+	 * @param	invoiceNo	the number of the return's invoice.
+	 * @param	hire		the returned hire.
+	 * @param	damaged		true if the bike was returned damaged.
+	 * @param	lateFee		the late fee charged, in pence.
+	 */
+	public void add(int invoiceNo, Hire hire, boolean damaged, long lateFee)
+	{
+		int row = size;
+		Chunk[] current = chunks;
+
+		if (row >> CHUNK_BITS == current.length)
+		{
+			current = Arrays.copyOf(current, current.length + 1);
+			current[current.length - 1] = new Chunk();
+			chunks = current;
+		}
+
+		Chunk chunk = current[row >> CHUNK_BITS];
+		int i = row & (CHUNK - 1);
+		int end = hire.getEndDay();
+		int returned = hire.getReturnedDay() == EpochDay.NONE ? end : hire.getReturnedDay();
+
+		chunk.invoiceNo[i] = invoiceNo;
+		chunk.hireNo[i] = hire.getHireNo();
+		chunk.customerNo[i] = hire.getCustomer().getCustNo();
+		chunk.bikeNo[i] = hire.getBike().getBikeNo();
+		chunk.start[i] = hire.getStartDay();
+		chunk.end[i] = end;
+		chunk.returned[i] = returned;
+		chunk.lateFee[i] = lateFee;
+		chunk.flags[i] = (byte) ((returned > end ? LATE : 0) | (damaged ? DAMAGED : 0));
+
+		size = row + 1;
+	}
+
+	/*
+	 * @return	the number of rows.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/*
+	 * @return	a view positioned at no row, to be moved with
+	 * 			Row#moveTo(int).
+	 */
+	public Row row()
+	{
+		return new Row();
+	}
+
+	/*
+	 * Counts the rows with all of the flags given.
+	 *
+	 * @param	flags	LATE, DAMAGED or both.
+	 * @return	the number of rows.
+	 */
+	public int count(int flags)
+	{
+		int rows = size;
+		Chunk[] current = chunks;
+		int count = 0;
+
+		for (int c = 0; c << CHUNK_BITS < rows; c++)
+		{
+			byte[] column = current[c].flags;
+			int length = Math.min(CHUNK, rows - (c << CHUNK_BITS));
+
+			for (int i = 0; i < length; i++)
+				if ((column[i] & flags) == flags)
+					count++;
+		}
+
+		return count;
+	}
+
+	/*
+	 * Totals the days by which the hires were returned late.
+	 *
+	 * @return	the total days late.
+	 */
+	public long totalDaysLate()
+	{
+		int rows = size;
+		Chunk[] current = chunks;
+		long total = 0;
+
+		for (int c = 0; c << CHUNK_BITS < rows; c++)
+		{
+			Chunk chunk = current[c];
+			int length = Math.min(CHUNK, rows - (c << CHUNK_BITS));
+
+			for (int i = 0; i < length; i++)
+				if (chunk.returned[i] > chunk.end[i])
+					total += chunk.returned[i] - chunk.end[i];
+		}
+
+		return total;
+	}
+
+	/*
+	 * Totals the late fees charged.
+	 *
+	 * @return	the total late fees in pence.
+	 */
+	public long totalLateFees()
+	{
+		int rows = size;
+		Chunk[] current = chunks;
+		long total = 0;
+
+		for (int c = 0; c << CHUNK_BITS < rows; c++)
+		{
+			long[] column = current[c].lateFee;
+			int length = Math.min(CHUNK, rows - (c << CHUNK_BITS));
+
+			for (int i = 0; i < length; i++)
+				total += column[i];
+		}
+
+		return total;
+	}
+
+	/*
+	 * A view of one row of the history. A Row is not safe to share
+	 * between threads; each should take its own from row().
+	 */
+	public class Row
+	{
+		private Chunk chunk;
+		private int i;
+
+		private Row()
+		{
+
+		}
+
+		/*
+		 * @param	row	the row to view, from 0 to size() - 1.
+		 * @return	this view, moved to the row.
+		 *
+		 * @throws	IndexOutOfBoundsException	if there is no such row.
+		 */
+		public Row moveTo(int row)
+		{
+			if (row < 0 || row >= size)
+				throw new IndexOutOfBoundsException("Row: " + row + ", size: " + size);
+
+			chunk = chunks[row >> CHUNK_BITS];
+			i = row & (CHUNK - 1);
+			return this;
+		}
+
+		public int getInvoiceNo()
+		{
+			return chunk.invoiceNo[i];
+		}
+
+		public int getHireNo()
+		{
+			return chunk.hireNo[i];
+		}
+
+		public int getCustomerNo()
+		{
+			return chunk.customerNo[i];
+		}
+
+		public int getBikeNo()
+		{
+			return chunk.bikeNo[i];
+		}
+
+		public LocalDate getStartDate()
+		{
+			return EpochDay.toDate(chunk.start[i]);
+		}
+
+		public int getStartDay()
+		{
+			return chunk.start[i];
+		}
+
+		public int getEndDay()
+		{
+			return chunk.end[i];
+		}
+
+		public LocalDate getEndDate()
+		{
+			return EpochDay.toDate(chunk.end[i]);
+		}
+
+		public LocalDate getDateReturned()
+		{
+			return EpochDay.toDate(chunk.returned[i]);
+		}
+
+		public int getReturnedDay()
+		{
+			return chunk.returned[i];
+		}
+
+		/*
+		 * @return	the number of days the hire was returned late by. 0
+		 * 			if it was returned on time.
+		 */
+		public int getDaysLate()
+		{
+			return Math.max(0, chunk.returned[i] - chunk.end[i]);
+		}
+
+		/*
+		 * @return	the late fee charged, in pence.
+		 */
+		public long getLateFee()
+		{
+			return chunk.lateFee[i];
+		}
+
+		public boolean isLate()
+		{
+			return (chunk.flags[i] & LATE) != 0;
+		}
+
+		public boolean wasBikeDamaged()
+		{
+			return (chunk.flags[i] & DAMAGED) != 0;
+		}
+	}
+
+	/*
+	 * CHUNK rows of each column.
+	 */
+	private static class Chunk
+	{
+		private final int[] invoiceNo = new int[CHUNK];
+		private final int[] hireNo = new int[CHUNK];
+		private final int[] customerNo = new int[CHUNK];
+		private final int[] bikeNo = new int[CHUNK];
+		private final int[] start = new int[CHUNK];
+		private final int[] end = new int[CHUNK];
+		private final int[] returned = new int[CHUNK];
+		private final long[] lateFee = new long[CHUNK];
+		private final byte[] flags = new byte[CHUNK];
+	}
+
+}
@@ -0,0 +1,626 @@
+package controller.index;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * IndexedList is an ArrayList of entities that also indexes them by
+ * their entity number, so that an entity can be found without
+ * scanning the list.
+ *
+ * Entities appended with add(T) or append(T[]) are indexed as they
+ * are added. Any other change to the list (clearing it, removing or
+ * replacing elements) is detected through the list's modification
+ * count, and the index is rebuilt on the next lookup.
+ *
+ * Subclasses may keep further indexes derived from the elements by
+ * overriding indexAdded(T), indexCleared() and indexGrowing(int). The
+ * index maps entity numbers to positions rather than to the elements,
+ * so that a subclass may also release an element it keeps in some
+ * other form: release(int, Releaser) empties the element's slot, and
+ * get(int), find(int) and getPublished(int) then make a stand-in for it
+ * with released(int). A list with released elements must only be
+ * appended to or cleared, as the positions of its released elements
+ * are kept by the subclass. Iterating the list goes through get(int);
+ * the ArrayList's other bulk reads (toArray(), indexOf(Object) and the
+ * like) see released slots as null.
+ *
+ * Adding, clearing, lookups and entity number allocation are safe to
+ * use from several threads. Entity numbers come from a Sequence, which
+ * is advanced past the number of every element indexed. Lookups are
+ * optimistic: they do not block writers, and are retried under a read
+ * lock only if a write overlapped them. The write lock is taken by a
+ * lookup only when the indexes must be rebuilt. Other access to the
+ * list itself is not synchronized, except through publishedSize() and
+ * getPublished(int), which read a copy of the elements kept for the
+ * purpose: the copy is grown into a new array that is published before
+ * anything is stored beyond the old one's length, and each element is
+ * stored in it before it is counted by publishedSize(). A thread that
+ * adds nothing (the event dispatch thread, say) may therefore read the
+ * elements counted while others add more, without the ArrayList's own
+ * array, which another thread may grow at any time.
+ */
+public abstract class IndexedList<T> extends ArrayList<T>
+{
+	private static final long serialVersionUID = 1L;
+
+	private transient PositionIndex index;
+	private transient int indexedModCount;
+	private transient Sequence sequence = new Sequence();
+	private transient StampedLock lock = new StampedLock();
+	// A copy of the elements for getPublished(int), and their number,
+	// written after the elements it counts
+	private transient volatile Object[] shown = new Object[0];
+	private transient volatile int published;
+
+	/*
+	 * @param	element	an element of the list.
+	 * @return	the entity number the element is indexed by.
+	 */
+	protected abstract int keyOf(T element);
+
+	/*
+	 * Called for each element as it is indexed.
+	 */
+	protected void indexAdded(T element)
+	{
+
+	}
+
+	/*
+	 * Called for each element as it is indexed, with its position, for
+	 * subclasses whose indexes hold positions rather than elements.
+	 */
+	protected void indexAdded(T element, int position)
+	{
+		indexAdded(element);
+	}
+
+	/*
+	 * Called before the index is rebuilt from the list.
+	 */
+	protected void indexCleared()
+	{
+
+	}
+
+	/*
+	 * Called before a number of elements are indexed by append(T[]), so
+	 * that derived indexes may be grown once to hold them.
+	 */
+	protected void indexGrowing(int count)
+	{
+
+	}
+
+	/*
+	 * Makes a stand-in for an element that has been released, from what
+	 * the subclass kept of it. Called with the lock held, or from a read
+	 * that is validated against it. Must be overridden by subclasses
+	 * that release elements.
+	 *
+	 * @param	position	the released element's position.
+	 * @return	the stand-in.
+	 */
+	protected T released(int position)
+	{
+		throw new IllegalStateException("Released element at " + position);
+	}
+
+	/*
+	 * @param	key	an entity number.
+	 * @return	the element with that entity number. null if there is none.
+	 */
+	public T find(final int key)
+	{
+		long stamp = lock.tryOptimisticRead();
+		T found = null;
+
+		if (stamp != 0 && isIndexed())
+		{
+			try
+			{
+				found = element(index.get(key));
+			} catch (RuntimeException e)
+			{
+				// A torn read of a table being resized
+				stamp = 0;
+			}
+
+			if (lock.validate(stamp))
+				return found;
+		}
+
+		return readLocked(new Reader<T>()
+		{
+			public T read()
+			{
+				return element(index.get(key));
+			}
+		});
+	}
+
+	/*
+	 * @param	position	the element's position, from 0.
+	 * @return	the element, or a stand-in for it if it has been released.
+	 */
+	@Override
+	public T get(int position)
+	{
+		T element = super.get(position);
+
+		if (element != null)
+			return element;
+
+		return readReleased(position);
+	}
+
+	/*
+	 * Iterates the list through get(int), so released elements are
+	 * seen through their stand-ins.
+	 */
+	@Override
+	public Iterator<T> iterator()
+	{
+		return new Iterator<T>()
+		{
+			private int next;
+
+			public boolean hasNext()
+			{
+				return next < size();
+			}
+
+			public T next()
+			{
+				if (!hasNext())
+					throw new NoSuchElementException();
+
+				return get(next++);
+			}
+		};
+	}
+
+	@Override
+	public boolean add(T element)
+	{
+		long stamp = lock.writeLock();
+		try
+		{
+			checkIndex();
+			int position = size();
+			index.put(keyOf(element), position);
+			super.add(element);
+			sequence.advanceTo(keyOf(element));
+			indexAdded(element, position);
+			indexedModCount = modCount;
+			publish(published);
+			return true;
+		} finally
+		{
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/*
+	 * Appends elements in bulk, e.g. those read from a snapshot. The
+	 * list and its indexes are grown once to hold them, and the lock is
+	 * taken once rather than for each element.
+	 *
+	 * @param	elements	the elements, in order.
+	 */
+	public void append(T[] elements)
+	{
+		long stamp = lock.writeLock();
+		try
+		{
+			checkIndex();
+			ensureCapacity(size() + elements.length);
+			index.ensureCapacity(index.size() + elements.length);
+			indexGrowing(elements.length);
+			int last = 0;
+
+			for (T element : elements)
+			{
+				int position = size();
+				index.put(keyOf(element), position);
+				super.add(element);
+				last = Math.max(last, keyOf(element));
+				indexAdded(element, position);
+			}
+
+			sequence.advanceTo(last);
+			indexedModCount = modCount;
+			publish(published);
+		} finally
+		{
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/*
+	 * Inserts elements ahead of those already in the list, e.g. ones
+	 * read after later elements were added. The indexes are rebuilt.
+	 *
+	 * @param	elements	the elements, in order.
+	 */
+	public void prepend(T[] elements)
+	{
+		long stamp = lock.writeLock();
+		try
+		{
+			super.addAll(0, Arrays.asList(elements));
+			checkIndex();
+		} finally
+		{
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/*
+	 * Discards every element. The entity numbers allocated so far are
+	 * not handed out again.
+	 */
+	@Override
+	public void clear()
+	{
+		long stamp = lock.writeLock();
+		try
+		{
+			super.clear();
+			published = 0;
+			shown = new Object[0];
+		} finally
+		{
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/*
+	 * @return	the number of elements that getPublished(int) may read.
+	 */
+	public int publishedSize()
+	{
+		return published;
+	}
+
+	/*
+	 * Reads an element counted by publishedSize(), from a thread that may
+	 * not otherwise see the elements other threads have added.
+	 *
+	 * @param	position	the element's position, from 0.
+	 * @return	the element. null if the list is no longer that long,
+	 * 			having been cleared since its size was read.
+	 */
+	@SuppressWarnings("unchecked")
+	public T getPublished(int position)
+	{
+		if (position < 0 || position >= published)
+			return null;
+
+		// Read after the count, so at least as new as the count
+		Object[] elements = shown;
+
+		if (position >= elements.length)
+			return null;
+
+		T element = (T) elements[position];
+
+		if (element != null)
+			return element;
+
+		return readReleased(position);
+	}
+
+	/*
+	 * Releases an element, which the releaser first copies out in
+	 * whatever form the subclass keeps it. The element's slot, and its
+	 * slot in the published copy, are then emptied, so that the list
+	 * no longer holds it. Releasing an element already released does
+	 * nothing.
+	 *
+	 * @param	key			the element's entity number.
+	 * @param	releaser	copies the element out.
+	 * @return	true if the element is released (now or before). false if
+	 * 			there is no such element, or the releaser kept it.
+	 */
+	protected boolean release(int key, Releaser<T> releaser)
+	{
+		long stamp = lock.writeLock();
+		try
+		{
+			checkIndex();
+			int position = index.get(key);
+
+			if (position < 0)
+				return false;
+
+			T element = stored(position);
+
+			if (element == null)
+				return true;
+
+			if (!releaser.release(element, position))
+				return false;
+
+			// ArrayList.set(int, T) leaves the modification count alone
+			super.set(position, null);
+			Object[] elements = shown;
+
+			if (position < elements.length)
+				elements[position] = null;
+
+			return true;
+		} finally
+		{
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/*
+	 * @param	key	an entity number.
+	 * @return	true if the element with that entity number has been
+	 * 			released.
+	 */
+	protected boolean isReleased(final int key)
+	{
+		return read(new Reader<Boolean>()
+		{
+			public Boolean read()
+			{
+				int position = index.get(key);
+				return position >= 0 && stored(position) == null;
+			}
+		});
+	}
+
+	/*
+	 * Makes a stand-in for a released element, reading what was kept
+	 * of it under the lock. null if the list is no longer that long.
+	 */
+	private T readReleased(final int position)
+	{
+		return read(new Reader<T>()
+		{
+			public T read()
+			{
+				if (position >= size())
+					return null;
+
+				return element(position);
+			}
+		});
+	}
+
+	/*
+	 * Reads an element where get(int) may not be called: within a
+	 * Reader, or a hook called with the lock held.
+	 *
+	 * @param	position	a position in the list. -1 for none.
+	 * @return	the element at the position, or a stand-in if it has been
+	 * 			released. null if the position is -1.
+	 */
+	protected T element(int position)
+	{
+		if (position < 0)
+			return null;
+
+		T element = stored(position);
+		return element != null ? element : released(position);
+	}
+
+	/*
+	 * @return	the list's own slot at a position, which is null if the
+	 * 			element has been released.
+	 */
+	private T stored(int position)
+	{
+		return super.get(position);
+	}
+
+	/*
+	 * Copies the elements from a position on into the published copy,
+	 * then counts them. Called with the write lock held.
+	 *
+	 * @param	from	the first position that has changed.
+	 */
+	private void publish(int from)
+	{
+		int size = size();
+		Object[] elements = shown;
+
+		if (elements.length < size)
+		{
+			elements = Arrays.copyOf(elements, Math.max(size, elements.length * 2));
+
+			for (int i = from; i < size; i++)
+				elements[i] = stored(i);
+
+			shown = elements;
+		}
+		else
+		{
+			for (int i = from; i < size; i++)
+				elements[i] = stored(i);
+		}
+
+		published = size;
+	}
+
+	/*
+	 * Allocates the next entity number. Numbers are never reused, even
+	 * if the entity they were allocated for is never added, so entities
+	 * created at the same time on different threads get different numbers.
+	 *
+	 * @return	the entity number for a new element.
+	 */
+	public int nextKey()
+	{
+		ensureIndexed();
+		return sequence.next();
+	}
+
+	/*
+	 * @return	the sequence that entity numbers are allocated from.
+	 */
+	public Sequence getSequence()
+	{
+		return sequence;
+	}
+
+	/*
+	 * Reads indexes derived from the elements (such as those kept by a
+	 * subclass) without blocking writers. The reader may run more than
+	 * once, so it must not change anything, and must copy rather than
+	 * return what it reads.
+	 *
+	 * @param	reader	reads the indexes.
+	 * @return	what the reader returned from a read that no write
+	 * 			overlapped.
+	 */
+	protected <R> R read(Reader<R> reader)
+	{
+		long stamp = lock.tryOptimisticRead();
+
+		if (stamp != 0 && isIndexed())
+		{
+			R result = null;
+
+			try
+			{
+				result = reader.read();
+			} catch (RuntimeException e)
+			{
+				// A torn read of a structure being grown
+				stamp = 0;
+			}
+
+			if (lock.validate(stamp))
+				return result;
+		}
+
+		return readLocked(reader);
+	}
+
+	/*
+	 * Reads under the read lock, so that readers do not block one
+	 * another. The lock is only upgraded to the write lock if the
+	 * indexes must first be rebuilt.
+	 */
+	private <R> R readLocked(Reader<R> reader)
+	{
+		long stamp = lock.readLock();
+		try
+		{
+			if (!isIndexed())
+			{
+				long write = lock.tryConvertToWriteLock(stamp);
+
+				if (write == 0)
+				{
+					lock.unlockRead(stamp);
+					write = lock.writeLock();
+				}
+
+				stamp = write;
+				checkIndex();
+			}
+
+			return reader.read();
+		} finally
+		{
+			lock.unlock(stamp);
+		}
+	}
+
+	/*
+	 * Rebuilds the indexes if the list has changed other than by add(T),
+	 * so that they can then be read without the lock.
+	 */
+	protected void ensureIndexed()
+	{
+		if (isIndexed())
+			return;
+
+		long stamp = lock.writeLock();
+		try
+		{
+			checkIndex();
+		} finally
+		{
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	private boolean isIndexed()
+	{
+		return index != null && indexedModCount == modCount;
+	}
+
+	/*
+	 * Brings the derived indexes, and the published copy of the elements,
+	 * up to date with the list. Called with the write lock held.
+	 */
+	private void checkIndex()
+	{
+		if (isIndexed())
+			return;
+
+		if (index == null)
+			index = new PositionIndex();
+		else
+			index.clear();
+
+		indexCleared();
+
+		for (int i = 0; i < size(); i++)
+		{
+			T element = element(i);
+			index.put(keyOf(element), i);
+			sequence.advanceTo(keyOf(element));
+			indexAdded(element, i);
+		}
+
+		indexedModCount = modCount;
+		publish(0);
+	}
+
+	/*
+	 * A read of the indexes, made through read(Reader).
+	 */
+	protected interface Reader<R>
+	{
+		public R read();
+	}
+
+	/*
+	 * Copies out an element being released by release(int, Releaser).
+	 */
+	protected interface Releaser<T>
+	{
+		/*
+		 * Called with the write lock held.
+		 *
+		 * @param	element		the element.
+		 * @param	position	its position.
+		 * @return	true to release it. false to keep it in the list.
+		 */
+		public boolean release(T element, int position);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException
+	{
+		in.defaultReadObject();
+		sequence = new Sequence();
+		lock = new StampedLock();
+		shown = toArray();
+		published = size();
+	}
+
+}
@@ -0,0 +1,149 @@
+package controller.index;
+
+import java.util.Arrays;
+
+/**
+ * IntIndex is a hash map from int keys to values, held in parallel
+ * primitive and object arrays so that lookups neither box the key
+ * nor follow entry objects.
+ *
+ * Collisions are resolved by linear probing and the table is kept
+ * at most half full. Null values cannot be stored; a null slot marks
+ * an empty one.
+ */
+public class IntIndex<T>
+{
+	private static final int MIN_CAPACITY = 16;
+
+	private int[] keys;
+	private Object[] values;
+	private int size;
+
+	public IntIndex()
+	{
+		keys = new int[MIN_CAPACITY];
+		values = new Object[MIN_CAPACITY];
+	}
+
+	/*
+	 * @param	key	the key to look up.
+	 * @return	the value stored under the key. null if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int key)
+	{
+		int mask = keys.length - 1;
+
+		for (int slot = hash(key) & mask; values[slot] != null; slot = (slot + 1) & mask)
+			if (keys[slot] == key)
+				return (T) values[slot];
+
+		return null;
+	}
+
+	/*
+	 * Stores a value under a key, replacing any value already stored.
+	 *
+	 * @param	key		the key.
+	 * @param	value	the value, which must not be null.
+	 */
+	public void put(int key, T value)
+	{
+		if (value == null)
+			throw new NullPointerException("IntIndex cannot store null values");
+
+		if ((size + 1) * 2 > keys.length)
+			resize(keys.length * 2);
+
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+
+		while (values[slot] != null)
+		{
+			if (keys[slot] == key)
+			{
+				values[slot] = value;
+				return;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		keys[slot] = key;
+		values[slot] = value;
+		size++;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/*
+	 * Grows the table, if need be, so that it holds the number of
+	 * entries given without being resized again.
+	 *
+	 * @param	size	the number of entries to make room for.
+	 */
+	public void ensureCapacity(int size)
+	{
+		int capacity = keys.length;
+
+		while (size * 2L > capacity)
+			capacity *= 2;
+
+		if (capacity != keys.length)
+			resize(capacity);
+	}
+
+	/*
+	 * Removes every entry, shrinking the table back to its initial size.
+	 */
+	public void clear()
+	{
+		if (keys.length == MIN_CAPACITY)
+			Arrays.fill(values, null);
+		else
+		{
+			keys = new int[MIN_CAPACITY];
+			values = new Object[MIN_CAPACITY];
+		}
+
+		size = 0;
+	}
+
+	private void resize(int capacity)
+	{
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		int mask = capacity - 1;
+
+		keys = new int[capacity];
+		values = new Object[capacity];
+
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			if (oldValues[i] == null)
+				continue;
+
+			int slot = hash(oldKeys[i]) & mask;
+
+			while (values[slot] != null)
+				slot = (slot + 1) & mask;
+
+			keys[slot] = oldKeys[i];
+			values[slot] = oldValues[i];
+		}
+	}
+
+	/*
+	 * Entity numbers are sequential, so the bits are mixed to spread
+	 * runs of keys across the table rather than into one probe run.
+	 */
+	private static int hash(int key)
+	{
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+}
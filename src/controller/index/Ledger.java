@@ -0,0 +1,415 @@
+package controller.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import model.hire.EpochDay;
+import model.hire.Hire;
+import model.invoice.InvoiceIn;
+import model.invoice.InvoiceOut;
+
+/**
+ * Ledger keeps each customer's payments as an account of entries,
+ * taken from the invoices as they are issued: the charge for a hire
+ * and its deposit from an InvoiceOut, and a late fee and the refund of
+ * the deposit from an InvoiceIn. Amounts are in pence, positive when
+ * paid by the customer and negative when refunded to them.
+ *
+ * An account holds its entries in columns, in order of date, with the
+ * running balance after each entry kept alongside. A customer's
+ * balance is then the last running balance, and a page of history is
+ * read straight from the columns, however many entries there are.
+ *
+ * While invoices are left unread, their entries are stood in for by
+ * amounts carried into the accounts, which count towards the balance
+ * but not the history. A carried amount is discarded along with the
+ * entries of its kind, when they are recorded afresh.
+ *
+ * Entries may be recorded from both invoice lists at once; each
+ * account is locked while it is changed or read.
+ */
+public class Ledger
+{
+	// Kinds of entry
+	public static final int CHARGE = 0;
+	public static final int DEPOSIT = 1;
+	public static final int LATE_FEE = 2;
+	public static final int REFUND = 3;
+	private static final String[] KINDS = {"Hire charge", "Deposit", "Late fee", "Deposit refund"};
+
+	// Accounts by customer number
+	private volatile Account[] accounts = new Account[16];
+
+	/*
+	 * Records the charge and deposit paid for a hire.
+	 *
+	 * @param	invoice	the hire's invoice.
+	 */
+	public void record(InvoiceOut invoice)
+	{
+		Hire hire = invoice.getHire();
+		Account account = open(hire.getCustomer().getCustNo());
+
+		synchronized (account)
+		{
+			account.add(CHARGE, invoice.getInvoiceNo(), hire.getHireNo(), hire.getStartDay(),
+					invoice.getCostPence());
+			account.add(DEPOSIT, invoice.getInvoiceNo(), hire.getHireNo(), hire.getStartDay(),
+					invoice.getDepositPence());
+		}
+	}
+
+	/*
+	 * Records the late fee paid and the deposit refunded, if any, when
+	 * a hire was returned.
+	 *
+	 * @param	invoice	the return's invoice.
+	 */
+	public void record(InvoiceIn invoice)
+	{
+		Hire hire = invoice.getHire();
+		int day = hire.getReturnedDay() == EpochDay.NONE ? hire.getEndDay() : hire.getReturnedDay();
+
+		if (invoice.getLateFeePence() == 0 && invoice.wasBikeDamaged())
+			return;
+
+		Account account = open(hire.getCustomer().getCustNo());
+
+		synchronized (account)
+		{
+			if (invoice.getLateFeePence() != 0)
+				account.add(LATE_FEE, invoice.getInvoiceNo(), hire.getHireNo(), day,
+						invoice.getLateFeePence());
+
+			if (!invoice.wasBikeDamaged())
+				account.add(REFUND, invoice.getInvoiceNo(), hire.getHireNo(), day,
+						-invoice.getDepositPence());
+		}
+	}
+
+	/*
+	 * Carries amounts into a customer's account in place of the entries
+	 * of invoices not yet read.
+	 *
+	 * @param	custNo	the customer's number.
+	 * @param	out		the net amount of the entries of their outgoing
+	 * 					invoices, in pence.
+	 * @param	in		the net amount of the entries of their incoming
+	 * 					invoices, in pence.
+	 */
+	public void carry(int custNo, long out, long in)
+	{
+		Account account = open(custNo);
+
+		synchronized (account)
+		{
+			account.carriedOut += out;
+			account.carriedIn += in;
+		}
+	}
+
+	/*
+	 * Discards the entries taken from outgoing invoices (CHARGE and
+	 * DEPOSIT), or from incoming ones (LATE_FEE and REFUND), and the
+	 * amount carried in their place, keeping the others.
+	 *
+	 * @param	invoicesOut	true to discard the entries of outgoing
+	 * 						invoices, false for those of incoming ones.
+	 */
+	public void clear(boolean invoicesOut)
+	{
+		for (Account account : accounts)
+		{
+			if (account == null)
+				continue;
+
+			synchronized (account)
+			{
+				account.remove(invoicesOut ? CHARGE : LATE_FEE, invoicesOut ? DEPOSIT : REFUND);
+
+				if (invoicesOut)
+					account.carriedOut = 0;
+				else
+					account.carriedIn = 0;
+			}
+		}
+	}
+
+	/*
+	 * @param	custNo	the customer's number.
+	 * @return	the net amount the customer has paid, in pence.
+	 */
+	public long balance(int custNo)
+	{
+		Account account = account(custNo);
+
+		if (account == null)
+			return 0;
+
+		synchronized (account)
+		{
+			return account.carriedOut + account.carriedIn
+					+ (account.size == 0 ? 0 : account.balances[account.size - 1]);
+		}
+	}
+
+	/*
+	 * @param	custNo		the customer's number.
+	 * @param	invoicesOut	true for the amount paid on outgoing invoices,
+	 * 						false for that on incoming ones.
+	 * @return	the net amount of that part of the customer's balance,
+	 * 			in pence.
+	 */
+	public long balance(int custNo, boolean invoicesOut)
+	{
+		Account account = account(custNo);
+
+		if (account == null)
+			return 0;
+
+		synchronized (account)
+		{
+			long balance = invoicesOut ? account.carriedOut : account.carriedIn;
+
+			for (int i = 0; i < account.size; i++)
+				if ((account.kinds[i] == CHARGE || account.kinds[i] == DEPOSIT) == invoicesOut)
+					balance += account.amounts[i];
+
+			return balance;
+		}
+	}
+
+	/*
+	 * @param	custNo	the customer's number.
+	 * @return	the number of entries in the customer's account.
+	 */
+	public int size(int custNo)
+	{
+		Account account = account(custNo);
+
+		if (account == null)
+			return 0;
+
+		synchronized (account)
+		{
+			return account.size;
+		}
+	}
+
+	/*
+	 * Reads a page of a customer's entries, oldest first.
+	 *
+	 * @param	custNo	the customer's number.
+	 * @param	from	the index of the first entry, from 0.
+	 * @param	count	the most entries to read.
+	 * @return	the entries from the index given, fewer than count if
+	 * 			the account ends first.
+	 */
+	public List<Entry> page(int custNo, int from, int count)
+	{
+		List<Entry> page = new ArrayList<Entry>();
+		Account account = account(custNo);
+
+		if (account == null || from < 0)
+			return page;
+
+		synchronized (account)
+		{
+			for (int i = from; i < Math.min(account.size, from + count); i++)
+				page.add(new Entry(account.kinds[i], account.invoiceNos[i], account.hireNos[i],
+						account.days[i], account.amounts[i], account.balances[i]));
+		}
+
+		return page;
+	}
+
+	private Account account(int custNo)
+	{
+		Account[] current = accounts;
+
+		return custNo >= 0 && custNo < current.length ? current[custNo] : null;
+	}
+
+	private synchronized Account open(int custNo)
+	{
+		if (custNo >= accounts.length)
+			accounts = Arrays.copyOf(accounts, Math.max(custNo + 1, accounts.length * 2));
+
+		if (accounts[custNo] == null)
+			accounts[custNo] = new Account();
+
+		return accounts[custNo];
+	}
+
+	/*
+	 * A customer's entries, in columns. Guarded by its own lock.
+	 */
+	private static class Account
+	{
+		private byte[] kinds = new byte[4];
+		private int[] invoiceNos = new int[4];
+		private int[] hireNos = new int[4];
+		private int[] days = new int[4];
+		private long[] amounts = new long[4];
+		private long[] balances = new long[4];
+		private int size;
+		// Amounts standing in for unread invoices
+		private long carriedOut;
+		private long carriedIn;
+
+		/*
+		 * Inserts an entry after any of the same date or earlier. Entries
+		 * are almost always recorded in order of date, so it is usually
+		 * appended and only its own running balance is calculated.
+		 */
+		private void add(int kind, int invoiceNo, int hireNo, int day, long amount)
+		{
+			if (size == kinds.length)
+			{
+				int capacity = size * 2;
+				kinds = Arrays.copyOf(kinds, capacity);
+				invoiceNos = Arrays.copyOf(invoiceNos, capacity);
+				hireNos = Arrays.copyOf(hireNos, capacity);
+				days = Arrays.copyOf(days, capacity);
+				amounts = Arrays.copyOf(amounts, capacity);
+				balances = Arrays.copyOf(balances, capacity);
+			}
+
+			int at = size;
+
+			while (at > 0 && days[at - 1] > day)
+				at--;
+
+			int moved = size - at;
+			System.arraycopy(kinds, at, kinds, at + 1, moved);
+			System.arraycopy(invoiceNos, at, invoiceNos, at + 1, moved);
+			System.arraycopy(hireNos, at, hireNos, at + 1, moved);
+			System.arraycopy(days, at, days, at + 1, moved);
+			System.arraycopy(amounts, at, amounts, at + 1, moved);
+
+			kinds[at] = (byte) kind;
+			invoiceNos[at] = invoiceNo;
+			hireNos[at] = hireNo;
+			days[at] = day;
+			amounts[at] = amount;
+			size++;
+			sum(at);
+		}
+
+		/*
+		 * Removes the entries of either kind given, keeping the order of
+		 * the rest.
+		 */
+		private void remove(int kind, int otherKind)
+		{
+			int kept = 0;
+
+			for (int i = 0; i < size; i++)
+			{
+				if (kinds[i] == kind || kinds[i] == otherKind)
+					continue;
+
+				kinds[kept] = kinds[i];
+				invoiceNos[kept] = invoiceNos[i];
+				hireNos[kept] = hireNos[i];
+				days[kept] = days[i];
+				amounts[kept] = amounts[i];
+				kept++;
+			}
+
+			size = kept;
+			sum(0);
+		}
+
+		/*
+		 * Recalculates the running balances from the entry given on.
+		 */
+		private void sum(int from)
+		{
+			long balance = from == 0 ? 0 : balances[from - 1];
+
+			for (int i = from; i < size; i++)
+			{
+				balance += amounts[i];
+				balances[i] = balance;
+			}
+		}
+	}
+
+	/*
+	 * An entry of an account, as read.
+	 */
+	public static class Entry
+	{
+		private final int kind;
+		private final int invoiceNo;
+		private final int hireNo;
+		private final int day;
+		private final long amount;
+		private final long balance;
+
+		private Entry(int kind, int invoiceNo, int hireNo, int day, long amount, long balance)
+		{
+			this.kind = kind;
+			this.invoiceNo = invoiceNo;
+			this.hireNo = hireNo;
+			this.day = day;
+			this.amount = amount;
+			this.balance = balance;
+		}
+
+		/*
+		 * @return	CHARGE, DEPOSIT, LATE_FEE or REFUND.
+		 */
+		public int getKind()
+		{
+			return kind;
+		}
+
+		/*
+		 * @return	a description of the kind of entry, e.g. "Late fee".
+		 */
+		public String getDescription()
+		{
+			return KINDS[kind];
+		}
+
+		/*
+		 * @return	the number of the invoice the entry was taken from:
+		 * 			an InvoiceOut for a CHARGE or DEPOSIT, otherwise an
+		 * 			InvoiceIn.
+		 */
+		public int getInvoiceNo()
+		{
+			return invoiceNo;
+		}
+
+		public int getHireNo()
+		{
+			return hireNo;
+		}
+
+		public int getDay()
+		{
+			return day;
+		}
+
+		/*
+		 * @return	the amount in pence, negative if refunded.
+		 */
+		public long getAmount()
+		{
+			return amount;
+		}
+
+		/*
+		 * @return	the customer's balance after the entry, in pence.
+		 */
+		public long getBalance()
+		{
+			return balance;
+		}
+	}
+
+}
@@ -0,0 +1,149 @@
+package controller.index;
+
+import java.util.Arrays;
+
+/**
+ * PositionIndex is a hash map from int keys to positions in a list,
+ * held in two int arrays so that neither the key nor the position is
+ * boxed, and so that it holds no reference to the elements themselves.
+ *
+ * Collisions are resolved by linear probing and the table is kept
+ * at most half full. Positions are stored plus one, so that 0 marks
+ * an empty slot.
+ */
+public class PositionIndex
+{
+	private static final int MIN_CAPACITY = 16;
+
+	private int[] keys;
+	private int[] positions;
+	private int size;
+
+	public PositionIndex()
+	{
+		keys = new int[MIN_CAPACITY];
+		positions = new int[MIN_CAPACITY];
+	}
+
+	/*
+	 * @param	key	the key to look up.
+	 * @return	the position stored under the key. -1 if there is none.
+	 */
+	public int get(int key)
+	{
+		int mask = keys.length - 1;
+
+		for (int slot = hash(key) & mask; positions[slot] != 0; slot = (slot + 1) & mask)
+			if (keys[slot] == key)
+				return positions[slot] - 1;
+
+		return -1;
+	}
+
+	/*
+	 * Stores a position under a key, replacing any position already
+	 * stored.
+	 *
+	 * @param	key			the key.
+	 * @param	position	the position, from 0.
+	 */
+	public void put(int key, int position)
+	{
+		if (position < 0)
+			throw new IllegalArgumentException("Position: " + position);
+
+		if ((size + 1) * 2 > keys.length)
+			resize(keys.length * 2);
+
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+
+		while (positions[slot] != 0)
+		{
+			if (keys[slot] == key)
+			{
+				positions[slot] = position + 1;
+				return;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		keys[slot] = key;
+		positions[slot] = position + 1;
+		size++;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/*
+	 * Grows the table, if need be, so that it holds the number of
+	 * entries given without being resized again.
+	 *
+	 * @param	size	the number of entries to make room for.
+	 */
+	public void ensureCapacity(int size)
+	{
+		int capacity = keys.length;
+
+		while (size * 2L > capacity)
+			capacity *= 2;
+
+		if (capacity != keys.length)
+			resize(capacity);
+	}
+
+	/*
+	 * Removes every entry, shrinking the table back to its initial size.
+	 */
+	public void clear()
+	{
+		if (keys.length == MIN_CAPACITY)
+			Arrays.fill(positions, 0);
+		else
+		{
+			keys = new int[MIN_CAPACITY];
+			positions = new int[MIN_CAPACITY];
+		}
+
+		size = 0;
+	}
+
+	private void resize(int capacity)
+	{
+		int[] oldKeys = keys;
+		int[] oldPositions = positions;
+		int mask = capacity - 1;
+
+		keys = new int[capacity];
+		positions = new int[capacity];
+
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			if (oldPositions[i] == 0)
+				continue;
+
+			int slot = hash(oldKeys[i]) & mask;
+
+			while (positions[slot] != 0)
+				slot = (slot + 1) & mask;
+
+			keys[slot] = oldKeys[i];
+			positions[slot] = oldPositions[i];
+		}
+	}
+
+	/*
+	 * Entity numbers are sequential, so the bits are mixed to spread
+	 * runs of keys across the table rather than into one probe run.
+	 */
+	private static int hash(int key)
+	{
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+}
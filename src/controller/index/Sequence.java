@@ -0,0 +1,134 @@
+package controller.index;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sequence hands out entity numbers, starting at 1, without ever
+ * handing out the same number twice.
+ *
+ * Each thread takes numbers from the shared counter in blocks and
+ * hands them out from its block, so the counter is only touched once
+ * per block. The counter's value, the high-water mark, is the highest
+ * number taken in any block: persisting it (and every advance of it)
+ * ensures numbers are not reused after a restart. Numbers left in a
+ * thread's block when the application stops are skipped.
+ */
+public class Sequence
+{
+	// Numbers taken by a thread at a time
+	public static final int BLOCK_SIZE = 32;
+
+	private final AtomicLong highWater = new AtomicLong();
+	private final ThreadLocal<Block> blocks = new ThreadLocal<Block>();
+	// Changed to discard every thread's block
+	private final AtomicInteger generation = new AtomicInteger();
+	private volatile Listener listener;
+
+	/*
+	 * @return	the next number. Numbers taken by one thread ascend.
+	 *
+	 * @throws	IllegalStateException	if the numbers have run out.
+	 */
+	public int next()
+	{
+		Block block = blocks.get();
+
+		if (block == null || block.next > block.last || block.generation != generation.get())
+		{
+			block = claim();
+			blocks.set(block);
+		}
+
+		return block.next++;
+	}
+
+	private Block claim()
+	{
+		int current = generation.get();
+		long last = highWater.addAndGet(BLOCK_SIZE);
+
+		if (last > Integer.MAX_VALUE)
+			throw new IllegalStateException("Entity numbers have run out");
+
+		Listener notify = listener;
+
+		if (notify != null)
+			notify.blockClaimed(last);
+
+		return new Block((int) (last - BLOCK_SIZE + 1), (int) last, current);
+	}
+
+	/*
+	 * @return	the highest number taken so far.
+	 */
+	public long getHighWater()
+	{
+		return highWater.get();
+	}
+
+	/*
+	 * Ensures that no number up to the one given is handed out, e.g.
+	 * because an entity has been restored with that number. Blocks
+	 * taken before the high-water mark advanced are discarded, since
+	 * they may hold the number.
+	 *
+	 * @param	number	the number to advance past.
+	 */
+	public void advanceTo(long number)
+	{
+		long current = highWater.get();
+
+		while (current < number)
+		{
+			if (highWater.compareAndSet(current, number))
+			{
+				generation.incrementAndGet();
+				return;
+			}
+
+			current = highWater.get();
+		}
+	}
+
+	/*
+	 * Sets the listener to be notified each time the high-water mark is
+	 * raised by a block being taken.
+	 *
+	 * @param	listener	the listener. null to stop notifications.
+	 */
+	public void setListener(Listener listener)
+	{
+		this.listener = listener;
+	}
+
+	/*
+	 * Notified, before any number in a block is handed out, that the
+	 * block has been taken.
+	 */
+	public interface Listener
+	{
+		/*
+		 * @param	highWater	the new high-water mark.
+		 */
+		public void blockClaimed(long highWater);
+	}
+
+	/*
+	 * A thread's block of numbers.
+	 */
+	private static class Block
+	{
+		private int next;
+		private final int last;
+		private final int generation;
+
+		private Block(int first, int last, int generation)
+		{
+			next = first;
+			this.last = last;
+			this.generation = generation;
+		}
+	}
+
+}
@@ -0,0 +1,82 @@
+package controller.index;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * StateCounter keeps a running count of the entities in each of a
+ * fixed set of states, identified by their state classes.
+ *
+ * States that are not instances of any of the classes given (such as
+ * null) are not counted.
+ *
+ * The counts are updated atomically, so entities may change state on
+ * several threads at once.
+ */
+public class StateCounter
+{
+	private final Class<?>[] states;
+	private final AtomicIntegerArray counts;
+
+	/*
+	 * @param	states	the state classes to count.
+	 */
+	public StateCounter(Class<?>... states)
+	{
+		this.states = states;
+		counts = new AtomicIntegerArray(states.length);
+	}
+
+	public void add(Object state)
+	{
+		int i = indexOf(state);
+
+		if (i >= 0)
+			counts.incrementAndGet(i);
+	}
+
+	public void remove(Object state)
+	{
+		int i = indexOf(state);
+
+		if (i >= 0)
+			counts.decrementAndGet(i);
+	}
+
+	/*
+	 * Counts a change from one state to another.
+	 */
+	public void move(Object from, Object to)
+	{
+		remove(from);
+		add(to);
+	}
+
+	/*
+	 * @param	state	one of the state classes being counted.
+	 * @return	the number of entities in that state.
+	 */
+	public int count(Class<?> state)
+	{
+		for (int i = 0; i < states.length; i++)
+			if (states[i] == state)
+				return counts.get(i);
+
+		throw new IllegalArgumentException("State not counted: " + state.getName());
+	}
+
+	public void clear()
+	{
+		for (int i = 0; i < counts.length(); i++)
+			counts.set(i, 0);
+	}
+
+	private int indexOf(Object state)
+	{
+		for (int i = 0; i < states.length; i++)
+			if (states[i].isInstance(state))
+				return i;
+
+		return -1;
+	}
+
+}
@@ -0,0 +1,126 @@
+package controller.persistence;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import model.bike.Available;
+import model.bike.Bike;
+import model.bike.BikeState;
+import model.bike.Damaged;
+import model.bike.OnHire;
+import model.bike.Reserved;
+import model.hire.Active;
+import model.hire.Complete;
+import model.hire.Hire;
+import model.hire.HireState;
+import model.hire.Late;
+import model.hire.PaymentPending;
+
+/**
+ * Encoding holds the compact representations shared by the
+ * persistence formats: dates as days since 1970-01-01 and
+ * states as single byte codes.
+ */
+public final class Encoding
+{
+
+	// Hire state codes
+	public static final int PAYMENT_PENDING = PaymentPending.CODE;
+	public static final int ACTIVE = Active.CODE;
+	public static final int LATE = Late.CODE;
+	public static final int COMPLETE = Complete.CODE;
+
+	// Bike state codes
+	public static final int AVAILABLE = Available.CODE;
+	public static final int ON_HIRE = OnHire.CODE;
+	public static final int DAMAGED = Damaged.CODE;
+
+	private Encoding()
+	{
+
+	}
+
+	/*
+	 * Dates are written as their epoch day, or EpochDay.NONE for
+	 * no date.
+	 */
+	public static void writeDay(DataOutput out, int epochDay) throws IOException
+	{
+		out.writeInt(epochDay);
+	}
+
+	public static int readDay(DataInput in) throws IOException
+	{
+		return in.readInt();
+	}
+
+	public static int hireStateCode(HireState state)
+	{
+		return state.getCode();
+	}
+
+	/*
+	 * Reservations are not kept, so a reserved bike is stored
+	 * as available.
+	 */
+	public static int bikeStateCode(BikeState state)
+	{
+		if (state instanceof Reserved)
+			return AVAILABLE;
+
+		return state.getCode();
+	}
+
+	/*
+	 * Puts a restored hire back into its persisted state. The hired
+	 * bike is left as it is: the bike's own persisted state is restored
+	 * separately.
+	 *
+	 * @param	hire			the restored hire (PaymentPending).
+	 * @param	code			the persisted hire state code.
+	 * @param	returnedDay		the persisted return date, as an epoch day.
+	 */
+	public static void restoreHireState(Hire hire, int code, int returnedDay)
+			throws IOException
+	{
+		switch (code)
+		{
+		case PAYMENT_PENDING:
+			hire.setState(PaymentPending.STATE);
+			break;
+		case ACTIVE:
+			hire.setState(Active.STATE);
+			break;
+		case LATE:
+			hire.setState(Late.STATE);
+			break;
+		case COMPLETE:
+			hire.setState(Complete.STATE);
+			break;
+		default:
+			throw new IOException("Unknown hire state code: " + code);
+		}
+
+		hire.setReturnedDay(returnedDay);
+	}
+
+	public static void restoreBikeState(Bike bike, int code) throws IOException
+	{
+		switch (code)
+		{
+		case AVAILABLE:
+			bike.setState(Available.STATE);
+			break;
+		case ON_HIRE:
+			bike.setState(OnHire.STATE);
+			break;
+		case DAMAGED:
+			bike.setState(Damaged.STATE);
+			break;
+		default:
+			throw new IOException("Unknown bike state code: " + code);
+		}
+	}
+
+}
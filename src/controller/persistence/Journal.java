@@ -0,0 +1,417 @@
+package controller.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Journal is an append-only log of the mutations made to the
+ * application data since the last snapshot was taken.
+ *
+ * Every record is framed as:
+ *
+ * 		[int length][int crc32][long seq][payload]
+ *
+ * where the checksum covers the sequence number and the payload.
+ * A record that is cut short or fails its checksum (e.g. the
+ * process was killed mid-write) marks the end of the journal.
+ *
+ * Records are written by a single background thread which
+ * group-commits them: every record queued while the previous
+ * batch was being forced to disk is written and forced together,
+ * so concurrent callers share one fsync.
+ */
+public class Journal implements Closeable
+{
+	private static final int HEADER_SIZE = 16;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final Object lock = new Object();
+
+	// Guarded by lock
+	private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+	private long lastSeq;
+	private long durableSeq;
+	private int recordCount;
+	private IOException failure;
+	private boolean closed;
+
+	private final Thread writer;
+
+	/*
+	 * Opens (or creates) a journal. Any torn record at the end of
+	 * the file is discarded so that new records follow the last
+	 * intact one.
+	 *
+	 * @param	journalFile	the file backing the journal.
+	 * @param	startSeq	the sequence number covered by the most
+	 * 						recent snapshot. New records are numbered
+	 * 						from whichever is greater of this and the
+	 * 						last record found in the file.
+	 *
+	 * @throws	IOException	if the file cannot be opened or scanned.
+	 */
+	public Journal(File journalFile, long startSeq) throws IOException
+	{
+		file = new RandomAccessFile(journalFile, "rw");
+		channel = file.getChannel();
+
+		long end = scan(startSeq);
+		channel.truncate(end);
+		channel.position(end);
+		durableSeq = lastSeq;
+
+		writer = new Thread(new Writer(), "journal-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/*
+	 * Walks the intact records to find the end of the journal.
+	 *
+	 * @return	the file position directly after the last intact record.
+	 */
+	private long scan(long startSeq) throws IOException
+	{
+		lastSeq = startSeq;
+		recordCount = 0;
+		long position = 0;
+		byte[] payload;
+
+		while ((payload = readRecord(position)) != null)
+		{
+			long seq = ByteBuffer.wrap(payload, 0, 8).getLong();
+
+			if (seq > lastSeq)
+			{
+				lastSeq = seq;
+				recordCount++;
+			}
+
+			position += HEADER_SIZE - 8 + payload.length;
+		}
+
+		return position;
+	}
+
+	/*
+	 * Reads the record starting at the given position.
+	 *
+	 * @return	the checksummed part of the record (seq followed by
+	 * 			payload), or null if there is no intact record there.
+	 */
+	private byte[] readRecord(long position) throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(8);
+
+		if (!readFully(header, position))
+			return null;
+
+		header.flip();
+		int length = header.getInt();
+		int crc = header.getInt();
+
+		if (length < 8 || length > channel.size())
+			return null;
+
+		ByteBuffer body = ByteBuffer.allocate(length);
+
+		if (!readFully(body, position + 8))
+			return null;
+
+		CRC32 check = new CRC32();
+		check.update(body.array(), 0, length);
+
+		if ((int) check.getValue() != crc)
+			return null;
+
+		return body.array();
+	}
+
+	private boolean readFully(ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			int read = channel.read(buffer, position);
+
+			if (read < 0)
+				return false;
+
+			position += read;
+		}
+
+		return true;
+	}
+
+	/*
+	 * Passes every record with a sequence number greater than
+	 * afterSeq to the handler, in the order they were appended.
+	 *
+	 * @param	afterSeq	the sequence number covered by the snapshot
+	 * 						that has already been loaded.
+	 * @param	handler		applies each record to the application data.
+	 *
+	 * @throws	IOException	if the journal cannot be read or the
+	 * 						handler rejects a record.
+	 */
+	public void replay(long afterSeq, RecordHandler handler) throws IOException
+	{
+		long position = 0;
+		byte[] record;
+
+		while ((record = readRecord(position)) != null)
+		{
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+			long seq = in.readLong();
+
+			if (seq > afterSeq)
+				handler.apply(seq, in);
+
+			position += HEADER_SIZE - 8 + record.length;
+		}
+	}
+
+	/*
+	 * Queues a record and blocks until it (and any records queued
+	 * alongside it) has been forced to disk.
+	 *
+	 * @param	payload	the encoded mutation.
+	 * @return	the sequence number assigned to the record.
+	 *
+	 * @throws	IOException	if the record could not be made durable.
+	 */
+	public long append(byte[] payload) throws IOException
+	{
+		long seq = queue(payload);
+		await(seq);
+		return seq;
+	}
+
+	/*
+	 * Queues a record without waiting for it to be written. Records are
+	 * written in the order they are queued, so a caller that queues a
+	 * record while holding the lock guarding the mutation it records can
+	 * wait for it with await(long) after releasing that lock.
+	 *
+	 * @param	payload	the encoded mutation.
+	 * @return	the sequence number assigned to the record.
+	 *
+	 * @throws	IOException	if the journal is unusable.
+	 */
+	public long queue(byte[] payload) throws IOException
+	{
+		long seq;
+
+		synchronized (lock)
+		{
+			checkUsable();
+
+			seq = ++lastSeq;
+			recordCount++;
+
+			CRC32 crc = new CRC32();
+			ByteBuffer seqBytes = ByteBuffer.allocate(8).putLong(0, seq);
+			crc.update(seqBytes.array(), 0, 8);
+			crc.update(payload, 0, payload.length);
+
+			ByteBuffer header = ByteBuffer.allocate(8);
+			header.putInt(payload.length + 8);
+			header.putInt((int) crc.getValue());
+
+			pending.write(header.array(), 0, 8);
+			pending.write(seqBytes.array(), 0, 8);
+			pending.write(payload, 0, payload.length);
+			lock.notifyAll();
+		}
+
+		return seq;
+	}
+
+	/*
+	 * Blocks until the record with the given sequence number is durable.
+	 *
+	 * @throws	IOException	if the record could not be made durable.
+	 */
+	public void await(long seq) throws IOException
+	{
+		synchronized (lock)
+		{
+			boolean interrupted = false;
+
+			while (durableSeq < seq && failure == null && !closed)
+			{
+				try
+				{
+					lock.wait();
+				} catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+
+			if (interrupted)
+				Thread.currentThread().interrupt();
+
+			if (durableSeq < seq)
+				checkUsable();
+		}
+	}
+
+	private void checkUsable() throws IOException
+	{
+		if (failure != null)
+			throw new IOException("Journal is unusable after an earlier write failure", failure);
+		if (closed)
+			throw new IOException("Journal is closed");
+	}
+
+	/*
+	 * Discards every record. Called once a snapshot covering all
+	 * of the records has been safely written; the caller must
+	 * ensure that no records are appended in the meantime.
+	 */
+	public void truncate() throws IOException
+	{
+		await(getLastSeq());
+
+		synchronized (lock)
+		{
+			checkUsable();
+			channel.truncate(0);
+			channel.position(0);
+			channel.force(true);
+			recordCount = 0;
+		}
+	}
+
+	/*
+	 * @return	the sequence number of the most recently appended record.
+	 */
+	public long getLastSeq()
+	{
+		synchronized (lock)
+		{
+			return lastSeq;
+		}
+	}
+
+	/*
+	 * @return	the number of records appended since the journal was
+	 * 			last truncated.
+	 */
+	public int getRecordCount()
+	{
+		synchronized (lock)
+		{
+			return recordCount;
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		synchronized (lock)
+		{
+			closed = true;
+			lock.notifyAll();
+		}
+
+		try
+		{
+			writer.join();
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		file.close();
+	}
+
+	/*
+	 * Drains the pending buffer to disk, one batch per fsync.
+	 */
+	private class Writer implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			ByteArrayOutputStream spare = new ByteArrayOutputStream();
+
+			while (true)
+			{
+				ByteArrayOutputStream batch;
+				long batchSeq;
+
+				synchronized (lock)
+				{
+					while (pending.size() == 0 && !closed)
+					{
+						try
+						{
+							lock.wait();
+						} catch (InterruptedException e)
+						{
+							return;
+						}
+					}
+
+					if (pending.size() == 0)
+						return;
+
+					batch = pending;
+					batchSeq = lastSeq;
+					pending = spare;
+				}
+
+				try
+				{
+					ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+
+					while (buffer.hasRemaining())
+						channel.write(buffer);
+
+					channel.force(false);
+				} catch (IOException e)
+				{
+					synchronized (lock)
+					{
+						failure = e;
+						lock.notifyAll();
+					}
+					return;
+				}
+
+				batch.reset();
+				spare = batch;
+
+				synchronized (lock)
+				{
+					durableSeq = batchSeq;
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	/*
+	 * Applies a journal record to the application data.
+	 */
+	public interface RecordHandler
+	{
+		/*
+		 * @param	seq	the record's sequence number.
+		 * @param	in	the record's payload.
+		 */
+		public void apply(long seq, DataInput in) throws IOException;
+	}
+
+}
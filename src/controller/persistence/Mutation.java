@@ -0,0 +1,295 @@
+package controller.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import controller.Controller;
+import controller.index.EntityID;
+import model.bike.Bike;
+import model.customer.Customer;
+import model.hire.Hire;
+import model.invoice.InvoiceIn;
+import model.invoice.InvoiceOut;
+
+/**
+ * Mutation encodes each change made through the Controller as a
+ * compact journal record, and applies those records when the
+ * journal is replayed.
+ *
+ * Entities are referred to by number (custNo, bikeNo, hireNo etc.)
+ * rather than by their String IDs.
+ */
+public final class Mutation
+{
+	private static final int ADD_CUSTOMER = 1;
+	private static final int ADD_BIKE = 2;
+	private static final int ADD_HIRE = 3;
+	// Invoices without their amounts, as written before they kept them
+	private static final int ADD_INVOICE_OUT = 4;
+	private static final int ADD_INVOICE_IN = 5;
+	private static final int RETURN_HIRE = 6;
+	private static final int REPAIR_BIKE = 7;
+	private static final int ADVANCE_SEQUENCE = 8;
+	private static final int ADD_ISSUED_INVOICE_OUT = 9;
+	private static final int ADD_ISSUED_INVOICE_IN = 10;
+
+	private Mutation()
+	{
+
+	}
+
+	public static byte[] addCustomer(Customer customer) throws IOException
+	{
+		Record record = new Record(ADD_CUSTOMER);
+		record.out.writeInt(customer.getCustNo());
+		record.out.writeUTF(customer.getFirstName());
+		record.out.writeUTF(customer.getLastName());
+		record.out.writeUTF(customer.getAddressLine1());
+		record.out.writeUTF(customer.getAddressTown());
+		record.out.writeUTF(customer.getAddressPostcode());
+		return record.toByteArray();
+	}
+
+	public static byte[] addBike(Bike bike) throws IOException
+	{
+		Record record = new Record(ADD_BIKE);
+		record.out.writeInt(bike.getBikeNo());
+		record.out.writeUTF(bike.getMake());
+		record.out.writeUTF(bike.getModel());
+		record.out.writeUTF(bike.getFunction());
+		record.out.writeUTF(bike.getDemographic());
+		record.out.writeUTF(bike.getColour());
+		record.out.writeDouble(bike.getDailyRate());
+		record.out.writeDouble(bike.getDeposit());
+		record.out.writeByte(Encoding.bikeStateCode(bike.getState()));
+		return record.toByteArray();
+	}
+
+	public static byte[] addHire(Hire hire) throws IOException
+	{
+		Record record = new Record(ADD_HIRE);
+		record.out.writeInt(hire.getHireNo());
+		record.out.writeInt(hire.getCustomer().getCustNo());
+		record.out.writeInt(hire.getBike().getBikeNo());
+		Encoding.writeDay(record.out, hire.getStartDay());
+		Encoding.writeDay(record.out, hire.getEndDay());
+		Encoding.writeDay(record.out, hire.getReturnedDay());
+		record.out.writeByte(Encoding.hireStateCode(hire.getState()));
+		record.out.writeByte(Encoding.bikeStateCode(hire.getBike().getState()));
+		return record.toByteArray();
+	}
+
+	public static byte[] addInvoiceOut(InvoiceOut invoice) throws IOException
+	{
+		Record record = new Record(ADD_ISSUED_INVOICE_OUT);
+		record.out.writeInt(invoice.getInvoiceNo());
+		record.out.writeInt(invoice.getHireNo());
+		record.out.writeLong(invoice.getDailyRatePence());
+		record.out.writeLong(invoice.getCostPence());
+		record.out.writeLong(invoice.getDepositPence());
+		return record.toByteArray();
+	}
+
+	public static byte[] addInvoiceIn(InvoiceIn invoice) throws IOException
+	{
+		Record record = new Record(ADD_ISSUED_INVOICE_IN);
+		record.out.writeInt(invoice.getInvoiceNo());
+		record.out.writeInt(invoice.getHireNo());
+		record.out.writeBoolean(invoice.wasBikeDamaged());
+		record.out.writeLong(invoice.getDailyRatePence());
+		record.out.writeLong(invoice.getDepositPence());
+		record.out.writeInt(invoice.getDaysLate());
+		return record.toByteArray();
+	}
+
+	public static byte[] returnHire(Hire hire, boolean bikeIsDamaged) throws IOException
+	{
+		Record record = new Record(RETURN_HIRE);
+		record.out.writeInt(hire.getHireNo());
+		record.out.writeBoolean(bikeIsDamaged);
+		Encoding.writeDay(record.out, hire.getReturnedDay());
+		return record.toByteArray();
+	}
+
+	public static byte[] repairBike(Bike bike) throws IOException
+	{
+		Record record = new Record(REPAIR_BIKE);
+		record.out.writeInt(bike.getBikeNo());
+		return record.toByteArray();
+	}
+
+	/*
+	 * @param	kind		the kind of entity numbered, e.g. EntityID.HIRES.
+	 * @param	highWater	the sequence's new high-water mark.
+	 */
+	public static byte[] advanceSequence(int kind, long highWater) throws IOException
+	{
+		Record record = new Record(ADVANCE_SEQUENCE);
+		record.out.writeByte(kind);
+		record.out.writeLong(highWater);
+		return record.toByteArray();
+	}
+
+	/*
+	 * Applies a journal record to the controller. The controller's
+	 * journal must not be open while replaying, otherwise each
+	 * record would be journalled again.
+	 *
+	 * @param	controller	the controller being rebuilt.
+	 * @param	in			the record payload.
+	 *
+	 * @throws	IOException	if the record is malformed or refers to
+	 * 						an entity that does not exist.
+	 */
+	public static void apply(Controller controller, DataInput in) throws IOException
+	{
+		int type = in.readByte();
+
+		switch (type)
+		{
+		case ADD_CUSTOMER:
+			controller.addCustomer(new Customer(in.readInt(), in.readUTF(),
+					in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF()));
+			break;
+
+		case ADD_BIKE:
+		{
+			Bike bike = new Bike(in.readInt(), in.readUTF(), in.readUTF(),
+					in.readUTF(), in.readUTF(), in.readUTF(), in.readDouble(),
+					in.readDouble());
+			Encoding.restoreBikeState(bike, in.readByte());
+			controller.addBike(bike);
+			break;
+		}
+
+		case ADD_HIRE:
+		{
+			int hireNo = in.readInt();
+			Customer customer = customer(controller, in.readInt());
+			Bike bike = bike(controller, in.readInt());
+			int startDay = Encoding.readDay(in);
+			int endDay = Encoding.readDay(in);
+			int returnedDay = Encoding.readDay(in);
+
+			Hire hire = new Hire(hireNo, customer, bike, startDay, endDay, returnedDay);
+			Encoding.restoreHireState(hire, in.readByte(), returnedDay);
+			Encoding.restoreBikeState(bike, in.readByte());
+			controller.addHire(hire);
+			break;
+		}
+
+		case ADD_INVOICE_OUT:
+			controller.addInvoiceOut(new InvoiceOut(in.readInt(),
+					hire(controller, in.readInt())));
+			break;
+
+		case ADD_INVOICE_IN:
+			controller.addInvoiceIn(new InvoiceIn(in.readInt(),
+					hire(controller, in.readInt()), in.readBoolean()));
+			break;
+
+		case ADD_ISSUED_INVOICE_OUT:
+			controller.addInvoiceOut(new InvoiceOut(in.readInt(),
+					hire(controller, in.readInt()), in.readLong(), in.readLong(),
+					in.readLong()));
+			break;
+
+		case ADD_ISSUED_INVOICE_IN:
+			controller.addInvoiceIn(new InvoiceIn(in.readInt(),
+					hire(controller, in.readInt()), in.readBoolean(), in.readLong(),
+					in.readLong(), in.readInt()));
+			break;
+
+		case RETURN_HIRE:
+		{
+			Hire hire = hire(controller, in.readInt());
+
+			if (!hire.returnHire(in.readBoolean()))
+				throw new IOException("Journal returns a hire that cannot be returned: "
+						+ hire.getHireNo());
+
+			hire.setReturnedDay(Encoding.readDay(in));
+			break;
+		}
+
+		case REPAIR_BIKE:
+		{
+			Bike bike = bike(controller, in.readInt());
+
+			if (!bike.repairBike())
+				throw new IOException("Journal repairs a bike that cannot be repaired: "
+						+ bike.getBikeNo());
+
+			break;
+		}
+
+		case ADVANCE_SEQUENCE:
+		{
+			int kind = in.readByte();
+
+			if (kind < 0 || kind >= EntityID.KINDS)
+				throw new IOException("Journal refers to unknown kind of entity: " + kind);
+
+			controller.advanceSequence(kind, in.readLong());
+			break;
+		}
+
+		default:
+			throw new IOException("Unknown journal record type: " + type);
+		}
+	}
+
+	private static Customer customer(Controller controller, int custNo) throws IOException
+	{
+		Customer customer = controller.findCustomer(custNo);
+
+		if (customer == null)
+			throw new IOException("Journal refers to unknown customer: " + custNo);
+
+		return customer;
+	}
+
+	private static Bike bike(Controller controller, int bikeNo) throws IOException
+	{
+		Bike bike = controller.findBike(bikeNo);
+
+		if (bike == null)
+			throw new IOException("Journal refers to unknown bike: " + bikeNo);
+
+		return bike;
+	}
+
+	private static Hire hire(Controller controller, int hireNo) throws IOException
+	{
+		Hire hire = controller.findHire(hireNo);
+
+		if (hire == null)
+			throw new IOException("Journal refers to unknown hire: " + hireNo);
+
+		return hire;
+	}
+
+	/*
+	 * A record payload under construction: the type byte followed
+	 * by the mutation's fields.
+	 */
+	private static class Record
+	{
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		private final DataOutputStream out = new DataOutputStream(bytes);
+
+		private Record(int type) throws IOException
+		{
+			out.writeByte(type);
+		}
+
+		private byte[] toByteArray() throws IOException
+		{
+			out.flush();
+			return bytes.toByteArray();
+		}
+	}
+
+}
@@ -0,0 +1,1152 @@
+package controller.persistence;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import controller.Controller;
+import controller.index.AttributeDictionary;
+import controller.index.EntityID;
+import controller.index.Ledger;
+import model.bike.Bike;
+import model.customer.Customer;
+import model.hire.EpochDay;
+import model.hire.Hire;
+import model.invoice.InvoiceIn;
+import model.invoice.InvoiceOut;
+
+/**
+ * SnapshotCodec reads and writes the versioned binary snapshot of
+ * the application data.
+ *
+ * The file starts with a header and an offset table:
+ *
+ * 		[int magic][int version][long journalSeq][byte sectionCount]
+ * 		sectionCount * [byte sectionId][long offset][int length]
+ *
+ * followed by the payload of each section. There is one section per
+ * entity type and each is decoded independently, so the sections are
+ * decoded concurrently and then linked (hires to customers and bikes,
+ * invoices to hires) in a final pass. A further section holds the
+ * high-water mark of each entity number sequence; snapshots written
+ * before it was added lack it, and numbering then resumes after the
+ * highest number read.
+ *
+ * Entity numbers and counts are stored as varints, dates as
+ * zigzag varint days since 1970-01-01, and the descriptive bike
+ * attributes (make, model, function, demographic and colour) as
+ * varint codes into a dictionary stored at the start of the bikes
+ * section. Since version 3, customers' towns are likewise coded
+ * into a dictionary at the start of the customers section. The
+ * dictionaries hold only the values in use, and are built from the
+ * in-memory attribute codes. Bikes' daily rates and deposits are
+ * stored as zigzag varint pence since version 4, and as doubles of
+ * pounds before it. Since version 5, invoices keep the amounts they
+ * were issued with; before it, they are charged at the bikes' rates.
+ * Snapshots are read onto the heap in one pass rather than mapped: a
+ * mapping outlives its channel until it is garbage collected, and on
+ * some platforms (Windows) a mapped file cannot be replaced, as the
+ * next snapshot replaces it.
+ *
+ * The invoice sections may be left undecoded when the snapshot is
+ * loaded, to be decoded from copies of their bytes only when the
+ * invoices are first needed (see DeferredInvoices). A section after the sequences holds
+ * each customer's balance on outgoing and on incoming invoices, which
+ * stands in for the invoices meanwhile; snapshots lacking it, or the
+ * sequences, are always read with their invoices.
+ */
+public final class SnapshotCodec
+{
+	private static final int MAGIC = 0x42485331; // "BHS1"
+	private static final int VERSION = 5;
+	private static final int TABLE_ENTRY_SIZE = 13;
+	private static final Logger LOG = Logger.getLogger(SnapshotCodec.class.getName());
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// Section IDs
+	private static final int CUSTOMERS = 1;
+	private static final int BIKES = 2;
+	private static final int HIRES = 3;
+	private static final int INVOICES_OUT = 4;
+	private static final int INVOICES_IN = 5;
+	private static final int SEQUENCES = 6;
+	private static final int BALANCES = 7;
+
+	// Set in a hire's state byte when it has a return date
+	private static final int RETURNED = 0x80;
+
+	private SnapshotCodec()
+	{
+
+	}
+
+	/*
+	 * Writes a snapshot of the controller's data. The file is
+	 * forced to disk before this method returns.
+	 *
+	 * @param	controller	the controller whose data is written.
+	 * @param	journalSeq	the last journal sequence number covered.
+	 * @param	file		the snapshot file.
+	 *
+	 * @throws	IOException	if the snapshot cannot be written.
+	 */
+	public static void write(Controller controller, long journalSeq, File file)
+			throws IOException
+	{
+		Output out = new Output(1 << 16);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(journalSeq);
+		out.writeByte(BALANCES);
+
+		int table = out.size;
+		out.size += BALANCES * TABLE_ENTRY_SIZE;
+		out.ensure(0);
+
+		int start = out.size;
+		writeCustomers(out, controller.getCustomers());
+		out.writeTableEntry(table, CUSTOMERS, start);
+
+		start = out.size;
+		writeBikes(out, controller.getBikes());
+		out.writeTableEntry(table + TABLE_ENTRY_SIZE, BIKES, start);
+
+		start = out.size;
+		writeHires(out, controller.getHires());
+		out.writeTableEntry(table + 2 * TABLE_ENTRY_SIZE, HIRES, start);
+
+		start = out.size;
+		writeInvoicesOut(out, controller.getInvoicesOut());
+		out.writeTableEntry(table + 3 * TABLE_ENTRY_SIZE, INVOICES_OUT, start);
+
+		start = out.size;
+		writeInvoicesIn(out, controller.getInvoicesIn());
+		out.writeTableEntry(table + 4 * TABLE_ENTRY_SIZE, INVOICES_IN, start);
+
+		start = out.size;
+
+		for (int kind = 0; kind < EntityID.KINDS; kind++)
+			out.writeLong(controller.getSequenceHighWater(kind));
+
+		out.writeTableEntry(table + 5 * TABLE_ENTRY_SIZE, SEQUENCES, start);
+
+		start = out.size;
+		writeBalances(out, controller);
+		out.writeTableEntry(table + 6 * TABLE_ENTRY_SIZE, BALANCES, start);
+
+		FileOutputStream stream = new FileOutputStream(file);
+		try
+		{
+			stream.write(out.bytes, 0, out.size);
+			stream.flush();
+			stream.getFD().sync();
+		} finally
+		{
+			stream.close();
+		}
+	}
+
+	private static void writeCustomers(Output out, List<Customer> customers)
+	{
+		Dictionary towns = new Dictionary();
+		int[] codes = new int[customers.size()];
+
+		for (int i = 0; i < customers.size(); i++)
+			codes[i] = towns.code(AttributeDictionary.CUSTOMER_TOWNS,
+					customers.get(i).getAddressTownCode());
+
+		towns.write(out);
+		out.writeVarint(customers.size());
+
+		for (int i = 0; i < customers.size(); i++)
+		{
+			Customer customer = customers.get(i);
+			out.writeVarint(customer.getCustNo());
+			out.writeString(customer.getFirstName());
+			out.writeString(customer.getLastName());
+			out.writeString(customer.getAddressLine1());
+			out.writeVarint(codes[i]);
+			out.writeString(customer.getAddressPostcode());
+		}
+	}
+
+	private static void writeBikes(Output out, List<Bike> bikes)
+	{
+		Dictionary dictionary = new Dictionary();
+		int[] codes = new int[bikes.size() * 5];
+
+		for (int i = 0; i < bikes.size(); i++)
+		{
+			Bike bike = bikes.get(i);
+			codes[i * 5] = dictionary.code(AttributeDictionary.BIKE_MAKES, bike.getMakeCode());
+			codes[i * 5 + 1] = dictionary.code(AttributeDictionary.BIKE_MODELS, bike.getModelCode());
+			codes[i * 5 + 2] = dictionary.code(AttributeDictionary.BIKE_FUNCTIONS, bike.getFunctionCode());
+			codes[i * 5 + 3] = dictionary.code(AttributeDictionary.BIKE_DEMOGRAPHICS, bike.getDemographicCode());
+			codes[i * 5 + 4] = dictionary.code(AttributeDictionary.BIKE_COLOURS, bike.getColourCode());
+		}
+
+		dictionary.write(out);
+
+		out.writeVarint(bikes.size());
+
+		for (int i = 0; i < bikes.size(); i++)
+		{
+			Bike bike = bikes.get(i);
+			out.writeVarint(bike.getBikeNo());
+
+			for (int c = 0; c < 5; c++)
+				out.writeVarint(codes[i * 5 + c]);
+
+			out.writeSignedVarlong(bike.getDailyRatePence());
+			out.writeSignedVarlong(bike.getDepositPence());
+			out.writeByte(Encoding.bikeStateCode(bike.getState()));
+		}
+	}
+
+	private static void writeHires(Output out, List<Hire> hires)
+	{
+		out.writeVarint(hires.size());
+
+		for (int i = 0; i < hires.size(); i++)
+		{
+			Hire hire = hires.get(i);
+			int start = hire.getStartDay();
+			int end = hire.getEndDay();
+			int state = Encoding.hireStateCode(hire.getState());
+
+			if (hire.getReturnedDay() != EpochDay.NONE)
+				state |= RETURNED;
+
+			out.writeVarint(hire.getHireNo());
+			out.writeVarint(hire.getCustomer().getCustNo());
+			out.writeVarint(hire.getBike().getBikeNo());
+			out.writeSignedVarint(start);
+			out.writeSignedVarint(end - start);
+			out.writeByte(state);
+
+			if (hire.getReturnedDay() != EpochDay.NONE)
+				out.writeSignedVarint(hire.getReturnedDay() - end);
+		}
+	}
+
+	private static void writeInvoicesOut(Output out, List<InvoiceOut> invoices)
+	{
+		out.writeVarint(invoices.size());
+
+		for (int i = 0; i < invoices.size(); i++)
+		{
+			InvoiceOut invoice = invoices.get(i);
+			out.writeVarint(invoice.getInvoiceNo());
+			out.writeVarint(invoice.getHireNo());
+			out.writeSignedVarlong(invoice.getDailyRatePence());
+			out.writeSignedVarlong(invoice.getCostPence());
+			out.writeSignedVarlong(invoice.getDepositPence());
+		}
+	}
+
+	private static void writeInvoicesIn(Output out, List<InvoiceIn> invoices)
+	{
+		out.writeVarint(invoices.size());
+
+		for (int i = 0; i < invoices.size(); i++)
+		{
+			InvoiceIn invoice = invoices.get(i);
+			out.writeVarint(invoice.getInvoiceNo());
+			out.writeVarint(invoice.getHireNo());
+			out.writeByte(invoice.wasBikeDamaged() ? 1 : 0);
+			out.writeSignedVarlong(invoice.getDailyRatePence());
+			out.writeSignedVarlong(invoice.getDepositPence());
+			out.writeSignedVarint(invoice.getDaysLate());
+		}
+	}
+
+	/*
+	 * Writes the balance of each customer who has one, on outgoing and
+	 * on incoming invoices.
+	 */
+	private static void writeBalances(Output out, Controller controller)
+	{
+		List<Customer> customers = controller.getCustomers();
+		int[] custNos = new int[customers.size()];
+		long[] balances = new long[customers.size() * 2];
+		int count = 0;
+
+		for (int i = 0; i < customers.size(); i++)
+		{
+			int custNo = customers.get(i).getCustNo();
+			long paidOut = controller.getBalance(custNo, true);
+			long paidIn = controller.getBalance(custNo, false);
+
+			if (paidOut == 0 && paidIn == 0)
+				continue;
+
+			custNos[count] = custNo;
+			balances[count * 2] = paidOut;
+			balances[count * 2 + 1] = paidIn;
+			count++;
+		}
+
+		out.writeVarint(count);
+
+		for (int i = 0; i < count; i++)
+		{
+			out.writeVarint(custNos[i]);
+			out.writeSignedVarlong(balances[i * 2]);
+			out.writeSignedVarlong(balances[i * 2 + 1]);
+		}
+	}
+
+	/*
+	 * Reads a snapshot into the controller, whose lists are expected
+	 * to be empty and whose journal must not be open.
+	 *
+	 * @param	controller	the controller to populate.
+	 * @param	file		the snapshot file.
+	 * @return	the last journal sequence number covered by the snapshot.
+	 *
+	 * @throws	IOException	if the file cannot be read or is not a
+	 * 						snapshot of a supported version.
+	 */
+	public static long read(Controller controller, File file) throws IOException
+	{
+		return read(controller, file, false);
+	}
+
+	/*
+	 * Reads a snapshot into the controller, whose lists are expected
+	 * to be empty and whose journal must not be open.
+	 *
+	 * The sections are decoded on a pool of threads, each section's
+	 * task waiting only for the sections it refers to. The decoded
+	 * entities are then added to the controller in bulk, each kind on
+	 * its own thread. The time taken by each step is logged.
+	 *
+	 * If the invoices are deferred, their sections are not decoded;
+	 * the controller is instead given a DeferredInvoices to decode
+	 * them from when they are first needed. They are not deferred if
+	 * the snapshot lacks the sequences or balances they would need.
+	 *
+	 * @param	controller		the controller to populate.
+	 * @param	file			the snapshot file.
+	 * @param	deferInvoices	true to leave the invoices unread.
+	 * @return	the last journal sequence number covered by the snapshot.
+	 *
+	 * @throws	IOException	if the file cannot be read or is not a
+	 * 						snapshot of a supported version.
+	 */
+	public static long read(Controller controller, File file, boolean defer)
+			throws IOException
+	{
+		long started = System.nanoTime();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		ExecutorService pool = null;
+
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			ByteBuffer in = readFully(channel, file);
+
+			if (in.remaining() < 17 || in.getInt() != MAGIC)
+				throw new IOException("Not a bike hire snapshot: " + file);
+
+			int version = in.getInt();
+
+			if (version < 1 || version > VERSION)
+				throw new IOException("Unsupported snapshot version: " + version);
+
+			long journalSeq = in.getLong();
+			final ByteBuffer[] sections = sections(in, version);
+			final boolean townCodes = version >= 3;
+			final boolean pence = version >= 4;
+			final boolean amounts = version >= 5;
+			boolean deferInvoices = defer && sections[SEQUENCES] != null
+					&& sections[BALANCES] != null;
+
+			// Customers, bikes and hires, and the invoices unless deferred
+			int decoded = deferInvoices ? 3 : 5;
+			int threads = Math.min(Runtime.getRuntime().availableProcessors(), decoded);
+			pool = Executors.newFixedThreadPool(threads);
+
+			// Tasks only wait for tasks submitted before them, so the
+			// pool cannot deadlock whatever its size
+			final Future<Decoded<Customer>> customers = pool.submit(new Callable<Decoded<Customer>>()
+			{
+				public Decoded<Customer> call() throws IOException
+				{
+					return readCustomers(sections[CUSTOMERS], townCodes);
+				}
+			});
+			final Future<Decoded<Bike>> bikes = pool.submit(new Callable<Decoded<Bike>>()
+			{
+				public Decoded<Bike> call() throws IOException
+				{
+					return readBikes(sections[BIKES], pence);
+				}
+			});
+			final Future<Decoded<Hire>> hires = pool.submit(new Callable<Decoded<Hire>>()
+			{
+				public Decoded<Hire> call() throws Exception
+				{
+					return readHires(sections[HIRES], customers.get(), bikes.get());
+				}
+			});
+			Future<Decoded<InvoiceOut>> invoicesOut = null;
+			Future<Decoded<InvoiceIn>> invoicesIn = null;
+
+			if (!deferInvoices)
+			{
+				invoicesOut = pool.submit(new Callable<Decoded<InvoiceOut>>()
+				{
+					public Decoded<InvoiceOut> call() throws Exception
+					{
+						return readInvoicesOut(sections[INVOICES_OUT], hires.get(), amounts);
+					}
+				});
+				invoicesIn = pool.submit(new Callable<Decoded<InvoiceIn>>()
+				{
+					public Decoded<InvoiceIn> call() throws Exception
+					{
+						return readInvoicesIn(sections[INVOICES_IN], hires.get(), amounts);
+					}
+				});
+			}
+
+			Timings timings = new Timings();
+			long linkStart = link(controller, pool, customers.get(), bikes.get(), hires.get(),
+					invoicesOut == null ? null : invoicesOut.get(),
+					invoicesIn == null ? null : invoicesIn.get(), timings);
+
+			if (sections[SEQUENCES] != null)
+				readSequences(controller, sections[SEQUENCES]);
+
+			if (deferInvoices)
+			{
+				controller.deferInvoices(new DeferredInvoices(file, copy(sections[INVOICES_OUT]),
+						copy(sections[INVOICES_IN]), hires.get(), amounts, sections[BALANCES]));
+			}
+
+			timings.add("link", System.nanoTime() - linkStart, -1);
+			timings.add("total", System.nanoTime() - started, -1);
+			LOG.info("Loaded snapshot " + file + " using " + threads + " threads: " + timings
+					+ (deferInvoices ? ", invoices deferred" : ""));
+
+			return journalSeq;
+		} catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException("Corrupt snapshot: " + file, e.getCause());
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading snapshot: " + file, e);
+		} catch (RuntimeException e)
+		{
+			// Buffer underflows and bad references mean a corrupt file
+			throw new IOException("Corrupt snapshot: " + file, e);
+		} finally
+		{
+			if (pool != null)
+				pool.shutdownNow();
+			raf.close();
+		}
+	}
+
+	/*
+	 * @return	the whole file, read onto the heap.
+	 */
+	private static ByteBuffer readFully(FileChannel channel, File file) throws IOException
+	{
+		long size = channel.size();
+
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("Snapshot too large: " + file);
+
+		ByteBuffer in = ByteBuffer.allocate((int) size);
+
+		while (in.hasRemaining())
+			if (channel.read(in) < 0)
+				throw new EOFException("Snapshot truncated while reading: " + file);
+
+		in.flip();
+		return in;
+	}
+
+	/*
+	 * @return	a copy of a section, so that the rest of the file it was
+	 * 			sliced from can be collected.
+	 */
+	private static ByteBuffer copy(ByteBuffer section)
+	{
+		ByteBuffer copy = ByteBuffer.allocate(section.remaining());
+		copy.put(section.duplicate());
+		copy.flip();
+		return copy;
+	}
+
+	/*
+	 * Reads the offset table (or, for version 1 files, walks the
+	 * length-prefixed sections) and slices out each section.
+	 *
+	 * @return	the sections, indexed by section ID.
+	 */
+	private static ByteBuffer[] sections(ByteBuffer in, int version) throws IOException
+	{
+		int count = in.get();
+		ByteBuffer[] sections = new ByteBuffer[BALANCES + 1];
+
+		for (int s = 0; s < count; s++)
+		{
+			int id = in.get();
+			long offset;
+			int length;
+
+			if (version == 1)
+			{
+				length = in.getInt();
+				offset = in.position();
+				in.position(in.position() + length);
+			}
+			else
+			{
+				offset = in.getLong();
+				length = in.getInt();
+			}
+
+			// Sections added by later versions are skipped
+			if (id <= 0 || id >= sections.length)
+				continue;
+
+			ByteBuffer section = in.duplicate();
+			section.position((int) offset);
+			section.limit((int) offset + length);
+			sections[id] = section.slice();
+		}
+
+		for (int id = CUSTOMERS; id <= INVOICES_IN; id++)
+			if (sections[id] == null)
+				throw new IOException("Snapshot is missing section " + id);
+
+		return sections;
+	}
+
+	/*
+	 * Adds the decoded entities to the controller in bulk, each kind on
+	 * a thread of the pool, the incoming invoices once the hires are
+	 * added. The invoices are null if deferred.
+	 *
+	 * @return	the time at which linking started.
+	 */
+	private static long link(final Controller controller, ExecutorService pool,
+			final Decoded<Customer> customers, final Decoded<Bike> bikes,
+			final Decoded<Hire> hires, final Decoded<InvoiceOut> invoicesOut,
+			final Decoded<InvoiceIn> invoicesIn, Timings timings)
+			throws InterruptedException, ExecutionException
+	{
+		timings.add("customers", customers.nanos, customers.entities.length);
+		timings.add("bikes", bikes.nanos, bikes.entities.length);
+		timings.add("hires", hires.nanos, hires.entities.length);
+
+		if (invoicesOut != null)
+		{
+			timings.add("invoicesOut", invoicesOut.nanos, invoicesOut.entities.length);
+			timings.add("invoicesIn", invoicesIn.nanos, invoicesIn.entities.length);
+		}
+
+		long start = System.nanoTime();
+		List<Future<?>> linked = new ArrayList<Future<?>>();
+
+		linked.add(pool.submit(new Runnable()
+		{
+			public void run()
+			{
+				controller.restore(customers.entities);
+			}
+		}));
+		linked.add(pool.submit(new Runnable()
+		{
+			public void run()
+			{
+				controller.restore(bikes.entities);
+			}
+		}));
+		final Future<?> hiresLinked = pool.submit(new Runnable()
+		{
+			public void run()
+			{
+				controller.restore(hires.entities);
+			}
+		});
+		linked.add(hiresLinked);
+
+		if (invoicesOut != null)
+		{
+			linked.add(pool.submit(new Runnable()
+			{
+				public void run()
+				{
+					controller.restore(invoicesOut.entities);
+				}
+			}));
+			// Adding an InvoiceIn releases its hire, which must be there
+			linked.add(pool.submit(new Callable<Void>()
+			{
+				public Void call() throws Exception
+				{
+					hiresLinked.get();
+					controller.restore(invoicesIn.entities);
+					return null;
+				}
+			}));
+		}
+
+		for (Future<?> future : linked)
+			future.get();
+
+		return start;
+	}
+
+	/*
+	 * Restores the high-water mark of each entity number sequence.
+	 * The marks of kinds of entity added by later versions are ignored.
+	 */
+	private static void readSequences(Controller controller, ByteBuffer section)
+	{
+		for (int kind = 0; kind < EntityID.KINDS && section.remaining() >= 8; kind++)
+			controller.advanceSequence(kind, section.getLong());
+	}
+
+	private static Decoded<Customer> readCustomers(ByteBuffer section, boolean townCodes)
+	{
+		long start = System.nanoTime();
+		Input in = new Input(section);
+		String[] towns = null;
+
+		if (townCodes)
+		{
+			towns = new String[in.readVarint()];
+
+			for (int i = 0; i < towns.length; i++)
+				towns[i] = in.readString();
+		}
+
+		int count = in.readVarint();
+		Customer[] customers = new Customer[count];
+		Customer[] byNo = new Customer[count + 1];
+
+		for (int i = 0; i < count; i++)
+		{
+			customers[i] = new Customer(in.readVarint(), in.readString(),
+					in.readString(), in.readString(),
+					towns == null ? in.readString() : towns[in.readVarint()],
+					in.readString());
+			byNo = put(byNo, customers[i].getCustNo(), customers[i]);
+		}
+
+		return new Decoded<Customer>(customers, byNo, System.nanoTime() - start);
+	}
+
+	private static Decoded<Bike> readBikes(ByteBuffer section, boolean pence) throws IOException
+	{
+		long start = System.nanoTime();
+		Input in = new Input(section);
+		String[] dictionary = new String[in.readVarint()];
+
+		for (int i = 0; i < dictionary.length; i++)
+			dictionary[i] = in.readString();
+
+		int count = in.readVarint();
+		Bike[] bikes = new Bike[count];
+		Bike[] byNo = new Bike[count + 1];
+
+		for (int i = 0; i < count; i++)
+		{
+			bikes[i] = new Bike(in.readVarint(), dictionary[in.readVarint()],
+					dictionary[in.readVarint()], dictionary[in.readVarint()],
+					dictionary[in.readVarint()], dictionary[in.readVarint()], 0, 0);
+
+			if (pence)
+			{
+				bikes[i].setDailyRatePence(in.readSignedVarlong());
+				bikes[i].setDepositPence(in.readSignedVarlong());
+			}
+			else
+			{
+				bikes[i].setDailyRate(Double.longBitsToDouble(in.buffer.getLong()));
+				bikes[i].setDeposit(Double.longBitsToDouble(in.buffer.getLong()));
+			}
+
+			Encoding.restoreBikeState(bikes[i], in.buffer.get());
+			byNo = put(byNo, bikes[i].getBikeNo(), bikes[i]);
+		}
+
+		return new Decoded<Bike>(bikes, byNo, System.nanoTime() - start);
+	}
+
+	/*
+	 * Restoring a hire's state acts on the hired bike, so hires are
+	 * only decoded once the bikes section is complete; nothing else
+	 * touches the bikes from then on.
+	 */
+	private static Decoded<Hire> readHires(ByteBuffer section, Decoded<Customer> customers,
+			Decoded<Bike> bikes) throws IOException
+	{
+		long start = System.nanoTime();
+		Input in = new Input(section);
+		int count = in.readVarint();
+		Hire[] hires = new Hire[count];
+		Hire[] byNo = new Hire[count + 1];
+
+		for (int i = 0; i < count; i++)
+		{
+			int hireNo = in.readVarint();
+			Customer customer = get(customers.byNo, in.readVarint());
+			Bike bike = get(bikes.byNo, in.readVarint());
+			int startDay = in.readSignedVarint();
+			int endDay = startDay + in.readSignedVarint();
+			int state = in.buffer.get() & 0xFF;
+			int returnedDay = EpochDay.NONE;
+
+			if ((state & RETURNED) != 0)
+				returnedDay = endDay + in.readSignedVarint();
+
+			hires[i] = new Hire(hireNo, customer, bike, startDay, endDay, returnedDay);
+			Encoding.restoreHireState(hires[i], state & ~RETURNED, returnedDay);
+			byNo = put(byNo, hireNo, hires[i]);
+		}
+
+		return new Decoded<Hire>(hires, byNo, System.nanoTime() - start);
+	}
+
+	private static Decoded<InvoiceOut> readInvoicesOut(ByteBuffer section, Decoded<Hire> hires,
+			boolean amounts)
+	{
+		long start = System.nanoTime();
+		Input in = new Input(section);
+		InvoiceOut[] invoices = new InvoiceOut[in.readVarint()];
+
+		for (int i = 0; i < invoices.length; i++)
+		{
+			int invoiceNo = in.readVarint();
+			Hire hire = get(hires.byNo, in.readVarint());
+
+			if (amounts)
+				invoices[i] = new InvoiceOut(invoiceNo, hire, in.readSignedVarlong(),
+						in.readSignedVarlong(), in.readSignedVarlong());
+			else
+				invoices[i] = new InvoiceOut(invoiceNo, hire);
+		}
+
+		return new Decoded<InvoiceOut>(invoices, null, System.nanoTime() - start);
+	}
+
+	private static Decoded<InvoiceIn> readInvoicesIn(ByteBuffer section, Decoded<Hire> hires,
+			boolean amounts)
+	{
+		long start = System.nanoTime();
+		Input in = new Input(section);
+		InvoiceIn[] invoices = new InvoiceIn[in.readVarint()];
+
+		for (int i = 0; i < invoices.length; i++)
+		{
+			int invoiceNo = in.readVarint();
+			Hire hire = get(hires.byNo, in.readVarint());
+			boolean damaged = in.buffer.get() != 0;
+
+			if (amounts)
+				invoices[i] = new InvoiceIn(invoiceNo, hire, damaged, in.readSignedVarlong(),
+						in.readSignedVarlong(), in.readSignedVarint());
+			else
+				invoices[i] = new InvoiceIn(invoiceNo, hire, damaged);
+		}
+
+		return new Decoded<InvoiceIn>(invoices, null, System.nanoTime() - start);
+	}
+
+	private static <T> T[] put(T[] byNo, int no, T entity)
+	{
+		if (no >= byNo.length)
+			byNo = Arrays.copyOf(byNo, Math.max(no + 1, byNo.length * 2));
+
+		byNo[no] = entity;
+		return byNo;
+	}
+
+	private static <T> T get(T[] byNo, int no)
+	{
+		if (no <= 0 || no >= byNo.length || byNo[no] == null)
+			throw new IllegalStateException("Snapshot refers to unknown entity number: " + no);
+
+		return byNo[no];
+	}
+
+	/*
+	 * The dictionary of a section: the distinct values in use, coded
+	 * in order of first use. Values are looked up by their in-memory
+	 * code, so each distinct value is only hashed once.
+	 */
+	private static class Dictionary
+	{
+		private final Map<AttributeDictionary, int[]> remaps =
+				new IdentityHashMap<AttributeDictionary, int[]>();
+		private final Map<String, Integer> codes = new LinkedHashMap<String, Integer>();
+
+		/*
+		 * @return	the snapshot code of the value with the in-memory
+		 * 			code given.
+		 */
+		private int code(AttributeDictionary attribute, int code)
+		{
+			int[] remap = remaps.get(attribute);
+
+			if (remap == null || code + 1 >= remap.length)
+			{
+				int[] grown = new int[attribute.size() + 1];
+				Arrays.fill(grown, -1);
+
+				if (remap != null)
+					System.arraycopy(remap, 0, grown, 0, remap.length);
+
+				remap = grown;
+				remaps.put(attribute, remap);
+			}
+
+			// Indexed by code + 1, so that NULL is index 0
+			if (remap[code + 1] < 0)
+			{
+				String value = attribute.value(code);
+				Integer existing = codes.get(value);
+
+				if (existing == null)
+				{
+					existing = codes.size();
+					codes.put(value, existing);
+				}
+
+				remap[code + 1] = existing;
+			}
+
+			return remap[code + 1];
+		}
+
+		private void write(Output out)
+		{
+			out.writeVarint(codes.size());
+
+			for (String value : codes.keySet())
+				out.writeString(value);
+		}
+	}
+
+	/*
+	 * A growable byte array with the encodings used by the format.
+	 */
+	private static class Output
+	{
+		private byte[] bytes;
+		private int size;
+
+		private Output(int capacity)
+		{
+			bytes = new byte[capacity];
+		}
+
+		private void ensure(int extra)
+		{
+			if (size + extra > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(size + extra, bytes.length * 2));
+		}
+
+		private void writeByte(int b)
+		{
+			ensure(1);
+			bytes[size++] = (byte) b;
+		}
+
+		private void writeInt(int v)
+		{
+			ensure(4);
+			bytes[size++] = (byte) (v >>> 24);
+			bytes[size++] = (byte) (v >>> 16);
+			bytes[size++] = (byte) (v >>> 8);
+			bytes[size++] = (byte) v;
+		}
+
+		private void writeLong(long v)
+		{
+			writeInt((int) (v >>> 32));
+			writeInt((int) v);
+		}
+
+		private void writeVarint(int v)
+		{
+			ensure(5);
+
+			while ((v & ~0x7F) != 0)
+			{
+				bytes[size++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+
+			bytes[size++] = (byte) v;
+		}
+
+		private void writeSignedVarint(int v)
+		{
+			writeVarint((v << 1) ^ (v >> 31));
+		}
+
+		private void writeSignedVarlong(long v)
+		{
+			ensure(10);
+			v = (v << 1) ^ (v >> 63);
+
+			while ((v & ~0x7FL) != 0)
+			{
+				bytes[size++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+
+			bytes[size++] = (byte) v;
+		}
+
+		private void writeString(String s)
+		{
+			byte[] utf = s.getBytes(UTF8);
+			writeVarint(utf.length);
+			ensure(utf.length);
+			System.arraycopy(utf, 0, bytes, size, utf.length);
+			size += utf.length;
+		}
+
+		/*
+		 * Fills in the offset table entry of the section that
+		 * started at the given position and ends here.
+		 */
+		private void writeTableEntry(int entry, int id, int start)
+		{
+			int end = size;
+			size = entry;
+			writeByte(id);
+			writeLong(start);
+			writeInt(end - start);
+			size = end;
+		}
+	}
+
+	/*
+	 * Decodes the format's encodings from a section of the file.
+	 */
+	private static class Input
+	{
+		private final ByteBuffer buffer;
+		private byte[] scratch = new byte[256];
+
+		private Input(ByteBuffer buffer)
+		{
+			this.buffer = buffer;
+		}
+
+		private int readVarint()
+		{
+			int value = 0;
+			int shift = 0;
+			byte b;
+
+			do
+			{
+				b = buffer.get();
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+
+			return value;
+		}
+
+		private int readSignedVarint()
+		{
+			int v = readVarint();
+			return (v >>> 1) ^ -(v & 1);
+		}
+
+		private long readSignedVarlong()
+		{
+			long value = 0;
+			int shift = 0;
+			byte b;
+
+			do
+			{
+				b = buffer.get();
+				value |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		private String readString()
+		{
+			int length = readVarint();
+
+			if (length > scratch.length)
+				scratch = new byte[Math.max(length, scratch.length * 2)];
+
+			buffer.get(scratch, 0, length);
+			return new String(scratch, 0, length, UTF8);
+		}
+	}
+
+	/*
+	 * The invoice sections of a snapshot read without them, decoded on
+	 * request from copies of their bytes, so the file is not held open
+	 * or mapped meanwhile. Each section can be decoded as often as needed; the hires
+	 * the invoices refer to are those read with the snapshot.
+	 */
+	public static final class DeferredInvoices
+	{
+		private final File file;
+		private final ByteBuffer invoicesOut;
+		private final ByteBuffer invoicesIn;
+		private final Decoded<Hire> hires;
+		private final boolean amounts;
+		private final int[] custNos;
+		// Each customer's balance on outgoing, then incoming, invoices
+		private final long[] balances;
+
+		private DeferredInvoices(File file, ByteBuffer invoicesOut, ByteBuffer invoicesIn,
+				Decoded<Hire> hires, boolean amounts, ByteBuffer section)
+		{
+			this.file = file;
+			this.invoicesOut = invoicesOut;
+			this.invoicesIn = invoicesIn;
+			this.hires = hires;
+			this.amounts = amounts;
+
+			Input in = new Input(section);
+			custNos = new int[in.readVarint()];
+			balances = new long[custNos.length * 2];
+
+			for (int i = 0; i < custNos.length; i++)
+			{
+				custNos[i] = in.readVarint();
+				balances[i * 2] = in.readSignedVarlong();
+				balances[i * 2 + 1] = in.readSignedVarlong();
+			}
+		}
+
+		/*
+		 * Carries the customers' balances on the unread invoices into
+		 * the ledger.
+		 *
+		 * @param	ledger	the controller's ledger.
+		 */
+		public void carryBalances(Ledger ledger)
+		{
+			for (int i = 0; i < custNos.length; i++)
+				ledger.carry(custNos[i], balances[i * 2], balances[i * 2 + 1]);
+		}
+
+		/*
+		 * @return	the outgoing invoices, in the order written.
+		 *
+		 * @throws	IOException	if the section is corrupt.
+		 */
+		public InvoiceOut[] readInvoicesOut() throws IOException
+		{
+			try
+			{
+				Decoded<InvoiceOut> decoded = SnapshotCodec.readInvoicesOut(invoicesOut.duplicate(),
+						hires, amounts);
+				LOG.info("Loaded deferred invoicesOut from " + file + " in "
+						+ decoded.nanos / 1000000 + " ms (" + decoded.entities.length + ")");
+				return decoded.entities;
+			} catch (RuntimeException e)
+			{
+				throw new IOException("Corrupt snapshot: " + file, e);
+			}
+		}
+
+		/*
+		 * @return	the incoming invoices, in the order written.
+		 *
+		 * @throws	IOException	if the section is corrupt.
+		 */
+		public InvoiceIn[] readInvoicesIn() throws IOException
+		{
+			try
+			{
+				Decoded<InvoiceIn> decoded = SnapshotCodec.readInvoicesIn(invoicesIn.duplicate(),
+						hires, amounts);
+				LOG.info("Loaded deferred invoicesIn from " + file + " in "
+						+ decoded.nanos / 1000000 + " ms (" + decoded.entities.length + ")");
+				return decoded.entities;
+			} catch (RuntimeException e)
+			{
+				throw new IOException("Corrupt snapshot: " + file, e);
+			}
+		}
+	}
+
+	/*
+	 * The entities decoded from one section, in file order and (where
+	 * other sections refer to them) indexed by entity number, and the
+	 * time taken to decode them.
+	 */
+	private static class Decoded<T>
+	{
+		private final T[] entities;
+		private final T[] byNo;
+		private final long nanos;
+
+		private Decoded(T[] entities, T[] byNo, long nanos)
+		{
+			this.entities = entities;
+			this.byNo = byNo;
+			this.nanos = nanos;
+		}
+	}
+
+	/*
+	 * The time taken by each step of a load, for logging.
+	 */
+	private static class Timings
+	{
+		private final StringBuilder text = new StringBuilder();
+
+		private void add(String step, long nanos, int count)
+		{
+			if (text.length() > 0)
+				text.append(", ");
+
+			text.append(step).append(' ').append(nanos / 1000000).append(" ms");
+
+			if (count >= 0)
+				text.append(" (").append(count).append(')');
+		}
+
+		@Override
+		public String toString()
+		{
+			return text.toString();
+		}
+	}
+
+}
@@ -0,0 +1,13 @@
+package controller.persistence.legacy;
+
+import java.io.Serializable;
+
+/*
+ * The serialized form of model.bike.Available in legacy data files.
+ */
+class Available implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	Bike bike;
+}
@@ -0,0 +1,22 @@
+package controller.persistence.legacy;
+
+import java.io.Serializable;
+
+/*
+ * The serialized form of model.bike.Bike in legacy data files.
+ */
+class Bike implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	String bikeID;
+	int bikeNo;
+	String make;
+	String model;
+	String function;
+	String demographic;
+	String colour;
+	double dailyRate;
+	double deposit;
+	Object currentState;
+}
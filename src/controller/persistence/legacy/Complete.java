@@ -0,0 +1,13 @@
+package controller.persistence.legacy;
+
+import java.io.Serializable;
+
+/*
+ * The serialized form of model.hire.Complete in legacy data files.
+ */
+class Complete implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	Hire hire;
+}
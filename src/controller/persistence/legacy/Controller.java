@@ -0,0 +1,21 @@
+package controller.persistence.legacy;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/*
+ * The serialized form of controller.Controller in legacy data files.
+ */
+class Controller implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	String dataFile;
+	Report report;
+	ArrayList<Customer> customers;
+	ArrayList<Bike> bikes;
+	ArrayList<Hire> hires;
+	ArrayList<InvoiceOut> invoicesOut;
+	ArrayList<InvoiceIn> invoicesIn;
+	long journalSeq;
+}
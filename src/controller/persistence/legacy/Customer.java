@@ -0,0 +1,19 @@
+package controller.persistence.legacy;
+
+import java.io.Serializable;
+
+/*
+ * The serialized form of model.customer.Customer in legacy data files.
+ */
+class Customer implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	String customerID;
+	int custNo;
+	String firstName;
+	String lastName;
+	String addressLine1;
+	String addressTown;
+	String addressPostcode;
+}
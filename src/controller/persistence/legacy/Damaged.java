@@ -0,0 +1,13 @@
+package controller.persistence.legacy;
+
+import java.io.Serializable;
+
+/*
+ * The serialized form of model.bike.Damaged in legacy data files.
+ */
+class Damaged implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	Bike bike;
+}
@@ -0,0 +1,22 @@
+package controller.persistence.legacy;
+
+import java.io.Serializable;
+
+import org.joda.time.LocalDate;
+
+/*
+ * The serialized form of model.hire.Hire in legacy data files.
+ */
+class Hire implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	String hireID;
+	int hireNo;
+	Customer customer;
+	Bike bike;
+	LocalDate startDate;
+	LocalDate endDate;
+	LocalDate dateReturned;
+	Object currentState;
+}
@@ -0,0 +1,16 @@
+package controller.persistence.legacy;
+
+import java.io.Serializable;
+
+/*
+ * The serialized form of model.invoice.InvoiceIn in legacy data files.
+ */
+class InvoiceIn implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	String invoiceID;
+	int invoiceNo;
+	Hire hire;
+	boolean bikeDamaged;
+}
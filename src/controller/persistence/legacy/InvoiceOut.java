@@ -0,0 +1,15 @@
+package controller.persistence.legacy;
+
+import java.io.Serializable;
+
+/*
+ * The serialized form of model.invoice.InvoiceOut in legacy data files.
+ */
+class InvoiceOut implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	String invoiceID;
+	int invoiceNo;
+	Hire hire;
+}
@@ -0,0 +1,169 @@
+package controller.persistence.legacy;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import controller.persistence.Encoding;
+import model.hire.EpochDay;
+
+/**
+ * LegacyConverter reads data files written by Java serialization of
+ * the whole Controller, so that they can be converted to the binary
+ * snapshot format once.
+ *
+ * The stream is read into the frozen copies of the serialized classes
+ * held in this package (serialization matches classes by their simple
+ * names), which leaves the model classes free to change shape.
+ */
+public final class LegacyConverter
+{
+
+	private LegacyConverter()
+	{
+
+	}
+
+	/*
+	 * Reads a legacy data file into the controller, whose lists are
+	 * expected to be empty and whose journal must not be open.
+	 *
+	 * @param	legacyFile	the Java serialized Controller.
+	 * @param	target		the controller to populate.
+	 * @return	the last journal sequence number covered by the file
+	 * 			(0 if it predates the journal).
+	 *
+	 * @throws	ClassNotFoundException	if the file holds classes that
+	 * 									are not part of the legacy format.
+	 * @throws	IOException	if the file cannot be read.
+	 */
+	public static long convert(File legacyFile, controller.Controller target)
+			throws IOException, ClassNotFoundException
+	{
+		ObjectInputStream in = new LegacyInputStream(new FileInputStream(legacyFile));
+		Controller legacy;
+
+		try
+		{
+			legacy = (Controller) in.readObject();
+		} catch (ClassCastException e)
+		{
+			throw new IOException("Not a legacy bike hire data file: " + legacyFile, e);
+		} finally
+		{
+			in.close();
+		}
+
+		int maxCustNo = 0;
+		int maxBikeNo = 0;
+
+		for (Customer c : legacy.customers)
+			maxCustNo = Math.max(maxCustNo, c.custNo);
+		for (Bike b : legacy.bikes)
+			maxBikeNo = Math.max(maxBikeNo, b.bikeNo);
+
+		model.customer.Customer[] customers = new model.customer.Customer[maxCustNo + 1];
+		model.bike.Bike[] bikes = new model.bike.Bike[maxBikeNo + 1];
+
+		for (Customer c : legacy.customers)
+		{
+			customers[c.custNo] = new model.customer.Customer(c.custNo, c.firstName,
+					c.lastName, c.addressLine1, c.addressTown, c.addressPostcode);
+			target.addCustomer(customers[c.custNo]);
+		}
+
+		for (Bike b : legacy.bikes)
+		{
+			bikes[b.bikeNo] = new model.bike.Bike(b.bikeNo, b.make, b.model,
+					b.function, b.demographic, b.colour, b.dailyRate, b.deposit);
+			Encoding.restoreBikeState(bikes[b.bikeNo], bikeStateCode(b.currentState));
+			target.addBike(bikes[b.bikeNo]);
+		}
+
+		Map<Hire, model.hire.Hire> hires = new IdentityHashMap<Hire, model.hire.Hire>();
+
+		for (Hire h : legacy.hires)
+		{
+			model.hire.Hire hire = new model.hire.Hire(h.hireNo,
+					customers[h.customer.custNo], bikes[h.bike.bikeNo],
+					h.startDate, h.endDate, h.dateReturned);
+			Encoding.restoreHireState(hire, hireStateCode(h.currentState),
+					EpochDay.of(h.dateReturned));
+			target.addHire(hire);
+			hires.put(h, hire);
+		}
+
+		for (InvoiceOut i : legacy.invoicesOut)
+			target.addInvoiceOut(new model.invoice.InvoiceOut(i.invoiceNo, hire(hires, i.hire)));
+
+		for (InvoiceIn i : legacy.invoicesIn)
+			target.addInvoiceIn(new model.invoice.InvoiceIn(i.invoiceNo,
+					hire(hires, i.hire), i.bikeDamaged));
+
+		return legacy.journalSeq;
+	}
+
+	/*
+	 * Every hire referenced by an invoice must also be in the hires list.
+	 */
+	private static model.hire.Hire hire(Map<Hire, model.hire.Hire> hires, Hire h)
+			throws IOException
+	{
+		model.hire.Hire hire = hires.get(h);
+
+		if (hire == null)
+			throw new IOException("Legacy invoice refers to an unknown hire: " + h.hireID);
+
+		return hire;
+	}
+
+	private static int hireStateCode(Object state)
+	{
+		if (state instanceof Active)
+			return Encoding.ACTIVE;
+		if (state instanceof Late)
+			return Encoding.LATE;
+		if (state instanceof Complete)
+			return Encoding.COMPLETE;
+		return Encoding.PAYMENT_PENDING;
+	}
+
+	private static int bikeStateCode(Object state)
+	{
+		if (state instanceof OnHire)
+			return Encoding.ON_HIRE;
+		if (state instanceof Damaged)
+			return Encoding.DAMAGED;
+		return Encoding.AVAILABLE;
+	}
+
+	/*
+	 * Resolves the application's classes to their frozen copies.
+	 */
+	private static class LegacyInputStream extends ObjectInputStream
+	{
+		private LegacyInputStream(InputStream in) throws IOException
+		{
+			super(in);
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc)
+				throws IOException, ClassNotFoundException
+		{
+			String name = desc.getName();
+
+			if (name.startsWith("controller.") || name.startsWith("model."))
+				return Class.forName(LegacyConverter.class.getPackage().getName()
+						+ name.substring(name.lastIndexOf('.')));
+
+			return super.resolveClass(desc);
+		}
+	}
+
+}
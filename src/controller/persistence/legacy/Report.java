@@ -0,0 +1,13 @@
+package controller.persistence.legacy;
+
+import java.io.Serializable;
+
+/*
+ * The serialized form of controller.Report in legacy data files.
+ */
+class Report implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	Controller controller;
+}
@@ -0,0 +1,209 @@
+package controller.query;
+
+import model.bike.Bike;
+import model.bike.BikeState;
+import controller.Controller;
+import controller.index.AttributeDictionary;
+import controller.index.BikeBitmaps;
+import controller.index.IndexedList;
+
+/**
+ * BikeQuery selects bikes by make, model, function, demographic, colour
+ * and state, and sorts them by the columns of the bikes table. The
+ * bikes that may pass the filters are found from the bikes' attribute
+ * bitmaps, so a search such as "a women's road bike in blue, available
+ * now" reads only the bikes found. Attributes are compared as
+ * dictionary codes, and sorted by the rank of their values, so no
+ * attribute's text is read while a run reads the bikes.
+ */
+public class BikeQuery extends EntityQuery<Bike>
+{
+	// Columns
+	public static final int BIKE_NO = 0;
+	public static final int MAKE = 1;
+	public static final int MODEL = 2;
+	public static final int FUNCTION = 3;
+	public static final int DEMOGRAPHIC = 4;
+	public static final int COLOUR = 5;
+	public static final int DAILY_RATE = 6;
+	public static final int STATE = 7;
+
+	// Values wanted, indexed by BikeBitmaps.MAKE, MODEL... null for any
+	private String[] values = new String[BikeBitmaps.ATTRIBUTES];
+	private Class<? extends BikeState> state;
+
+	// Read as each run starts
+	private int[] codes;
+	private int[] ranks;
+
+	/*
+	 * @param	make	the make. null for any make.
+	 * @return	a copy of the query, selecting bikes of the make.
+	 */
+	public BikeQuery withMake(String make)
+	{
+		return with(BikeBitmaps.MAKE, make);
+	}
+
+	/*
+	 * @param	model	the model. null for any model.
+	 * @return	a copy of the query, selecting bikes of the model.
+	 */
+	public BikeQuery withModel(String model)
+	{
+		return with(BikeBitmaps.MODEL, model);
+	}
+
+	/*
+	 * @param	function	the function. null for any function.
+	 * @return	a copy of the query, selecting bikes of the function.
+	 */
+	public BikeQuery withFunction(String function)
+	{
+		return with(BikeBitmaps.FUNCTION, function);
+	}
+
+	/*
+	 * @param	demographic	the demographic, e.g. "women". null for any.
+	 * @return	a copy of the query, selecting bikes for the demographic.
+	 */
+	public BikeQuery withDemographic(String demographic)
+	{
+		return with(BikeBitmaps.DEMOGRAPHIC, demographic);
+	}
+
+	/*
+	 * @param	colour	the colour. null for any colour.
+	 * @return	a copy of the query, selecting bikes of the colour.
+	 */
+	public BikeQuery withColour(String colour)
+	{
+		return with(BikeBitmaps.COLOUR, colour);
+	}
+
+	/*
+	 * @param	state	the BikeState class (Available, OnHire, Damaged or
+	 * 					Reserved). null for any state.
+	 * @return	a copy of the query, selecting bikes in the state.
+	 */
+	public BikeQuery withState(Class<? extends BikeState> state)
+	{
+		BikeQuery query = (BikeQuery) copy();
+		query.state = state;
+		return query;
+	}
+
+	private BikeQuery with(int attribute, String value)
+	{
+		BikeQuery query = (BikeQuery) copy();
+		query.values = values.clone();
+		query.values[attribute] = value;
+		return query;
+	}
+
+	@Override
+	public boolean isFiltered()
+	{
+		return super.isFiltered() || isSearch();
+	}
+
+	/*
+	 * @return	true if the query selects by attribute or state.
+	 */
+	private boolean isSearch()
+	{
+		for (String value : values)
+			if (value != null)
+				return true;
+
+		return state != null;
+	}
+
+	protected IndexedList<Bike> list()
+	{
+		return Controller.getInstance().getBikes();
+	}
+
+	@Override
+	protected int open()
+	{
+		codes = new int[BikeBitmaps.ATTRIBUTES];
+
+		// The attribute columns, MAKE to COLOUR, follow the bitmaps' order
+		for (int a = 0; a < BikeBitmaps.ATTRIBUTES; a++)
+			codes[a] = values[a] == null ? BikeBitmaps.ANY : dictionary(MAKE + a).find(values[a]);
+
+		ranks = dictionary(getSortColumn()) == null ? null : dictionary(getSortColumn()).ranks();
+		return super.open();
+	}
+
+	@Override
+	protected int[] candidates()
+	{
+		if (!isSearch())
+			return null;
+
+		return Controller.getInstance().selectBikes(codes, state);
+	}
+
+	@Override
+	protected boolean isEmpty()
+	{
+		for (int code : codes)
+			if (code == AttributeDictionary.MISSING)
+				return true;
+
+		return state != null && Controller.getInstance().getNoOfBikes(state) == 0;
+	}
+
+	/*
+	 * Checks each bike found again, as its state may have changed since.
+	 */
+	protected boolean accepts(Bike bike)
+	{
+		return state == null || state.isInstance(bike.getState());
+	}
+
+	protected int key(Bike bike, int column)
+	{
+		switch (column)
+		{
+		case BIKE_NO:
+			return bike.getBikeNo();
+		case MAKE:
+			return rank(ranks, bike.getMakeCode());
+		case MODEL:
+			return rank(ranks, bike.getModelCode());
+		case FUNCTION:
+			return rank(ranks, bike.getFunctionCode());
+		case DEMOGRAPHIC:
+			return rank(ranks, bike.getDemographicCode());
+		case COLOUR:
+			return rank(ranks, bike.getColourCode());
+		case DAILY_RATE:
+			return (int) Math.min(Integer.MAX_VALUE, bike.getDailyRatePence());
+		default:
+			return bike.getState().getCode();
+		}
+	}
+
+	private static AttributeDictionary dictionary(int column)
+	{
+		switch (column)
+		{
+		case MAKE:
+			return AttributeDictionary.BIKE_MAKES;
+		case MODEL:
+			return AttributeDictionary.BIKE_MODELS;
+		case FUNCTION:
+			return AttributeDictionary.BIKE_FUNCTIONS;
+		case DEMOGRAPHIC:
+			return AttributeDictionary.BIKE_DEMOGRAPHICS;
+		case COLOUR:
+			return AttributeDictionary.BIKE_COLOURS;
+		default:
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,126 @@
+package controller.query;
+
+import java.util.Arrays;
+
+import model.customer.Customer;
+import controller.Controller;
+import controller.index.AttributeDictionary;
+import controller.index.IndexedList;
+
+/**
+ * CustomerQuery selects customers by town and by the words of their
+ * names and address, and sorts them by the columns of the customers
+ * table. Words are found through the customers' search index; towns
+ * are compared as dictionary codes; names and addresses are sorted by
+ * text.
+ */
+public class CustomerQuery extends EntityQuery<Customer>
+{
+	// Columns
+	public static final int CUSTOMER_NO = 0;
+	public static final int FIRST_NAME = 1;
+	public static final int LAST_NAME = 2;
+	public static final int LINE_1 = 3;
+	public static final int TOWN = 4;
+	public static final int POSTCODE = 5;
+
+	private String town;
+	private String words;
+
+	// Read as each run starts
+	private int townCode;
+	private int[] ranks;
+
+	/*
+	 * @param	town	the town. null for any town.
+	 * @return	a copy of the query, selecting customers in the town.
+	 */
+	public CustomerQuery withTown(String town)
+	{
+		CustomerQuery query = (CustomerQuery) copy();
+		query.town = town;
+		return query;
+	}
+
+	/*
+	 * @param	words	words beginning the words of the customer's names,
+	 * 					postcode or town, as typed. null for any customer.
+	 * @return	a copy of the query, selecting the customers found.
+	 * @see		controller.Controller#searchCustomers(String, int)
+	 */
+	public CustomerQuery withWords(String words)
+	{
+		CustomerQuery query = (CustomerQuery) copy();
+		query.words = words == null || words.trim().isEmpty() ? null : words;
+		return query;
+	}
+
+	@Override
+	public boolean isFiltered()
+	{
+		return super.isFiltered() || town != null || words != null;
+	}
+
+	protected IndexedList<Customer> list()
+	{
+		return Controller.getInstance().getCustomers();
+	}
+
+	@Override
+	protected int open()
+	{
+		townCode = AttributeDictionary.CUSTOMER_TOWNS.find(town);
+		ranks = getSortColumn() == TOWN ? AttributeDictionary.CUSTOMER_TOWNS.ranks() : null;
+		return super.open();
+	}
+
+	@Override
+	protected int[] candidates()
+	{
+		if (words == null)
+			return null;
+
+		int[] found = Controller.getInstance().searchCustomers(words, Integer.MAX_VALUE);
+		Arrays.sort(found);
+		return found;
+	}
+
+	@Override
+	protected boolean isEmpty()
+	{
+		return townCode == AttributeDictionary.MISSING;
+	}
+
+	protected boolean accepts(Customer customer)
+	{
+		return town == null || customer.getAddressTownCode() == townCode;
+	}
+
+	protected int key(Customer customer, int column)
+	{
+		return column == TOWN ? rank(ranks, customer.getAddressTownCode()) : customer.getCustNo();
+	}
+
+	@Override
+	protected boolean isText(int column)
+	{
+		return column == FIRST_NAME || column == LAST_NAME || column == LINE_1 || column == POSTCODE;
+	}
+
+	@Override
+	protected String text(Customer customer, int column)
+	{
+		switch (column)
+		{
+		case FIRST_NAME:
+			return customer.getFirstName();
+		case LAST_NAME:
+			return customer.getLastName();
+		case LINE_1:
+			return customer.getAddressLine1();
+		default:
+			return customer.getAddressPostcode();
+		}
+	}
+
+}
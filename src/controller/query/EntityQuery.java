@@ -0,0 +1,79 @@
+package controller.query;
+
+import controller.index.IndexedList;
+
+/**
+ * EntityQuery is a Query of a list of entities, which reads each row
+ * as an entity. The list is read as it is when each run starts; a
+ * query is run by one thread at a time, which need not be one that
+ * adds to the list, so the rows are read through publishedSize() and
+ * getPublished(int). A row the list no longer has (having been cleared
+ * since the run started) passes no filter.
+ */
+public abstract class EntityQuery<T> extends Query
+{
+	private IndexedList<T> list;
+	private int size;
+
+	/*
+	 * @return	the list queried.
+	 */
+	protected abstract IndexedList<T> list();
+
+	/*
+	 * @param	entity	an entity of the list.
+	 * @return	true if the entity passes the filters.
+	 */
+	protected abstract boolean accepts(T entity);
+
+	/*
+	 * @param	entity	an entity of the list.
+	 * @param	column	a column that is not text.
+	 * @return	the entity's sort key for the column.
+	 */
+	protected abstract int key(T entity, int column);
+
+	/*
+	 * @param	entity	an entity of the list.
+	 * @param	column	a text column.
+	 * @return	the entity's text for the column.
+	 */
+	protected String text(T entity, int column)
+	{
+		return null;
+	}
+
+	protected int open()
+	{
+		list = list();
+		size = list.publishedSize();
+		return size;
+	}
+
+	protected final boolean accepts(int row)
+	{
+		T entity = list.getPublished(row);
+		return entity != null && accepts(entity);
+	}
+
+	protected final int key(int row, int column)
+	{
+		T entity = list.getPublished(row);
+		return entity == null ? 0 : key(entity, column);
+	}
+
+	protected final String text(int row, int column)
+	{
+		T entity = list.getPublished(row);
+		return entity == null ? null : text(entity, column);
+	}
+
+	/*
+	 * @return	the number of entities in the list when the run started.
+	 */
+	protected int size()
+	{
+		return size;
+	}
+
+}
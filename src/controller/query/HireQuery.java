@@ -0,0 +1,145 @@
+package controller.query;
+
+import model.hire.EpochDay;
+import model.hire.Hire;
+import model.hire.HireState;
+import model.hire.Late;
+import controller.Controller;
+import controller.index.IndexedList;
+
+/**
+ * HireQuery selects hires by state, customer, start date and whether
+ * they are or were late, and sorts them by the columns of the hires
+ * table. A state is checked against the hires' state counts first, so
+ * asking for a state no hire is in reads no hires, and a customer's
+ * hires are found through the index by customer, so only they are read.
+ */
+public class HireQuery extends EntityQuery<Hire>
+{
+	// Columns
+	public static final int HIRE_NO = 0;
+	public static final int CUSTOMER = 1;
+	public static final int BIKE = 2;
+	public static final int START = 3;
+	public static final int END = 4;
+	public static final int RETURNED = 5;
+	public static final int STATE = 6;
+
+	private Class<? extends HireState> state;
+	private int custNo = -1;
+	private int from = EpochDay.NONE;
+	private int to = EpochDay.NONE;
+	private boolean lateOnly;
+
+	/*
+	 * @param	state	the HireState class (PaymentPending, Active, Late or
+	 * 					Complete). null for any state.
+	 * @return	a copy of the query, selecting hires in the state.
+	 */
+	public HireQuery withState(Class<? extends HireState> state)
+	{
+		HireQuery query = (HireQuery) copy();
+		query.state = state;
+		return query;
+	}
+
+	/*
+	 * @param	custNo	the customer's number. -1 for any customer.
+	 * @return	a copy of the query, selecting the customer's hires.
+	 */
+	public HireQuery withCustomer(int custNo)
+	{
+		HireQuery query = (HireQuery) copy();
+		query.custNo = custNo;
+		return query;
+	}
+
+	/*
+	 * @param	from	the first start day. EpochDay.NONE for no first day.
+	 * @param	to		the last start day. EpochDay.NONE for no last day.
+	 * @return	a copy of the query, selecting hires started in the range.
+	 */
+	public HireQuery withStartBetween(int from, int to)
+	{
+		HireQuery query = (HireQuery) copy();
+		query.from = from;
+		query.to = to;
+		return query;
+	}
+
+	/*
+	 * @param	lateOnly	true to select only hires that are late or were
+	 * 						returned late.
+	 * @return	a copy of the query.
+	 */
+	public HireQuery withLateOnly(boolean lateOnly)
+	{
+		HireQuery query = (HireQuery) copy();
+		query.lateOnly = lateOnly;
+		return query;
+	}
+
+	@Override
+	public boolean isFiltered()
+	{
+		return super.isFiltered() || state != null || custNo != -1 || from != EpochDay.NONE
+				|| to != EpochDay.NONE || lateOnly;
+	}
+
+	protected IndexedList<Hire> list()
+	{
+		return Controller.getInstance().getHires();
+	}
+
+	@Override
+	protected int[] candidates()
+	{
+		if (custNo == -1)
+			return null;
+
+		return Controller.getInstance().selectHires(custNo);
+	}
+
+	@Override
+	protected boolean isEmpty()
+	{
+		return state != null && Controller.getInstance().getNoOfHires(state) == 0;
+	}
+
+	protected boolean accepts(Hire hire)
+	{
+		if (state != null && !state.isInstance(hire.getState()))
+			return false;
+
+		if (custNo != -1 && hire.getCustomer().getCustNo() != custNo)
+			return false;
+
+		if (!within(hire.getStartDay(), from, to))
+			return false;
+
+		return !lateOnly || hire.getState() instanceof Late || hire.getReturnedDay() > hire.getEndDay();
+	}
+
+	protected int key(Hire hire, int column)
+	{
+		switch (column)
+		{
+		case HIRE_NO:
+			return hire.getHireNo();
+		case CUSTOMER:
+			return hire.getCustomer().getCustNo();
+		case BIKE:
+			return hire.getBike().getBikeNo();
+		case START:
+			return hire.getStartDay();
+		case END:
+			return hire.getEndDay();
+		case RETURNED:
+			// Hires not yet returned after those that have been
+			return hire.getReturnedDay() == EpochDay.NONE ? Integer.MAX_VALUE : hire.getReturnedDay();
+		default:
+			return hire.getState().getCode();
+		}
+	}
+
+}
@@ -0,0 +1,128 @@
+package controller.query;
+
+import model.hire.EpochDay;
+import controller.Controller;
+import controller.index.HireHistory;
+
+/**
+ * InvoiceInQuery selects returned hires from the HireHistory by
+ * customer, return date and whether they were returned late, and sorts
+ * them by the columns of the incoming invoices table. Rows are read
+ * from the history's columns through a cursor, without making a Hire
+ * or InvoiceIn for any of them, and a customer's returns are found
+ * through the hires' index by customer, so only they are read.
+ */
+public class InvoiceInQuery extends Query
+{
+	// Columns
+	public static final int INVOICE_NO = 0;
+	public static final int HIRE_NO = 1;
+	public static final int CUSTOMER = 2;
+	public static final int BIKE = 3;
+	public static final int DAYS_LATE = 4;
+	public static final int LATE_FEE = 5;
+	public static final int DAMAGED = 6;
+
+	private int custNo = -1;
+	private int from = EpochDay.NONE;
+	private int to = EpochDay.NONE;
+	private boolean lateOnly;
+
+	// Opened as each run starts
+	private HireHistory.Row cursor;
+
+	/*
+	 * @param	custNo	the customer's number. -1 for any customer.
+	 * @return	a copy of the query, selecting the customer's returns.
+	 */
+	public InvoiceInQuery withCustomer(int custNo)
+	{
+		InvoiceInQuery query = (InvoiceInQuery) copy();
+		query.custNo = custNo;
+		return query;
+	}
+
+	/*
+	 * @param	from	the first return day. EpochDay.NONE for no first day.
+	 * @param	to		the last return day. EpochDay.NONE for no last day.
+	 * @return	a copy of the query, selecting hires returned in the range.
+	 */
+	public InvoiceInQuery withReturnedBetween(int from, int to)
+	{
+		InvoiceInQuery query = (InvoiceInQuery) copy();
+		query.from = from;
+		query.to = to;
+		return query;
+	}
+
+	/*
+	 * @param	lateOnly	true to select only hires returned late.
+	 * @return	a copy of the query.
+	 */
+	public InvoiceInQuery withLateOnly(boolean lateOnly)
+	{
+		InvoiceInQuery query = (InvoiceInQuery) copy();
+		query.lateOnly = lateOnly;
+		return query;
+	}
+
+	@Override
+	public boolean isFiltered()
+	{
+		return super.isFiltered() || custNo != -1 || from != EpochDay.NONE || to != EpochDay.NONE
+				|| lateOnly;
+	}
+
+	protected int open()
+	{
+		HireHistory history = Controller.getInstance().getHireHistory();
+		cursor = history.row();
+		return history.size();
+	}
+
+	@Override
+	protected int[] candidates()
+	{
+		if (custNo == -1)
+			return null;
+
+		return Controller.getInstance().selectReturns(custNo);
+	}
+
+	protected boolean accepts(int row)
+	{
+		cursor.moveTo(row);
+
+		if (custNo != -1 && cursor.getCustomerNo() != custNo)
+			return false;
+
+		if (lateOnly && !cursor.isLate())
+			return false;
+
+		return within(cursor.getReturnedDay(), from, to);
+	}
+
+	protected int key(int row, int column)
+	{
+		cursor.moveTo(row);
+
+		switch (column)
+		{
+		case INVOICE_NO:
+			return cursor.getInvoiceNo();
+		case HIRE_NO:
+			return cursor.getHireNo();
+		case CUSTOMER:
+			return cursor.getCustomerNo();
+		case BIKE:
+			return cursor.getBikeNo();
+		case DAYS_LATE:
+			return cursor.getDaysLate();
+		case LATE_FEE:
+			return (int) Math.min(Integer.MAX_VALUE, cursor.getLateFee());
+		default:
+			return cursor.wasBikeDamaged() ? 1 : 0;
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+package controller.query;
+
+import model.hire.EpochDay;
+import model.hire.Hire;
+import model.invoice.InvoiceOut;
+import controller.Controller;
+import controller.index.IndexedList;
+
+/**
+ * InvoiceOutQuery selects outgoing invoices by customer and the start
+ * date of their hire, and sorts them by the columns of the invoices
+ * table. A customer's invoices are found through the hires' index by
+ * customer and the invoices' index by hire, so only they are read.
+ */
+public class InvoiceOutQuery extends EntityQuery<InvoiceOut>
+{
+	// Columns
+	public static final int INVOICE_NO = 0;
+	public static final int HIRE_NO = 1;
+	public static final int CUSTOMER = 2;
+	public static final int BIKE = 3;
+	public static final int COST = 4;
+	public static final int DEPOSIT = 5;
+	public static final int TOTAL = 6;
+
+	private int custNo = -1;
+	private int from = EpochDay.NONE;
+	private int to = EpochDay.NONE;
+
+	/*
+	 * @param	custNo	the customer's number. -1 for any customer.
+	 * @return	a copy of the query, selecting the customer's invoices.
+	 */
+	public InvoiceOutQuery withCustomer(int custNo)
+	{
+		InvoiceOutQuery query = (InvoiceOutQuery) copy();
+		query.custNo = custNo;
+		return query;
+	}
+
+	/*
+	 * @param	from	the first start day. EpochDay.NONE for no first day.
+	 * @param	to		the last start day. EpochDay.NONE for no last day.
+	 * @return	a copy of the query, selecting invoices for hires started
+	 * 			in the range.
+	 */
+	public InvoiceOutQuery withStartBetween(int from, int to)
+	{
+		InvoiceOutQuery query = (InvoiceOutQuery) copy();
+		query.from = from;
+		query.to = to;
+		return query;
+	}
+
+	@Override
+	public boolean isFiltered()
+	{
+		return super.isFiltered() || custNo != -1 || from != EpochDay.NONE || to != EpochDay.NONE;
+	}
+
+	protected IndexedList<InvoiceOut> list()
+	{
+		return Controller.getInstance().getInvoicesOut();
+	}
+
+	@Override
+	protected int[] candidates()
+	{
+		if (custNo == -1)
+			return null;
+
+		return Controller.getInstance().selectInvoicesOut(custNo);
+	}
+
+	protected boolean accepts(InvoiceOut invoice)
+	{
+		Hire hire = invoice.getHire();
+
+		if (custNo != -1 && hire.getCustomer().getCustNo() != custNo)
+			return false;
+
+		return within(hire.getStartDay(), from, to);
+	}
+
+	protected int key(InvoiceOut invoice, int column)
+	{
+		switch (column)
+		{
+		case INVOICE_NO:
+			return invoice.getInvoiceNo();
+		case HIRE_NO:
+			return invoice.getHireNo();
+		case CUSTOMER:
+			return invoice.getHire().getCustomer().getCustNo();
+		case BIKE:
+			return invoice.getHire().getBike().getBikeNo();
+		case COST:
+			return pence(invoice.getCostPence());
+		case DEPOSIT:
+			return pence(invoice.getDepositPence());
+		default:
+			return pence(invoice.getTotalPence());
+		}
+	}
+
+	private static int pence(long amount)
+	{
+		return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, amount));
+	}
+
+}
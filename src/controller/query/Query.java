@@ -0,0 +1,261 @@
+package controller.query;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import model.hire.EpochDay;
+
+/**
+ * Query selects the rows of one of the Controller's lists that pass a
+ * set of filters, and sorts them by a column. Rows are identified by
+ * their position in the list, so a view can read each row of a page
+ * straight from the list, and only the rows in view are ever read.
+ *
+ * Each column sorts by an int key taken from the row, e.g. a number or
+ * a day, or the rank of its text among the texts of the rows selected.
+ * The keys are computed once per run and sorted packed with the row's
+ * place in list order, so rows with equal keys stay in list order.
+ *
+ * A query may find the rows that can pass its filters from an index,
+ * in which case only those rows are read and checked.
+ *
+ * A query is not changed once made: with...() and sortedBy(...) return
+ * changed copies, so a query may be run on one thread while another
+ * makes the next. A run reads the list as it is when the run starts.
+ */
+public abstract class Query implements Cloneable
+{
+	public static final int UNSORTED = -1;
+
+	private int sortColumn = UNSORTED;
+	private boolean descending;
+
+	/*
+	 * Called once at the start of each run, before any rows are read.
+	 *
+	 * @return	the number of rows in the list.
+	 */
+	protected abstract int open();
+
+	/*
+	 * @param	row	the row's position in the list.
+	 * @return	true if the row passes the filters.
+	 */
+	protected abstract boolean accepts(int row);
+
+	/*
+	 * @param	row		the row's position in the list.
+	 * @param	column	a column that is not text.
+	 * @return	the row's sort key for the column.
+	 */
+	protected abstract int key(int row, int column);
+
+	/*
+	 * @return	true if the column sorts by text, read with text(int, int).
+	 */
+	protected boolean isText(int column)
+	{
+		return false;
+	}
+
+	/*
+	 * @param	row		the row's position in the list.
+	 * @param	column	a text column.
+	 * @return	the row's text for the column. null sorts first.
+	 */
+	protected String text(int row, int column)
+	{
+		return null;
+	}
+
+	/*
+	 * @return	the positions of the only rows that may pass the filters,
+	 * 			in order, as found from an index. null to read every row.
+	 */
+	protected int[] candidates()
+	{
+		return null;
+	}
+
+	/*
+	 * @return	true if no row can pass the filters, so that none need
+	 * 			be read, e.g. when none is in the state asked for.
+	 */
+	protected boolean isEmpty()
+	{
+		return false;
+	}
+
+	/*
+	 * @param	column		the column to sort by, or UNSORTED to keep the
+	 * 						list's order.
+	 * @param	descending	true to sort the highest first.
+	 * @return	a copy of the query, sorted by the column.
+	 */
+	public Query sortedBy(int column, boolean descending)
+	{
+		Query query = copy();
+		query.sortColumn = column;
+		query.descending = descending;
+		return query;
+	}
+
+	public int getSortColumn()
+	{
+		return sortColumn;
+	}
+
+	public boolean isDescending()
+	{
+		return descending;
+	}
+
+	/*
+	 * @return	true if the query selects or orders rows other than all
+	 * 			of them in list order.
+	 */
+	public boolean isFiltered()
+	{
+		return sortColumn != UNSORTED;
+	}
+
+	/*
+	 * Selects and sorts the rows.
+	 *
+	 * @return	the positions of the rows selected, in order.
+	 */
+	public QueryResult run()
+	{
+		int size = open();
+
+		if (isEmpty())
+			return new QueryResult(new int[0]);
+
+		int[] candidates = candidates();
+		int[] rows = new int[candidates == null ? size : candidates.length];
+		int count = 0;
+
+		if (candidates == null)
+		{
+			for (int row = 0; row < size; row++)
+				if (accepts(row))
+					rows[count++] = row;
+		}
+		else
+		{
+			for (int row : candidates)
+				if (row < size && accepts(row))
+					rows[count++] = row;
+		}
+
+		rows = Arrays.copyOf(rows, count);
+
+		if (sortColumn != UNSORTED)
+			sort(rows);
+
+		return new QueryResult(rows);
+	}
+
+	/*
+	 * Sorts rows in place by the sort column.
+	 */
+	private void sort(int[] rows)
+	{
+		int[] keys = isText(sortColumn) ? ranks(rows) : null;
+		long[] keyed = new long[rows.length];
+
+		for (int i = 0; i < rows.length; i++)
+		{
+			int key = keys == null ? key(rows[i], sortColumn) : keys[i];
+
+			if (descending)
+				key = ~key;
+
+			// Signed keys flipped to sort as unsigned, above the place
+			keyed[i] = ((long) (key ^ Integer.MIN_VALUE) << 32) | i;
+		}
+
+		Arrays.sort(keyed);
+		int[] sorted = new int[rows.length];
+
+		for (int i = 0; i < rows.length; i++)
+			sorted[i] = rows[(int) keyed[i]];
+
+		System.arraycopy(sorted, 0, rows, 0, rows.length);
+	}
+
+	/*
+	 * Ranks the distinct texts of the rows, so that each row sorts by
+	 * the rank of its text. Rows often share texts (towns, surnames),
+	 * so only the distinct texts are sorted.
+	 */
+	private int[] ranks(int[] rows)
+	{
+		String[] texts = new String[rows.length];
+		Map<String, Integer> ranks = new HashMap<String, Integer>();
+
+		for (int i = 0; i < rows.length; i++)
+		{
+			texts[i] = text(rows[i], sortColumn);
+
+			if (texts[i] != null)
+				ranks.put(texts[i], 0);
+		}
+
+		String[] distinct = ranks.keySet().toArray(new String[ranks.size()]);
+		Arrays.sort(distinct);
+
+		for (int r = 0; r < distinct.length; r++)
+			ranks.put(distinct[r], r);
+
+		int[] keys = new int[rows.length];
+
+		for (int i = 0; i < rows.length; i++)
+			keys[i] = texts[i] == null ? -1 : ranks.get(texts[i]);
+
+		return keys;
+	}
+
+	/*
+	 * @return	a copy of the query, to be changed by a subclass's with...()
+	 * 			methods.
+	 */
+	protected Query copy()
+	{
+		try
+		{
+			return (Query) clone();
+		} catch (CloneNotSupportedException e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	/*
+	 * @param	day		an epoch day.
+	 * @param	from	the first day of the range. EpochDay.NONE for no
+	 * 					first day.
+	 * @param	to		the last day of the range. EpochDay.NONE for no
+	 * 					last day.
+	 * @return	true if the day falls within the range.
+	 */
+	protected static boolean within(int day, int from, int to)
+	{
+		return (from == EpochDay.NONE || day >= from) && (to == EpochDay.NONE || day <= to);
+	}
+
+	/*
+	 * Ranks the codes of a dictionary by their values, for sorting by an
+	 * attribute. The null code ranks first.
+	 *
+	 * @param	ranks	the dictionary's ranks, from AttributeDictionary#ranks().
+	 * @param	code	an attribute's code.
+	 * @return	the code's sort key.
+	 */
+	protected static int rank(int[] ranks, int code)
+	{
+		return code >= 0 && code < ranks.length ? ranks[code] : -1;
+	}
+
+}
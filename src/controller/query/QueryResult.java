@@ -0,0 +1,49 @@
+package controller.query;
+
+import java.util.Arrays;
+
+/**
+ * QueryResult holds the positions of the rows a Query selected, in
+ * order, and hands them out a page at a time.
+ */
+public class QueryResult
+{
+	private final int[] rows;
+
+	QueryResult(int[] rows)
+	{
+		this.rows = rows;
+	}
+
+	/*
+	 * @return	the number of rows selected.
+	 */
+	public int size()
+	{
+		return rows.length;
+	}
+
+	/*
+	 * @param	index	the row's place in the result, from 0.
+	 * @return	the row's position in the list.
+	 */
+	public int row(int index)
+	{
+		return rows[index];
+	}
+
+	/*
+	 * @param	from	the place of the first row, from 0.
+	 * @param	count	the most rows to return.
+	 * @return	the positions of the rows from the place given, fewer
+	 * 			than count if the result ends first.
+	 */
+	public int[] page(int from, int count)
+	{
+		if (from < 0 || from >= rows.length)
+			return new int[0];
+
+		return Arrays.copyOfRange(rows, from, Math.min(rows.length, from + count));
+	}
+
+}
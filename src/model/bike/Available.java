@@ -11,43 +11,45 @@ public class Available implements BikeState, Serializable
 {
 
 	private static final long serialVersionUID = 1L;
-	private Bike bike;
-	
-	
-	/* 
-	 * Constructs an Available state object.
-	 * 
-	 * @param	bike	the bike that is currently Available.
+
+	/*
+	 * The code that identifies this state.
 	 */
-	public Available(Bike bike) 
+	public static final int CODE = 0;
+
+	/*
+	 * The shared Available state.
+	 */
+	public static final Available STATE = new Available();
+
+	private Available()
 	{
-		this.bike = bike;
+
 	}
 
 	/* 
 	 * Represents an Available bike being collected. The
 	 * bike's state is changed to OnHire.
 	 *
-	 * @see 	bike.BikeState#collectBike()
-	 * @return	only returns true; the bike is available 
-	 * 			for collection.
+	 * @see 	bike.BikeState#collectBike(Bike)
+	 * @return	true; the bike is available for collection.
+	 * 			false only if its state changed meanwhile.
 	 */
-	public boolean collectBike() 
+	public boolean collectBike(Bike bike) 
 	{
-		bike.setState(new OnHire(bike));
-		return true;
+		return bike.transition(this, OnHire.STATE);
 	}
 
 	/* 
 	 * Denies the return of the bike because a bike can 
 	 * only be returned after it has been collected.
 	 *
-	 * @see 	bike.BikeState#returnBike(boolean)
+	 * @see 	bike.BikeState#returnBike(Bike, boolean)
 	 * @param	isDamaged	insignificant. 
 	 * @return	only returns false; the bike has not yet
 	 * 			been collected
 	 */
-	public boolean returnBike(boolean isDamaged) 
+	public boolean returnBike(Bike bike, boolean isDamaged) 
 	{
 		return false;
 	}
@@ -68,14 +70,27 @@ public class Available implements BikeState, Serializable
 	 * Disallows a bike from being repaired. The bike is not
 	 * currently damaged and therefore does not need repairing.
 	 * 
-	 * @see 	bike.BikeState#repairBike()
+	 * @see 	bike.BikeState#repairBike(Bike)
 	 * @return 	only returns false; the bike does not need repairing.
 	 */
-	public boolean repairBike()
+	public boolean repairBike(Bike bike)
 	{
 		return false;
 	}
 	
+	public int getCode()
+	{
+		return CODE;
+	}
+	
+	/*
+	 * Keeps the state shared when it is deserialized.
+	 */
+	private Object readResolve()
+	{
+		return STATE;
+	}
+	
 	/* 
 	 * @see 	java.lang.Object#toString()
 	 * @return	A String describing this particular bike state
@@ -1,8 +1,14 @@
 package model.bike;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import controller.Controller;
+import controller.index.AttributeDictionary;
+import model.invoice.Money;
 
 /**
  * Bike is a serializable class representing a bike.
@@ -12,27 +18,56 @@ import controller.Controller;
  * class, which assists in generating each bike's 
  * unique ID. 
  * 
- * Implements the BikeState interface. Bike is the context
- * class of the bike state pattern, therefore its behaviour 
- * can change depending on its current state.
+ * Bike is the context class of the bike state pattern, 
+ * therefore its behaviour can change depending on its 
+ * current state. The states are shared between bikes, 
+ * so each call passes this bike to the current state.
+ * 
+ * Changes of state are made by compare-and-set, so a bike
+ * can be reserved, collected and returned from several 
+ * threads without a lock: of two desks reserving the same
+ * bike, exactly one succeeds.
+ * 
+ * The descriptive attributes (make, model, function, demographic 
+ * and colour) are held as codes into the shared attribute 
+ * dictionaries, so each distinct value is held once across the 
+ * fleet, and bikes can be compared and grouped by them as ints.
  */
-public class Bike implements Serializable, BikeState
+public class Bike implements Serializable
 {
 	
 	private static final long serialVersionUID = 1L; 
 	private transient Controller controller; 
 	
+	/*
+	 * The transitions the states may make, indexed by state code: bit n
+	 * is set if a bike may move from that state to the state with code n.
+	 */
+	private static final int[] TRANSITIONS = new int[4];
+	
+	static
+	{
+		TRANSITIONS[Available.CODE] = 1 << OnHire.CODE | 1 << Reserved.CODE;
+		TRANSITIONS[OnHire.CODE] = 1 << Available.CODE | 1 << Damaged.CODE;
+		TRANSITIONS[Damaged.CODE] = 1 << Available.CODE;
+		TRANSITIONS[Reserved.CODE] = 1 << Available.CODE | 1 << OnHire.CODE;
+	}
+	
+	private static final AtomicReferenceFieldUpdater<Bike, BikeState> STATE = 
+			AtomicReferenceFieldUpdater.newUpdater(Bike.class, BikeState.class, "currentState");
+	
 	// Bike attributes
 	private String bikeID; 
 	private int bikeNo; 
-	private String make;
-	private String model;
-	private String function;
-	private String demographic;
-	private String colour;
-	private double dailyRate; 
-	private double deposit; 
-	private BikeState currentState; 
+	private transient int make;
+	private transient int model;
+	private transient int function;
+	private transient int demographic;
+	private transient int colour;
+	private long dailyRate; 
+	private long deposit; 
+	private volatile BikeState currentState; 
+	private transient volatile BikeStateListener stateListener;
 
 	/*
 	 * Constructs a Bike with a unique bikeID and sets its current state to Available.
@@ -57,19 +92,38 @@ public class Bike implements Serializable, BikeState
 		setColour(colour);
 		setDailyRate(dailyRate);
 		setDeposit(deposit);
-		setState(new Available(this));
+		setState(Available.STATE);
 	}
 
 	/*
-	 * Gets and increments the bikeNo of the last bike 
-	 * added to the controller, then uses it to generate 
+	 * Restores a persisted bike with the bike number it was originally
+	 * given. Its state is Available until restored separately.
+	 */
+	public Bike(int bikeNo, String make, String model, String function, String demographic,
+				String colour, double dailyRate, double deposit)
+	{
+		this.bikeNo = bikeNo;
+		bikeID = "BIKE" + bikeNo;
+		setMake(make);
+		setModel(model);
+		setFunction(function);
+		setDemographic(demographic);
+		setColour(colour);
+		setDailyRate(dailyRate);
+		setDeposit(deposit);
+		setState(Available.STATE);
+	}
+
+	/*
+	 * Allocates the next bikeNo from the controller, 
+	 * then uses it to generate 
 	 * and assign a unique bikeID.
 	 * 
-	 * @see 	controller.Controller#getLastBikeNo()
+	 * @see 	controller.Controller#nextBikeNo()
 	 */
 	private void generateBikeID() 
 	{
-		bikeNo = controller.getLastBikeNo() + 1;
+		bikeNo = controller.nextBikeNo();
 		bikeID = "BIKE" + bikeNo;
 	}
 	
@@ -87,78 +141,132 @@ public class Bike implements Serializable, BikeState
 	}
 	
 	public String getMake()
+	{
+		return AttributeDictionary.BIKE_MAKES.value(make);
+	}
+
+	/*
+	 * @return	the make's code in AttributeDictionary.BIKE_MAKES.
+	 */
+	public int getMakeCode()
 	{
 		return make;
 	}
 
 	public void setMake(String make)
 	{
-		this.make = make;
+		this.make = AttributeDictionary.BIKE_MAKES.code(make);
 	}
 
 	public String getModel()
+	{
+		return AttributeDictionary.BIKE_MODELS.value(model);
+	}
+
+	public int getModelCode()
 	{
 		return model;
 	}
 
 	public void setModel(String model)
 	{
-		this.model = model;
+		this.model = AttributeDictionary.BIKE_MODELS.code(model);
 	}
 
 	public String getFunction()
+	{
+		return AttributeDictionary.BIKE_FUNCTIONS.value(function);
+	}
+
+	public int getFunctionCode()
 	{
 		return function;
 	}
 
 	public void setFunction(String function)
 	{
-		this.function = function;
+		this.function = AttributeDictionary.BIKE_FUNCTIONS.code(function);
 	}
 
 	public String getDemographic()
+	{
+		return AttributeDictionary.BIKE_DEMOGRAPHICS.value(demographic);
+	}
+
+	public int getDemographicCode()
 	{
 		return demographic;
 	}
 
 	public void setDemographic(String demographic)
 	{
-		this.demographic = demographic;
+		this.demographic = AttributeDictionary.BIKE_DEMOGRAPHICS.code(demographic);
 	}
 
 	public String getColour()
+	{
+		return AttributeDictionary.BIKE_COLOURS.value(colour);
+	}
+
+	public int getColourCode()
 	{
 		return colour;
 	}
 
 	public void setColour(String colour)
 	{
-		this.colour = colour;
+		this.colour = AttributeDictionary.BIKE_COLOURS.code(colour);
 	}
 
 
 	public double getDailyRate()
 	{
-		return dailyRate;
+		return Money.toPounds(dailyRate);
 	}
 	
 	/*
 	 * @param 	dailyRate Cost of hiring this bike for 1 day (in £'s)
 	 */
 	public void setDailyRate(double dailyRate)
+	{
+		this.dailyRate = Money.of(dailyRate);
+	}
+
+	/*
+	 * @return	Cost of hiring this bike for 1 day (in pence)
+	 */
+	public long getDailyRatePence()
+	{
+		return dailyRate;
+	}
+
+	public void setDailyRatePence(long dailyRate)
 	{
 		this.dailyRate = dailyRate;
 	}
 
 	public double getDeposit()
 	{
-		return deposit;
+		return Money.toPounds(deposit);
 	}
 	
 	/*
 	 * @param 	deposit	Fixed deposit amount (in £'s)
 	 */
 	public void setDeposit(double deposit)
+	{
+		this.deposit = Money.of(deposit);
+	}
+
+	/*
+	 * @return	Fixed deposit amount (in pence)
+	 */
+	public long getDepositPence()
+	{
+		return deposit;
+	}
+
+	public void setDepositPence(long deposit)
 	{
 		this.deposit = deposit;
 	}
@@ -168,7 +276,8 @@ public class Bike implements Serializable, BikeState
 	 */
 	public String getDescription()
 	{
-		return make + " " + model + ", " + demographic + "'s " + function + " bike in " + colour;
+		return getMake() + " " + getModel() + ", " + getDemographic() + "'s " + getFunction()
+				+ " bike in " + getColour();
 	}
 	
 	/*
@@ -178,20 +287,122 @@ public class Bike implements Serializable, BikeState
 	 */
 	public String getStatus()
 	{
-		return currentState.toString();
+		return getState().toString();
 	}
 	
 	/*
+	 * A reservation that has expired is released here, so the bike 
+	 * is seen as available as soon as its reservation runs out.
+	 * 
 	 * @return	The bike's current state (Available, OnHire etc.)
 	 */
 	public BikeState getState()
 	{
-		return currentState;
+		BikeState state = currentState;
+		
+		if (state instanceof Reserved && ((Reserved) state).hasExpired())
+		{
+			transition(state, Available.STATE);
+			state = currentState;
+		}
+		
+		return state;
 	}
 	
 	public void setState(BikeState state)
 	{
-		currentState = state;
+		BikeState previous = STATE.getAndSet(this, state);
+		
+		if (stateListener != null)
+			stateListener.bikeStateChanged(this, previous, state);
+	}
+	
+	/*
+	 * Changes state as the current state's behaviour requires, provided
+	 * the bike is still in the state the change was decided in. Unlike
+	 * setState(BikeState), the change must be one the bike state 
+	 * machine allows.
+	 * 
+	 * @param	from	the state the bike is expected to be in.
+	 * @param	to		the state to change to.
+	 * @return	true if the state was changed. false if the bike had 
+	 * 			already left the expected state.
+	 * @throws	IllegalStateException	if the expected state may not 
+	 * 									change to the state given.
+	 */
+	boolean transition(BikeState from, BikeState to)
+	{
+		if ((TRANSITIONS[from.getCode()] & 1 << to.getCode()) == 0)
+			throw new IllegalStateException("A bike cannot go from " + from 
+					+ " to " + to);
+		
+		if (!STATE.compareAndSet(this, from, to))
+			return false;
+		
+		if (stateListener != null)
+			stateListener.bikeStateChanged(this, from, to);
+		
+		return true;
+	}
+	
+	/*
+	 * Reserves the bike for a hire awaiting payment, if it is available.
+	 * The reservation is released if the bike is not collected in time.
+	 * 
+	 * @param	millis	how long the reservation lasts.
+	 * @return	the reservation, with which to collect or release the 
+	 * 			bike. null if the bike is not available.
+	 */
+	public Reserved reserve(long millis)
+	{
+		BikeState state = getState();
+		
+		if (!(state instanceof Available))
+			return null;
+		
+		Reserved reservation = new Reserved(millis);
+		
+		if (!transition(state, reservation))
+			return null;
+		
+		return reservation;
+	}
+	
+	/*
+	 * Collects a reserved bike. 
+	 * 
+	 * @param	reservation	the reservation made with reserve(long).
+	 * @return	true if the bike was collected. false if the 
+	 * 			reservation had expired or been released.
+	 */
+	public boolean collect(Reserved reservation)
+	{
+		if (reservation.hasExpired())
+			return false;
+		
+		return transition(reservation, OnHire.STATE);
+	}
+	
+	/*
+	 * Releases a reservation, making the bike available again.
+	 * 
+	 * @param	reservation	the reservation made with reserve(long).
+	 * @return	true if the reservation was released. false if it had
+	 * 			already expired, been released or been collected.
+	 */
+	public boolean release(Reserved reservation)
+	{
+		return transition(reservation, Available.STATE);
+	}
+	
+	/*
+	 * Sets the listener to be notified of every change of state.
+	 * 
+	 * @param	listener	the listener. null to stop notifications.
+	 */
+	public void setStateListener(BikeStateListener listener)
+	{
+		stateListener = listener;
 	}
 	
 	/*
@@ -202,7 +413,7 @@ public class Bike implements Serializable, BikeState
 	 */
 	public boolean collectBike() 
 	{
-		return currentState.collectBike();
+		return getState().collectBike(this);
 	}
 
 	/*
@@ -215,7 +426,7 @@ public class Bike implements Serializable, BikeState
 	 */
 	public boolean returnBike(boolean isDamaged) 
 	{
-		return currentState.returnBike(isDamaged);
+		return getState().returnBike(this, isDamaged);
 	}
 	
 	/*
@@ -226,7 +437,7 @@ public class Bike implements Serializable, BikeState
 	 */
 	public boolean isDamaged()
 	{
-		return currentState.isDamaged();
+		return getState().isDamaged();
 	}
 	
 	/*
@@ -237,6 +448,32 @@ public class Bike implements Serializable, BikeState
 	 */
 	public boolean repairBike()
 	{
-		return currentState.repairBike();
+		return getState().repairBike(this);
+	}
+
+	/*
+	 * Codes are only meaningful within one run of the application,
+	 * so the attributes are serialized as their values.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException
+	{
+		out.defaultWriteObject();
+		out.writeObject(getMake());
+		out.writeObject(getModel());
+		out.writeObject(getFunction());
+		out.writeObject(getDemographic());
+		out.writeObject(getColour());
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException
+	{
+		in.defaultReadObject();
+		setMake((String) in.readObject());
+		setModel((String) in.readObject());
+		setFunction((String) in.readObject());
+		setDemographic((String) in.readObject());
+		setColour((String) in.readObject());
 	}
-}
\ No newline at end of file
+
+}
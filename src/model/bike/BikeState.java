@@ -4,6 +4,10 @@ package model.bike;
  * BikeState is an interface that encapsulates 
  * the behaviour associated with the states of 
  * a particular Bike.
+ * 
+ * BikeState objects hold no bike of their own: each state has a
+ * single shared instance, and the bike it acts on is passed in.
+ * The exception is Reserved, each instance of which is a reservation.
  */
 public interface BikeState 
 {
@@ -13,32 +17,35 @@ public interface BikeState
 	 * bike's status should be altered accordingly 
 	 * after collection.
 	 * 
+	 * @param	bike	the bike in this state.
 	 * @return 	true if the bike can be (and is) collected successfully.
 	 * 			false otherwise.
 	 */
-	public boolean collectBike();
+	public boolean collectBike(Bike bike);
 	
 	/*
 	 * Represents a hired bike being returned. The 
 	 * bike's status should be altered accordingly 
 	 * after return. 
 	 * 
+	 * @param	bike		the bike in this state.
 	 * @param	isDamaged	true if the bike has been been returned damaged.
 	 * 						false otherwise.
 	 * @return 	true if the bike can be (and is) returned successfully.
 	 * 			false otherwise.
 	 */
-	public boolean returnBike(boolean isDamaged);
+	public boolean returnBike(Bike bike, boolean isDamaged);
 	
 	/*
 	 * Represents a damaged bike being repaired. The 
 	 * bike's status should be altered accordingly 
 	 * after a successful repair. 
 	 * 
+	 * @param	bike	the bike in this state.
 	 * @return 	true if the bike can be (and is) repaired successfully.
 	 * 			false otherwise.
 	 */
-	public boolean repairBike();
+	public boolean repairBike(Bike bike);
 	
 	/*
 	 * Determines if a bike is currently damaged or not.
@@ -47,5 +54,11 @@ public interface BikeState
 	 * 			false otherwise.
 	 */
 	public boolean isDamaged();
+	
+	/*
+	 * @return	the code identifying this state: 0 to 3, in the order
+	 * 			Available, OnHire, Damaged, Reserved.
+	 */
+	public int getCode();
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,20 @@
+package model.bike;
+
+/**
+ * BikeStateListener is notified whenever a bike's 
+ * state is replaced.
+ */
+public interface BikeStateListener 
+{
+	/*
+	 * Called after a bike's state has been set. A bike's state 
+	 * may change on several threads, so by the time this is called
+	 * the bike may already hold a later state.
+	 * 
+	 * @param	bike		the bike.
+	 * @param	previous	the state the bike held before.
+	 * @param	state		the state the bike was given.
+	 */
+	public void bikeStateChanged(Bike bike, BikeState previous, BikeState state);
+
+}
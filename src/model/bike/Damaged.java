@@ -11,27 +11,31 @@ public class Damaged implements BikeState, Serializable
 {
 
 	private static final long serialVersionUID = 1L;
-	private Bike bike;
-	
-	/* 
-	 * Constructs an Damaged state object.
-	 * 
-	 * @param	bike	the bike that is currently damaged.
+
+	/*
+	 * The code that identifies this state.
 	 */
-	public Damaged(Bike bike) 
+	public static final int CODE = 2;
+
+	/*
+	 * The shared Damaged state.
+	 */
+	public static final Damaged STATE = new Damaged();
+
+	private Damaged()
 	{
-		this.bike = bike;
+
 	}
 
 	/* 
 	 * Denies the collection of the bike because if a bike
 	 * is currently damaged then it cannot be collected.
 	 *
-	 * @see 	bike.BikeState#collectBike(boolean)
+	 * @see 	bike.BikeState#collectBike(Bike)
 	 * @return	only returns false; the bike is not suitable 
 	 * 			for hiring.
 	 */
-	public boolean collectBike() 
+	public boolean collectBike(Bike bike) 
 	{
 		return false;
 	}
@@ -40,13 +44,13 @@ public class Damaged implements BikeState, Serializable
 	 * Denies the return of the bike because a bike can 
 	 * only be returned after it has been collected.
 	 *
-	 * @see 	bike.BikeState#returnBike(boolean)
+	 * @see 	bike.BikeState#returnBike(Bike, boolean)
 	 * @param	isDamaged	insignificant. 
 	 * @return	only returns false; the bike has not
 	 * 			been collected because it is currently 
 	 * 			damaged.
 	 */
-	public boolean returnBike(boolean isDamaged) 
+	public boolean returnBike(Bike bike, boolean isDamaged) 
 	{
 		return false;
 	}
@@ -66,14 +70,26 @@ public class Damaged implements BikeState, Serializable
 	 * Represents the damaged bike being repaired. Changes
 	 * the bike's state to Available.
 	 *
-	 * @see 	bike.BikeState#repairBike()
-	 * @return	only returns true; the bike is suitable 
-	 * 			for repair.
+	 * @see 	bike.BikeState#repairBike(Bike)
+	 * @return	true; the bike is suitable for repair.
+	 * 			false only if its state changed meanwhile.
 	 */
-	public boolean repairBike()
+	public boolean repairBike(Bike bike)
 	{
-		bike.setState(new Available(bike));
-		return true;
+		return bike.transition(this, Available.STATE);
+	}
+	
+	public int getCode()
+	{
+		return CODE;
+	}
+	
+	/*
+	 * Keeps the state shared when it is deserialized.
+	 */
+	private Object readResolve()
+	{
+		return STATE;
 	}
 	
 	/* 
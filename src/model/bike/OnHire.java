@@ -11,17 +11,20 @@ public class OnHire implements BikeState, Serializable
 {
 
 	private static final long serialVersionUID = 1L;
-	private Bike bike;
-	
 
-	/* 
-	 * Constructs an OnHire state object.
-	 * 
-	 * @param	bike	the bike that is currently on hire.
+	/*
+	 * The code that identifies this state.
 	 */
-	public OnHire(Bike bike) 
+	public static final int CODE = 1;
+
+	/*
+	 * The shared OnHire state.
+	 */
+	public static final OnHire STATE = new OnHire();
+
+	private OnHire()
 	{
-		this.bike = bike;
+
 	}
 
 	/* 
@@ -29,11 +32,11 @@ public class OnHire implements BikeState, Serializable
 	 * is currently on hire then it has already been 
 	 * collected.
 	 *
-	 * @see 	bike.BikeState#collectBike(boolean)
+	 * @see 	bike.BikeState#collectBike(Bike)
 	 * @return	only returns true; the bike is available 
 	 * 			for collection.
 	 */
-	public boolean collectBike() 
+	public boolean collectBike(Bike bike) 
 	{
 		return false;
 	}
@@ -43,19 +46,18 @@ public class OnHire implements BikeState, Serializable
 	 * the bike's state to Damaged or Available, as determined
 	 * by the condition the bike is returned in.
 	 *
-	 * @see 	bike.BikeState#returnBike(boolean)
+	 * @see 	bike.BikeState#returnBike(Bike, boolean)
 	 * @param	isDamaged	true if the bike has been been returned damaged.
 	 * 						false otherwise.
-	 * @return	only returns true; the bike can be returned
+	 * @return	true; the bike can be returned.
+	 * 			false only if its state changed meanwhile.
 	 */
-	public boolean returnBike(boolean isDamaged) 
+	public boolean returnBike(Bike bike, boolean isDamaged) 
 	{
 		if(isDamaged)
-			bike.setState(new Damaged(bike));
-		else
-			bike.setState(new Available(bike));
+			return bike.transition(this, Damaged.STATE);
 		
-		return true;
+		return bike.transition(this, Available.STATE);
 	}
 
 	/*
@@ -74,14 +76,27 @@ public class OnHire implements BikeState, Serializable
 	 * Disallows a bike from being repaired. The bike is not
 	 * currently damaged and therefore does not need repairing.
 	 * 
-	 * @see 	bike.BikeState#repairBike()
+	 * @see 	bike.BikeState#repairBike(Bike)
 	 * @return 	only returns false; the bike does not need repairing.
 	 */
-	public boolean repairBike()
+	public boolean repairBike(Bike bike)
 	{
 		return false;
 	}
 	
+	public int getCode()
+	{
+		return CODE;
+	}
+	
+	/*
+	 * Keeps the state shared when it is deserialized.
+	 */
+	private Object readResolve()
+	{
+		return STATE;
+	}
+	
 	/* 
 	 * @see java.lang.Object#toString()
 	 * @return	A String describing this particular bike state
@@ -0,0 +1,130 @@
+package model.bike;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reserved: a serializable class that implements the
+ * methods/behaviour associated with a bike that has been
+ * reserved for a hire awaiting payment.
+ *
+ * Unlike the other states, each Reserved object is a single
+ * reservation: only the desk holding it can collect the bike,
+ * and it expires if the bike is not collected in time.
+ *
+ * @see 	bike.Bike#reserve(long)
+ */
+public class Reserved implements BikeState, Serializable
+{
+
+	private static final long serialVersionUID = 1L;
+
+	/*
+	 * The code that identifies this state.
+	 */
+	public static final int CODE = 3;
+
+	private final long expiresAt;
+
+	/*
+	 * Constructs a reservation.
+	 *
+	 * @param	millis	how long the reservation lasts.
+	 */
+	Reserved(long millis)
+	{
+		expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	/*
+	 * @return	the System.nanoTime() at which the reservation runs out.
+	 */
+	public long getExpiresAt()
+	{
+		return expiresAt;
+	}
+
+	/*
+	 * @return	true if the reservation has run out.
+	 * 			false otherwise.
+	 */
+	public boolean hasExpired()
+	{
+		return System.nanoTime() - expiresAt >= 0;
+	}
+
+	/*
+	 * Denies the collection of the bike without its reservation.
+	 *
+	 * @see 	bike.BikeState#collectBike(Bike)
+	 * @see 	bike.Bike#collect(Reserved)
+	 * @return	only returns false; the bike is reserved.
+	 */
+	public boolean collectBike(Bike bike)
+	{
+		return false;
+	}
+
+	/*
+	 * Denies the return of the bike because a bike can
+	 * only be returned after it has been collected.
+	 *
+	 * @see 	bike.BikeState#returnBike(Bike, boolean)
+	 * @param	isDamaged	insignificant.
+	 * @return	only returns false; the bike has not yet
+	 * 			been collected
+	 */
+	public boolean returnBike(Bike bike, boolean isDamaged)
+	{
+		return false;
+	}
+
+	/*
+	 * Confirms that the bike is not currently damaged; because
+	 * it is currently reserved.
+	 *
+	 * @see 	bike.BikeState#isDamaged()
+	 * @return	only returns false; the bike is currently reserved.
+	 */
+	public boolean isDamaged()
+	{
+		return false;
+	}
+
+	/*
+	 * Disallows a bike from being repaired. The bike is not
+	 * currently damaged and therefore does not need repairing.
+	 *
+	 * @see 	bike.BikeState#repairBike(Bike)
+	 * @return 	only returns false; the bike does not need repairing.
+	 */
+	public boolean repairBike(Bike bike)
+	{
+		return false;
+	}
+
+	public int getCode()
+	{
+		return CODE;
+	}
+
+	/*
+	 * Reservations do not outlive the application: a reserved
+	 * bike is available again once deserialized.
+	 */
+	private Object readResolve()
+	{
+		return Available.STATE;
+	}
+
+	/*
+	 * @see 	java.lang.Object#toString()
+	 * @return	A String describing this particular bike state
+	 */
+	@Override
+	public String toString()
+	{
+		return "Reserved";
+	}
+
+}
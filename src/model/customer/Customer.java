@@ -1,8 +1,12 @@
 package model.customer;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 import controller.Controller;
+import controller.index.AttributeDictionary;
 
 /**
  * Customer is a serializable class representing a customer.
@@ -11,6 +15,9 @@ import controller.Controller;
  * keeps a reference to the system's Controller 
  * class, which assists in generating each customer's 
  * unique ID. 
+ * 
+ * The town is held as a code into the shared dictionary of 
+ * towns, as many customers share each town.
  */
 public class Customer implements Serializable
 {
@@ -24,7 +31,7 @@ public class Customer implements Serializable
 	private String firstName;
 	private String lastName;
 	private String addressLine1;
-	private String addressTown;
+	private transient int addressTown;
 	private String addressPostcode;
 
 	/* 
@@ -43,15 +50,31 @@ public class Customer implements Serializable
 	}
 
 	/*
-	 * Gets and increments the custNo of the last customer 
-	 * added to the controller, then uses it to generate 
+	 * Restores a persisted customer with the customer number it was
+	 * originally given.
+	 */
+	public Customer(int custNo, String firstName, String lastName,
+					String addressLine1, String addressTown, String addressPostcode)
+	{
+		this.custNo = custNo;
+		customerID = "CUST" + custNo;
+		setFirstName(firstName);
+		setLastName(lastName);
+		setAddressLine1(addressLine1);
+		setAddressTown(addressTown);
+		setAddressPostcode(addressPostcode);
+	}
+
+	/*
+	 * Allocates the next custNo from the controller, 
+	 * then uses it to generate 
 	 * and assign a unique customerID.
 	 * 
-	 * @see 	controller.Controller#getLastCustomerNo()
+	 * @see 	controller.Controller#nextCustomerNo()
 	 */
 	private void generateCustomerID() 
 	{
-		custNo = controller.getLastCustomerNo() + 1;
+		custNo = controller.nextCustomerNo();
 		customerID = "CUST" + custNo;
 	}
 	
@@ -99,13 +122,21 @@ public class Customer implements Serializable
 	}
 
 	public String getAddressTown()
+	{
+		return AttributeDictionary.CUSTOMER_TOWNS.value(addressTown);
+	}
+
+	/*
+	 * @return	the town's code in AttributeDictionary.CUSTOMER_TOWNS.
+	 */
+	public int getAddressTownCode()
 	{
 		return addressTown;
 	}
 
 	public void setAddressTown(String addressTown)
 	{
-		this.addressTown = addressTown;
+		this.addressTown = AttributeDictionary.CUSTOMER_TOWNS.code(addressTown);
 	}
 
 	public String getAddressPostcode()
@@ -123,7 +154,24 @@ public class Customer implements Serializable
 	 */
 	public String getAddressString()
 	{
-		return addressLine1 + ", " + addressTown + ", " + addressPostcode + ".";
+		return addressLine1 + ", " + getAddressTown() + ", " + addressPostcode + ".";
+	}
+
+	/*
+	 * Codes are only meaningful within one run of the application,
+	 * so the town is serialized as its value.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException
+	{
+		out.defaultWriteObject();
+		out.writeObject(getAddressTown());
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException
+	{
+		in.defaultReadObject();
+		setAddressTown((String) in.readObject());
 	}
 
 }
\ No newline at end of file
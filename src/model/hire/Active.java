@@ -1,8 +1,6 @@
 package model.hire;
 import java.io.Serializable;
 
-import org.joda.time.LocalDate;
-
 /**
  * Active is a serializable class that implements the 
  * methods/behaviour associated with a hire that is 
@@ -12,29 +10,31 @@ public class Active implements HireState, Serializable
 {
 
 	private static final long serialVersionUID = 1L;
-	private Hire hire;
-	
-	/* 
-	 * Constructs an Active state object. Changes the state
-	 * of the hired bike accordingly.
-	 * 
-	 * @param	hire	the hire that is currently active.
+
+	/*
+	 * The code that identifies this state.
 	 */
-	public Active(Hire hire) 
+	public static final int CODE = 1;
+
+	/*
+	 * The shared Active state.
+	 */
+	public static final Active STATE = new Active();
+
+	private Active()
 	{
-		this.hire = hire;
-		hire.getBike().collectBike();
+
 	}
 
 	/*
 	 * Denies payment for the hire because it has already been
 	 * paid for.
 	 * 
-	 * @see hire.HireState#payForHire()
+	 * @see hire.HireState#payForHire(Hire)
 	 * @return 	only returns false; the hire is not suitable 
 	 * 			for payment
 	 */
-	public boolean payForHire() 
+	public boolean payForHire(Hire hire) 
 	{
 		return false;
 	}
@@ -43,15 +43,15 @@ public class Active implements HireState, Serializable
 	 * Checks if a hire is late. The hire's status should be altered
 	 * if it is late.
 	 *
-	 * @see 	hire.HireState#isLate()
+	 * @see 	hire.HireState#isLate(Hire)
 	 * @return	true if the hire is currently late.
 	 * 			false otherwise.
 	 */
-	public boolean isLate() 
+	public boolean isLate(Hire hire) 
 	{
-		if (hire.getEndDate().isBefore(LocalDate.now()))
+		if (hire.getEndDay() < EpochDay.today())
 		{
-			hire.setState(new Late(hire));
+			hire.transition(Late.STATE);
 			return true;
 		}
 		return false;
@@ -62,17 +62,39 @@ public class Active implements HireState, Serializable
 	 * should be changed to Complete once the hire has been 
 	 * returned successfully.
 	 *
-	 * @see 	@see hire.HireState#returnHire(boolean)
+	 * @see 	@see hire.HireState#returnHire(Hire, boolean)
 	 * @param	bikeIsDamaged	true if the hired bike has been been returned damaged.
 	 * 							false otherwise.
 	 * @return	only returns true; the hire is suitable for return.
 	 */
-	public boolean returnHire(boolean bikeIsDamaged) 
+	public boolean returnHire(Hire hire, boolean bikeIsDamaged) 
 	{
-		hire.setState(new Complete(hire, bikeIsDamaged));
+		Complete.complete(hire, bikeIsDamaged);
 		return true;
 	}
 	
+	public int getCode()
+	{
+		return CODE;
+	}
+	
+	/*
+	 * Keeps the state shared when it is deserialized.
+	 */
+	private Object readResolve()
+	{
+		return STATE;
+	}
+	
+	/* 
+	 * @see 	hire.HireState#getStatus(Hire)
+	 * @return	A String describing the hire's state
+	 */
+	public String getStatus(Hire hire)
+	{
+		return toString();
+	}
+	
 	/* 
 	 * @see java.lang.Object#toString()
 	 * @return	A String describing this particular hire state
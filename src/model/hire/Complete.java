@@ -1,8 +1,6 @@
 package model.hire;
 import java.io.Serializable;
 
-import org.joda.time.LocalDate;
-
 
 /**
  * Complete is a serializable class that implements the 
@@ -13,33 +11,47 @@ public class Complete implements HireState, Serializable
 {
 
 	private static final long serialVersionUID = 1L;
-	private Hire hire;
-	
-	/* 
-	 * Constructs a Complete state object. Changes the state
-	 * of the hired bike accordingly.
+
+	/*
+	 * The code that identifies this state.
+	 */
+	public static final int CODE = 3;
+
+	/*
+	 * The shared Complete state.
+	 */
+	public static final Complete STATE = new Complete();
+
+	private Complete()
+	{
+
+	}
+
+	/*
+	 * Completes a returned hire: records the date it was returned,
+	 * returns the hired bike and changes the hire's state to Complete.
 	 * 
-	 * @param	hire	the hire that is currently complete
+	 * @param	hire			the hire being returned.
 	 * @param	bikeIsDamaged	true if the hired bike has been 
 	 * 							been returned damaged.
 	 * 							false otherwise.
 	 */
-	public Complete(Hire hire, boolean bikeIsDamaged) 
+	static void complete(Hire hire, boolean bikeIsDamaged)
 	{
-		this.hire = hire;
-		this.hire.setDateReturned(LocalDate.now());
+		hire.setReturnedDay(EpochDay.today());
 		hire.getBike().returnBike(bikeIsDamaged);
+		hire.transition(STATE);
 	}
 
 	/*
 	 * Denies payment for the hire because it has already been
 	 * paid for.
 	 * 
-	 * @see hire.HireState#payForHire()
+	 * @see hire.HireState#payForHire(Hire)
 	 * @return 	only returns false; the hire is not suitable 
 	 * 			for payment
 	 */
-	public boolean payForHire() 
+	public boolean payForHire(Hire hire) 
 	{
 		return false;
 	}
@@ -47,13 +59,13 @@ public class Complete implements HireState, Serializable
 	/*
 	 * Determines if the hire was returned late.
 	 *
-	 * @see 	hire.HireState#isLate()
+	 * @see 	hire.HireState#isLate(Hire)
 	 * @return	true if the hire is was returned late.
 	 * 			false otherwise.
 	 */
-	public boolean isLate() 
+	public boolean isLate(Hire hire) 
 	{
-		if (hire.getDateReturned().isAfter(hire.getEndDate()))
+		if (hire.getReturnedDay() > hire.getEndDay())
 			return true;
 		return false;
 	}
@@ -62,16 +74,42 @@ public class Complete implements HireState, Serializable
 	 * Denies the return of the hire because a hire cannot 
 	 * be returned again once it has been completed.
 	 *
-	 * @see 	hire.HireState#returnHire(boolean)
+	 * @see 	hire.HireState#returnHire(Hire, boolean)
 	 * @param	bikeIsDamaged	insignificant. 
 	 * @return	only returns false; the hire has already 
 	 * 			been returned
 	 */
-	public boolean returnHire(boolean bikeIsDamaged) 
+	public boolean returnHire(Hire hire, boolean bikeIsDamaged) 
 	{
 		return false;
 	}
 	
+	public int getCode()
+	{
+		return CODE;
+	}
+	
+	/*
+	 * Keeps the state shared when it is deserialized.
+	 */
+	private Object readResolve()
+	{
+		return STATE;
+	}
+	
+	/* 
+	 * @see 	hire.HireState#getStatus(Hire)
+	 * @return	A String describing the hire's state, noting
+	 * 			whether it was returned late
+	 */
+	public String getStatus(Hire hire)
+	{
+		if (isLate(hire))
+			return "Complete (late)";
+		
+		return "Complete";
+	}
+	
 	/* 
 	 * @see java.lang.Object#toString()
 	 * @return	A String describing this particular hire state
@@ -79,9 +117,6 @@ public class Complete implements HireState, Serializable
 	@Override
 	public String toString()
 	{
-		if (isLate())
-			return "Complete (late)";
-		
 		return "Complete";
 	}
 
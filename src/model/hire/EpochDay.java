@@ -0,0 +1,118 @@
+package model.hire;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+/**
+ * EpochDay converts between dates and epoch days, the number of days
+ * since 1970-01-01, which hires store their dates as. The number of
+ * days between two dates is then a subtraction.
+ *
+ * The conversions are calculated directly from the year, month and
+ * day (ISO calendar), rather than through Days.daysBetween.
+ */
+public final class EpochDay
+{
+	// Stands for no date, e.g. a hire that has not been returned
+	public static final int NONE = Integer.MIN_VALUE;
+
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+	private EpochDay()
+	{
+
+	}
+
+	/*
+	 * @param	date	the date. null for none.
+	 * @return	the date's epoch day. NONE if date is null.
+	 */
+	public static int of(LocalDate date)
+	{
+		if (date == null)
+			return NONE;
+
+		return of(date.getYear(), date.getMonthOfYear(), date.getDayOfMonth());
+	}
+
+	public static int of(int year, int month, int day)
+	{
+		int y = month <= 2 ? year - 1 : year;
+		int era = (y >= 0 ? y : y - 399) / 400;
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	/*
+	 * @param	epochDay	the epoch day. NONE for no date.
+	 * @return	the date. null if epochDay is NONE.
+	 */
+	public static LocalDate toDate(int epochDay)
+	{
+		if (epochDay == NONE)
+			return null;
+
+		int civil = civil(epochDay);
+
+		return new LocalDate(civil >> 9, civil >> 5 & 15, civil & 31);
+	}
+
+	/*
+	 * Appends a date as LocalDate.toString() would, e.g. 2015-03-09.
+	 *
+	 * @param	to			the builder to append to.
+	 * @param	epochDay	the epoch day.
+	 * @return	the builder.
+	 */
+	public static StringBuilder append(StringBuilder to, int epochDay)
+	{
+		int civil = civil(epochDay);
+		int year = civil >> 9;
+		int month = civil >> 5 & 15;
+		int day = civil & 31;
+
+		if (year >= 0 && year < 10000)
+			to.append((char) ('0' + year / 1000)).append((char) ('0' + year / 100 % 10))
+					.append((char) ('0' + year / 10 % 10)).append((char) ('0' + year % 10));
+		else
+			to.append(year);
+
+		return to.append('-').append((char) ('0' + month / 10)).append((char) ('0' + month % 10))
+				.append('-').append((char) ('0' + day / 10)).append((char) ('0' + day % 10));
+	}
+
+	/*
+	 * @return	the year, month and day of an epoch day, packed as
+	 * 			year << 9 | month << 5 | day.
+	 */
+	private static int civil(int epochDay)
+	{
+		int z = epochDay + 719468;
+		int era = (z >= 0 ? z : z - 146096) / 146097;
+		int dayOfEra = z - era * 146097;
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int mp = (5 * dayOfYear + 2) / 153;
+		int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+		return year << 9 | month << 5 | day;
+	}
+
+	/*
+	 * @return	today's epoch day in the default time zone, as
+	 * 			LocalDate.now() would give.
+	 */
+	public static int today()
+	{
+		long millis = System.currentTimeMillis();
+		long local = millis + DateTimeZone.getDefault().getOffset(millis);
+
+		return (int) Math.floorDiv(local, MILLIS_PER_DAY);
+	}
+
+}
@@ -2,12 +2,12 @@ package model.hire;
 
 import java.io.Serializable;
 
-import org.joda.time.Days;
 import org.joda.time.LocalDate;
 
 import controller.Controller;
 import model.bike.Bike;
 import model.customer.Customer;
+import model.invoice.Money;
 
 /**
  * Hire is a serializable class representing a hire.
@@ -15,27 +15,44 @@ import model.customer.Customer;
  * Maintains various attributes of the hire and keeps a reference to the
  * system's Controller class, which assists in generating each hire's unique ID.
  * 
- * Implements the HireState interface. Hire is the context class of the hire
- * state pattern, therefore its behaviour can change depending on its current
- * state.
+ * Hire is the context class of the hire state pattern, therefore its
+ * behaviour can change depending on its current state. The states are shared
+ * between hires, so each call passes this hire to the current state.
  * 
- * Uses JodaTime (external library) to store and calculate all Dates.
+ * Dates are stored as epoch days (see EpochDay), so durations and lateness
+ * are calculated by subtraction. JodaTime (external library) LocalDates are
+ * only created when a date is asked for.
  */
-public class Hire implements Serializable, HireState
+public class Hire implements Serializable
 {
 
 	private static final long serialVersionUID = 1L;
 	private transient Controller controller;
 
+	/*
+	 * The transitions the states may make, indexed by state code: bit n
+	 * is set if a hire may move from that state to the state with code n.
+	 */
+	private static final int[] TRANSITIONS = new int[4];
+
+	static
+	{
+		TRANSITIONS[PaymentPending.CODE] = 1 << Active.CODE;
+		TRANSITIONS[Active.CODE] = 1 << Late.CODE | 1 << Complete.CODE;
+		TRANSITIONS[Late.CODE] = 1 << Complete.CODE;
+		TRANSITIONS[Complete.CODE] = 0;
+	}
+
 	// Hire attributes
 	private String hireID;
 	private int hireNo;
 	private Customer customer;
 	private Bike bike;
-	private LocalDate startDate;
-	private LocalDate endDate;
-	private LocalDate dateReturned;
+	private int startDay;
+	private int endDay;
+	private int returnedDay;
 	private HireState currentState;
+	private transient HireStateListener stateListener;
 
 	/*
 	 * Constructor assigns the controller and generates a unique hireID.
@@ -58,7 +75,7 @@ public class Hire implements Serializable, HireState
 		setStartDate();
 		setEndDate(endDate);
 		setDateReturned(null);
-		setState(new PaymentPending(this));
+		setState(PaymentPending.STATE);
 	}
 
 	
@@ -70,21 +87,51 @@ public class Hire implements Serializable, HireState
 		generateHireID();
 		setCustomer(customer);
 		setBike(bike);
-		this.startDate = startDate;
-		this.endDate = endDate;
-		setState(new Complete(this, isLate));
-		setDateReturned(endDate);
+		startDay = EpochDay.of(startDate);
+		endDay = EpochDay.of(endDate);
+		bike.returnBike(isLate);
+		setState(Complete.STATE);
+		returnedDay = endDay;
+	}
+
+	/*
+	 * Restores a persisted hire with the hire number it was originally
+	 * given. Its state is PaymentPending until restored separately.
+	 */
+	public Hire(int hireNo, Customer customer, Bike bike, LocalDate startDate,
+			LocalDate endDate, LocalDate dateReturned)
+	{
+		this(hireNo, customer, bike, EpochDay.of(startDate), EpochDay.of(endDate),
+				EpochDay.of(dateReturned));
 	}
 
 	/*
-	 * Gets and increments the hireNo of the last hire added to the controller,
-	 * then uses it to generate and assign a unique hireID.
+	 * Restores a persisted hire from its dates as epoch days.
 	 * 
-	 * @see controller.Controller#getLastHireNo()
+	 * @param returnedDay EpochDay.NONE if the hire has not been returned.
+	 */
+	public Hire(int hireNo, Customer customer, Bike bike, int startDay,
+			int endDay, int returnedDay)
+	{
+		this.hireNo = hireNo;
+		hireID = "HIRE" + hireNo;
+		setCustomer(customer);
+		setBike(bike);
+		this.startDay = startDay;
+		this.endDay = endDay;
+		this.returnedDay = returnedDay;
+		setState(PaymentPending.STATE);
+	}
+
+	/*
+	 * Allocates the next hireNo from the controller, then uses it to generate
+	 * and assign a unique hireID.
+	 * 
+	 * @see controller.Controller#nextHireNo()
 	 */
 	private void generateHireID()
 	{
-		hireNo = controller.getLastHireNo() + 1;
+		hireNo = controller.nextHireNo();
 		hireID = "HIRE" + hireNo;
 	}
 
@@ -123,37 +170,65 @@ public class Hire implements Serializable, HireState
 
 	public LocalDate getStartDate()
 	{
-		return startDate;
+		return EpochDay.toDate(startDay);
+	}
+
+	public int getStartDay()
+	{
+		return startDay;
 	}
 
 	private void setStartDate()
 	{
-		startDate = LocalDate.now();
+		startDay = EpochDay.today();
 	}
 
 	public LocalDate getEndDate()
 	{
-		return endDate;
+		return EpochDay.toDate(endDay);
+	}
+
+	public int getEndDay()
+	{
+		return endDay;
 	}
 
 	public void setEndDate(LocalDate endDate)
 	{
-		this.endDate = endDate;
+		endDay = EpochDay.of(endDate);
 	}
 
 	public int getDuration()
 	{
-		return Days.daysBetween(startDate, endDate).getDays();
+		return endDay - startDay;
 	}
 
+	/*
+	 * @return The date the hire was returned. null if it has not been
+	 * returned.
+	 */
 	public LocalDate getDateReturned()
 	{
-		return dateReturned;
+		return EpochDay.toDate(returnedDay);
+	}
+
+	/*
+	 * @return The epoch day the hire was returned. EpochDay.NONE if it has
+	 * not been returned.
+	 */
+	public int getReturnedDay()
+	{
+		return returnedDay;
 	}
 
 	public void setDateReturned(LocalDate dateReturned)
 	{
-		this.dateReturned = dateReturned;
+		returnedDay = EpochDay.of(dateReturned);
+	}
+
+	public void setReturnedDay(int returnedDay)
+	{
+		this.returnedDay = returnedDay;
 	}
 
 	/*
@@ -164,10 +239,10 @@ public class Hire implements Serializable, HireState
 	{
 		if (isLate())
 		{
-			if (dateReturned == null)
-				return Days.daysBetween(endDate, LocalDate.now()).getDays();
+			if (returnedDay == EpochDay.NONE)
+				return EpochDay.today() - endDay;
 			else
-				return Days.daysBetween(endDate, dateReturned).getDays();
+				return returnedDay - endDay;
 		}
 
 		return 0;
@@ -184,44 +259,85 @@ public class Hire implements Serializable, HireState
 
 	public void setState(HireState state)
 	{
+		HireState previous = currentState;
 		currentState = state;
+
+		if (stateListener != null)
+			stateListener.hireStateChanged(this, previous);
+	}
+
+	/*
+	 * Changes state as the current state's behaviour requires. Unlike
+	 * setState(HireState), the change must be one the hire state
+	 * machine allows.
+	 * 
+	 * @throws IllegalStateException if the current state may not change
+	 * to the state given.
+	 */
+	void transition(HireState state)
+	{
+		if ((TRANSITIONS[currentState.getCode()] & 1 << state.getCode()) == 0)
+			throw new IllegalStateException("A hire cannot go from " + currentState
+					+ " to " + state);
+
+		setState(state);
+	}
+
+	/*
+	 * Calls the current HireState object's method getStatus()
+	 * 
+	 * @return A string representation of the current state
+	 */
+	public String getStatus()
+	{
+		return currentState.getStatus(this);
+	}
+
+	/*
+	 * Sets the listener to be notified of every change of state.
+	 * 
+	 * @param listener the listener. null to stop notifications.
+	 */
+	public void setStateListener(HireStateListener listener)
+	{
+		stateListener = listener;
 	}
 
 	/*
 	 * Calls the current HireState object's method payForHire()
 	 * 
-	 * @see hire.HireState#payForHire()
+	 * @see hire.HireState#payForHire(Hire)
 	 * 
 	 * @return true if current HireState allows payment. false otherwise.
 	 */
 	public boolean payForHire()
 	{
-		return currentState.payForHire();
+		return currentState.payForHire(this);
 	}
 
 	/*
 	 * Calls the current HireState object's method isLate()
 	 * 
-	 * @see hire.HireState#isLate()
+	 * @see hire.HireState#isLate(Hire)
 	 * 
 	 * @return true if the hire is late. false otherwise.
 	 */
 	public boolean isLate()
 	{
-		return currentState.isLate();
+		return currentState.isLate(this);
 	}
 
 	/*
 	 * Calls the current HireState object's method returnHire()
 	 * 
-	 * @see hire.HireState#returnHire(boolean)
+	 * @see hire.HireState#returnHire(Hire, boolean)
 	 * 
 	 * @return true if the current HireState allows the hire to be returned.
 	 * false otherwise.
 	 */
 	public boolean returnHire(boolean bikeIsDamaged)
 	{
-		return currentState.returnHire(bikeIsDamaged);
+		return currentState.returnHire(this, bikeIsDamaged);
 	}
 
 	/*
@@ -235,7 +351,16 @@ public class Hire implements Serializable, HireState
 	 */
 	public double getCost()
 	{
-		return bike.getDailyRate() * getDuration();
+		return Money.toPounds(getCostPence());
+	}
+
+	/*
+	 * @return The cost of hiring the bike for the duration of the hire (in pence)
+	 * @see #getCost()
+	 */
+	public long getCostPence()
+	{
+		return bike.getDailyRatePence() * getDuration();
 	}
 
 }
\ No newline at end of file
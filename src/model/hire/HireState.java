@@ -4,6 +4,9 @@ package model.hire;
  * HireState is an interface that encapsulates 
  * the behaviour associated with the states of 
  * a particular Hire.
+ * 
+ * HireState objects hold no hire of their own: each state has a
+ * single shared instance, and the hire it acts on is passed in.
  */
 public interface HireState 
 {
@@ -12,30 +15,45 @@ public interface HireState
 	 * collection. The hire's status should be altered 
 	 * accordingly after a successfuly payment is made.
 	 * 
+	 * @param	hire	the hire in this state.
 	 * @return 	true if the hire can be (and is) paid for successfully.
 	 * 			false otherwise.
 	 */
-	public boolean payForHire();
+	public boolean payForHire(Hire hire);
 	
 	/*
 	 * Determines if a hired bike is currently late or was 
 	 * returned late. If necessary, the state of a hire should
 	 * be altered accordingly if it is found to be late.
 	 * 
+	 * @param	hire	the hire in this state.
 	 * @return 	true if the hire is/was late.
 	 * 			false otherwise.
 	 */
-	public boolean isLate();
+	public boolean isLate(Hire hire);
 	
 	/*
 	 * Represents a hire being returned. The hire's status should be 
 	 * altered accordingly after a successful return. 
 	 * 
+	 * @param	hire			the hire in this state.
 	 * @param	bikeIsDamaged	true if the bike has been been returned damaged.
 	 * 							false otherwise.
 	 * @return 	true if the hire can be (and is) returned successfully.
 	 * 			false otherwise.
 	 */
-	public boolean returnHire(boolean bikeIsDamaged);
+	public boolean returnHire(Hire hire, boolean bikeIsDamaged);
+	
+	/*
+	 * @param	hire	the hire in this state.
+	 * @return	A String describing the hire's state.
+	 */
+	public String getStatus(Hire hire);
+	
+	/*
+	 * @return	the code identifying this state: 0 to 3, in the order
+	 * 			PaymentPending, Active, Late, Complete.
+	 */
+	public int getCode();
 
-}
\ No newline at end of file
+}
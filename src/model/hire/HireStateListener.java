@@ -0,0 +1,17 @@
+package model.hire;
+
+/**
+ * HireStateListener is notified whenever a hire's 
+ * state is replaced.
+ */
+public interface HireStateListener 
+{
+	/*
+	 * Called after a hire's state has been set.
+	 * 
+	 * @param	hire		the hire, which now holds its new state.
+	 * @param	previous	the state the hire held before.
+	 */
+	public void hireStateChanged(Hire hire, HireState previous);
+
+}
@@ -11,27 +11,31 @@ public class Late implements HireState, Serializable
 {
 
 	private static final long serialVersionUID = 1L;
-	private Hire hire;
-	
-	/* 
-	 * Constructs a Late state object.
-	 * 
-	 * @param	hire	the hire that is currently late.
+
+	/*
+	 * The code that identifies this state.
+	 */
+	public static final int CODE = 2;
+
+	/*
+	 * The shared Late state.
 	 */
-	public Late(Hire hire) 
+	public static final Late STATE = new Late();
+
+	private Late()
 	{
-		this.hire = hire;
+
 	}
 
 	/*
 	 * Denies payment for the hire because it has already been
 	 * paid for.
 	 * 
-	 * @see hire.HireState#payForHire()
+	 * @see hire.HireState#payForHire(Hire)
 	 * @return 	only returns false; the hire is not suitable 
 	 * 			for payment
 	 */
-	public boolean payForHire()
+	public boolean payForHire(Hire hire)
 	{
 		return false;
 	}
@@ -39,10 +43,10 @@ public class Late implements HireState, Serializable
 	/*
 	 * Confirms that the hire is currently late.
 	 *
-	 * @see 	hire.HireState#isLate()
+	 * @see 	hire.HireState#isLate(Hire)
 	 * @return	only returns true because the hire is late
 	 */
-	public boolean isLate() 
+	public boolean isLate(Hire hire) 
 	{
 		return true;
 	}
@@ -52,17 +56,39 @@ public class Late implements HireState, Serializable
 	 * should be changed to Complete once the hire has been 
 	 * returned successfully.
 	 *
-	 * @see 	@see hire.HireState#returnHire(boolean)
+	 * @see 	@see hire.HireState#returnHire(Hire, boolean)
 	 * @param	bikeIsDamaged	true if the hired bike has been been returned damaged.
 	 * 							false otherwise.
 	 * @return	only returns true; the hire is suitable for return.
 	 */
-	public boolean returnHire(boolean bikeIsDamaged)
+	public boolean returnHire(Hire hire, boolean bikeIsDamaged)
 	{
-		hire.setState(new Complete(hire, bikeIsDamaged));
+		Complete.complete(hire, bikeIsDamaged);
 		return true;
 	}
 	
+	public int getCode()
+	{
+		return CODE;
+	}
+	
+	/*
+	 * Keeps the state shared when it is deserialized.
+	 */
+	private Object readResolve()
+	{
+		return STATE;
+	}
+	
+	/* 
+	 * @see 	hire.HireState#getStatus(Hire)
+	 * @return	A String describing the hire's state
+	 */
+	public String getStatus(Hire hire)
+	{
+		return toString();
+	}
+	
 	/* 
 	 * @see java.lang.Object#toString()
 	 * @return	A String describing this particular hire state
@@ -10,39 +10,44 @@ public class PaymentPending implements HireState, Serializable
 {
 
 	private static final long serialVersionUID = 1L;
-	private Hire hire;
-	
-	/* 
-	 * Constructs a PaymentPending state object.
-	 * 
-	 * @param	hire	the hire that is currently awaiting payment.
+
+	/*
+	 * The code that identifies this state.
+	 */
+	public static final int CODE = 0;
+
+	/*
+	 * The shared PaymentPending state.
 	 */
-	public PaymentPending(Hire hire) 
+	public static final PaymentPending STATE = new PaymentPending();
+
+	private PaymentPending()
 	{
-		this.hire = hire;
+
 	}
 
 	/*
 	 * Represents a hire being paid for. The hire's state should be 
 	 * changed accordingly after payment has been made.
 	 * 
-	 * @see hire.HireState#payForHire()
+	 * @see hire.HireState#payForHire(Hire)
 	 * @return 	only returns true; this hire is suitable for payment
 	 */
-	public boolean payForHire() 
+	public boolean payForHire(Hire hire) 
 	{
-		hire.setState(new Active(hire));
+		hire.getBike().collectBike();
+		hire.transition(Active.STATE);
 		return true;
 	}
 
 	/*
 	 * Confirms that the hire is not currently late.
 	 *
-	 * @see 	hire.HireState#isLate()
+	 * @see 	hire.HireState#isLate(Hire)
 	 * @return	only returns false; the hire has not yet been paid for,
 	 * 			hence it cannot be late
 	 */
-	public boolean isLate() 
+	public boolean isLate(Hire hire) 
 	{
 		return false;
 	}
@@ -53,16 +58,38 @@ public class PaymentPending implements HireState, Serializable
 	 * only be returned after it has been paid for and 
 	 * activated.
 	 *
-	 * @see 	hire.HireState#returnHire(boolean)
+	 * @see 	hire.HireState#returnHire(Hire, boolean)
 	 * @param	bikeIsDamaged	insignificant. 
 	 * @return	only returns false; the hire has not yet
 	 * 			been paid for/activated
 	 */
-	public boolean returnHire(boolean bikeIsDamaged) 
+	public boolean returnHire(Hire hire, boolean bikeIsDamaged) 
 	{
 		return false;
 	}
 	
+	public int getCode()
+	{
+		return CODE;
+	}
+	
+	/*
+	 * Keeps the state shared when it is deserialized.
+	 */
+	private Object readResolve()
+	{
+		return STATE;
+	}
+	
+	/* 
+	 * @see 	hire.HireState#getStatus(Hire)
+	 * @return	A String describing the hire's state
+	 */
+	public String getStatus(Hire hire)
+	{
+		return toString();
+	}
+	
 	/* 
 	 * @see java.lang.Object#toString()
 	 * @return	A String describing this particular hire state
@@ -2,9 +2,6 @@ package model.invoice;
 import model.hire.Hire;
 
 import java.io.Serializable;
-import java.text.DecimalFormat;
-
-import org.joda.time.LocalDate;
 
 import controller.Controller;
 
@@ -17,6 +14,10 @@ import controller.Controller;
  * keeps a reference to the system's Controller 
  * class, which assists in generating each invoice's 
  * unique ID. 
+ * 
+ * The line items (daily rate, deposit, days late and late
+ * fee) are fixed when the invoice is issued, so later changes
+ * to the bike's rates do not alter it.
  */
 public class InvoiceIn implements Serializable
 {
@@ -27,8 +28,14 @@ public class InvoiceIn implements Serializable
 	private String invoiceID;
 	private int invoiceNo;
 	private Hire hire;
+	private int hireNo;
 	private boolean bikeDamaged;
-	private transient final DecimalFormat POUND = new DecimalFormat("£###,###,#00.00");
+
+	// Line items, as issued
+	private final long dailyRate;
+	private final long deposit;
+	private final int daysLate;
+	private final long lateFee;
 
 	/*
 	 * Constructs an InvoiceIn object with a unique invoiceID
@@ -37,22 +44,55 @@ public class InvoiceIn implements Serializable
 	 */
 	public InvoiceIn(Hire hire)
 	{
+		this(hire, hire.getBike().isDamaged(), hire.getBike().getDailyRatePence(),
+				hire.getBike().getDepositPence(), hire.getDaysLate());
 		controller = Controller.getInstance();
 		generateInvoiceInID();
+	}
+
+	/*
+	 * Restores a persisted InvoiceIn with the invoice number it was
+	 * originally given, charging the hire's amounts as they are now
+	 * (for records that did not keep the amounts issued).
+	 */
+	public InvoiceIn(int invoiceNo, Hire hire, boolean bikeDamaged)
+	{
+		this(invoiceNo, hire, bikeDamaged, hire.getBike().getDailyRatePence(),
+				hire.getBike().getDepositPence(), hire.getDaysLate());
+	}
+
+	/*
+	 * Restores a persisted InvoiceIn with the invoice number and line
+	 * items (amounts in pence) it was originally issued with.
+	 */
+	public InvoiceIn(int invoiceNo, Hire hire, boolean bikeDamaged, long dailyRate,
+			long deposit, int daysLate)
+	{
+		this(hire, bikeDamaged, dailyRate, deposit, daysLate);
+		this.invoiceNo = invoiceNo;
+		invoiceID = "INV-IN-" + invoiceNo;
+	}
+
+	private InvoiceIn(Hire hire, boolean bikeDamaged, long dailyRate, long deposit, int daysLate)
+	{
 		setHire(hire);
-		setBikeDamaged(hire.getBike().isDamaged());	
+		setBikeDamaged(bikeDamaged);
+		this.dailyRate = dailyRate;
+		this.deposit = deposit;
+		this.daysLate = daysLate;
+		lateFee = Money.lateFee(daysLate, dailyRate);
 	}
 	
 	/*
-	 * Gets and increments the invoiceNo of the last InvoiceIn 
-	 * added to the controller, then uses it to generate 
+	 * Allocates the next invoiceNo from the controller, 
+	 * then uses it to generate 
 	 * and assign a unique invoiceID.
 	 * 
-	 * @see 	controller.Controller#getLastInvoiceInNo()
+	 * @see 	controller.Controller#nextInvoiceInNo()
 	 */
 	private void generateInvoiceInID()
 	{	
-		invoiceNo = controller.getLastInvoiceInNo() + 1;
+		invoiceNo = controller.nextInvoiceInNo();
 		invoiceID = "INV-IN-" + invoiceNo;
 	}
 
@@ -72,11 +112,37 @@ public class InvoiceIn implements Serializable
 	private void setHire(Hire hire)
 	{
 		this.hire = hire;
+		hireNo = hire.getHireNo();
 	}
 	
+	/*
+	 * @return	the hire invoiced. Once the hire has been returned and
+	 * 			released by the Controller, a stand-in for it, found by
+	 * 			its number.
+	 */
 	public Hire getHire()
 	{
-		return hire;
+		Hire attached = hire;
+
+		if (attached != null)
+			return attached;
+
+		return Controller.getInstance().findHire(hireNo);
+	}
+
+	public int getHireNo()
+	{
+		return hireNo;
+	}
+
+	/*
+	 * Drops the invoice's reference to its hire, once the Controller
+	 * keeps the returned hire in its history instead, so that the Hire
+	 * can be collected. getHire() finds the hire by number from then on.
+	 */
+	public void detachHire()
+	{
+		hire = null;
 	}
 	
 	/* 
@@ -91,7 +157,44 @@ public class InvoiceIn implements Serializable
 	 */
 	public double getLateFee()
 	{
-		return (hire.getDaysLate() * hire.getBike().getDailyRate()) * 1.5;
+		return Money.toPounds(getLateFeePence());
+	}
+
+	/*
+	 * @return	the late fee for the hire in pence
+	 * 			(0 if the hire was not returned late)
+	 * 
+	 * @see		#getLateFee()
+	 * @see		Money#lateFee(int, long)
+	 */
+	public long getLateFeePence()
+	{
+		return lateFee;
+	}
+
+	/*
+	 * @return	the bike's daily rate when the invoice was issued (in pence)
+	 */
+	public long getDailyRatePence()
+	{
+		return dailyRate;
+	}
+
+	/*
+	 * @return	the deposit, refunded unless the bike was returned
+	 * 			damaged (in pence)
+	 */
+	public long getDepositPence()
+	{
+		return deposit;
+	}
+
+	/*
+	 * @return	the number of days the hire was returned late by
+	 */
+	public int getDaysLate()
+	{
+		return daysLate;
 	}
 
 	/* 
@@ -114,33 +217,12 @@ public class InvoiceIn implements Serializable
 	 * Generates a String to represent the details of the invoice.
 	 * 
 	 * @see java.lang.Object#toString()
+	 * @see InvoiceTemplate
 	 * @return	a String representation of the invoice details.
 	 */
 	public String toString()
 	{
-		String invoice = "-- INVOICE -- \n";
-		invoice += "\nInvoice ID: " 		+ invoiceID;
-		invoice += "\nDate created: " 		+ LocalDate.now().toString();
-		invoice += "\n\nCustomer ID: "		+ hire.getCustomer().getCustomerID();
-		invoice += "\nName: "				+ hire.getCustomer().getFirstName() + " " + hire.getCustomer().getLastName();
-		invoice += "\nAddress: "			+ hire.getCustomer().getAddressString();
-		invoice += "\n\nHire ID: " 			+ hire.getHireID();
-		invoice += "\nStart date: "			+ hire.getStartDate().toString();
-		invoice += "\nEnd date: "			+ hire.getEndDate().toString();
-		invoice += "\n\nBike ID: "			+ hire.getBike().getBikeID();
-		invoice += "\nDescription: "		+ hire.getBike().getDescription();
-		invoice += "\nDaily rate: "			+ POUND.format(hire.getBike().getDailyRate());
-		invoice += "\n\nReturned on: "		+ LocalDate.now().toString();
-		invoice += "\nDays late: "			+ hire.getDaysLate();		
-		invoice += "\nLate fee: "			+ POUND.format(getLateFee());
-		invoice += "\nDeposit refunded: ";
-		
-		if (bikeDamaged)
-			invoice += "no";
-		else
-			invoice += "yes";
-	
-		return invoice;
+		return InvoiceTemplate.IN_TEXT.render(this, new StringBuilder(512)).toString();
 	}	
 	
 }
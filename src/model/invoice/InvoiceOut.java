@@ -2,12 +2,16 @@ package model.invoice;
 import model.hire.Hire;
 
 import java.io.Serializable;
-import java.text.DecimalFormat;
-
-import org.joda.time.LocalDate;
 
 import controller.Controller;
 
+/**
+ * InvoiceOut is a serializable class representing an invoice
+ * that is generated when a bike is hired.
+ * 
+ * The amounts charged (in pence) are fixed when the invoice is
+ * issued, so later changes to the bike's rates do not alter it.
+ */
 public class InvoiceOut implements Serializable
 {
 	private static final long serialVersionUID = 1L;
@@ -16,7 +20,12 @@ public class InvoiceOut implements Serializable
 	private String invoiceID;
 	private int invoiceNo;
 	private Hire hire;
-	private transient final DecimalFormat POUND = new DecimalFormat("£###,###,#00.00");
+	private int hireNo;
+
+	// Amounts charged, as issued
+	private final long dailyRate;
+	private final long cost;
+	private final long deposit;
 
 	/*
 	 * Constructs an InvoiceOut object with a unique invoiceID
@@ -25,21 +34,52 @@ public class InvoiceOut implements Serializable
 	 */
 	public InvoiceOut(Hire hire)
 	{
+		this(hire, hire.getBike().getDailyRatePence(), hire.getCostPence(),
+				hire.getBike().getDepositPence());
 		controller = Controller.getInstance();
 		generateInvoiceOutID();
+	}
+
+	/*
+	 * Restores a persisted InvoiceOut with the invoice number it was
+	 * originally given, charging the hire's amounts as they are now
+	 * (for records that did not keep the amounts issued).
+	 */
+	public InvoiceOut(int invoiceNo, Hire hire)
+	{
+		this(invoiceNo, hire, hire.getBike().getDailyRatePence(), hire.getCostPence(),
+				hire.getBike().getDepositPence());
+	}
+
+	/*
+	 * Restores a persisted InvoiceOut with the invoice number and
+	 * amounts (in pence) it was originally issued with.
+	 */
+	public InvoiceOut(int invoiceNo, Hire hire, long dailyRate, long cost, long deposit)
+	{
+		this(hire, dailyRate, cost, deposit);
+		this.invoiceNo = invoiceNo;
+		invoiceID = "INV-OUT-" + invoiceNo;
+	}
+
+	private InvoiceOut(Hire hire, long dailyRate, long cost, long deposit)
+	{
 		setHire(hire);
+		this.dailyRate = dailyRate;
+		this.cost = cost;
+		this.deposit = deposit;
 	}
 	
 	/*
-	 * Gets and increments the invoiceNo of the last InvoiceOut
-	 * added to the controller, then uses it to generate 
+	 * Allocates the next invoiceNo from the controller, 
+	 * then uses it to generate 
 	 * and assign a unique invoiceID.
 	 * 
-	 * @see 	controller.Controller#getLastInvoiceOutNo()
+	 * @see 	controller.Controller#nextInvoiceOutNo()
 	 */
 	private void generateInvoiceOutID()
 	{	
-		invoiceNo = controller.getLastInvoiceOutNo() + 1;
+		invoiceNo = controller.nextInvoiceOutNo();
 		invoiceID = "INV-OUT-" + invoiceNo;
 	}
 	
@@ -59,13 +99,64 @@ public class InvoiceOut implements Serializable
 	private void setHire(Hire hire)
 	{
 		this.hire = hire;
+		hireNo = hire.getHireNo();
 	}
 	
+	/*
+	 * @return	the hire invoiced. Once the hire has been returned and
+	 * 			released by the Controller, a stand-in for it, found by
+	 * 			its number.
+	 */
 	public Hire getHire()
 	{
-		return hire;
+		Hire attached = hire;
+
+		if (attached != null)
+			return attached;
+
+		return Controller.getInstance().findHire(hireNo);
+	}
+
+	public int getHireNo()
+	{
+		return hireNo;
+	}
+
+	/*
+	 * Drops the invoice's reference to its hire, once the Controller
+	 * keeps the returned hire in its history instead, so that the Hire
+	 * can be collected. getHire() finds the hire by number from then on.
+	 */
+	public void detachHire()
+	{
+		hire = null;
 	}
 	
+	/*
+	 * @return	the bike's daily rate when the invoice was issued (in pence)
+	 */
+	public long getDailyRatePence()
+	{
+		return dailyRate;
+	}
+
+	/*
+	 * @return	the cost of the hire, excluding the deposit (in pence)
+	 * @see		model.hire.Hire#getCost()
+	 */
+	public long getCostPence()
+	{
+		return cost;
+	}
+
+	/*
+	 * @return	the bike's deposit when the invoice was issued (in pence)
+	 */
+	public long getDepositPence()
+	{
+		return deposit;
+	}
+
 	/* 
 	 * Calculates the total cost of the hire including the deposit:
 	 * 	
@@ -75,36 +166,29 @@ public class InvoiceOut implements Serializable
 	 */
 	public double getTotal()
 	{
-		return hire.getCost() + hire.getBike().getDeposit();
+		return Money.toPounds(getTotalPence());
+	}
+
+	/*
+	 * @return	the total cost of the hire (including bike deposit) in pence
+	 * @see		#getTotal()
+	 */
+	public long getTotalPence()
+	{
+		return cost + deposit;
 	}
 	
 	/*
 	 * Generates a String to represent the details of the invoice.
 	 * 
 	 * @see java.lang.Object#toString()
+	 * @see InvoiceTemplate
 	 * @return	a String representation of the invoice details.
 	 */
 	@Override
 	public String toString()
 	{
-		String invoice = "-- INVOICE -- \n";
-		invoice += "\nInvoice ID: " 		+ invoiceID;
-		invoice += "\nDate created: " 		+ LocalDate.now().toString();
-		invoice += "\n\nCustomer ID: "		+ hire.getCustomer().getCustomerID();
-		invoice += "\nName: "				+ hire.getCustomer().getFirstName() + " " + hire.getCustomer().getLastName();
-		invoice += "\nAddress: "			+ hire.getCustomer().getAddressString();
-		invoice += "\n\nHire ID: " 			+ hire.getHireID();
-		invoice += "\nStart date: "			+ hire.getStartDate().toString();
-		invoice += "\nEnd date: "			+ hire.getEndDate().toString();
-		invoice += "\n\nBike ID: "			+ hire.getBike().getBikeID();
-		invoice += "\nDescription: "		+ hire.getBike().getDescription();
-		invoice += "\nDaily rate: "			+ POUND.format(hire.getBike().getDailyRate());
-		invoice += "\n\nAmount due";
-		invoice += "\nBike cost: "			+ POUND.format(hire.getCost());
-		invoice += "\nDeposit: "			+ POUND.format(hire.getBike().getDeposit());
-		invoice += "\nTotal: "				+ POUND.format(getTotal());
-	
-		return invoice;
+		return InvoiceTemplate.OUT_TEXT.render(this, new StringBuilder(512)).toString();
 	}
 	
 	
@@ -0,0 +1,167 @@
+package model.invoice;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.List;
+
+import model.hire.EpochDay;
+
+/**
+ * InvoiceRenderer renders invoices through a pair of templates, one for
+ * outgoing and one for incoming invoices, to any Appendable: a
+ * StringBuilder, a Writer or a CharBuffer.
+ *
+ * Invoices are rendered into a buffer the renderer keeps, which is
+ * copied to the output when it fills or the rendering ends, so a batch
+ * of invoices is rendered without garbage once the buffer has grown to
+ * fit. A renderer is therefore not safe to share between threads; each
+ * should have its own, while the templates may be shared.
+ *
+ * @see InvoiceTemplate
+ */
+public class InvoiceRenderer
+{
+	private static final int FLUSH_AT = 8192;
+
+	private final InvoiceTemplate invoiceOut;
+	private final InvoiceTemplate invoiceIn;
+	private final StringBuilder buffer = new StringBuilder(FLUSH_AT + 1024);
+	private char[] chars = new char[0];
+
+	/*
+	 * @param	invoiceOut	the template of outgoing invoices.
+	 * @param	invoiceIn	the template of incoming invoices.
+	 */
+	public InvoiceRenderer(InvoiceTemplate invoiceOut, InvoiceTemplate invoiceIn)
+	{
+		this.invoiceOut = invoiceOut;
+		this.invoiceIn = invoiceIn;
+	}
+
+	/*
+	 * @return	a renderer of the invoices as their toString() gives them.
+	 */
+	public static InvoiceRenderer text()
+	{
+		return new InvoiceRenderer(InvoiceTemplate.OUT_TEXT, InvoiceTemplate.IN_TEXT);
+	}
+
+	/*
+	 * @return	a renderer of fixed-width invoices for printing.
+	 */
+	public static InvoiceRenderer printable()
+	{
+		return new InvoiceRenderer(InvoiceTemplate.OUT_PRINTABLE, InvoiceTemplate.IN_PRINTABLE);
+	}
+
+	/*
+	 * @param	invoice	the invoice, dated today.
+	 * @param	out		where to render it.
+	 *
+	 * @throws	IOException	if out cannot be appended to.
+	 * @throws	java.nio.BufferOverflowException	if out is a CharBuffer
+	 * 												without the room.
+	 */
+	public void render(InvoiceOut invoice, Appendable out) throws IOException
+	{
+		invoiceOut.render(invoice, EpochDay.today(), buffer);
+		flush(out);
+	}
+
+	public void render(InvoiceIn invoice, Appendable out) throws IOException
+	{
+		invoiceIn.render(invoice, EpochDay.today(), buffer);
+		flush(out);
+	}
+
+	/*
+	 * Renders outgoing invoices one after another, all dated today.
+	 *
+	 * @param	invoices	the invoices.
+	 * @param	separator	text put between invoices.
+	 * @param	out			where to render them.
+	 *
+	 * @throws	IOException	if out cannot be appended to.
+	 */
+	public void renderInvoicesOut(List<InvoiceOut> invoices, String separator, Appendable out)
+			throws IOException
+	{
+		int today = EpochDay.today();
+
+		for (int i = 0; i < invoices.size(); i++)
+		{
+			if (i > 0)
+				buffer.append(separator);
+
+			invoiceOut.render(invoices.get(i), today, buffer);
+
+			if (buffer.length() >= FLUSH_AT)
+				flush(out);
+		}
+
+		flush(out);
+	}
+
+	/*
+	 * Renders incoming invoices one after another, all dated today.
+	 *
+	 * @see	#renderInvoicesOut(List, String, Appendable)
+	 */
+	public void renderInvoicesIn(List<InvoiceIn> invoices, String separator, Appendable out)
+			throws IOException
+	{
+		int today = EpochDay.today();
+
+		for (int i = 0; i < invoices.size(); i++)
+		{
+			if (i > 0)
+				buffer.append(separator);
+
+			invoiceIn.render(invoices.get(i), today, buffer);
+
+			if (buffer.length() >= FLUSH_AT)
+				flush(out);
+		}
+
+		flush(out);
+	}
+
+	/*
+	 * Copies the buffer to out and empties it. Writers and CharBuffers
+	 * are given the characters in bulk, rather than a String of them.
+	 */
+	private void flush(Appendable out) throws IOException
+	{
+		int length = buffer.length();
+
+		try
+		{
+			if (out instanceof StringBuilder)
+			{
+				((StringBuilder) out).append(buffer);
+				return;
+			}
+
+			if (!(out instanceof Writer || out instanceof CharBuffer))
+			{
+				out.append(buffer);
+				return;
+			}
+
+			if (chars.length < length)
+				chars = new char[Math.max(length, FLUSH_AT + 1024)];
+
+			buffer.getChars(0, length, chars, 0);
+
+			if (out instanceof Writer)
+				((Writer) out).write(chars, 0, length);
+			else
+				((CharBuffer) out).put(chars, 0, length);
+		} finally
+		{
+			buffer.setLength(0);
+		}
+	}
+
+}
@@ -0,0 +1,356 @@
+package model.invoice;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import model.bike.Bike;
+import model.customer.Customer;
+import model.hire.EpochDay;
+import model.hire.Hire;
+
+/**
+ * InvoiceTemplate is the layout of an invoice, compiled once from a
+ * pattern of literal text and fields, such as:
+ *
+ * 		"Invoice ID: {id}\nTotal: {total:12}\n"
+ *
+ * A field may be given a width, {name:N} to right-align its value in N
+ * columns or {name:-N} to left-align it; a value wider than its columns
+ * is cut short. The fields are:
+ *
+ * 		id, date (today), customerId, name, address, hireId, startDate,
+ * 		endDate, bikeId, description, dailyRate, cost, deposit, total,
+ * 		returned, daysLate, lateFee, depositRefunded (yes/no)
+ *
+ * Rendering appends each part straight to a StringBuilder, formatting
+ * dates and amounts from their primitives, so nothing is allocated
+ * beyond the builder's own growth. Templates are immutable and may be
+ * shared between threads.
+ *
+ * @see InvoiceRenderer
+ */
+public final class InvoiceTemplate
+{
+	// Fields
+	private static final String[] FIELDS = {"id", "date", "customerId", "name", "address",
+			"hireId", "startDate", "endDate", "bikeId", "description", "dailyRate", "cost",
+			"deposit", "total", "returned", "daysLate", "lateFee", "depositRefunded"};
+	private static final int ID = 0;
+	private static final int DATE = 1;
+	private static final int CUSTOMER_ID = 2;
+	private static final int NAME = 3;
+	private static final int ADDRESS = 4;
+	private static final int HIRE_ID = 5;
+	private static final int START_DATE = 6;
+	private static final int END_DATE = 7;
+	private static final int BIKE_ID = 8;
+	private static final int DESCRIPTION = 9;
+	private static final int DAILY_RATE = 10;
+	private static final int COST = 11;
+	private static final int DEPOSIT = 12;
+	private static final int TOTAL = 13;
+	private static final int RETURNED = 14;
+	private static final int DAYS_LATE = 15;
+	private static final int LATE_FEE = 16;
+	private static final int DEPOSIT_REFUNDED = 17;
+
+	private static final String HEAD = "-- INVOICE -- \n"
+			+ "\nInvoice ID: {id}"
+			+ "\nDate created: {date}"
+			+ "\n\nCustomer ID: {customerId}"
+			+ "\nName: {name}"
+			+ "\nAddress: {address}"
+			+ "\n\nHire ID: {hireId}"
+			+ "\nStart date: {startDate}"
+			+ "\nEnd date: {endDate}"
+			+ "\n\nBike ID: {bikeId}"
+			+ "\nDescription: {description}"
+			+ "\nDaily rate: {dailyRate}";
+
+	private static final String RULE = "----------------------------------------\n";
+	private static final String DOUBLE_RULE = "========================================\n";
+	private static final String PRINTABLE_HEAD = DOUBLE_RULE
+			+ "INVOICE         {id:24}\n"
+			+ "Date            {date:24}\n"
+			+ RULE
+			+ "Customer        {customerId:24}\n"
+			+ "Name            {name:24}\n"
+			+ "Address         {address:24}\n"
+			+ RULE
+			+ "Hire            {hireId:24}\n"
+			+ "Start date      {startDate:24}\n"
+			+ "End date        {endDate:24}\n"
+			+ "Bike            {bikeId:24}\n"
+			+ "Daily rate      {dailyRate:24}\n"
+			+ RULE;
+
+	// The layout of InvoiceOut.toString()
+	public static final InvoiceTemplate OUT_TEXT = compile(HEAD
+			+ "\n\nAmount due"
+			+ "\nBike cost: {cost}"
+			+ "\nDeposit: {deposit}"
+			+ "\nTotal: {total}");
+
+	// The layout of InvoiceIn.toString()
+	public static final InvoiceTemplate IN_TEXT = compile(HEAD
+			+ "\n\nReturned on: {date}"
+			+ "\nDays late: {daysLate}"
+			+ "\nLate fee: {lateFee}"
+			+ "\nDeposit refunded: {depositRefunded}");
+
+	// Fixed-width layouts, 40 columns wide, for printing
+	public static final InvoiceTemplate OUT_PRINTABLE = compile(PRINTABLE_HEAD
+			+ "Bike cost       {cost:24}\n"
+			+ "Deposit         {deposit:24}\n"
+			+ "Total           {total:24}\n"
+			+ DOUBLE_RULE);
+
+	public static final InvoiceTemplate IN_PRINTABLE = compile(PRINTABLE_HEAD
+			+ "Returned on     {returned:24}\n"
+			+ "Days late       {daysLate:24}\n"
+			+ "Late fee        {lateFee:24}\n"
+			+ "Deposit refunded{depositRefunded:24}\n"
+			+ DOUBLE_RULE);
+
+	// literals[i] precedes fields[i]; the last literal ends the invoice
+	private final String[] literals;
+	private final int[] fields;
+	private final int[] widths;
+
+	private InvoiceTemplate(String[] literals, int[] fields, int[] widths)
+	{
+		this.literals = literals;
+		this.fields = fields;
+		this.widths = widths;
+	}
+
+	/*
+	 * @param	pattern	literal text and {field} or {field:width} parts.
+	 * @return	the compiled template.
+	 *
+	 * @throws	IllegalArgumentException	if a field is unknown, its width
+	 * 										is not a number or a brace is
+	 * 										not closed.
+	 */
+	public static InvoiceTemplate compile(String pattern)
+	{
+		List<String> literals = new ArrayList<String>();
+		List<int[]> fields = new ArrayList<int[]>();
+		int from = 0;
+		int open;
+
+		while ((open = pattern.indexOf('{', from)) >= 0)
+		{
+			int close = pattern.indexOf('}', open);
+
+			if (close < 0)
+				throw new IllegalArgumentException("Unclosed field at " + open + ": " + pattern);
+
+			String spec = pattern.substring(open + 1, close);
+			int colon = spec.indexOf(':');
+			String name = colon < 0 ? spec : spec.substring(0, colon);
+			int field = field(name);
+			int width = 0;
+
+			if (colon >= 0)
+			{
+				try
+				{
+					width = Integer.parseInt(spec.substring(colon + 1));
+				} catch (NumberFormatException e)
+				{
+					throw new IllegalArgumentException("Invalid width of field: " + spec);
+				}
+			}
+
+			literals.add(pattern.substring(from, open));
+			fields.add(new int[] {field, width});
+			from = close + 1;
+		}
+
+		literals.add(pattern.substring(from));
+
+		int[] fieldArray = new int[fields.size()];
+		int[] widthArray = new int[fields.size()];
+
+		for (int i = 0; i < fieldArray.length; i++)
+		{
+			fieldArray[i] = fields.get(i)[0];
+			widthArray[i] = fields.get(i)[1];
+		}
+
+		return new InvoiceTemplate(literals.toArray(new String[literals.size()]),
+				fieldArray, widthArray);
+	}
+
+	private static int field(String name)
+	{
+		for (int f = 0; f < FIELDS.length; f++)
+			if (FIELDS[f].equals(name))
+				return f;
+
+		throw new IllegalArgumentException("Unknown invoice field: " + name);
+	}
+
+	/*
+	 * Renders an outgoing invoice, dated today. Amounts are those the
+	 * invoice was issued with; the fields of a return are empty or 0.
+	 *
+	 * @param	invoice	the invoice.
+	 * @param	to		the builder to append to.
+	 * @return	the builder.
+	 */
+	public StringBuilder render(InvoiceOut invoice, StringBuilder to)
+	{
+		return render(invoice, EpochDay.today(), to);
+	}
+
+	/*
+	 * Renders an incoming invoice, dated today. Amounts are those the
+	 * invoice was issued with, the cost being the issued daily rate
+	 * times the hire's duration.
+	 *
+	 * @param	invoice	the invoice.
+	 * @param	to		the builder to append to.
+	 * @return	the builder.
+	 */
+	public StringBuilder render(InvoiceIn invoice, StringBuilder to)
+	{
+		return render(invoice, EpochDay.today(), to);
+	}
+
+	StringBuilder render(InvoiceOut invoice, int today, StringBuilder to)
+	{
+		return render(invoice, null, today, to);
+	}
+
+	StringBuilder render(InvoiceIn invoice, int today, StringBuilder to)
+	{
+		return render(null, invoice, today, to);
+	}
+
+	/*
+	 * Renders whichever of the invoices is not null.
+	 */
+	private StringBuilder render(InvoiceOut out, InvoiceIn in, int today, StringBuilder to)
+	{
+		for (int i = 0; i < fields.length; i++)
+		{
+			to.append(literals[i]);
+			int start = to.length();
+			append(to, fields[i], out, in, today);
+
+			if (widths[i] != 0)
+				fit(to, start, widths[i]);
+		}
+
+		return to.append(literals[fields.length]);
+	}
+
+	private static void append(StringBuilder to, int field, InvoiceOut out, InvoiceIn in,
+			int today)
+	{
+		Hire hire = out != null ? out.getHire() : in.getHire();
+		Customer customer = hire.getCustomer();
+		Bike bike = hire.getBike();
+		long dailyRate = out != null ? out.getDailyRatePence() : in.getDailyRatePence();
+		long deposit = out != null ? out.getDepositPence() : in.getDepositPence();
+		long cost = out != null ? out.getCostPence() : dailyRate * hire.getDuration();
+
+		switch (field)
+		{
+		case ID:
+			to.append(out != null ? out.getInvoiceOutID() : in.getInvoiceInID());
+			break;
+		case DATE:
+			EpochDay.append(to, today);
+			break;
+		case CUSTOMER_ID:
+			to.append(customer.getCustomerID());
+			break;
+		case NAME:
+			to.append(customer.getFirstName()).append(' ').append(customer.getLastName());
+			break;
+		case ADDRESS:
+			// As Customer.getAddressString()
+			to.append(customer.getAddressLine1()).append(", ").append(customer.getAddressTown())
+					.append(", ").append(customer.getAddressPostcode()).append('.');
+			break;
+		case HIRE_ID:
+			to.append(hire.getHireID());
+			break;
+		case START_DATE:
+			EpochDay.append(to, hire.getStartDay());
+			break;
+		case END_DATE:
+			EpochDay.append(to, hire.getEndDay());
+			break;
+		case BIKE_ID:
+			to.append(bike.getBikeID());
+			break;
+		case DESCRIPTION:
+			// As Bike.getDescription()
+			to.append(bike.getMake()).append(' ').append(bike.getModel()).append(", ")
+					.append(bike.getDemographic()).append("'s ").append(bike.getFunction())
+					.append(" bike in ").append(bike.getColour());
+			break;
+		case DAILY_RATE:
+			Money.append(to, dailyRate);
+			break;
+		case COST:
+			Money.append(to, cost);
+			break;
+		case DEPOSIT:
+			Money.append(to, deposit);
+			break;
+		case TOTAL:
+			Money.append(to, cost + deposit);
+			break;
+		case RETURNED:
+			if (in != null && hire.getReturnedDay() != EpochDay.NONE)
+				EpochDay.append(to, hire.getReturnedDay());
+			break;
+		case DAYS_LATE:
+			to.append(in != null ? in.getDaysLate() : 0);
+			break;
+		case LATE_FEE:
+			Money.append(to, in != null ? in.getLateFeePence() : 0);
+			break;
+		case DEPOSIT_REFUNDED:
+			if (in != null)
+				to.append(in.wasBikeDamaged() ? "no" : "yes");
+			break;
+		}
+	}
+
+	/*
+	 * Fits the value appended since start to the width's columns:
+	 * right-aligned if the width is positive, left-aligned if negative.
+	 */
+	private static void fit(StringBuilder to, int start, int width)
+	{
+		int columns = Math.abs(width);
+		int length = to.length() - start;
+
+		if (length >= columns)
+		{
+			to.setLength(start + columns);
+			return;
+		}
+
+		int pad = columns - length;
+
+		for (int i = 0; i < pad; i++)
+			to.append(' ');
+
+		if (width < 0)
+			return;
+
+		for (int i = to.length() - 1; i >= start + pad; i--)
+			to.setCharAt(i, to.charAt(i - pad));
+
+		for (int i = start; i < start + pad; i++)
+			to.setCharAt(i, ' ');
+	}
+
+}
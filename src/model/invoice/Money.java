@@ -0,0 +1,107 @@
+package model.invoice;
+
+/**
+ * Money does the system's pricing arithmetic on amounts held as longs
+ * of pence, so that rates, deposits, costs and fees are exact and
+ * totalling them is long addition. Nothing is allocated: amounts are
+ * primitives, and are formatted straight into a StringBuilder.
+ *
+ * Amounts are formatted as the invoices always have, e.g. £05.00 or
+ * £1,234.50: grouped in thousands, with at least two digits of pounds.
+ */
+public final class Money
+{
+	public static final long PENCE_PER_POUND = 100;
+
+	private Money()
+	{
+
+	}
+
+	/*
+	 * @param	pounds	an amount in pounds, e.g. as entered by a user.
+	 * @return	the amount in pence, rounded to the nearest penny.
+	 */
+	public static long of(double pounds)
+	{
+		return Math.round(pounds * PENCE_PER_POUND);
+	}
+
+	/*
+	 * @param	pence	an amount in pence.
+	 * @return	the amount in pounds.
+	 */
+	public static double toPounds(long pence)
+	{
+		return (double) pence / PENCE_PER_POUND;
+	}
+
+	/*
+	 * Calculates the late fee for a hire:
+	 *
+	 * 		late fee = (days late * daily rate) * 1.5
+	 *
+	 * rounded half up to the penny, so that a half penny is charged as
+	 * a whole one.
+	 *
+	 * @param	daysLate	the number of days the hire was returned late by.
+	 * @param	dailyRate	the hired bike's daily rate in pence.
+	 * @return	the late fee in pence.
+	 */
+	public static long lateFee(int daysLate, long dailyRate)
+	{
+		long due = daysLate * dailyRate;
+
+		return (due * 3 + 1) / 2;
+	}
+
+	/*
+	 * @param	pence	an amount in pence.
+	 * @return	the amount formatted in pounds, e.g. £1,234.50.
+	 */
+	public static String format(long pence)
+	{
+		return append(new StringBuilder(16), pence).toString();
+	}
+
+	/*
+	 * Appends an amount formatted in pounds, as format(long) would.
+	 *
+	 * @param	to		the builder to append to.
+	 * @param	pence	an amount in pence.
+	 * @return	the builder.
+	 */
+	public static StringBuilder append(StringBuilder to, long pence)
+	{
+		if (pence < 0)
+		{
+			to.append('-');
+			pence = -pence;
+		}
+
+		long pounds = pence / PENCE_PER_POUND;
+		int remainder = (int) (pence % PENCE_PER_POUND);
+		int digits = 2;
+		long unit = 10;
+
+		while (unit <= pounds / 10)
+		{
+			unit *= 10;
+			digits++;
+		}
+
+		to.append('£');
+
+		for (; digits > 0; digits--, unit /= 10)
+		{
+			to.append((char) ('0' + pounds / unit % 10));
+
+			if (digits > 1 && (digits - 1) % 3 == 0)
+				to.append(',');
+		}
+
+		return to.append('.').append((char) ('0' + remainder / 10))
+				.append((char) ('0' + remainder % 10));
+	}
+
+}
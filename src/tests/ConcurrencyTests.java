@@ -0,0 +1,411 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import model.hire.Active;
+import model.hire.Complete;
+import model.hire.Hire;
+import model.invoice.InvoiceIn;
+import model.invoice.InvoiceOut;
+
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Test;
+
+import model.bike.Available;
+import model.bike.Bike;
+import model.bike.Damaged;
+import model.bike.OnHire;
+import model.bike.Reserved;
+import controller.Controller;
+import controller.index.BikeBitmaps;
+import model.customer.Customer;
+
+public class ConcurrencyTests
+{
+
+	// Desks (threads) and the work each does
+	int DESKS = 8;
+	int HIRES_PER_DESK = 500;
+
+	Controller controller = Controller.getInstance();
+
+	@After
+	public void tearDown() throws Exception
+	{
+		controller.getCustomers().clear();
+		controller.getBikes().clear();
+		controller.getHires().clear();
+		controller.getInvoicesOut().clear();
+		controller.getInvoicesIn().clear();
+	}
+
+	/*
+	 * Desks registering customers and bikes and making hires at the
+	 * same time should never share an ID or lose an entity, while
+	 * another thread looks entities up.
+	 */
+	@Test
+	public void concurrentDesksIssueUniqueIDs() throws Exception
+	{
+		final List<List<Hire>> made = new ArrayList<List<Hire>>();
+
+		for (int d = 0; d < DESKS; d++)
+			made.add(new ArrayList<Hire>());
+
+		final AtomicInteger lookups = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(DESKS);
+
+		Thread reader = new Thread()
+		{
+			public void run()
+			{
+				while (done.getCount() > 0)
+				{
+					controller.findCustomer(1 + lookups.get() % 100);
+					controller.getNoOfHires(Active.class);
+					lookups.incrementAndGet();
+				}
+			}
+		};
+		reader.start();
+
+		runDesks(new Desk()
+		{
+			public void work(int desk)
+			{
+				try
+				{
+					for (int i = 0; i < HIRES_PER_DESK; i++)
+					{
+						Customer customer = new Customer("test", "test", "test", "test", "test");
+						controller.addCustomer(customer);
+						Bike bike = new Bike("test", "test", "test", "test", "test", 1, 1);
+						controller.addBike(bike);
+
+						Hire hire = new Hire(customer, bike, LocalDate.now().plusDays(1));
+						hire.payForHire();
+						controller.addHire(hire);
+						controller.addInvoiceOut(new InvoiceOut(hire));
+						made.get(desk).add(hire);
+					}
+				} finally
+				{
+					done.countDown();
+				}
+			}
+		});
+		reader.join();
+
+		int total = DESKS * HIRES_PER_DESK;
+
+		assertEquals(total, controller.getCustomers().size());
+		assertEquals(total, controller.getBikes().size());
+		assertEquals(total, controller.getHires().size());
+		assertEquals(total, controller.getInvoicesOut().size());
+		assertEquals(total, controller.getNoOfHires(Active.class));
+		assertTrue(lookups.get() > 0);
+
+		Set<String> ids = new HashSet<String>();
+
+		for (List<Hire> hires : made)
+		{
+			for (Hire hire : hires)
+			{
+				assertTrue(ids.add(hire.getHireID()));
+				assertTrue(ids.add(hire.getCustomer().getCustomerID()));
+				assertTrue(ids.add(hire.getBike().getBikeID()));
+				assertSame(hire, controller.findHire(hire.getHireID()));
+				assertSame(hire.getCustomer(), controller.findCustomer(hire.getCustomer().getCustomerID()));
+				assertSame(hire.getBike(), controller.findBike(hire.getBike().getBikeID()));
+				assertNotNull(controller.getInvoiceOut(hire));
+				assertEquals(1, controller.getHiresByCustomer(hire.getCustomer()).size());
+			}
+		}
+	}
+
+	/*
+	 * Every desk trying to return every hire should return each
+	 * exactly once, and the state counts should agree.
+	 */
+	@Test
+	public void concurrentReturnsAreNotLost() throws Exception
+	{
+		final List<Hire> hires = new ArrayList<Hire>();
+		Customer customer = new Customer("test", "test", "test", "test", "test");
+		controller.addCustomer(customer);
+
+		for (int i = 0; i < DESKS * HIRES_PER_DESK; i++)
+		{
+			Bike bike = new Bike("test", "test", "test", "test", "test", 1, 1);
+			controller.addBike(bike);
+			Hire hire = new Hire(customer, bike, LocalDate.now().plusDays(1));
+			hire.payForHire();
+			controller.addHire(hire);
+			hires.add(hire);
+		}
+
+		final AtomicInteger returned = new AtomicInteger();
+
+		runDesks(new Desk()
+		{
+			public void work(int desk)
+			{
+				// Each desk starts at a different hire, to meet the others
+				for (int i = 0; i < hires.size(); i++)
+				{
+					Hire hire = hires.get((i + desk * HIRES_PER_DESK) % hires.size());
+
+					if (controller.returnHire(hire, hire.getHireNo() % 2 == 0))
+					{
+						controller.addInvoiceIn(new InvoiceIn(hire));
+						returned.incrementAndGet();
+					}
+				}
+			}
+		});
+
+		assertEquals(hires.size(), returned.get());
+		assertEquals(hires.size(), controller.getInvoicesIn().size());
+		assertEquals(hires.size(), controller.getNoOfHires(Complete.class));
+		assertEquals(0, controller.getNoOfHires(Active.class));
+		assertEquals(hires.size() / 2, controller.getNoOfBikes(Damaged.class));
+		assertEquals(hires.size() / 2, controller.getNoOfBikes(Available.class));
+	}
+
+	/*
+	 * Desks competing to reserve a few bikes should never hold the
+	 * same bike at once, whether they go on to collect it or not, and
+	 * each bike should end up counted and indexed as available.
+	 */
+	@Test
+	public void reservationsNeverDoubleBook() throws Exception
+	{
+		final Bike[] bikes = new Bike[4];
+
+		for (int b = 0; b < bikes.length; b++)
+		{
+			bikes[b] = new Bike("test", "test", "test", "test", "test", 1, 1);
+			controller.addBike(bikes[b]);
+		}
+
+		final AtomicIntegerArray holders = new AtomicIntegerArray(bikes.length);
+		final AtomicInteger doubleBookings = new AtomicInteger();
+		final AtomicInteger hires = new AtomicInteger();
+
+		runDesks(new Desk()
+		{
+			public void work(int desk)
+			{
+				Random random = new Random(desk);
+
+				for (int i = 0; i < 20000; i++)
+				{
+					int b = random.nextInt(bikes.length);
+					Bike bike = bikes[b];
+					Reserved reservation = bike.reserve(60000);
+
+					if (reservation == null)
+						continue;
+
+					if (holders.incrementAndGet(b) != 1)
+						doubleBookings.incrementAndGet();
+
+					if (random.nextBoolean() && bike.collect(reservation))
+					{
+						hires.incrementAndGet();
+						holders.decrementAndGet(b);
+						assertTrue(bike.returnBike(false));
+					}
+					else
+					{
+						holders.decrementAndGet(b);
+						assertTrue(bike.release(reservation));
+					}
+				}
+			}
+		});
+
+		assertEquals(0, doubleBookings.get());
+		assertTrue(hires.get() > 0);
+		assertEquals(bikes.length, controller.getNoOfBikes(Available.class));
+		assertEquals(0, controller.getNoOfBikes(Reserved.class));
+		assertEquals(0, controller.getNoOfBikes(OnHire.class));
+
+		// Changes reported out of order must not leave a bike indexed
+		// under a state it has left
+		int[] any = {BikeBitmaps.ANY, BikeBitmaps.ANY, BikeBitmaps.ANY, BikeBitmaps.ANY, BikeBitmaps.ANY};
+		assertEquals(bikes.length, controller.selectBikes(any, Available.class).length);
+		assertEquals(0, controller.selectBikes(any, Reserved.class).length);
+		assertEquals(0, controller.selectBikes(any, OnHire.class).length);
+	}
+
+	/*
+	 * A reservation that is not collected in time should expire,
+	 * leaving the bike free for another desk.
+	 */
+	@Test
+	public void reservationsExpire() throws Exception
+	{
+		Bike bike = new Bike("test", "test", "test", "test", "test", 1, 1);
+		controller.addBike(bike);
+
+		Reserved first = bike.reserve(200);
+
+		assertNotNull(first);
+		assertNull(bike.reserve(200));
+		assertEquals(1, controller.getNoOfBikes(Reserved.class));
+
+		Thread.sleep(400);
+
+		assertTrue(bike.getState() instanceof Available);
+		assertEquals(0, controller.getNoOfBikes(Reserved.class));
+
+		Reserved second = bike.reserve(60000);
+
+		assertNotNull(second);
+		assertFalse(bike.collect(first));
+		assertTrue(bike.collect(second));
+		assertTrue(bike.getState() instanceof OnHire);
+	}
+
+	/*
+	 * Expired reservations should be released by the controller, so
+	 * that the bikes are counted as available before anything reads
+	 * their states, while reservations still running are kept.
+	 */
+	@Test
+	public void expiredReservationsReleased() throws Exception
+	{
+		Bike expiring = new Bike("test", "test", "test", "test", "test", 1, 1);
+		Bike kept = new Bike("test", "test", "test", "test", "test", 1, 1);
+		controller.addBike(expiring);
+		controller.addBike(kept);
+		int available = controller.getNoOfBikes(Available.class);
+
+		expiring.reserve(100);
+		kept.reserve(60000);
+		assertEquals(2, controller.getNoOfBikes(Reserved.class));
+
+		Thread.sleep(300);
+		controller.releaseExpiredReservations();
+
+		assertEquals(1, controller.getNoOfBikes(Reserved.class));
+		assertEquals(available - 1, controller.getNoOfBikes(Available.class));
+		assertTrue(kept.getState() instanceof Reserved);
+	}
+
+	/*
+	 * A reader of the customers list, as a table reads it on the event
+	 * dispatch thread, should find every customer counted as published
+	 * while desks register more.
+	 */
+	@Test
+	public void publishedCustomersReadWhileAdding() throws Exception
+	{
+		final AtomicInteger missing = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(1);
+		int before = controller.getCustomers().publishedSize();
+
+		Thread reader = new Thread()
+		{
+			public void run()
+			{
+				while (done.getCount() > 0)
+				{
+					int size = controller.getCustomers().publishedSize();
+
+					for (int i = Math.max(0, size - 10); i < size; i++)
+						if (controller.getCustomers().getPublished(i) == null)
+							missing.incrementAndGet();
+				}
+			}
+		};
+		reader.start();
+
+		try
+		{
+			runDesks(new Desk()
+			{
+				public void work(int desk)
+				{
+					for (int i = 0; i < HIRES_PER_DESK; i++)
+						controller.addCustomer(new Customer("test", "test", "test", "test", "test"));
+				}
+			});
+		} finally
+		{
+			done.countDown();
+			reader.join();
+		}
+
+		assertEquals(0, missing.get());
+		int added = DESKS * HIRES_PER_DESK;
+		assertEquals(before + added, controller.getCustomers().publishedSize());
+		assertNull(controller.getCustomers().getPublished(before + added));
+	}
+
+	private interface Desk
+	{
+		public void work(int desk);
+	}
+
+	/*
+	 * Runs the desks on their own threads, starting them together, and
+	 * rethrows the first failure.
+	 */
+	private void runDesks(final Desk desk) throws Exception
+	{
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+
+		for (int d = 0; d < DESKS; d++)
+		{
+			final int number = d;
+
+			Thread thread = new Thread()
+			{
+				public void run()
+				{
+					try
+					{
+						start.await();
+						desk.work(number);
+					} catch (Throwable t)
+					{
+						synchronized (failures)
+						{
+							failures.add(t);
+						}
+					}
+				}
+			};
+			thread.start();
+			threads.add(thread);
+		}
+
+		start.countDown();
+
+		for (Thread thread : threads)
+			thread.join();
+
+		if (!failures.isEmpty())
+			throw new AssertionError(failures.get(0));
+	}
+
+}
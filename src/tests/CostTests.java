@@ -2,10 +2,20 @@ package tests;
 
 import static org.junit.Assert.assertTrue;
 import model.hire.Complete;
+import model.hire.EpochDay;
 import model.hire.Hire;
 import model.invoice.InvoiceIn;
 import model.invoice.InvoiceOut;
+import model.invoice.InvoiceRenderer;
+import model.invoice.InvoiceTemplate;
+import model.invoice.Money;
 
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+
+import org.joda.time.Days;
 import org.joda.time.LocalDate;
 import org.junit.After;
 import org.junit.Before;
@@ -80,7 +90,7 @@ public class CostTests
 	public void getDaysLate2()
 	{
 		// Complete hire and set its return date to 2 days after its end date (Late)
-		hire.setState(new Complete(hire, false));
+		hire.setState(Complete.STATE);
 		hire.setDateReturned(LocalDate.now().plusDays(6));
 		
 		assertTrue(hire.getDaysLate() == 2);
@@ -113,7 +123,8 @@ public class CostTests
 	@Test
 	public void getLateFee0()
 	{
-		hire.setState(new Complete(hire, false));
+		hire.setState(Complete.STATE);
+		hire.setReturnedDay(EpochDay.today());
 		
 		invIn = new InvoiceIn(hire);
 		assertTrue(invIn.getLateFee() == 0);
@@ -128,12 +139,148 @@ public class CostTests
 	public void getLateFee2()
 	{
 		// Complete hire and set its return date to 2 days after its end date (Late)
-		hire.setState(new Complete(hire, false));
+		hire.setState(Complete.STATE);
 		hire.setDateReturned(LocalDate.now().plusDays(6));
 		
 		invIn = new InvoiceIn(hire);
 		assertTrue(invIn.getLateFee() == 45.75);
 	}
-	
+
+	/*
+	 * Hire dates are stored as epoch days, which should
+	 * convert to and from the dates Joda-Time would give,
+	 * either side of the epoch and across leap years.
+	 */
+	@Test
+	public void epochDaysMatchJodaTime()
+	{
+		LocalDate epoch = new LocalDate(1970, 1, 1);
+
+		for (LocalDate date = new LocalDate(1899, 12, 1); date.getYear() < 2101; date = date.plusDays(13))
+		{
+			int day = Days.daysBetween(epoch, date).getDays();
+
+			assertTrue(EpochDay.of(date) == day);
+			assertTrue(EpochDay.toDate(day).equals(date));
+		}
+
+		assertTrue(EpochDay.today() == EpochDay.of(LocalDate.now()));
+		assertTrue(EpochDay.of(null) == EpochDay.NONE);
+		assertTrue(EpochDay.toDate(EpochDay.NONE) == null);
+	}
+
+	/*
+	 * Amounts in pence should format as DecimalFormat
+	 * formatted amounts in pounds.
+	 */
+	@Test
+	public void moneyFormatsAsDecimalFormat()
+	{
+		DecimalFormat pound = new DecimalFormat("£###,###,#00.00");
+		long[] amounts = {0, 5, 99, 100, 1525, 99999, 100000, 123456789, -2050, 100000000000L};
+
+		for (long pence : amounts)
+			assertTrue(Money.format(pence).equals(pound.format(pence / 100.0)));
+
+		assertTrue(Money.of(15.25) == 1525);
+		assertTrue(Money.of(0.1 + 0.2) == 30);
+	}
+
+	/*
+	 * Changing a bike's rates should not alter the
+	 * invoices already issued for it.
+	 */
+	@Test
+	public void invoicesKeepIssuedAmounts()
+	{
+		hire.setState(Complete.STATE);
+		hire.setDateReturned(LocalDate.now().plusDays(6));
+		invIn = new InvoiceIn(hire);
+
+		bike.setDailyRate(100);
+		bike.setDeposit(100);
+
+		assertTrue(invOut.getTotal() == 81.50);
+		assertTrue(invIn.getLateFee() == 45.75);
+		assertTrue(invIn.getDaysLate() == 2);
+		assertTrue(invIn.getDepositPence() == 2050);
+	}
+
+	/*
+	 * The invoices should render exactly as they were
+	 * built by concatenation, alone or in a batch.
+	 */
+	@Test
+	public void invoicesRenderAsBefore() throws Exception
+	{
+		hire.setState(Complete.STATE);
+		hire.setDateReturned(LocalDate.now().plusDays(6));
+		invIn = new InvoiceIn(hire);
+
+		String head = "-- INVOICE -- \n";
+		head += "\n\nCustomer ID: "		+ customer.getCustomerID();
+		head += "\nName: "				+ customer.getFirstName() + " " + customer.getLastName();
+		head += "\nAddress: "			+ customer.getAddressString();
+		head += "\n\nHire ID: " 			+ hire.getHireID();
+		head += "\nStart date: "			+ hire.getStartDate().toString();
+		head += "\nEnd date: "			+ hire.getEndDate().toString();
+		head += "\n\nBike ID: "			+ bike.getBikeID();
+		head += "\nDescription: "		+ bike.getDescription();
+		head += "\nDaily rate: £15.25";
+		String created = "\nInvoice ID: %s\nDate created: " + LocalDate.now();
+
+		String out = head.replace("\n\nCustomer", String.format(created, invOut.getInvoiceOutID())
+				+ "\n\nCustomer");
+		out += "\n\nAmount due";
+		out += "\nBike cost: £61.00";
+		out += "\nDeposit: £20.50";
+		out += "\nTotal: £81.50";
+
+		String in = head.replace("\n\nCustomer", String.format(created, invIn.getInvoiceInID())
+				+ "\n\nCustomer");
+		in += "\n\nReturned on: "		+ LocalDate.now().toString();
+		in += "\nDays late: 2";
+		in += "\nLate fee: £45.75";
+		in += "\nDeposit refunded: "	+ (invIn.wasBikeDamaged() ? "no" : "yes");
+
+		assertTrue(invOut.toString().equals(out));
+		assertTrue(invIn.toString().equals(in));
+
+		InvoiceRenderer renderer = InvoiceRenderer.text();
+		StringWriter writer = new StringWriter();
+		renderer.renderInvoicesOut(Arrays.asList(invOut, invOut), "\n", writer);
+		assertTrue(writer.toString().equals(out + "\n" + out));
+
+		CharBuffer buffer = CharBuffer.allocate(1024);
+		renderer.render(invIn, buffer);
+		assertTrue(buffer.flip().toString().equals(in));
+	}
+
+	/*
+	 * Printable invoices are of fixed width.
+	 */
+	@Test
+	public void printableInvoicesFixedWidth() throws Exception
+	{
+		StringBuilder text = new StringBuilder();
+		InvoiceTemplate.OUT_PRINTABLE.render(invOut, text);
+
+		for (String line : text.toString().split("\n"))
+			assertTrue(line.length() == 40);
+
+		assertTrue(text.toString().contains("Total                             £81.50\n"));
+	}
+
+	/*
+	 * A late fee of a half penny should be rounded up.
+	 */
+	@Test
+	public void lateFeeRoundsHalfUp()
+	{
+		assertTrue(Money.lateFee(2, 1525) == 4575);
+		assertTrue(Money.lateFee(1, 1) == 2);
+		assertTrue(Money.lateFee(3, 333) == 1499);
+		assertTrue(Money.lateFee(0, 1525) == 0);
+	}
 
 }
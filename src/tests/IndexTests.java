@@ -0,0 +1,876 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import model.hire.Active;
+import model.hire.Complete;
+import model.hire.Hire;
+import model.hire.PaymentPending;
+import model.invoice.InvoiceIn;
+import model.invoice.InvoiceOut;
+
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import model.bike.Available;
+import model.bike.Bike;
+import model.bike.Damaged;
+import model.bike.OnHire;
+import model.customer.Customer;
+import controller.Controller;
+import controller.DataListener;
+import controller.index.AttributeDictionary;
+import controller.index.BikeBitmaps;
+import controller.index.EntityID;
+import controller.index.HireHistory;
+import controller.index.IntIndex;
+import controller.index.Ledger;
+import controller.index.PositionIndex;
+import controller.index.Sequence;
+import controller.persistence.Mutation;
+import controller.persistence.SnapshotCodec;
+import controller.persistence.legacy.LegacyConverter;
+
+public class IndexTests
+{
+
+	private static final String LEGACY = "controller.persistence.legacy.";
+	private static final String[] ORIGINAL_CLASSES = {"controller.Controller",
+			"controller.Report", "model.customer.Customer", "model.bike.Bike",
+			"model.bike.Available", "model.bike.OnHire", "model.bike.Damaged",
+			"model.hire.Hire", "model.hire.PaymentPending", "model.hire.Active",
+			"model.hire.Late", "model.hire.Complete", "model.invoice.InvoiceOut",
+			"model.invoice.InvoiceIn"};
+
+	Controller controller = Controller.getInstance();
+	Customer customer;
+	Bike bike;
+	Hire hire;
+	InvoiceOut invOut;
+	InvoiceIn invIn;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		customer = new Customer("test", "test", "test", "test", "test");
+		controller.addCustomer(customer);
+		bike = new Bike("test", "test", "test", "test", "test", 1, 1);
+		controller.addBike(bike);
+		hire = new Hire(customer, bike, new LocalDate(LocalDate.now()));
+		controller.addHire(hire);
+		invOut = new InvoiceOut(hire);
+		controller.addInvoiceOut(invOut);
+		invIn = new InvoiceIn(hire);
+		controller.addInvoiceIn(invIn);
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		controller.getCustomers().clear();
+		controller.getBikes().clear();
+		controller.getHires().clear();
+		controller.getInvoicesOut().clear();
+		controller.getInvoicesIn().clear();
+	}
+
+	/*
+	 * Every kind of entity should be found by its ID,
+	 * whatever the case of the ID's prefix.
+	 */
+	@Test
+	public void findIgnoresCase()
+	{
+		assertSame(customer, controller.findCustomer(customer.getCustomerID().toLowerCase()));
+		assertSame(bike, controller.findBike(bike.getBikeID().toLowerCase()));
+		assertSame(hire, controller.findHire("hIrE" + hire.getHireNo()));
+		assertSame(invOut, controller.findInvoiceOut(invOut.getInvoiceOutID().toLowerCase()));
+		assertSame(invIn, controller.findInvoiceIn(invIn.getInvoiceInID()));
+	}
+
+	/*
+	 * IDs that would not have matched the entity's ID as a
+	 * string should not find it.
+	 */
+	@Test
+	public void findRejectsOtherIDs()
+	{
+		String number = Integer.toString(customer.getCustNo());
+
+		assertNull(controller.findCustomer("CUST0" + number));
+		assertNull(controller.findCustomer(" CUST" + number));
+		assertNull(controller.findCustomer("CUST" + number + " "));
+		assertNull(controller.findCustomer("CUST"));
+		assertNull(controller.findCustomer("BIKE" + number));
+		assertNull(controller.findCustomer("CUST99999999999"));
+		assertNull(controller.findCustomer(null));
+	}
+
+	/*
+	 * Clearing a list should also clear its index, and entities
+	 * added afterwards should be found.
+	 */
+	@Test
+	public void findAfterClear()
+	{
+		String id = customer.getCustomerID();
+		controller.getCustomers().clear();
+
+		assertNull(controller.findCustomer(id));
+
+		Customer replacement = new Customer("test", "test", "test", "test", "test");
+		controller.addCustomer(replacement);
+
+		assertSame(replacement, controller.findCustomer(replacement.getCustomerID()));
+	}
+
+	/*
+	 * A customer's and a bike's hires, and a hire's invoices,
+	 * should be found through the secondary indexes.
+	 */
+	@Test
+	public void historyIndexes()
+	{
+		Bike other = new Bike("test", "test", "test", "test", "test", 1, 1);
+		controller.addBike(other);
+		Hire second = new Hire(customer, other, new LocalDate(LocalDate.now()));
+		controller.addHire(second);
+
+		assertEquals(2, controller.getHiresByCustomer(customer).size());
+		assertSame(second, controller.getHiresByCustomer(customer).get(1));
+		assertEquals(1, controller.getHiresByBike(bike).size());
+		assertSame(second, controller.getHiresByBike(other).get(0));
+		assertSame(invOut, controller.getInvoiceOut(hire));
+		assertSame(invIn, controller.getInvoiceIn(hire));
+		assertNull(controller.getInvoiceIn(second));
+	}
+
+	/*
+	 * Secondary indexes should follow a cleared list.
+	 */
+	@Test
+	public void historyAfterClear()
+	{
+		controller.getHires().clear();
+
+		assertEquals(0, controller.getHiresByCustomer(customer).size());
+
+		controller.addHire(hire);
+
+		assertSame(hire, controller.getHiresByBike(bike).get(0));
+	}
+
+	/*
+	 * A hire returned and invoiced should be released into the hire
+	 * history, and read back from it by the list, the indexes and its
+	 * invoices, none of which hold it any longer.
+	 */
+	@Test
+	public void returnedHiresReleased()
+	{
+		Hire returned = new Hire(customer, bike, new LocalDate(LocalDate.now().plusDays(1)));
+		returned.payForHire();
+		controller.addHire(returned);
+		InvoiceOut out = new InvoiceOut(returned);
+		controller.addInvoiceOut(out);
+		controller.returnHire(returned, true);
+		InvoiceIn in = new InvoiceIn(returned);
+		controller.addInvoiceIn(in);
+
+		Hire found = controller.findHire(returned.getHireNo());
+
+		assertTrue(found != returned);
+		assertEquals(returned.getHireID(), found.getHireID());
+		assertTrue(found.getState() instanceof Complete);
+		assertEquals(returned.getStartDate(), found.getStartDate());
+		assertEquals(returned.getDateReturned(), found.getDateReturned());
+		assertSame(customer, found.getCustomer());
+		assertSame(bike, found.getBike());
+		assertEquals(returned.getHireNo(), controller.getHires().get(1).getHireNo());
+		assertEquals(returned.getHireNo(), controller.getHires().getPublished(1).getHireNo());
+		assertEquals(returned.getHireNo(), controller.getHiresByBike(bike).get(1).getHireNo());
+		assertSame(hire, controller.getHiresByBike(bike).get(0));
+
+		assertTrue(out.getHire() != returned && in.getHire() != returned);
+		assertEquals(returned.getHireNo(), out.getHire().getHireNo());
+		assertEquals(returned.getHireNo(), in.getHire().getHireNo());
+		assertSame(out, controller.getInvoiceOut(returned));
+		assertSame(in, controller.getInvoiceIn(found));
+		assertSame(invIn.getHire(), hire);
+
+		HireHistory.Row row = controller.getHireHistory().row().moveTo(1);
+
+		assertEquals(2, controller.getHireHistory().size());
+		assertEquals(in.getInvoiceNo(), row.getInvoiceNo());
+		assertEquals(returned.getHireNo(), row.getHireNo());
+		assertTrue(row.wasBikeDamaged());
+		assertEquals(1, controller.getNoOfHires(Complete.class));
+	}
+
+	/*
+	 * IntIndex should agree with a HashMap through resizes
+	 * and replaced values.
+	 */
+	@Test
+	public void intIndexMatchesHashMap()
+	{
+		IntIndex<Integer> index = new IntIndex<Integer>();
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		Random random = new Random(1);
+
+		for (int i = 0; i < 100000; i++)
+		{
+			int key = random.nextInt(50000) - 1000;
+			index.put(key, i);
+			expected.put(key, i);
+		}
+
+		assertEquals(expected.size(), index.size());
+
+		for (int key = -1000; key < 49000; key++)
+			assertEquals(expected.get(key), index.get(key));
+
+		index.clear();
+		assertEquals(0, index.size());
+		assertNull(index.get(1));
+	}
+
+	/*
+	 * PositionIndex should agree with a HashMap through resizes
+	 * and replaced positions, position 0 included.
+	 */
+	@Test
+	public void positionIndexMatchesHashMap()
+	{
+		PositionIndex index = new PositionIndex();
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		Random random = new Random(1);
+
+		for (int i = 0; i < 100000; i++)
+		{
+			int key = random.nextInt(50000) - 1000;
+			index.put(key, i % 7 == 0 ? 0 : i);
+			expected.put(key, i % 7 == 0 ? 0 : i);
+		}
+
+		assertEquals(expected.size(), index.size());
+
+		for (int key = -1000; key < 49000; key++)
+			assertEquals(expected.containsKey(key) ? expected.get(key) : -1, index.get(key));
+
+		index.clear();
+		assertEquals(0, index.size());
+		assertEquals(-1, index.get(1));
+	}
+
+	/*
+	 * Bikes found through the attribute bitmaps should be those found
+	 * by scanning the bikes, for values shared by many bikes and by
+	 * few, and as bikes change state.
+	 */
+	@Test
+	public void bikeBitmapsMatchScan()
+	{
+		String[] makes = {"Scott", "Giant", "Trek", "Raleigh"};
+		String[] functions = {"road", "mountain", "hybrid"};
+		String[] colours = {"red", "blue", "green", "black", "silver"};
+		Random random = new Random(1);
+
+		for (int i = 0; i < 20000; i++)
+		{
+			String model = random.nextInt(10) == 0 ? "Custom " + random.nextInt(3000) : "Standard";
+			controller.addBike(new Bike(makes[random.nextInt(makes.length)], model,
+					functions[random.nextInt(functions.length)], random.nextBoolean() ? "men" : "women",
+					colours[random.nextInt(colours.length)], 10, 10));
+		}
+
+		List<Bike> bikes = controller.getBikes();
+
+		for (int i = 0; i < 5000; i++)
+			bikes.get(random.nextInt(bikes.size())).setState(random.nextBoolean() ? Damaged.STATE : OnHire.STATE);
+
+		for (int i = 0; i < 200; i++)
+		{
+			Bike like = bikes.get(random.nextInt(bikes.size()));
+			int[] codes = {BikeBitmaps.ANY, BikeBitmaps.ANY, BikeBitmaps.ANY, BikeBitmaps.ANY, BikeBitmaps.ANY};
+
+			if (random.nextBoolean())
+				codes[BikeBitmaps.MAKE] = like.getMakeCode();
+			if (random.nextInt(4) == 0)
+				codes[BikeBitmaps.MODEL] = like.getModelCode();
+			if (random.nextBoolean())
+				codes[BikeBitmaps.FUNCTION] = like.getFunctionCode();
+			if (random.nextBoolean())
+				codes[BikeBitmaps.DEMOGRAPHIC] = like.getDemographicCode();
+			codes[BikeBitmaps.COLOUR] = like.getColourCode();
+
+			List<Integer> expected = new ArrayList<Integer>();
+
+			for (int p = 0; p < bikes.size(); p++)
+			{
+				Bike bike = bikes.get(p);
+
+				if (bike.getState() instanceof Available
+						&& matches(codes[BikeBitmaps.MAKE], bike.getMakeCode())
+						&& matches(codes[BikeBitmaps.MODEL], bike.getModelCode())
+						&& matches(codes[BikeBitmaps.FUNCTION], bike.getFunctionCode())
+						&& matches(codes[BikeBitmaps.DEMOGRAPHIC], bike.getDemographicCode())
+						&& matches(codes[BikeBitmaps.COLOUR], bike.getColourCode()))
+					expected.add(p);
+			}
+
+			int[] found = controller.selectBikes(codes, Available.class);
+			assertEquals(expected.size(), found.length);
+
+			for (int f = 0; f < found.length; f++)
+				assertEquals((int) expected.get(f), found[f]);
+		}
+
+		int[] codes = {AttributeDictionary.BIKE_MAKES.find("Scott"), BikeBitmaps.ANY, BikeBitmaps.ANY,
+				BikeBitmaps.ANY, AttributeDictionary.BIKE_COLOURS.find("mauve")};
+		assertEquals(0, controller.selectBikes(codes, null).length);
+	}
+
+	/*
+	 * Customers should be found by the start of each word typed, in any
+	 * field and order, by postcode with or without its space, and with
+	 * a typing mistake once no customer matches exactly.
+	 */
+	@Test
+	public void customerSearchFindsPrefixesAndTypos()
+	{
+		controller.addCustomer(new Customer("John", "Smith", "1 High Street", "Northampton", "NN1 1AB"));
+		controller.addCustomer(new Customer("Joanna", "Smithers", "2 High Street", "Northampton", "NN1 2CD"));
+		controller.addCustomer(new Customer("Mary", "Jones", "3 Low Road", "Milton Keynes", "MK9 3EF"));
+
+		// The customer added in setUp() is at position 0
+		assertSearch(new int[] {1, 2}, "jo smi");
+		assertSearch(new int[] {2}, "smithers");
+		assertSearch(new int[] {1}, "NN1 1A");
+		assertSearch(new int[] {1}, "nn11ab");
+		assertSearch(new int[] {3}, "keynes mary");
+		assertSearch(new int[] {3}, "Marry Jnoes");
+		assertSearch(new int[] {1, 2}, "Smiht");
+		assertSearch(new int[0], "zebedee");
+		assertSearch(new int[] {1}, "jo smi", 1);
+	}
+
+	private void assertSearch(int[] expected, String text)
+	{
+		assertSearch(expected, text, 10);
+	}
+
+	private void assertSearch(int[] expected, String text, int limit)
+	{
+		int[] found = controller.searchCustomers(text, limit);
+
+		assertEquals(text, expected.length, found.length);
+
+		for (int i = 0; i < found.length; i++)
+			assertEquals(text, expected[i], found[i]);
+	}
+
+	private static boolean matches(int wanted, int code)
+	{
+		return wanted == BikeBitmaps.ANY || wanted == code;
+	}
+
+	/*
+	 * Threads taking numbers from one sequence at the same time
+	 * should never be given the same number.
+	 */
+	@Test
+	public void sequenceNeverRepeats() throws Exception
+	{
+		final Sequence sequence = new Sequence();
+		final Set<Integer> numbers = ConcurrentHashMap.newKeySet();
+		Thread[] threads = new Thread[4];
+
+		for (int t = 0; t < threads.length; t++)
+		{
+			threads[t] = new Thread()
+			{
+				public void run()
+				{
+					for (int i = 0; i < 1000; i++)
+						numbers.add(sequence.next());
+				}
+			};
+			threads[t].start();
+		}
+
+		for (Thread thread : threads)
+			thread.join();
+
+		assertEquals(4000, numbers.size());
+		assertTrue(sequence.getHighWater() >= 4000);
+		assertEquals(0, sequence.getHighWater() % Sequence.BLOCK_SIZE);
+	}
+
+	/*
+	 * The number of a hire that is never added (e.g. cancelled
+	 * before payment) should not be given to the next hire.
+	 */
+	@Test
+	public void cancelledNumbersNotReused()
+	{
+		Hire cancelled = new Hire(customer, bike, new LocalDate(LocalDate.now()));
+		Hire next = new Hire(customer, bike, new LocalDate(LocalDate.now()));
+
+		assertTrue(next.getHireNo() > cancelled.getHireNo());
+	}
+
+	/*
+	 * A high-water mark restored from a journal record should
+	 * skip numbering past it.
+	 */
+	@Test
+	public void sequenceAdvancedByJournal() throws Exception
+	{
+		long highWater = controller.getSequenceHighWater(EntityID.CUSTOMERS) + 1000;
+		byte[] record = Mutation.advanceSequence(EntityID.CUSTOMERS, highWater);
+		Mutation.apply(controller, new DataInputStream(new ByteArrayInputStream(record)));
+
+		assertEquals(highWater, controller.getSequenceHighWater(EntityID.CUSTOMERS));
+		assertTrue(controller.nextCustomerNo() > highWater);
+	}
+
+	/*
+	 * High-water marks should survive a snapshot, even when the
+	 * highest numbered entities were never added.
+	 */
+	@Test
+	public void sequenceRestoredFromSnapshot() throws Exception
+	{
+		int cancelled = controller.nextHireNo();
+		long highWater = controller.getSequenceHighWater(EntityID.HIRES);
+		File file = File.createTempFile("snapshot", ".bin");
+
+		try
+		{
+			SnapshotCodec.write(controller, 0, file);
+			tearDown();
+			SnapshotCodec.read(controller, file);
+		} finally
+		{
+			file.delete();
+		}
+
+		assertEquals(highWater, controller.getSequenceHighWater(EntityID.HIRES));
+		assertEquals(1, controller.getHires().size());
+		assertTrue(controller.nextHireNo() > cancelled);
+	}
+
+	/*
+	 * Invoices should keep the amounts they were issued with
+	 * through the journal and a snapshot.
+	 */
+	@Test
+	public void invoiceAmountsRestored() throws Exception
+	{
+		byte[] out = Mutation.addInvoiceOut(invOut);
+		byte[] in = Mutation.addInvoiceIn(invIn);
+		long total = invOut.getTotalPence();
+		bike.setDailyRate(99);
+		bike.setDeposit(99);
+
+		controller.getInvoicesOut().clear();
+		controller.getInvoicesIn().clear();
+		Mutation.apply(controller, new DataInputStream(new ByteArrayInputStream(out)));
+		Mutation.apply(controller, new DataInputStream(new ByteArrayInputStream(in)));
+		assertEquals(total, controller.getInvoicesOut().get(0).getTotalPence());
+		assertEquals(100, controller.getInvoicesIn().get(0).getDepositPence());
+
+		File file = File.createTempFile("snapshot", ".bin");
+
+		try
+		{
+			SnapshotCodec.write(controller, 0, file);
+			tearDown();
+			SnapshotCodec.read(controller, file);
+		} finally
+		{
+			file.delete();
+		}
+
+		assertEquals(total, controller.getInvoicesOut().get(0).getTotalPence());
+		assertEquals(100, controller.getInvoicesIn().get(0).getDailyRatePence());
+		assertEquals(9900, controller.getBikes().get(0).getDailyRatePence());
+	}
+
+	/*
+	 * Each invoice should post its payments to the customer's
+	 * account, whose balance follows the invoices lists.
+	 */
+	@Test
+	public void ledgerBalancesAndPages()
+	{
+		int custNo = customer.getCustNo();
+
+		assertEquals(0, controller.getBalance(custNo));
+
+		List<Ledger.Entry> page = controller.getPayments(custNo, 1, 10);
+		assertEquals(2, page.size());
+		assertEquals(Ledger.DEPOSIT, page.get(0).getKind());
+		assertEquals(100, page.get(0).getBalance());
+		assertEquals(Ledger.REFUND, page.get(1).getKind());
+		assertEquals(-100, page.get(1).getAmount());
+
+		Hire other = new Hire(customer, bike, new LocalDate(LocalDate.now().plusDays(3)));
+		controller.addHire(other);
+		controller.addInvoiceOut(new InvoiceOut(other));
+		assertEquals(400, controller.getBalance(custNo));
+
+		controller.getInvoicesIn().clear();
+		assertEquals(500, controller.getBalance(custNo));
+		assertEquals(4, controller.getNoOfPayments(custNo));
+		assertEquals(1, controller.getPayments(custNo, 3, 10).size());
+	}
+
+	/*
+	 * Equal attribute values should share a code, and the values should
+	 * survive a snapshot.
+	 */
+	@Test
+	public void attributesCodedAndRestored() throws Exception
+	{
+		Bike other = new Bike("Other", "Other", "Other", "Other", new String("test"), 1, 1);
+		controller.addBike(other);
+
+		assertEquals(bike.getColourCode(), other.getColourCode());
+		assertTrue(bike.getMakeCode() != other.getMakeCode());
+		assertEquals(AttributeDictionary.NULL, new Customer("a", "b", "c", null, "e")
+				.getAddressTownCode());
+
+		File file = File.createTempFile("snapshot", ".bin");
+
+		try
+		{
+			SnapshotCodec.write(controller, 0, file);
+			tearDown();
+			SnapshotCodec.read(controller, file);
+		} finally
+		{
+			file.delete();
+		}
+
+		assertEquals("Other", controller.getBikes().get(1).getMake());
+		assertEquals("test", controller.getBikes().get(1).getColour());
+		assertEquals("test", controller.getCustomers().get(0).getAddressTown());
+	}
+
+	/*
+	 * Listeners should be told of entities added to each list, and of
+	 * changes of state to bikes and hires already listed.
+	 */
+	@Test
+	public void dataListenersNotified()
+	{
+		final int[] added = new int[EntityID.KINDS];
+		final int[] updated = new int[EntityID.KINDS];
+		DataListener listener = new DataListener()
+		{
+			public void rowsAdded(int kind)
+			{
+				added[kind]++;
+			}
+
+			public void rowsUpdated(int kind)
+			{
+				updated[kind]++;
+			}
+		};
+
+		controller.addDataListener(listener);
+		try
+		{
+			Hire other = new Hire(customer, bike, new LocalDate(LocalDate.now().plusDays(3)));
+			controller.addHire(other);
+			controller.addInvoiceOut(new InvoiceOut(other));
+			hire.payForHire();
+			controller.returnHire(hire, true);
+			controller.repairBike(bike);
+		} finally
+		{
+			controller.removeDataListener(listener);
+		}
+
+		controller.addCustomer(new Customer("a", "b", "c", "d", "e"));
+
+		assertEquals(0, added[EntityID.CUSTOMERS]);
+		assertEquals(1, added[EntityID.HIRES]);
+		assertEquals(1, added[EntityID.INVOICES_OUT]);
+		assertTrue(updated[EntityID.HIRES] > 0);
+		assertTrue(updated[EntityID.BIKES] > 0);
+	}
+
+	/*
+	 * Invoices left unread by a snapshot should not be needed to add
+	 * an invoice or find a balance, and should be read, ahead of any
+	 * new invoice, as soon as any of them is needed.
+	 */
+	@Test
+	public void deferredInvoicesLoadedOnUse() throws Exception
+	{
+		Hire paid = new Hire(customer, bike, new LocalDate(LocalDate.now().plusDays(1)));
+		controller.addHire(paid);
+		controller.addInvoiceOut(new InvoiceOut(paid));
+		int custNo = customer.getCustNo();
+		long balance = controller.getBalance(custNo);
+		File file = File.createTempFile("snapshot", ".bin");
+
+		try
+		{
+			SnapshotCodec.write(controller, 0, file);
+			tearDown();
+			SnapshotCodec.read(controller, file, true);
+		} finally
+		{
+			file.delete();
+		}
+
+		assertTrue(controller.hasDeferredInvoices());
+		assertEquals(2, controller.getHires().size());
+		assertTrue(balance != 0);
+		assertEquals(balance, controller.getBalance(custNo));
+
+		Hire restored = controller.getHires().get(0);
+		Hire other = new Hire(restored.getCustomer(), restored.getBike(),
+				new LocalDate(LocalDate.now().plusDays(3)));
+		InvoiceOut invoice = new InvoiceOut(other);
+		controller.addHire(other);
+		controller.addInvoiceOut(invoice);
+		balance += invoice.getCostPence() + invoice.getDepositPence();
+
+		assertTrue(controller.hasDeferredInvoices());
+		assertEquals(balance, controller.getBalance(custNo));
+		assertEquals(3, controller.getInvoicesOut().size());
+		assertTrue(!controller.hasDeferredInvoices());
+		assertSame(restored, controller.getInvoicesOut().get(0).getHire());
+		assertSame(other, controller.getInvoicesOut().get(2).getHire());
+		assertEquals(1, controller.getHireHistory().size());
+		assertEquals(balance, controller.getBalance(custNo));
+	}
+
+	/*
+	 * A data file written by Java serialization of the original
+	 * classes should be converted with every entity's number, fields,
+	 * links and state intact, and numbering should carry on after it.
+	 */
+	@Test
+	public void legacyDataConverted() throws Exception
+	{
+		LocalDate today = LocalDate.now();
+		Object owner = legacy("Customer", "customerID", "CUST5", "custNo", 5, "firstName", "Ann",
+				"lastName", "Lee", "addressLine1", "1 Road", "addressTown", "Leeds",
+				"addressPostcode", "LS1");
+		Object other = legacy("Customer", "customerID", "CUST9", "custNo", 9, "firstName", "Bob",
+				"lastName", "Hart", "addressLine1", "2 Road", "addressTown", "York",
+				"addressPostcode", "YO1");
+		Object free = legacyBike(3, "Available");
+		Object hired = legacyBike(4, "OnHire");
+		Object damaged = legacyBike(7, "Damaged");
+		Object active = legacyHire(2, owner, hired, today.minusDays(1), today.plusDays(2), null,
+				"Active");
+		Object complete = legacyHire(6, other, damaged, today.minusDays(3), today.minusDays(1),
+				today, "Complete");
+		Object pending = legacyHire(8, owner, free, today.plusDays(1), today.plusDays(3), null,
+				"PaymentPending");
+
+		Object data = legacy("Controller", "dataFile", "BikeHireData.dat",
+				"customers", list(owner, other), "bikes", list(free, hired, damaged),
+				"hires", list(active, complete, pending),
+				"invoicesOut", list(legacy("InvoiceOut", "invoiceID", "INV-OUT-11", "invoiceNo", 11,
+						"hire", active), legacy("InvoiceOut", "invoiceID", "INV-OUT-12",
+						"invoiceNo", 12, "hire", complete)),
+				"invoicesIn", list(legacy("InvoiceIn", "invoiceID", "INV-IN-13", "invoiceNo", 13,
+						"hire", complete, "bikeDamaged", true)),
+				"journalSeq", 42L);
+		set(data, "report", legacy("Report", "controller", data));
+
+		File file = File.createTempFile("legacy", ".dat");
+		long seq;
+
+		try
+		{
+			writeLegacy(data, file);
+			tearDown();
+			seq = LegacyConverter.convert(file, controller);
+		} finally
+		{
+			file.delete();
+		}
+
+		assertEquals(42, seq);
+		assertEquals(2, controller.getCustomers().size());
+		assertEquals("CUST9", controller.findCustomer(9).getCustomerID());
+		assertEquals("Ann", controller.findCustomer(5).getFirstName());
+		assertEquals("Leeds", controller.findCustomer(5).getAddressTown());
+
+		assertEquals(3, controller.getBikes().size());
+		assertTrue(controller.findBike(3).getState() instanceof Available);
+		assertTrue(controller.findBike(4).getState() instanceof OnHire);
+		assertTrue(controller.findBike(7).getState() instanceof Damaged);
+		assertEquals(250, controller.findBike(3).getDailyRatePence());
+
+		Hire restored = controller.findHire(2);
+		assertTrue(restored.getState() instanceof Active);
+		assertSame(controller.findCustomer(5), restored.getCustomer());
+		assertSame(controller.findBike(4), restored.getBike());
+		assertTrue(controller.findHire(6).getState() instanceof Complete);
+		assertEquals(today, controller.findHire(6).getDateReturned());
+		assertTrue(controller.findHire(8).getState() instanceof PaymentPending);
+
+		assertSame(restored, controller.findInvoiceOut(11).getHire());
+		// Hire 6 is returned and invoiced, so it is released and read by number
+		assertEquals(6, controller.findInvoiceOut(12).getHire().getHireNo());
+		assertEquals(6, controller.findInvoiceIn(13).getHire().getHireNo());
+		assertEquals(today, controller.findInvoiceIn(13).getHire().getDateReturned());
+		assertTrue(controller.findInvoiceIn(13).wasBikeDamaged());
+
+		assertTrue(controller.nextCustomerNo() > 9);
+		assertTrue(controller.nextHireNo() > 8);
+		assertTrue(controller.nextInvoiceInNo() > 13);
+	}
+
+	private static Object legacyBike(int bikeNo, String state) throws Exception
+	{
+		Object bike = legacy("Bike", "bikeID", "BIKE" + bikeNo, "bikeNo", bikeNo, "make", "Scott",
+				"model", "Speedster", "function", "road", "demographic", "men", "colour", "blue",
+				"dailyRate", 2.5, "deposit", 10.0);
+		set(bike, "currentState", legacy(state, "bike", bike));
+		return bike;
+	}
+
+	private static Object legacyHire(int hireNo, Object customer, Object bike, LocalDate start,
+			LocalDate end, LocalDate returned, String state) throws Exception
+	{
+		Object hire = legacy("Hire", "hireID", "HIRE" + hireNo, "hireNo", hireNo,
+				"customer", customer, "bike", bike, "startDate", start, "endDate", end,
+				"dateReturned", returned);
+		set(hire, "currentState", legacy(state, "hire", hire));
+		return hire;
+	}
+
+	private static ArrayList<Object> list(Object... elements)
+	{
+		return new ArrayList<Object>(Arrays.asList(elements));
+	}
+
+	/*
+	 * Creates an instance of the converter's frozen copy of one of the
+	 * original classes, with the fields given as name and value pairs.
+	 */
+	private static Object legacy(String name, Object... fields) throws Exception
+	{
+		Constructor<?> constructor = Class.forName(LEGACY + name).getDeclaredConstructor();
+		constructor.setAccessible(true);
+		Object object = constructor.newInstance();
+
+		for (int i = 0; i < fields.length; i += 2)
+			set(object, (String) fields[i], fields[i + 1]);
+
+		return object;
+	}
+
+	private static void set(Object object, String name, Object value) throws Exception
+	{
+		Field field = object.getClass().getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(object, value);
+	}
+
+	/*
+	 * Serializes the frozen copies under the names of the original
+	 * classes, as the application used to write its data file.
+	 */
+	private static void writeLegacy(Object data, File file) throws Exception
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(data);
+		out.close();
+
+		byte[] stream = bytes.toByteArray();
+
+		for (String original : ORIGINAL_CLASSES)
+		{
+			String copy = LEGACY + original.substring(original.lastIndexOf('.') + 1);
+			stream = replace(stream, copy, original);
+			stream = replace(stream, "L" + copy.replace('.', '/') + ";",
+					"L" + original.replace('.', '/') + ";");
+		}
+
+		String text = new String(stream, "ISO-8859-1");
+		assertTrue(!text.contains(LEGACY) && !text.contains(LEGACY.replace('.', '/')));
+
+		FileOutputStream written = new FileOutputStream(file);
+		try
+		{
+			written.write(stream);
+		} finally
+		{
+			written.close();
+		}
+	}
+
+	/*
+	 * Replaces a string written with its length, as class names and
+	 * field types are in a serialization stream.
+	 */
+	private static byte[] replace(byte[] stream, String from, String to) throws Exception
+	{
+		byte[] target = utf(from);
+		byte[] replacement = utf(to);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		for (int i = 0; i < stream.length; i++)
+		{
+			int j = 0;
+
+			while (j < target.length && i + j < stream.length && stream[i + j] == target[j])
+				j++;
+
+			if (j == target.length)
+			{
+				out.write(replacement);
+				i += target.length - 1;
+			}
+			else
+				out.write(stream[i]);
+		}
+
+		return out.toByteArray();
+	}
+
+	private static byte[] utf(String text) throws Exception
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new DataOutputStream(bytes).writeUTF(text);
+		return bytes.toByteArray();
+	}
+
+}
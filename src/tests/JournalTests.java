@@ -0,0 +1,163 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import controller.persistence.Journal;
+
+public class JournalTests
+{
+
+	File file;
+	Journal journal;
+	List<Long> replayed;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		file = File.createTempFile("journal", ".log");
+		journal = new Journal(file, 0);
+		replayed = new ArrayList<Long>();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		journal.close();
+		file.delete();
+	}
+
+	private void replay(Journal journal, long afterSeq) throws IOException
+	{
+		journal.replay(afterSeq, new Journal.RecordHandler()
+		{
+			public void apply(long seq, DataInput in) throws IOException
+			{
+				replayed.add(seq);
+				assertEquals(seq, in.readByte());
+			}
+		});
+	}
+
+	/*
+	 * Every appended record should be replayed, in order,
+	 * after the journal is reopened.
+	 */
+	@Test
+	public void replayAfterReopen() throws Exception
+	{
+		for (int i = 1; i <= 3; i++)
+			journal.append(new byte[] {(byte) i});
+
+		journal.close();
+		journal = new Journal(file, 0);
+		replay(journal, 0);
+
+		assertEquals(3, replayed.size());
+		assertTrue(replayed.get(0) == 1 && replayed.get(2) == 3);
+		assertEquals(3, journal.getLastSeq());
+	}
+
+	/*
+	 * Records already covered by a snapshot should be skipped.
+	 */
+	@Test
+	public void replaySkipsSnapshotRecords() throws Exception
+	{
+		for (int i = 1; i <= 5; i++)
+			journal.append(new byte[] {(byte) i});
+
+		replay(journal, 3);
+
+		assertEquals(2, replayed.size());
+		assertTrue(replayed.get(0) == 4);
+	}
+
+	/*
+	 * A record cut short by a crash should be discarded and
+	 * new records should follow the last intact one.
+	 */
+	@Test
+	public void tornRecordDiscarded() throws Exception
+	{
+		journal.append(new byte[] {1});
+		journal.append(new byte[] {2});
+		journal.close();
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(raf.length() - 1);
+		raf.close();
+
+		journal = new Journal(file, 0);
+		assertEquals(1, journal.getLastSeq());
+		journal.append(new byte[] {2});
+		replay(journal, 0);
+
+		assertEquals(2, replayed.size());
+	}
+
+	/*
+	 * Sequence numbers should carry on from the snapshot
+	 * once the journal has been truncated.
+	 */
+	@Test
+	public void sequenceContinuesAfterTruncate() throws Exception
+	{
+		journal.append(new byte[] {1});
+		journal.append(new byte[] {2});
+		journal.truncate();
+		journal.close();
+
+		journal = new Journal(file, 2);
+		assertEquals(0, journal.getRecordCount());
+		assertEquals(3, journal.append(new byte[] {3}));
+	}
+
+	/*
+	 * Records appended by concurrent threads should all be
+	 * made durable.
+	 */
+	@Test
+	public void concurrentAppends() throws Exception
+	{
+		Thread[] threads = new Thread[4];
+
+		for (int t = 0; t < threads.length; t++)
+		{
+			threads[t] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						for (int i = 0; i < 50; i++)
+							journal.append(new byte[] {0});
+					} catch (IOException e)
+					{
+						throw new RuntimeException(e);
+					}
+				}
+			});
+			threads[t].start();
+		}
+
+		for (Thread thread : threads)
+			thread.join();
+
+		journal.close();
+		journal = new Journal(file, 0);
+		assertEquals(200, journal.getRecordCount());
+	}
+
+}
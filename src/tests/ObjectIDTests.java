@@ -25,9 +25,21 @@ public class ObjectIDTests
 	String expectedID;
 	String actualID;
 	
+	// Positions and numbers of the test's first entities in each list.
+	// Numbers are never reused, so they carry on from those handed out
+	// by earlier tests
+	int custAt, bikeAt, hireAt, invOutAt, invInAt;
+	int firstCust, firstBike, firstHire, firstInvOut, firstInvIn;
+	
 	@Before
 	public void setUp() throws Exception
 	{
+		custAt = controller.getCustomers().size();
+		bikeAt = controller.getBikes().size();
+		hireAt = controller.getHires().size();
+		invOutAt = controller.getInvoicesOut().size();
+		invInAt = controller.getInvoicesIn().size();
+		
 		// Populate arrays
 		for(int i = 0; i < SIZE; i++)
 		{
@@ -43,6 +55,12 @@ public class ObjectIDTests
 			controller.addInvoiceOut(invOut);
 			controller.addInvoiceIn(invIn);
 		}
+		
+		firstCust = controller.getCustomers().get(custAt).getCustNo();
+		firstBike = controller.getBikes().get(bikeAt).getBikeNo();
+		firstHire = controller.getHires().get(hireAt).getHireNo();
+		firstInvOut = controller.getInvoicesOut().get(invOutAt).getInvoiceNo();
+		firstInvIn = controller.getInvoicesIn().get(invInAt).getInvoiceNo();
 	}
 
 	@After
@@ -56,8 +74,8 @@ public class ObjectIDTests
 	{
 		for(int i = 0; i < SIZE; i++)
 		{
-			expectedID = "CUST" + (i+1);
-			actualID = controller.getCustomers().get(i).getCustomerID();
+			expectedID = "CUST" + (firstCust + i);
+			actualID = controller.getCustomers().get(custAt + i).getCustomerID();
 			assertEquals(expectedID, actualID);
 		}
 	}
@@ -67,8 +85,8 @@ public class ObjectIDTests
 	{
 		for(int i = 0; i < SIZE; i++)
 		{
-			expectedID = "BIKE" + (i+1);
-			actualID = controller.getBikes().get(i).getBikeID();
+			expectedID = "BIKE" + (firstBike + i);
+			actualID = controller.getBikes().get(bikeAt + i).getBikeID();
 			assertEquals(expectedID, actualID);
 		}
 	}
@@ -78,8 +96,8 @@ public class ObjectIDTests
 	{
 		for(int i = 0; i < SIZE; i++)
 		{
-			expectedID = "HIRE" + (i+1);
-			actualID = controller.getHires().get(i).getHireID();
+			expectedID = "HIRE" + (firstHire + i);
+			actualID = controller.getHires().get(hireAt + i).getHireID();
 			assertEquals(expectedID, actualID);
 		}
 	}
@@ -89,8 +107,8 @@ public class ObjectIDTests
 	{
 		for(int i = 0; i < SIZE; i++)
 		{
-			expectedID = "INV-OUT-" + (i+1);
-			actualID = controller.getInvoicesOut().get(i).getInvoiceOutID();
+			expectedID = "INV-OUT-" + (firstInvOut + i);
+			actualID = controller.getInvoicesOut().get(invOutAt + i).getInvoiceOutID();
 			assertEquals(expectedID, actualID);
 		}
 	}
@@ -100,8 +118,8 @@ public class ObjectIDTests
 	{
 		for(int i = 0; i < SIZE; i++)
 		{
-			expectedID = "INV-IN-" + (i+1);
-			actualID = controller.getInvoicesIn().get(i).getInvoiceInID();
+			expectedID = "INV-IN-" + (firstInvIn + i);
+			actualID = controller.getInvoicesIn().get(invInAt + i).getInvoiceInID();
 			assertEquals(expectedID, actualID);
 		}
 	}
@@ -0,0 +1,224 @@
+package tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import model.bike.Available;
+import model.bike.Bike;
+import model.bike.Damaged;
+import model.customer.Customer;
+import model.hire.Active;
+import model.hire.EpochDay;
+import model.hire.Hire;
+import model.hire.Late;
+import model.hire.PaymentPending;
+import model.invoice.InvoiceIn;
+import model.invoice.InvoiceOut;
+
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import controller.Controller;
+import controller.query.BikeQuery;
+import controller.query.CustomerQuery;
+import controller.query.HireQuery;
+import controller.query.InvoiceInQuery;
+import controller.query.InvoiceOutQuery;
+import controller.query.QueryResult;
+
+public class QueryTests
+{
+
+	Controller controller = Controller.getInstance();
+	LocalDate today = LocalDate.now();
+
+	/*
+	 * Customers in Leeds, York and Leeds; bikes of two makes; and four
+	 * hires, the first returned late and the second late now.
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		// Start from empty lists, whatever earlier tests left in them
+		tearDown();
+
+		controller.addCustomer(new Customer("Cara", "Smith", "1 Road", "Leeds", "LS1 1AA"));
+		controller.addCustomer(new Customer("Abe", "Jones", "2 Road", "York", "YO1 1AA"));
+		controller.addCustomer(new Customer("Bea", "Brown", "3 Road", "Leeds", "LS2 2AA"));
+
+		controller.addBike(new Bike("Scott", "Ransom", "mountain", "men", "red", 30, 50));
+		controller.addBike(new Bike("Giant", "Defy", "road", "women", "blue", 20, 40));
+		controller.addBike(new Bike("Scott", "Addict", "road", "men", "blue", 40, 60));
+
+		Hire returnedLate = new Hire(controller.getCustomers().get(0), controller.getBikes().get(0),
+				today.minusDays(10), today.minusDays(8), false);
+		Hire late = new Hire(controller.getCustomers().get(1), controller.getBikes().get(1),
+				today.minusDays(5), today.minusDays(2), false);
+		Hire active = new Hire(controller.getCustomers().get(0), controller.getBikes().get(2),
+				today.minusDays(1), today.plusDays(2), false);
+		Hire pending = new Hire(controller.getCustomers().get(2), controller.getBikes().get(0),
+				today.plusDays(3), today.plusDays(4), false);
+
+		returnedLate.setDateReturned(today.minusDays(6));
+		late.setState(Active.STATE);
+		late.setDateReturned(null);
+		active.setState(Active.STATE);
+		active.setDateReturned(null);
+		pending.setState(PaymentPending.STATE);
+		pending.setDateReturned(null);
+
+		controller.addHire(returnedLate);
+		controller.addHire(late);
+		controller.addHire(active);
+		controller.addHire(pending);
+		controller.addInvoiceIn(new InvoiceIn(returnedLate));
+		late.isLate();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		controller.getCustomers().clear();
+		controller.getBikes().clear();
+		controller.getHires().clear();
+		controller.getInvoicesOut().clear();
+		controller.getInvoicesIn().clear();
+	}
+
+	/*
+	 * Hires should be selected by state, customer, start date and
+	 * lateness, keeping the list's order.
+	 */
+	@Test
+	public void hiresFiltered()
+	{
+		HireQuery all = new HireQuery();
+		int custNo = controller.getCustomers().get(0).getCustNo();
+
+		assertRows(new int[] {1}, all.withState(Late.class).run());
+		assertRows(new int[] {0, 2}, all.withCustomer(custNo).run());
+		assertRows(new int[] {1, 2}, all.withStartBetween(EpochDay.of(today.minusDays(5)),
+				EpochDay.of(today)).run());
+		assertRows(new int[] {0, 1}, all.withLateOnly(true).run());
+		assertRows(new int[] {0}, all.withLateOnly(true).withCustomer(custNo).run());
+	}
+
+	/*
+	 * Hires should be sorted by a column either way, with hires not yet
+	 * returned after those that have been, and ties in list order.
+	 */
+	@Test
+	public void hiresSorted()
+	{
+		HireQuery all = new HireQuery();
+
+		assertRows(new int[] {3, 2, 1, 0}, all.sortedBy(HireQuery.START, true).run());
+		assertRows(new int[] {0, 1, 2, 3}, all.sortedBy(HireQuery.RETURNED, false).run());
+		assertRows(new int[] {0, 2, 1, 3}, all.sortedBy(HireQuery.CUSTOMER, false).run());
+		assertRows(new int[] {0, 3, 1, 2}, all.sortedBy(HireQuery.BIKE, false).run());
+	}
+
+	/*
+	 * Bikes should be filtered by attribute and sorted by the attribute's
+	 * value, however the values were first coded; a value no bike has
+	 * should select none.
+	 */
+	@Test
+	public void bikesByAttribute()
+	{
+		BikeQuery all = new BikeQuery();
+
+		assertRows(new int[] {0, 2}, all.withMake("Scott").run());
+		assertRows(new int[] {2}, all.withMake("Scott").withColour("blue").run());
+		assertRows(new int[0], all.withMake("Raleigh").run());
+		assertRows(new int[] {1, 0, 2}, all.sortedBy(BikeQuery.MAKE, false).run());
+		assertRows(new int[] {2, 1, 0}, all.sortedBy(BikeQuery.MODEL, false).run());
+	}
+
+	/*
+	 * Available bikes should be found by several attributes at once,
+	 * including bikes whose reservation has expired and been released.
+	 */
+	@Test
+	public void availableBikesByAttributes()
+	{
+		BikeQuery blueRoad = new BikeQuery().withFunction("road").withColour("blue")
+				.withState(Available.class);
+
+		assertRows(new int[] {1, 2}, blueRoad.run());
+		assertRows(new int[] {1}, blueRoad.withDemographic("women").run());
+		assertRows(new int[] {2}, blueRoad.withModel("Addict").run());
+
+		controller.getBikes().get(1).setState(Damaged.STATE);
+		assertRows(new int[] {2}, blueRoad.run());
+
+		controller.getBikes().get(2).reserve(0);
+		controller.releaseExpiredReservations();
+		assertRows(new int[] {2}, blueRoad.run());
+	}
+
+	/*
+	 * Customers should be filtered by town and by the words of their
+	 * details, and sorted by text.
+	 */
+	@Test
+	public void customersByTown()
+	{
+		CustomerQuery all = new CustomerQuery();
+
+		assertRows(new int[] {0, 2}, all.withTown("Leeds").run());
+		assertRows(new int[] {2, 0}, all.withTown("Leeds").sortedBy(CustomerQuery.FIRST_NAME, false).run());
+		assertRows(new int[] {0, 1, 2}, all.sortedBy(CustomerQuery.LAST_NAME, true).run());
+		assertRows(new int[] {0, 2}, all.withWords("LS").run());
+		assertRows(new int[] {2}, all.withWords("LS").withTown("Leeds").withWords("brwn")
+				.sortedBy(CustomerQuery.LAST_NAME, false).run());
+	}
+
+	/*
+	 * Returns should be selected from the hire history, and a result
+	 * read a page at a time.
+	 */
+	@Test
+	public void returnsPaged()
+	{
+		InvoiceInQuery all = new InvoiceInQuery();
+
+		assertRows(new int[] {0}, all.withLateOnly(true).run());
+		assertRows(new int[0], all.withCustomer(controller.getCustomers().get(1).getCustNo()).run());
+
+		QueryResult result = new HireQuery().sortedBy(HireQuery.HIRE_NO, true).run();
+
+		assertArrayEquals(new int[] {3, 2}, result.page(0, 2));
+		assertArrayEquals(new int[] {1, 0}, result.page(2, 2));
+		assertArrayEquals(new int[0], result.page(4, 2));
+	}
+
+	/*
+	 * A customer's invoices should be found through the indexes, with
+	 * the same rows, in the same order, as reading every invoice.
+	 */
+	@Test
+	public void invoicesByCustomer()
+	{
+		for (Hire hire : controller.getHires())
+			controller.addInvoiceOut(new InvoiceOut(hire));
+
+		int custNo = controller.getCustomers().get(0).getCustNo();
+		InvoiceOutQuery all = new InvoiceOutQuery();
+
+		assertRows(new int[] {0, 2}, all.withCustomer(custNo).run());
+		assertRows(new int[] {2, 0}, all.withCustomer(custNo).sortedBy(InvoiceOutQuery.INVOICE_NO, true).run());
+		assertRows(new int[] {1}, all.withCustomer(controller.getCustomers().get(1).getCustNo()).run());
+		assertRows(new int[0], all.withCustomer(custNo + 100).run());
+		assertRows(new int[] {0}, new InvoiceInQuery().withCustomer(custNo).run());
+	}
+
+	private static void assertRows(int[] expected, QueryResult result)
+	{
+		assertArrayEquals(expected, result.page(0, Integer.MAX_VALUE));
+		assertEquals(expected.length, result.size());
+	}
+
+}
@@ -2,20 +2,35 @@ package tests;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
 import model.hire.Active;
 import model.hire.Complete;
+import model.hire.EpochDay;
 import model.hire.Hire;
 import model.hire.Late;
+import model.invoice.InvoiceIn;
 
 import org.joda.time.LocalDate;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import model.bike.Available;
 import model.bike.Bike;
 import model.bike.Damaged;
 import model.bike.OnHire;
 import controller.Controller;
+import controller.Popularity;
+import controller.Ranking;
+import controller.Report;
+import controller.index.HireHistory;
 import model.customer.Customer;
 
 public class ReportTests
@@ -46,6 +61,9 @@ public class ReportTests
 	@Before
 	public void setUp() throws Exception
 	{	
+		// Start from empty lists, whatever earlier tests left in them
+		tearDown();
+		
 		// Populate customer array
 		for (int i = 0; i < 3; i++)
 			controller.addCustomer(new Customer("test", "test", "test", "test", "test"));
@@ -57,25 +75,27 @@ public class ReportTests
 		// Create 2 'Complete' hires
 		Hire h0 = new Hire(controller.getCustomers().get(0), controller.getBikes().get(0), new LocalDate(LocalDate.now()));
 		Hire h1 = new Hire(controller.getCustomers().get(1), controller.getBikes().get(1), new LocalDate(LocalDate.now()));
-		h0.setState(new Complete(h0, false));
-		h1.setState(new Complete(h1, false));
+		h0.setState(Complete.STATE);
+		h0.setReturnedDay(EpochDay.today());
+		h1.setState(Complete.STATE);
+		h1.setReturnedDay(EpochDay.today());
 		controller.addHire(h0);
 		controller.addHire(h1);
 		
 		// Create 1 'OnHire' hire 
 		Hire h2 = new Hire(controller.getCustomers().get(0), controller.getBikes().get(0), new LocalDate(LocalDate.now()));
-		h2.setState(new Active(h2));
-		h2.getBike().setState(new OnHire(h2.getBike()));
+		h2.setState(Active.STATE);
+		h2.getBike().setState(OnHire.STATE);
 		controller.addHire(h2);
 		
 		// Create 1 'Late' hire 
 		Hire h3 = new Hire(controller.getCustomers().get(2), controller.getBikes().get(2), new LocalDate(LocalDate.now().minusDays(1)));
-		h3.setState(new Late(h3));
-		h3.getBike().setState(new OnHire(h3.getBike()));
+		h3.setState(Late.STATE);
+		h3.getBike().setState(OnHire.STATE);
 		controller.addHire(h3);
 		
 		// Set state of "BIKE4" to 'Damaged'
-		controller.getBikes().get(3).setState(new Damaged(controller.getBikes().get(3)));
+		controller.getBikes().get(3).setState(Damaged.STATE);
 	}
 
 	@After
@@ -84,6 +104,40 @@ public class ReportTests
 		controller.getCustomers().clear();
 		controller.getBikes().clear();
 		controller.getHires().clear();
+		controller.getInvoicesIn().clear();
+	}
+
+	/*
+	 * Returns should be recorded in the hire history as their
+	 * invoices are issued: the late hire (due yesterday) with a
+	 * damaged bike, the active hire (due today) on time.
+	 */
+	@Test
+	public void returnsHistory()
+	{
+		Hire active = controller.getHires().get(2);
+		Hire late = controller.getHires().get(3);
+
+		controller.returnHire(late, true);
+		controller.addInvoiceIn(new InvoiceIn(late));
+		controller.returnHire(active, false);
+		controller.addInvoiceIn(new InvoiceIn(active));
+
+		assertEquals(1, controller.getReport().getNoOfLateReturns());
+		assertEquals(1, controller.getReport().getNoOfDamagedReturns());
+		assertEquals(0.5, controller.getReport().getAverageDaysLate(), 0);
+
+		HireHistory history = controller.getHireHistory();
+		HireHistory.Row row = history.row().moveTo(0);
+
+		assertEquals(2, history.size());
+		assertEquals(late.getHireNo(), row.getHireNo());
+		assertEquals(late.getBike().getBikeNo(), row.getBikeNo());
+		assertEquals(late.getEndDate(), row.getEndDate());
+		assertEquals(late.getDateReturned(), row.getDateReturned());
+		assertEquals(1, row.getDaysLate());
+		assertTrue(row.isLate() && row.wasBikeDamaged());
+		assertTrue(!row.moveTo(1).isLate() && !row.wasBikeDamaged());
 	}
 
 	/*
@@ -137,7 +191,7 @@ public class ReportTests
 	@Test
 	public void mostPopularBike()
 	{		
-		assertEquals(controller.getReport().getMostPopularBike(), "BIKE1");
+		assertEquals(controller.getReport().getMostPopularBike(), bikeID(0));
 	}
 	
 	/*
@@ -146,9 +200,110 @@ public class ReportTests
 	@Test
 	public void leastPopularBike()
 	{		
-		assertEquals(controller.getReport().getLeastPopularBike(), "BIKE4");
+		assertEquals(controller.getReport().getLeastPopularBike(), bikeID(3));
 	}
 	
+	/*
+	 * Ranking = BIKE1 (2), BIKE2 (1), BIKE3 (1), BIKE4 (0),
+	 * with ties in the order the bikes were added.
+	 */
+	@Test
+	public void popularityRanking()
+	{
+		List<Ranking> top = controller.getReport().getPopularity().getMostPopular(3);
+		List<Ranking> bottom = controller.getReport().getPopularity().getLeastPopular(2);
+
+		assertEquals(3, top.size());
+		assertEquals(bikeID(0), top.get(0).getName());
+		assertEquals(2, top.get(0).getHires());
+		assertEquals(bikeID(1), top.get(1).getName());
+		assertEquals(bikeID(2), top.get(2).getName());
+		assertEquals(bikeID(3), bottom.get(0).getName());
+		assertEquals(bikeID(1), bottom.get(1).getName());
+	}
+
+	/*
+	 * @return	the ID of the bike added at a position in setUp(), e.g.
+	 * 			BIKE1 for 0 when no bikes were numbered before the test.
+	 */
+	private String bikeID(int position)
+	{
+		return controller.getBikes().get(position).getBikeID();
+	}
+
+	/*
+	 * Only hires starting in the window are counted, and the
+	 * breakdown groups hires by the bike attribute.
+	 */
+	@Test
+	public void popularityWindowAndBreakdown()
+	{
+		LocalDate today = LocalDate.now();
+		Popularity popularity = controller.getReport().getPopularity();
+
+		assertEquals(0, popularity.getMostPopular(1, today.plusDays(1), null).get(0).getHires());
+		assertEquals(2, popularity.getMostPopular(1, today, today).get(0).getHires());
+
+		controller.getBikes().get(1).setColour("red");
+		List<Ranking> colours = popularity.getBreakdown(Popularity.COLOUR);
+
+		assertEquals(2, colours.size());
+		assertEquals("test", colours.get(0).getName());
+		assertEquals(3, colours.get(0).getHires());
+		assertEquals("red", colours.get(1).getName());
+		assertEquals(1, colours.get(1).getHires());
+	}
+
+	/*
+	 * A bike's hires added out of order of start date should still
+	 * be counted by the window they started in.
+	 */
+	@Test
+	public void popularityWindowOutOfOrder()
+	{
+		LocalDate today = LocalDate.now();
+		Popularity popularity = controller.getReport().getPopularity();
+		Bike bike = controller.getBikes().get(3);
+
+		for (int days : new int[] {1, 5, 3})
+			controller.addHire(new Hire(controller.getCustomers().get(0), bike,
+					today.minusDays(days), today.plusDays(1), false));
+
+		assertEquals(2, popularity.getMostPopular(4, today.minusDays(5), today.minusDays(3)).get(0).getHires());
+		assertEquals(2, popularity.getMostPopular(4, today.minusDays(4), null).get(0).getHires());
+		assertEquals(2, popularity.getMostPopular(4, null, today.minusDays(2)).get(0).getHires());
+		assertEquals(0, popularity.getLeastPopular(1, today.minusDays(2), today.minusDays(2)).get(0).getHires());
+		assertEquals(bikeID(3), popularity.getMostPopular(1).get(0).getName());
+	}
+
+	/*
+	 * Refreshing late hires should only make active hires
+	 * that are past their end date late.
+	 */
+	@Test
+	public void refreshLateHires()
+	{
+		LocalDate today = LocalDate.now();
+		Hire overdue = new Hire(controller.getCustomers().get(0), controller.getBikes().get(1), today.minusDays(1));
+		Hire dueToday = new Hire(controller.getCustomers().get(1), controller.getBikes().get(1), today);
+		Hire returned = new Hire(controller.getCustomers().get(2), controller.getBikes().get(1), today.minusDays(2));
+		controller.addHire(overdue);
+		controller.addHire(dueToday);
+		controller.addHire(returned);
+		overdue.payForHire();
+		dueToday.payForHire();
+		returned.payForHire();
+		controller.returnHire(returned, false);
+
+		controller.refreshLateHires();
+
+		assertTrue(overdue.getState() instanceof Late);
+		assertTrue(dueToday.getState() instanceof Active);
+		assertTrue(returned.getState() instanceof Complete);
+		assertEquals(2, controller.getReport().getNoOfLateHires());
+		assertEquals(2, controller.getReport().getNoOfActiveHires());
+	}
+
 	/*
 	 * Total hires = 4
 	 */
@@ -184,5 +339,128 @@ public class ReportTests
 	{		
 		assertTrue(controller.getReport().getNoOfLateHires() == 1);
 	}
-	
+
+	/*
+	 * The state counts should match a full recount after
+	 * every step of a random sequence of transitions.
+	 */
+	@Test
+	public void stateCountsMatchRecount()
+	{
+		Random random = new Random(7);
+		LocalDate today = LocalDate.now();
+
+		for (int step = 0; step < 5000; step++)
+		{
+			int bikes = controller.getBikes().size();
+			int hires = controller.getHires().size();
+			Bike bike = controller.getBikes().get(random.nextInt(bikes));
+			Hire hire = hires == 0 ? null : controller.getHires().get(random.nextInt(hires));
+
+			switch (random.nextInt(9))
+			{
+			case 0:
+				controller.addBike(new Bike("test", "test", "test", "test", "test", 1, 1));
+				break;
+			case 1:
+				controller.addHire(new Hire(controller.getCustomers().get(0), bike,
+						today.plusDays(random.nextInt(5) - 2)));
+				break;
+			case 2:
+				if (hire != null)
+					hire.payForHire();
+				break;
+			case 3:
+				if (hire != null)
+					hire.isLate();
+				break;
+			case 4:
+				if (hire != null)
+					controller.returnHire(hire, random.nextBoolean());
+				break;
+			case 5:
+				controller.repairBike(bike);
+				break;
+			case 6:
+				bike.setState(random.nextBoolean() ? OnHire.STATE : Damaged.STATE);
+				break;
+			case 7:
+				if (hire != null)
+					hire.setState(Late.STATE);
+				break;
+			default:
+				if (random.nextInt(100) == 0)
+					controller.getHires().clear();
+			}
+
+			assertEquals(recountHires(Active.class), controller.getReport().getNoOfActiveHires());
+			assertEquals(recountHires(Late.class), controller.getReport().getNoOfLateHires());
+			assertEquals(recountHires(Complete.class), controller.getReport().getNoOfCompleteHires());
+			assertEquals(recountBikes(Available.class), controller.getReport().getNoOfBikesAvailable());
+			assertEquals(recountBikes(OnHire.class), controller.getReport().getNoOfBikesOnHire());
+			assertEquals(recountBikes(Damaged.class), controller.getReport().getNoOfBikesDamaged());
+		}
+	}
+
+	/*
+	 * Submitted queries should run on the report's own thread, in
+	 * the order submitted, and complete with the statistics read.
+	 */
+	@Test
+	public void queriesRunInBackground() throws Exception
+	{
+		final int hires = controller.getHires().size();
+		final Report report = controller.getReport();
+		final Thread caller = Thread.currentThread();
+		final List<Integer> order = new CopyOnWriteArrayList<Integer>();
+		Future<Integer> first = null;
+		Future<Integer> last = null;
+
+		for (int i = 0; i < 10; i++)
+		{
+			final int query = i;
+
+			last = report.submit(new Supplier<Integer>()
+			{
+				public Integer get()
+				{
+					assertTrue(Thread.currentThread() != caller);
+					order.add(query);
+					return report.getTotalHires();
+				}
+			});
+
+			if (first == null)
+				first = last;
+		}
+
+		assertEquals(hires, (int) last.get(10, TimeUnit.SECONDS));
+		assertTrue(first.isDone());
+
+		for (int i = 0; i < 10; i++)
+			assertEquals(i, (int) order.get(i));
+	}
+
+	private int recountHires(Class<?> state)
+	{
+		int count = 0;
+
+		for (int i = 0; i < controller.getHires().size(); i++)
+			if (state.isInstance(controller.getHires().get(i).getState()))
+				count++;
+
+		return count;
+	}
+
+	private int recountBikes(Class<?> state)
+	{
+		int count = 0;
+
+		for (int i = 0; i < controller.getBikes().size(); i++)
+			if (state.isInstance(controller.getBikes().get(i).getState()))
+				count++;
+
+		return count;
+	}
+
 }
@@ -0,0 +1,106 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import model.bike.Bike;
+import model.customer.Customer;
+import model.hire.Hire;
+import model.invoice.InvoiceIn;
+import model.invoice.InvoiceOut;
+
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import view.HireTab;
+import controller.Controller;
+import controller.persistence.SnapshotCodec;
+
+public class StartupTests
+{
+
+	// Hires in the data set, and the most time allowed to the first screen
+	private static final int HIRES = 1000000;
+	private static final long FIRST_SCREEN_MILLIS = 10000;
+
+	Controller controller = Controller.getInstance();
+	File file;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		System.setProperty("java.awt.headless", "true");
+
+		int customers = HIRES / 10;
+		int bikes = HIRES / 100;
+
+		for (int i = 0; i < customers; i++)
+			controller.addCustomer(new Customer("First", "Last", "1 High Street", "Northampton",
+					"NN1 1AB"));
+
+		for (int i = 0; i < bikes; i++)
+			controller.addBike(new Bike("Scott", "Ransom", "mountain", "men", "silver", 30, 50));
+
+		LocalDate start = LocalDate.now().minusDays(HIRES / 1000 + 10);
+
+		for (int i = 0; i < HIRES; i++)
+		{
+			Hire hire = new Hire(controller.getCustomers().get(i % customers),
+					controller.getBikes().get(i % bikes), start.plusDays(i / 1000),
+					start.plusDays(i / 1000 + 3), false);
+			controller.addHire(hire);
+			controller.addInvoiceOut(new InvoiceOut(hire));
+			controller.addInvoiceIn(new InvoiceIn(hire));
+		}
+
+		file = File.createTempFile("startup", ".snapshot");
+		SnapshotCodec.write(controller, 0, file);
+		tearDown();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		controller.getCustomers().clear();
+		controller.getBikes().clear();
+		controller.getHires().clear();
+		controller.getInvoicesOut().clear();
+		controller.getInvoicesIn().clear();
+	}
+
+	/*
+	 * The hires of a million-hire snapshot should be loaded and shown
+	 * in the Hire tab within the time allowed, leaving the invoices to
+	 * be read when first needed.
+	 */
+	@Test
+	public void firstScreenWithinBound() throws Exception
+	{
+		long started = System.nanoTime();
+
+		try
+		{
+			SnapshotCodec.read(controller, file, true);
+			new HireTab();
+		} finally
+		{
+			file.delete();
+		}
+
+		long millis = (System.nanoTime() - started) / 1000000;
+
+		assertTrue("First screen took " + millis + " ms", millis <= FIRST_SCREEN_MILLIS);
+		assertEquals(HIRES, controller.getHires().size());
+		assertTrue(controller.hasDeferredInvoices());
+
+		assertEquals(HIRES, controller.getInvoicesOut().size());
+		assertFalse(controller.hasDeferredInvoices());
+		assertEquals(HIRES, controller.getHireHistory().size());
+	}
+
+}
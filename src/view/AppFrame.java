@@ -7,22 +7,35 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
 
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JTabbedPane;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.border.EmptyBorder;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
 import controller.Controller;
+import controller.LateHireScheduler;
 
 /*
  * The main frame in which all content for the Rental System
  * is contained.
+ * 
+ * The frame is shown at once, with a progress indicator, while
+ * the application data is loaded in the background. Once the data
+ * is ready, the Hire tab is built; the other tabs are built when
+ * first selected. The invoices are only read from the snapshot when
+ * the Invoice tab is first selected, or when something else needs
+ * them. The time taken to the first usable screen is logged.
  */
 public class AppFrame extends JFrame
 {
@@ -35,18 +48,35 @@ public class AppFrame extends JFrame
 	private JTabbedPane customerTab;
 	private JTabbedPane bikeTab;
 	private JTabbedPane invoiceTab;
+	private JPanel mainPanel;
+	private JPanel loadingPanel;
+
+	// Indexes of the tabs in the main tabbed pane
+	private static final int HIRE = 0;
+	private static final int CUSTOMER = 1;
+	private static final int BIKE = 2;
+	private static final int INVOICE = 3;
+
+	// Set on the EDT once the data has been loaded and the tabs added
+	private boolean loaded;
+	private boolean loadingInvoices;
+	// Set if data that could not be read could not be moved aside either
+	private boolean saveRefused;
+
+	private static final Logger LOG = Logger.getLogger(AppFrame.class.getName());
+	private long started;
 
 	public AppFrame()
 	{
+		started = System.nanoTime();
 		controller = Controller.getInstance();
-		initialiseData();
 
 		setTitle("Northampton Bike Hire Company: Rental System");
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		setBounds(0, 0, 890, 440);
 		setLocationRelativeTo(null);
 
-		JPanel mainPanel = new JPanel();
+		mainPanel = new JPanel();
 		setContentPane(mainPanel);
 		mainPanel.setLayout(new BorderLayout(0, 0));
 
@@ -65,33 +95,8 @@ public class AppFrame extends JFrame
 		subHeaderLbl.setHorizontalAlignment(SwingConstants.CENTER);
 		headerPanel.add(subHeaderLbl, BorderLayout.NORTH);
 
-		mainTab = new JTabbedPane(JTabbedPane.TOP);
-		mainPanel.add(mainTab, BorderLayout.CENTER);
-
-		hireTab = new HireTab();
-		mainTab.addTab("Hire", null, hireTab, null);
-
-		customerTab = new CustomerTab();
-		mainTab.addTab("Customer", null, customerTab, null);
-
-		bikeTab = new BikeTab();
-		mainTab.addTab("Bike", null, bikeTab, null);
-
-		invoiceTab = new InvoiceTab();
-		mainTab.addTab("Invoice", null, invoiceTab, null);
-
-		// Update data to reflect changes made when user clicks on certain tabs
-		mainTab.addChangeListener(new ChangeListener()
-		{
-			public void stateChanged(ChangeEvent ce)
-			{
-				if (mainTab.getSelectedIndex() == 2)
-					((BikeViewPanel) ((BikeTab) bikeTab).getViewPanel())
-							.initPanel();
-				else if (mainTab.getSelectedIndex() == 3)
-					((InvoiceTab) invoiceTab).refreshTab();
-			}
-		});
+		loadingPanel = progressPanel("Loading data...");
+		mainPanel.add(loadingPanel, BorderLayout.CENTER);
 
 		// Try to save data when window closes and confirm closure if not
 		// possible
@@ -100,6 +105,11 @@ public class AppFrame extends JFrame
 			@Override
 			public void windowClosing(WindowEvent e)
 			{
+				// Data still loading has nothing new to save, and data
+				// that could not be moved aside must not be saved over
+				if (!loaded || saveRefused)
+					return;
+
 				try
 				{
 					controller.serialiseBikeHireData();
@@ -123,30 +133,249 @@ public class AppFrame extends JFrame
 
 		setResizable(false);
 		setVisible(true);
+
+		new DataLoader().execute();
 	}
 
-	// Tries to deserialise previous application data. Alerts user if not
-	// successful.
-	private void initialiseData()
+	/*
+	 * @return	a panel showing a message over a progress indicator.
+	 */
+	private static JPanel progressPanel(String message)
 	{
-		String msg;
+		JPanel panel = new JPanel(new BorderLayout(0, 10));
+		panel.setBorder(new EmptyBorder(120, 250, 120, 250));
+		JProgressBar progress = new JProgressBar();
+		progress.setIndeterminate(true);
+		panel.add(new JLabel(message, SwingConstants.CENTER), BorderLayout.NORTH);
+		panel.add(progress, BorderLayout.CENTER);
+		return panel;
+	}
 
-		try
+	/*
+	 * Replaces the progress indicator with the tabs. Only the Hire tab
+	 * is built now, from the data loaded; the others are left empty
+	 * until first selected.
+	 */
+	private void showTabs(final long loadedIn)
+	{
+		mainPanel.remove(loadingPanel);
+
+		mainTab = new JTabbedPane(JTabbedPane.TOP);
+		mainPanel.add(mainTab, BorderLayout.CENTER);
+
+		mainTab.addTab("Hire", null, new JPanel(), null);
+		mainTab.addTab("Customer", null, new JPanel(), null);
+		mainTab.addTab("Bike", null, new JPanel(), null);
+		mainTab.addTab("Invoice", null, new JPanel(), null);
+		showTab(HIRE);
+
+		// Mark hires late at midnight, updating the hire view
+		new LateHireScheduler(controller, new Runnable()
+		{
+			public void run()
+			{
+				((HireViewPanel) ((HireTab) hireTab).getViewPanel()).initPanel();
+				hireTab.revalidate();
+				hireTab.repaint();
+			}
+		}).start();
+
+		// Build tabs when first selected, and update data to reflect
+		// changes made when user clicks on certain tabs
+		mainTab.addChangeListener(new ChangeListener()
+		{
+			public void stateChanged(ChangeEvent ce)
+			{
+				showTab(mainTab.getSelectedIndex());
+			}
+		});
+
+		loaded = true;
+		mainPanel.revalidate();
+		mainPanel.repaint();
+
+		// Measured once the tabs have been laid out and painted
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				LOG.info("First usable screen in " + (System.nanoTime() - started) / 1000000
+						+ " ms (data loaded in " + loadedIn / 1000000 + " ms)");
+			}
+		});
+	}
+
+	/*
+	 * Builds a tab the first time it is shown. The Bike tab's statistics
+	 * are refreshed each time it is shown after that.
+	 */
+	private void showTab(int index)
+	{
+		switch (index)
+		{
+		case HIRE:
+			if (hireTab == null)
+			{
+				hireTab = new HireTab();
+				mainTab.setComponentAt(HIRE, hireTab);
+			}
+			break;
+		case CUSTOMER:
+			if (customerTab == null)
+			{
+				customerTab = new CustomerTab();
+				mainTab.setComponentAt(CUSTOMER, customerTab);
+			}
+			break;
+		case BIKE:
+			if (bikeTab == null)
+			{
+				bikeTab = new BikeTab();
+				mainTab.setComponentAt(BIKE, bikeTab);
+			}
+			else
+				((BikeViewPanel) ((BikeTab) bikeTab).getViewPanel()).initPanel();
+			break;
+		case INVOICE:
+			if (invoiceTab == null && !loadingInvoices)
+				showInvoiceTab();
+			break;
+		}
+	}
+
+	/*
+	 * Builds the Invoice tab, once any invoices not yet read from the
+	 * snapshot have been read in the background.
+	 */
+	private void showInvoiceTab()
+	{
+		if (!controller.hasDeferredInvoices())
 		{
-			controller.deserialiseBikeHireData();
+			invoiceTab = new InvoiceTab();
+			mainTab.setComponentAt(INVOICE, invoiceTab);
 			return;
-		} catch (FileNotFoundException e)
+		}
+
+		loadingInvoices = true;
+		mainTab.setComponentAt(INVOICE, progressPanel("Loading invoices..."));
+
+		new SwingWorker<Void, Void>()
+		{
+			@Override
+			protected Void doInBackground() throws IOException
+			{
+				controller.loadInvoices();
+				return null;
+			}
+
+			@Override
+			protected void done()
+			{
+				loadingInvoices = false;
+
+				try
+				{
+					get();
+				} catch (InterruptedException e)
+				{
+					return;
+				} catch (ExecutionException e)
+				{
+					e.getCause().printStackTrace();
+					mainTab.setComponentAt(INVOICE, new JLabel(
+							"Error loading invoices.", SwingConstants.CENTER));
+					return;
+				}
+
+				invoiceTab = new InvoiceTab();
+				mainTab.setComponentAt(INVOICE, invoiceTab);
+			}
+		}.execute();
+	}
+
+	/*
+	 * Tries to deserialise previous application data in the background,
+	 * then shows the tabs. Alerts user if not successful.
+	 */
+	private class DataLoader extends SwingWorker<String, Void>
+	{
+		// Returns the error message, or null if the data was loaded
+		private long loadedIn;
+		// Set if the data was found but could not be read
+		private boolean unreadable = true;
+
+		@Override
+		protected String doInBackground()
+		{
+			long start = System.nanoTime();
+
+			try
+			{
+				controller.deserialiseBikeHireData(true);
+				loadedIn = System.nanoTime() - start;
+				return null;
+			} catch (FileNotFoundException e)
+			{
+				unreadable = false;
+				return "Error loading program data: file could not be found.";
+			} catch (IOException e1)
+			{
+				return "Error loading program data.";
+			} catch (ClassNotFoundException e2)
+			{
+				return "Error loading program data: data was saved by a different application";
+			}
+		}
+
+		@Override
+		protected void done()
 		{
-			msg = "Error loading program data: file could not be found.";
-		} catch (IOException e1)
+			String msg;
+
+			try
+			{
+				msg = get();
+			} catch (InterruptedException e)
+			{
+				msg = "Error loading program data.";
+			} catch (ExecutionException e)
+			{
+				e.getCause().printStackTrace();
+				msg = "Error loading program data.";
+			}
+
+			if (msg != null && unreadable)
+				setAsideData(msg);
+			else if (msg != null)
+				askToGenerateData(msg);
+
+			showTabs(loadedIn);
+		}
+	}
+
+	/*
+	 * Moves data that was found but could not be read aside, then offers
+	 * to start afresh. If it cannot be moved, nothing is saved this session,
+	 * so that the data (and any changes only the journal holds) can still be
+	 * recovered.
+	 */
+	private void setAsideData(String msg)
+	{
+		String suffix;
+
+		try
 		{
-			msg = "Error loading program data.";
-		} catch (ClassNotFoundException e2)
+			suffix = controller.setAsideBikeHireData();
+		} catch (IOException e)
 		{
-			msg = "Error loading program data: data was saved by a different application";
+			e.printStackTrace();
+			saveRefused = true;
+			JOptionPane.showMessageDialog(null, msg
+					+ "\nThe data files could not be moved aside, so nothing will be saved this session.");
+			return;
 		}
 
-		askToGenerateData(msg);
+		askToGenerateData(msg + "\nThe data files have been renamed with the suffix " + suffix + ".");
 	}
 
 	private void askToGenerateData(String msg)
@@ -156,7 +385,20 @@ public class AppFrame extends JFrame
 				"Error: Generate Data instead?", JOptionPane.YES_NO_OPTION);
 
 		if (generate == JOptionPane.YES_OPTION)
+		{
 			if (!controller.generateData())
 				JOptionPane.showMessageDialog(null, "Could not generate dummy data");
+		}
+		else
+		{
+			// Save the empty system so that the journal starts recording
+			try
+			{
+				controller.serialiseBikeHireData();
+			} catch (IOException e)
+			{
+				JOptionPane.showMessageDialog(null, "Data will only be saved when the application is closed.");
+			}
+		}
 	}
 }
@@ -0,0 +1,140 @@
+package view;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.List;
+
+import javax.swing.DefaultListModel;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingConstants;
+
+import model.bike.Available;
+import model.bike.Bike;
+import controller.Controller;
+import controller.index.AttributeDictionary;
+import controller.query.BikeQuery;
+import controller.query.QueryResult;
+
+/*
+ * A dialog that finds the available bikes matching a customer's
+ * request, e.g. "a women's road bike in blue", by any of the bikes'
+ * attributes, and lets the user pick one of them. The bikes found are
+ * updated as each attribute is chosen.
+ */
+class BikePicker extends JPanel
+{
+	private static final long serialVersionUID = 1L;
+
+	// Most bikes listed at a time
+	private static final int SHOWN = 100;
+
+	private JComboBox<String> make;
+	private JComboBox<String> model;
+	private JComboBox<String> function;
+	private JComboBox<String> demographic;
+	private JComboBox<String> colour;
+	private JLabel found;
+	private DefaultListModel<String> bikeIDs;
+	private JList<String> bikeList;
+
+	private BikePicker()
+	{
+		setLayout(new BorderLayout(0, 10));
+
+		JPanel choicePanel = new JPanel(new GridLayout(5, 2));
+		make = addChoice(choicePanel, "Make:", AttributeDictionary.BIKE_MAKES);
+		model = addChoice(choicePanel, "Model:", AttributeDictionary.BIKE_MODELS);
+		function = addChoice(choicePanel, "Function:", AttributeDictionary.BIKE_FUNCTIONS);
+		demographic = addChoice(choicePanel, "Demographic:", AttributeDictionary.BIKE_DEMOGRAPHICS);
+		colour = addChoice(choicePanel, "Colour:", AttributeDictionary.BIKE_COLOURS);
+
+		found = new JLabel();
+		bikeIDs = new DefaultListModel<String>();
+		bikeList = new JList<String>(bikeIDs);
+		bikeList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		JScrollPane scrollPane = new JScrollPane(bikeList);
+		scrollPane.setPreferredSize(new Dimension(420, 200));
+
+		add(choicePanel, BorderLayout.PAGE_START);
+		add(scrollPane, BorderLayout.CENTER);
+		add(found, BorderLayout.PAGE_END);
+
+		search();
+	}
+
+	/*
+	 * Shows the picker.
+	 *
+	 * @return	the ID of the bike picked. null if none was.
+	 */
+	static String pick()
+	{
+		BikePicker picker = new BikePicker();
+
+		int choice = JOptionPane.showConfirmDialog(null, picker, "Find an available bike",
+				JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+
+		if (choice != JOptionPane.OK_OPTION || picker.bikeList.getSelectedIndex() < 0)
+			return null;
+
+		String selected = picker.bikeList.getSelectedValue();
+
+		return selected.substring(0, selected.indexOf(' '));
+	}
+
+	private JComboBox<String> addChoice(JPanel panel, String label, AttributeDictionary dictionary)
+	{
+		JComboBox<String> box = FilterBar.choices(dictionary);
+
+		box.addActionListener(new ActionListener()
+		{
+			public void actionPerformed(ActionEvent e)
+			{
+				search();
+			}
+		});
+
+		panel.add(new JLabel(label, SwingConstants.RIGHT));
+		panel.add(box);
+		return box;
+	}
+
+	/*
+	 * Lists the available bikes with the attributes chosen, found from
+	 * the bikes' attribute bitmaps.
+	 */
+	private void search()
+	{
+		// Called as the lists are filled, before all have been made
+		if (colour == null || found == null)
+			return;
+
+		QueryResult result = new BikeQuery().withState(Available.class)
+				.withMake(FilterBar.choice(make)).withModel(FilterBar.choice(model))
+				.withFunction(FilterBar.choice(function))
+				.withDemographic(FilterBar.choice(demographic))
+				.withColour(FilterBar.choice(colour)).run();
+
+		List<Bike> bikes = Controller.getInstance().getBikes();
+		bikeIDs.clear();
+
+		for (int row : result.page(0, SHOWN))
+		{
+			Bike bike = bikes.get(row);
+			bikeIDs.addElement(bike.getBikeID() + " " + bike.getDescription());
+		}
+
+		found.setText(result.size() <= SHOWN ? result.size() + " available bikes found"
+				: result.size() + " available bikes found, the first " + SHOWN + " listed");
+	}
+
+}
@@ -5,10 +5,13 @@ import java.awt.Dimension;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.text.DecimalFormat;
+import java.util.List;
 
+import javax.swing.DefaultListModel;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
@@ -16,11 +19,23 @@ import javax.swing.JTable;
 import javax.swing.SwingConstants;
 
 import controller.Controller;
+import controller.Ranking;
+import controller.Report;
+import controller.index.AttributeDictionary;
+import controller.index.EntityID;
+import controller.query.BikeQuery;
+import controller.query.Query;
+import model.bike.Available;
 import model.bike.Bike;
+import model.bike.BikeState;
+import model.bike.Damaged;
+import model.bike.OnHire;
+import model.bike.Reserved;
+import model.invoice.Money;
 
 /*
  * A panel that contains a table populated with the details 
- * of all bike objects. Also enables damaged bikes to be 
+ * of all bike objects, which can be filtered and sorted. Also enables damaged bikes to be 
  * repaired and displays statistics based on the bikes stored 
  * in the controller's bikes list.
  */
@@ -32,11 +47,10 @@ public class BikeViewPanel extends JPanel
 	
 	
 	private JTable bikeTable;
+	private BikeTableModel bikeModel;
 	private String[] columns = {"Bike ID", "Make", "Model", "Function", 
 								"Demographic", "Colour", "Daily rate", "Status"};
-	private String[][] data;
 	private JScrollPane scrollPane;
-	private DecimalFormat pound = new DecimalFormat("£###,###,#00.00");
 	private JPanel bottomPanel;
 	private JLabel totalLbl;
 	private JLabel availableLbl;
@@ -51,6 +65,15 @@ public class BikeViewPanel extends JPanel
 	private JLabel leastPopularLbl;
 	private JLabel leastPopular;
 	private JButton repairBtn;
+	private JPanel rankingPanel;
+	private DefaultListModel<String> ranking;
+	
+	// Number of bikes shown in the popularity ranking
+	private static final int RANKED = 10;
+
+	// Statuses to filter by, in the order listed
+	private static final String[] STATUSES = {FilterBar.ANY, "Available", "On hire", "Damaged", "Reserved"};
+	private static final Class<?>[] STATES = {null, Available.class, OnHire.class, Damaged.class, Reserved.class};
 	
 	public BikeViewPanel()
 	{
@@ -75,26 +98,17 @@ public class BikeViewPanel extends JPanel
 		repairBtn = new JButton("Repair bike");
 		repairBtn.addActionListener(new ButtonListener());
 		
-		initPanel();
-	}
-	
-	/*
-	 * Initialises the panel to ensure all data is up-to-date.
-	 */
-	public void initPanel()
-	{
-		removeAll();
-		bottomPanel.removeAll();
+		ranking = new DefaultListModel<String>();
+		JScrollPane rankingScroll = new JScrollPane(new JList<String>(ranking));
+		rankingScroll.setPreferredSize(new Dimension(160, 200));
+		rankingPanel = new JPanel(new BorderLayout());
+		rankingPanel.add(new JLabel("Most hired bikes", SwingConstants.CENTER), BorderLayout.PAGE_START);
+		rankingPanel.add(rankingScroll, BorderLayout.CENTER);
 		
 		drawTable();
+		add(new BikeFilters(), BorderLayout.PAGE_START);
 		add(scrollPane, BorderLayout.CENTER);
-		
-		total.setText(Integer.toString(controller.getReport().getTotalBikes()));
-		available.setText(Integer.toString(controller.getReport().getNoOfBikesAvailable()));
-		onHire.setText(Integer.toString(controller.getReport().getNoOfBikesOnHire()));
-		damaged.setText(Integer.toString(controller.getReport().getNoOfBikesDamaged()));
-		mostPopular.setText(controller.getReport().getMostPopularBike());
-		leastPopular.setText(controller.getReport().getLeastPopularBike());
+		add(rankingPanel, BorderLayout.LINE_END);
 		
 		bottomPanel.add(totalLbl);
 		bottomPanel.add(total);
@@ -117,39 +131,148 @@ public class BikeViewPanel extends JPanel
 		bottomPanel.add(new JLabel(""));
 		
 		add(bottomPanel, BorderLayout.PAGE_END);
+		
+		initPanel();
+	}
+	
+	/*
+	 * Initialises the statistics and ranking to ensure they are
+	 * up-to-date, once the report has calculated them. The table
+	 * keeps itself up-to-date.
+	 */
+	public void initPanel()
+	{
+		new BikeStatistics().submit();
 	}
 
 	/*
-	 * Draws the table with the appropriate dimensions.
+	 * Draws the table with the appropriate dimensions. The table reads
+	 * the bikes list as it is painted, and is sorted by clicking a
+	 * column's header.
 	 */
-	public void drawTable()
+	private void drawTable()
 	{
-		populateTable();
-		bikeTable = new JTable(data, columns);
+		bikeModel = new BikeTableModel();
+		bikeTable = new JTable(bikeModel);
+		bikeModel.sortByHeader(bikeTable);
 		scrollPane = new JScrollPane(bikeTable);
 		bikeTable.setPreferredScrollableViewportSize(new Dimension(800, 200));
 	}
 	
 	/*
-	 * Populates the table with up-to-date data.
+	 * Calculates the bike statistics in the background, then shows
+	 * them with the most hired bikes and their number of hires.
 	 */
-	private void populateTable()
+	private class BikeStatistics extends ReportQuery
 	{
-		data = new String[controller.getBikes().size()][8];
-		
-		int row = 0;
+		private int totalBikes;
+		private int noAvailable;
+		private int noOnHire;
+		private int noDamaged;
+		private String mostPopularBike;
+		private String leastPopularBike;
+		private List<Ranking> top;
 
-		while(row != controller.getBikes().size())
+		protected void compute(Report report)
 		{
-			data[row][0] = controller.getBikes().get(row).getBikeID();
-			data[row][1] = controller.getBikes().get(row).getMake();
-			data[row][2] = controller.getBikes().get(row).getModel();
-			data[row][3] = controller.getBikes().get(row).getFunction();
-			data[row][4] = controller.getBikes().get(row).getDemographic();
-			data[row][5] = controller.getBikes().get(row).getColour();
-			data[row][6] = pound.format(controller.getBikes().get(row).getDailyRate());
-			data[row][7] = controller.getBikes().get(row).getStatus();
-			row++;
+			totalBikes = report.getTotalBikes();
+			noAvailable = report.getNoOfBikesAvailable();
+			noOnHire = report.getNoOfBikesOnHire();
+			noDamaged = report.getNoOfBikesDamaged();
+			top = report.getPopularity().getMostPopular(RANKED);
+			// The most popular bike heads the ranking, so is not ranked again
+			mostPopularBike = top.isEmpty() ? "N/A" : top.get(0).getName();
+			leastPopularBike = report.getLeastPopularBike();
+		}
+
+		protected void show()
+		{
+			total.setText(Integer.toString(totalBikes));
+			available.setText(Integer.toString(noAvailable));
+			onHire.setText(Integer.toString(noOnHire));
+			damaged.setText(Integer.toString(noDamaged));
+			mostPopular.setText(mostPopularBike);
+			leastPopular.setText(leastPopularBike);
+			ranking.clear();
+			
+			for (int i = 0; i < top.size(); i++)
+				ranking.addElement((i + 1) + ". " + top.get(i));
+		}
+	}
+	
+	/*
+	 * Filters the bikes by make, function, colour and status.
+	 */
+	private class BikeFilters extends FilterBar
+	{
+		private static final long serialVersionUID = 1L;
+		private JComboBox<String> make;
+		private JComboBox<String> function;
+		private JComboBox<String> colour;
+		private JComboBox<String> status;
+
+		private BikeFilters()
+		{
+			super(bikeModel);
+			make = addFilter("Make:", choices(AttributeDictionary.BIKE_MAKES));
+			function = addFilter("Function:", choices(AttributeDictionary.BIKE_FUNCTIONS));
+			colour = addFilter("Colour:", choices(AttributeDictionary.BIKE_COLOURS));
+			status = addFilter("Status:", new JComboBox<String>(STATUSES));
+			addButtons(make, function, colour, status);
+		}
+
+		@SuppressWarnings("unchecked")
+		protected Query filter(Query query)
+		{
+			return ((BikeQuery) query).withMake(choice(make)).withFunction(choice(function))
+					.withColour(choice(colour))
+					.withState((Class<? extends BikeState>) STATES[status.getSelectedIndex()]);
+		}
+	}
+
+	/*
+	 * The details of each bike, read from the bikes list.
+	 */
+	private class BikeTableModel extends LiveTableModel
+	{
+		private static final long serialVersionUID = 1L;
+
+		private BikeTableModel()
+		{
+			super(columns, EntityID.BIKES, new BikeQuery());
+		}
+
+		protected int size()
+		{
+			return controller.getBikes().publishedSize();
+		}
+
+		protected Object valueAt(int row, int column)
+		{
+			Bike bike = controller.getBikes().getPublished(row);
+
+			if (bike == null)
+				return null;
+
+			switch (column)
+			{
+			case 0:
+				return bike.getBikeID();
+			case 1:
+				return bike.getMake();
+			case 2:
+				return bike.getModel();
+			case 3:
+				return bike.getFunction();
+			case 4:
+				return bike.getDemographic();
+			case 5:
+				return bike.getColour();
+			case 6:
+				return Money.format(bike.getDailyRatePence());
+			default:
+				return bike.getStatus();
+			}
 		}
 	}
 	
@@ -181,19 +304,17 @@ public class BikeViewPanel extends JPanel
 					if (bikeID == null)
 						break;
 					
-					for (int i = 0; i < controller.getBikes().size(); i++)
-						if (bikeID.compareToIgnoreCase(controller.getBikes().get(i).getBikeID()) == 0)
-						{
-							bike = controller.getBikes().get(i);
-							
-							if (bike.repairBike())
-								JOptionPane.showMessageDialog(null, "Bike repaired.");
-							else
-								JOptionPane.showMessageDialog(null, "Bike is not damaged.");
-							
-							initPanel();
-							break;
-						}
+					bike = controller.findBike(bikeID);
+					
+					if (bike != null)
+					{
+						if (controller.repairBike(bike))
+							JOptionPane.showMessageDialog(null, "Bike repaired.");
+						else
+							JOptionPane.showMessageDialog(null, "Bike is not damaged.");
+						
+						initPanel();
+					}
 					
 					if (bike == null)
 						JOptionPane.showMessageDialog(null, "Bike ID not recognised. Please try again.");
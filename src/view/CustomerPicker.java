@@ -0,0 +1,119 @@
+package view;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.util.List;
+
+import javax.swing.DefaultListModel;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+import model.customer.Customer;
+import controller.Controller;
+
+/*
+ * A dialog that finds returning customers by name, postcode or town
+ * as they are typed, e.g. "jo smi" or "NN1 1", allowing for typing
+ * mistakes, and lets the user pick one of them.
+ */
+class CustomerPicker extends JPanel
+{
+	private static final long serialVersionUID = 1L;
+
+	// Most customers listed at a time
+	private static final int SHOWN = 20;
+
+	private JTextField words;
+	private DefaultListModel<String> customerIDs;
+	private JList<String> customerList;
+
+	private CustomerPicker()
+	{
+		setLayout(new BorderLayout(0, 10));
+
+		words = new JTextField(24);
+		words.getDocument().addDocumentListener(new DocumentListener()
+		{
+			public void insertUpdate(DocumentEvent e)
+			{
+				search();
+			}
+
+			public void removeUpdate(DocumentEvent e)
+			{
+				search();
+			}
+
+			public void changedUpdate(DocumentEvent e)
+			{
+				search();
+			}
+		});
+
+		customerIDs = new DefaultListModel<String>();
+		customerList = new JList<String>(customerIDs);
+		customerList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		JScrollPane scrollPane = new JScrollPane(customerList);
+		scrollPane.setPreferredSize(new Dimension(420, 200));
+
+		JPanel wordsPanel = new JPanel(new BorderLayout(5, 0));
+		wordsPanel.add(new JLabel("Name or postcode:"), BorderLayout.LINE_START);
+		wordsPanel.add(words, BorderLayout.CENTER);
+
+		add(wordsPanel, BorderLayout.PAGE_START);
+		add(scrollPane, BorderLayout.CENTER);
+	}
+
+	/*
+	 * Shows the picker.
+	 *
+	 * @return	the ID of the customer picked. null if none was.
+	 */
+	static String pick()
+	{
+		CustomerPicker picker = new CustomerPicker();
+
+		int choice = JOptionPane.showConfirmDialog(null, picker, "Find a customer",
+				JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+
+		if (choice != JOptionPane.OK_OPTION)
+			return null;
+
+		// The only customer found need not be selected
+		if (picker.customerList.getSelectedIndex() < 0 && picker.customerIDs.size() == 1)
+			picker.customerList.setSelectedIndex(0);
+
+		if (picker.customerList.getSelectedIndex() < 0)
+			return null;
+
+		String selected = picker.customerList.getSelectedValue();
+
+		return selected.substring(0, selected.indexOf(' '));
+	}
+
+	/*
+	 * Lists the customers matching the words typed so far, found from
+	 * the customers' search index.
+	 */
+	private void search()
+	{
+		List<Customer> customers = Controller.getInstance().getCustomers();
+		customerIDs.clear();
+
+		for (int row : Controller.getInstance().searchCustomers(words.getText(), SHOWN))
+		{
+			Customer customer = customers.get(row);
+			customerIDs.addElement(customer.getCustomerID() + " " + customer.getFirstName() + " "
+					+ customer.getLastName() + ", " + customer.getAddressPostcode() + ", "
+					+ customer.getAddressTown());
+		}
+	}
+
+}
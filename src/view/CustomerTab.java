@@ -2,8 +2,6 @@ package view;
 
 import javax.swing.JPanel;
 import javax.swing.JTabbedPane;
-import javax.swing.event.ChangeEvent;
-import javax.swing.event.ChangeListener;
 
 /*
  * A tabbed pane that allows the user to access the 
@@ -27,16 +25,6 @@ public class CustomerTab extends JTabbedPane
 
 		view = new CustomerViewPanel();
 		addTab("View", null, view, null);
-
-		// Update data to reflect changes made when user clicks on the view tab
-		addChangeListener(new ChangeListener() 
-		{
-			public void stateChanged(ChangeEvent ce) 
-			{
-				if (getSelectedIndex() == 1)
-					((CustomerViewPanel) view).initTable();
-			}	
-		});
 	}
 
 }
@@ -3,16 +3,23 @@ package view;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 
+import javax.swing.JComboBox;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
-import javax.swing.SwingConstants;
+import javax.swing.JTextField;
 
 import controller.Controller;
+import controller.index.AttributeDictionary;
+import controller.index.EntityID;
+import controller.query.CustomerQuery;
+import controller.query.Query;
+import model.customer.Customer;
 
 /*
  * A panel that contains a table populated with the details 
- * of all customer objects.
+ * of all customer objects, which can be searched by name or
+ * postcode, filtered by town and sorted.
  */
 public class CustomerViewPanel extends JPanel
 {
@@ -20,9 +27,9 @@ public class CustomerViewPanel extends JPanel
 	private Controller controller;
 	
 	private JTable customerTable;
+	private CustomerTableModel customerModel;
 	private String[] columns = {"Customer ID", "First name",
 			"Last name", "Line 1", "Town", "Postcode"};
-	private String[][] data;
 	private JScrollPane scrollPane;
 	
 	
@@ -31,48 +38,88 @@ public class CustomerViewPanel extends JPanel
 		controller = Controller.getInstance();
 
 		setLayout(new BorderLayout());
-		initTable();
+		drawTable();
+		add(new CustomerFilters(), BorderLayout.PAGE_START);
+		add(scrollPane, BorderLayout.CENTER);
 	}
 	
 	/*
-	 * Initialises the table to ensure all data is up-to-date.
+	 * Draws the table with the appropriate dimensions. The table reads
+	 * the customers list as it is painted, so it stays up-to-date, and
+	 * is sorted by clicking a column's header.
 	 */
-	public void initTable()
+	private void drawTable()
 	{
-		removeAll();
-		drawTable();
-		add(scrollPane, SwingConstants.CENTER);
+		customerModel = new CustomerTableModel();
+		customerTable = new JTable(customerModel);
+		customerModel.sortByHeader(customerTable);
+		scrollPane = new JScrollPane(customerTable);
+		customerTable.setPreferredScrollableViewportSize(new Dimension(800, 200));
 	}
 	
 	/*
-	 * Draws the table with the appropriate dimensions.
+	 * Filters the customers by the words of their names and address,
+	 * and by town.
 	 */
-	public void drawTable()
+	private class CustomerFilters extends FilterBar
 	{
-		populateTable();
-		customerTable = new JTable(data, columns);
-		scrollPane = new JScrollPane(customerTable);
-		customerTable.setPreferredScrollableViewportSize(new Dimension(800, 200));
+		private static final long serialVersionUID = 1L;
+		private JTextField words;
+		private JComboBox<String> town;
+
+		private CustomerFilters()
+		{
+			super(customerModel);
+			words = addFilter("Name or postcode:", new JTextField(16));
+			town = addFilter("Town:", choices(AttributeDictionary.CUSTOMER_TOWNS));
+			addButtons(words, town);
+		}
+
+		protected Query filter(Query query)
+		{
+			return ((CustomerQuery) query).withWords(words.getText()).withTown(choice(town));
+		}
 	}
-	
+
 	/*
-	 * Populates the table with up-to-date data.
+	 * The details of each customer, read from the customers list.
 	 */
-	private void populateTable()
+	private class CustomerTableModel extends LiveTableModel
 	{
-		data = new String[controller.getCustomers().size()][6];
-		
-		int row = 0;
+		private static final long serialVersionUID = 1L;
+
+		private CustomerTableModel()
+		{
+			super(columns, EntityID.CUSTOMERS, new CustomerQuery());
+		}
 
-		while(row != controller.getCustomers().size())
+		protected int size()
 		{
-			data[row][0] = controller.getCustomers().get(row).getCustomerID();
-			data[row][1] = controller.getCustomers().get(row).getFirstName();
-			data[row][2] = controller.getCustomers().get(row).getLastName();
-			data[row][3] = controller.getCustomers().get(row).getAddressLine1();
-			data[row][4] = controller.getCustomers().get(row).getAddressTown();
-			data[row][5] = controller.getCustomers().get(row).getAddressPostcode();
-			row++;
+			return controller.getCustomers().publishedSize();
+		}
+
+		protected Object valueAt(int row, int column)
+		{
+			Customer customer = controller.getCustomers().getPublished(row);
+
+			if (customer == null)
+				return null;
+
+			switch (column)
+			{
+			case 0:
+				return customer.getCustomerID();
+			case 1:
+				return customer.getFirstName();
+			case 2:
+				return customer.getLastName();
+			case 3:
+				return customer.getAddressLine1();
+			case 4:
+				return customer.getAddressTown();
+			default:
+				return customer.getAddressPostcode();
+			}
 		}
 	}
 }
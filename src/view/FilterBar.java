@@ -0,0 +1,212 @@
+package view;
+
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.event.PopupMenuEvent;
+import javax.swing.event.PopupMenuListener;
+
+import model.hire.EpochDay;
+
+import org.joda.time.LocalDate;
+
+import controller.index.AttributeDictionary;
+import controller.index.EntityID;
+import controller.query.Query;
+
+/*
+ * A row of filters above a table, applied to the table's query when
+ * the Filter button is pressed. Filters left blank (or "Any") select
+ * every row, and the sort chosen from the table header is kept.
+ */
+abstract class FilterBar extends JPanel
+{
+	private static final long serialVersionUID = 1L;
+
+	static final String ANY = "Any";
+
+	private final LiveTableModel model;
+
+	FilterBar(LiveTableModel model)
+	{
+		this.model = model;
+		setLayout(new FlowLayout(FlowLayout.LEFT));
+	}
+
+	/*
+	 * Adds the Filter and Clear buttons, after the filters.
+	 */
+	void addButtons(final JComponent... filters)
+	{
+		JButton filterBtn = new JButton("Filter");
+		JButton clearBtn = new JButton("Clear");
+
+		filterBtn.addActionListener(new ActionListener()
+		{
+			public void actionPerformed(ActionEvent e)
+			{
+				apply();
+			}
+		});
+
+		clearBtn.addActionListener(new ActionListener()
+		{
+			public void actionPerformed(ActionEvent e)
+			{
+				for (JComponent filter : filters)
+				{
+					if (filter instanceof JTextField)
+						((JTextField) filter).setText("");
+					else if (filter instanceof JComboBox)
+						((JComboBox<?>) filter).setSelectedIndex(0);
+					else if (filter instanceof JCheckBox)
+						((JCheckBox) filter).setSelected(false);
+				}
+
+				apply();
+			}
+		});
+
+		add(filterBtn);
+		add(clearBtn);
+	}
+
+	/*
+	 * Adds a filter with its label.
+	 */
+	<T extends JComponent> T addFilter(String label, T filter)
+	{
+		add(new JLabel(label));
+		add(filter);
+		return filter;
+	}
+
+	/*
+	 * @param	query	the table's query, sorted as it is now.
+	 * @return	the query with the filters entered.
+	 * @throws	IllegalArgumentException	if a filter is not valid; its
+	 * 										message is shown.
+	 */
+	protected abstract Query filter(Query query);
+
+	private void apply()
+	{
+		Query query = model.getQuery();
+
+		try
+		{
+			model.setQuery(filter(query));
+		} catch (IllegalArgumentException e)
+		{
+			JOptionPane.showMessageDialog(null, e.getMessage());
+		}
+	}
+
+	/*
+	 * @return	the number of the customer entered. -1 if none is.
+	 */
+	static int customerNo(JTextField field)
+	{
+		String id = field.getText().trim();
+
+		if (id.isEmpty())
+			return -1;
+
+		int custNo = EntityID.number(id, EntityID.CUSTOMER);
+
+		if (custNo == -1)
+			throw new IllegalArgumentException("Customer ID not recognised. Please try again.");
+
+		return custNo;
+	}
+
+	/*
+	 * @return	the epoch day of the date entered (yyyy-mm-dd).
+	 * 			EpochDay.NONE if none is.
+	 */
+	static int day(JTextField field)
+	{
+		String date = field.getText().trim();
+
+		if (date.isEmpty())
+			return EpochDay.NONE;
+
+		try
+		{
+			return EpochDay.of(LocalDate.parse(date));
+		} catch (IllegalArgumentException e)
+		{
+			throw new IllegalArgumentException("Dates must be entered as yyyy-mm-dd.");
+		}
+	}
+
+	/*
+	 * @return	the item chosen. null for "Any".
+	 */
+	static String choice(JComboBox<String> box)
+	{
+		return box.getSelectedIndex() <= 0 ? null : (String) box.getSelectedItem();
+	}
+
+	/*
+	 * @return	a list of a dictionary's values to choose from, after
+	 * 			"Any", which takes in any new values as it is opened.
+	 */
+	static JComboBox<String> choices(final AttributeDictionary dictionary)
+	{
+		final JComboBox<String> box = new JComboBox<String>();
+		fill(box, dictionary);
+
+		box.addPopupMenuListener(new PopupMenuListener()
+		{
+			public void popupMenuWillBecomeVisible(PopupMenuEvent e)
+			{
+				fill(box, dictionary);
+			}
+
+			public void popupMenuWillBecomeInvisible(PopupMenuEvent e)
+			{
+
+			}
+
+			public void popupMenuCanceled(PopupMenuEvent e)
+			{
+
+			}
+		});
+
+		return box;
+	}
+
+	/*
+	 * Lists a dictionary's values, keeping the value chosen. Values are
+	 * only ever added to a dictionary, so the list is only refilled if
+	 * it has grown.
+	 */
+	private static void fill(JComboBox<String> box, AttributeDictionary dictionary)
+	{
+		Object chosen = box.getSelectedItem();
+		int size = dictionary.size();
+
+		if (box.getItemCount() == size + 1)
+			return;
+
+		box.removeAllItems();
+		box.addItem(ANY);
+
+		for (int code = 0; code < size; code++)
+			box.addItem(dictionary.value(code));
+
+		box.setSelectedItem(chosen == null ? ANY : chosen);
+	}
+
+}
@@ -2,6 +2,7 @@ package view;
 
 import model.hire.Hire;
 import model.invoice.InvoiceOut;
+import model.invoice.Money;
 
 import java.awt.BorderLayout;
 import java.awt.GridLayout;
@@ -21,12 +22,14 @@ import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
 import controller.Controller;
-import model.bike.Available;
 import model.bike.Bike;
+import model.bike.Reserved;
 import model.customer.Customer;
 
 /*
  * A panel that enables the user to create a new Hire object.
+ * The customer may be found by name or postcode, and the bike
+ * picked by its attributes, rather than typing their IDs.
  * 
  * Uses JodaTime (external library) to handle all date input.
  */
@@ -36,9 +39,14 @@ public class HireCreatePanel extends JPanel
 	private static final long serialVersionUID = 1L;
 	private Controller controller;
 
+	// How long a bike is held for a hire awaiting payment
+	private static final long RESERVATION_MILLIS = 10 * 60 * 1000;
+
 	private JTextField custIdField;
 	private JTextField bikeIdField;
 	private JTextField returnDateField;
+	private JButton findCustomerBtn;
+	private JButton findBikeBtn;
 	private JButton submitBtn;
 	private JButton clearBtn;
 
@@ -62,8 +70,12 @@ public class HireCreatePanel extends JPanel
 
 		JLabel custIdLbl = new JLabel("Customer ID:", SwingConstants.RIGHT);
 		custIdField = new JTextField();
+		findCustomerBtn = new JButton("Find customer...");
+		findCustomerBtn.addActionListener(new ButtonListener());
 		JLabel bikeIdLbl = new JLabel("Bike ID:", SwingConstants.RIGHT);
 		bikeIdField = new JTextField();
+		findBikeBtn = new JButton("Find bike...");
+		findBikeBtn.addActionListener(new ButtonListener());
 		JLabel returnDateLbl = new JLabel("Return date:", SwingConstants.RIGHT);
 		returnDateField = new JTextField();
 		submitBtn = new JButton("Submit");
@@ -75,13 +87,13 @@ public class HireCreatePanel extends JPanel
 		formPanel.add(new JLabel(""));
 		formPanel.add(custIdLbl);
 		formPanel.add(custIdField);
-		formPanel.add(new JLabel(""));
+		formPanel.add(findCustomerBtn);
 		formPanel.add(new JLabel(""));
 
 		formPanel.add(new JLabel(""));
 		formPanel.add(bikeIdLbl);
 		formPanel.add(bikeIdField);
-		formPanel.add(new JLabel(""));
+		formPanel.add(findBikeBtn);
 		formPanel.add(new JLabel(""));
 
 		formPanel.add(new JLabel(""));
@@ -113,6 +125,7 @@ public class HireCreatePanel extends JPanel
 		JButton pressed;
 		Customer customer;
 		Bike bike;
+		Reserved reservation;
 		LocalDate returnDate;
 		DateTimeFormatter dateFormat = DateTimeFormat.forPattern("dd-MM-yyyy");
 
@@ -121,13 +134,29 @@ public class HireCreatePanel extends JPanel
 		{
 			pressed = (JButton) e.getSource();
 
+			if (pressed == findCustomerBtn)
+			{
+				String customerID = CustomerPicker.pick();
+
+				if (customerID != null)
+					custIdField.setText(customerID);
+			}
+
+			if (pressed == findBikeBtn)
+			{
+				String bikeID = BikePicker.pick();
+
+				if (bikeID != null)
+					bikeIdField.setText(bikeID);
+			}
+
 			if(pressed == submitBtn)
 			{
 				if (fieldEmpty())
 				{
 					JOptionPane.showMessageDialog(null, "Please complete all fields");
 				}
-				else if(validCustomerID() && validBikeID() && validReturnDate())
+				else if(validCustomerID() && validReturnDate() && validBikeID())
 				{	
 					// Create hire and invoice
 					Hire hire = new Hire(customer, bike, returnDate);
@@ -139,16 +168,22 @@ public class HireCreatePanel extends JPanel
 							"Confirm payment", 
 							JOptionPane.YES_NO_OPTION);
 
-					if (confirm == JOptionPane.YES_OPTION)
+					if (confirm == JOptionPane.YES_OPTION && bike.collect(reservation))
 					{
 						hire.payForHire();
-						controller.addInvoiceOut(invoice);
 						controller.addHire(invoice.getHire());
-						JOptionPane.showMessageDialog(null, "New hire created: " + hire.getHireID());
+						controller.addInvoiceOut(invoice);
+						JOptionPane.showMessageDialog(null, "New hire created: " + hire.getHireID()
+								+ "\nCustomer balance: " + Money.format(controller.getBalance(customer.getCustNo())));
 						clearTextFields();
 					}
 					else
 					{
+						if (confirm == JOptionPane.YES_OPTION)
+							JOptionPane.showMessageDialog(null, "Bike reservation expired. Please try again.");
+						else
+							bike.release(reservation);
+
 						hire = null;
 						invoice = null;
 					}
@@ -181,19 +216,10 @@ public class HireCreatePanel extends JPanel
 		 */
 		private boolean validCustomerID()
 		{
-			String a = custIdField.getText();
-			String b = "";
-
-			for (int i = 0; i < controller.getCustomers().size(); i++)
-			{
-				b = controller.getCustomers().get(i).getCustomerID();
+			customer = controller.findCustomer(custIdField.getText());
 
-				if (a.compareToIgnoreCase(b) == 0)
-				{
-					customer = controller.getCustomers().get(i);
-					return true;
-				}
-			}
+			if (customer != null)
+				return true;
 
 			JOptionPane.showMessageDialog(null, "Customer ID not recognised. Please try again.");
 			return false;
@@ -202,34 +228,31 @@ public class HireCreatePanel extends JPanel
 		/*
 		 * Determines whether the String entered for the bike's ID
 		 * matches that of an existing bike in the controller's 
-		 * bikes list.
+		 * bikes list, and reserves the bike if it is available. 
+		 * Checking and reserving are one step, so two desks cannot
+		 * both go on to hire the same bike.
 		 * 
-		 * @return	true if a matching bike ID is found
+		 * @return	true if a matching bike ID is found and reserved
 		 * 			false otherwise.
 		 */
 		private boolean validBikeID()
 		{
-			String a = bikeIdField.getText();
-			String b = "";
+			Bike found = controller.findBike(bikeIdField.getText());
 
-			for (int i = 0; i < controller.getBikes().size(); i++)
+			if (found != null)
 			{
-				b = controller.getBikes().get(i).getBikeID();
+				reservation = found.reserve(RESERVATION_MILLIS);
 
-				if (a.compareToIgnoreCase(b) == 0)
+				if (reservation != null)
 				{
-					if (controller.getBikes().get(i).getState() instanceof Available)
-					{
-						bike = controller.getBikes().get(i);
-						return true;
-					}
-					else
-					{
-						JOptionPane.showMessageDialog(null, "Bike currently unavailable.");
-						return false;
-					}
+					bike = found;
+					return true;
+				}
+				else
+				{
+					JOptionPane.showMessageDialog(null, "Bike currently unavailable.");
+					return false;
 				}
-
 			}
 
 			JOptionPane.showMessageDialog(null, "Bike ID not recognised. Please try again.");
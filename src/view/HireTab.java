@@ -36,4 +36,10 @@ public class HireTab extends JTabbedPane
 			}	
 		});
 	}
+	
+	// Required by the AppFrame object that contains this tabbed pane
+	public JPanel getViewPanel()
+	{
+		return view;
+	}
 }
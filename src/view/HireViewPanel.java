@@ -1,8 +1,15 @@
 package view;
 
+import model.customer.Customer;
+import model.hire.Active;
 import model.hire.Complete;
+import model.hire.EpochDay;
 import model.hire.Hire;
+import model.hire.HireState;
+import model.hire.Late;
+import model.hire.PaymentPending;
 import model.invoice.InvoiceIn;
+import model.invoice.Money;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
@@ -11,18 +18,26 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
+import javax.swing.JTextField;
 import javax.swing.SwingConstants;
 
 import controller.Controller;
+import controller.Report;
+import controller.index.EntityID;
+import controller.index.Ledger;
+import controller.query.HireQuery;
+import controller.query.Query;
 
 /*
  * A panel that contains a table populated with the details 
- * of all hire objects. Also enables active/late hires to be 
+ * of all hire objects, which can be filtered and sorted. Also enables active/late hires to be 
  * returned and displays statistics based on the hires stored 
  * in the controller's hires list.
  */
@@ -33,9 +48,9 @@ public class HireViewPanel extends JPanel
 	private Controller controller;
 
 	private JTable hireTable;
+	private HireTableModel hireModel;
 	private String[] columns = {"Hire ID", "Customer ID", "Bike ID", 
 			"Start date", "End date", "Returned on", "Status"};
-	private String[][] data;
 	private JScrollPane scrollPane;
 	private JPanel bottomPanel;
 	private JLabel totalLbl;
@@ -47,6 +62,14 @@ public class HireViewPanel extends JPanel
 	private JLabel late;
 	private JLabel complete;
 	private JButton returnBtn;
+	private JButton paymentsBtn;
+
+	// Payment history entries shown at a time
+	private static final int PAGE_SIZE = 10;
+
+	// Statuses to filter by, in the order listed
+	private static final String[] STATUSES = {FilterBar.ANY, "Payment pending", "Active", "Late", "Complete"};
+	private static final Class<?>[] STATES = {null, PaymentPending.class, Active.class, Late.class, Complete.class};
 
 	public HireViewPanel()
 	{
@@ -67,27 +90,13 @@ public class HireViewPanel extends JPanel
 		
 		returnBtn = new JButton("Return hire");
 		returnBtn.addActionListener(new ButtonListener());
+		paymentsBtn = new JButton("Payments");
+		paymentsBtn.addActionListener(new ButtonListener());
 
-		initPanel();
-	}
-
-	/*
-	 * Initialises the panel to ensure all data is up-to-date.
-	 */
-	public void initPanel()
-	{
-		controller.refreshLateHires();
-		
-		removeAll();
-		bottomPanel.removeAll();
 		drawTable();
+		add(new HireFilters(), BorderLayout.PAGE_START);
 		add(scrollPane, BorderLayout.CENTER);
 
-		total.setText(Integer.toString(controller.getReport().getTotalHires()));
-		active.setText(Integer.toString(controller.getReport().getNoOfActiveHires()));
-		late.setText(Integer.toString(controller.getReport().getNoOfLateHires()));
-		complete.setText(Integer.toString(controller.getReport().getNoOfCompleteHires()));
-
 		bottomPanel.add(totalLbl);
 		bottomPanel.add(total);
 		bottomPanel.add(activeLbl);
@@ -105,53 +114,186 @@ public class HireViewPanel extends JPanel
 		bottomPanel.add(new JLabel(""));
 		bottomPanel.add(new JLabel(""));
 		bottomPanel.add(new JLabel(""));
-		bottomPanel.add(new JLabel(""));
+		bottomPanel.add(paymentsBtn);
 
 		add(bottomPanel, BorderLayout.PAGE_END);
+
+		initPanel();
+	}
+
+	/*
+	 * Initialises the statistics to ensure they are up-to-date, once
+	 * any hires that have fallen due are marked late and the report
+	 * has counted them. The table keeps itself up-to-date.
+	 */
+	public void initPanel()
+	{
+		new HireStatistics().submit();
 	}
 
 	/*
-	 * Draws the table with the appropriate dimensions.
+	 * Draws the table with the appropriate dimensions. The table reads
+	 * the hires list as it is painted, and is sorted by clicking a
+	 * column's header.
 	 */
-	public void drawTable()
+	private void drawTable()
 	{
-		populateTable();
-		hireTable = new JTable(data, columns);
+		hireModel = new HireTableModel();
+		hireTable = new JTable(hireModel);
+		hireModel.sortByHeader(hireTable);
 		scrollPane = new JScrollPane(hireTable);
 		hireTable.setPreferredScrollableViewportSize(new Dimension(800, 200));
 	}
 
 	/*
-	 * Populates the table with up-to-date data.
+	 * Marks hires late and counts them in the background, then shows
+	 * the counts.
 	 */
-	private void populateTable()
+	private class HireStatistics extends ReportQuery
 	{
-		data = new String[controller.getHires().size()][7];
+		private int totalHires;
+		private int noActive;
+		private int noLate;
+		private int noComplete;
 
-		int row = 0;
-		String dateReturned;
+		protected void compute(Report report)
+		{
+			controller.refreshLateHires();
 
-		while(row != controller.getHires().size())
-		{	
+			totalHires = report.getTotalHires();
+			noActive = report.getNoOfActiveHires();
+			noLate = report.getNoOfLateHires();
+			noComplete = report.getNoOfCompleteHires();
+		}
 
-			try
-			{
-				dateReturned = controller.getHires().get(row).getDateReturned().toString();
-			}catch(NullPointerException npe)
+		protected void show()
+		{
+			total.setText(Integer.toString(totalHires));
+			active.setText(Integer.toString(noActive));
+			late.setText(Integer.toString(noLate));
+			complete.setText(Integer.toString(noComplete));
+		}
+	}
+
+	/*
+	 * Filters the hires by status, customer, start date and lateness.
+	 */
+	private class HireFilters extends FilterBar
+	{
+		private static final long serialVersionUID = 1L;
+		private JComboBox<String> status;
+		private JTextField customerID;
+		private JTextField from;
+		private JTextField to;
+		private JCheckBox lateOnly;
+
+		private HireFilters()
+		{
+			super(hireModel);
+			status = addFilter("Status:", new JComboBox<String>(STATUSES));
+			customerID = addFilter("Customer ID:", new JTextField(8));
+			from = addFilter("Started from:", new JTextField(8));
+			to = addFilter("to:", new JTextField(8));
+			lateOnly = addFilter("", new JCheckBox("Late only"));
+			addButtons(status, customerID, from, to, lateOnly);
+		}
+
+		@SuppressWarnings("unchecked")
+		protected Query filter(Query query)
+		{
+			return ((HireQuery) query)
+					.withState((Class<? extends HireState>) STATES[status.getSelectedIndex()])
+					.withCustomer(customerNo(customerID))
+					.withStartBetween(day(from), day(to))
+					.withLateOnly(lateOnly.isSelected());
+		}
+	}
+
+	/*
+	 * The details of each hire, read from the hires list.
+	 */
+	private class HireTableModel extends LiveTableModel
+	{
+		private static final long serialVersionUID = 1L;
+
+		private HireTableModel()
+		{
+			super(columns, EntityID.HIRES, new HireQuery());
+		}
+
+		protected int size()
+		{
+			return controller.getHires().publishedSize();
+		}
+
+		protected Object valueAt(int row, int column)
+		{
+			Hire hire = controller.getHires().getPublished(row);
+
+			if (hire == null)
+				return null;
+
+			switch (column)
 			{
-				dateReturned = "N/A";
+			case 0:
+				return hire.getHireID();
+			case 1:
+				return hire.getCustomer().getCustomerID();
+			case 2:
+				return hire.getBike().getBikeID();
+			case 3:
+				return hire.getStartDate().toString();
+			case 4:
+				return hire.getEndDate().toString();
+			case 5:
+				return hire.getReturnedDay() == EpochDay.NONE ? "N/A" : hire.getDateReturned().toString();
+			default:
+				return hire.getStatus();
 			}
-			data[row][0] = controller.getHires().get(row).getHireID();
-			data[row][1] = controller.getHires().get(row).getCustomer().getCustomerID();
-			data[row][2] = controller.getHires().get(row).getBike().getBikeID();
-			data[row][3] = 	controller.getHires().get(row).getStartDate().toString();
-			data[row][4] = controller.getHires().get(row).getEndDate().toString();
-			data[row][5] = dateReturned;
-			data[row][6] = controller.getHires().get(row).getState().toString();
-			row++;
 		}
 	}
 
+	/*
+	 * Shows a customer's payment history a page at a time, newest
+	 * page first, with their balance.
+	 */
+	private void showPayments(Customer customer)
+	{
+		String[] options = {"Older", "Newer", "Close"};
+		int size = controller.getNoOfPayments(customer.getCustNo());
+		int from = Math.max(0, size - PAGE_SIZE);
+		int choice;
+
+		do
+		{
+			StringBuilder text = new StringBuilder();
+			text.append("Payments of ").append(customer.getCustomerID()).append(" (")
+					.append(size == 0 ? 0 : from + 1).append('-')
+					.append(Math.min(size, from + PAGE_SIZE)).append(" of ").append(size).append(")\n");
+
+			for (Ledger.Entry entry : controller.getPayments(customer.getCustNo(), from, PAGE_SIZE))
+			{
+				text.append('\n');
+				EpochDay.append(text, entry.getDay()).append("  ");
+				text.append(EntityID.HIRE).append(entry.getHireNo()).append("  ");
+				text.append(entry.getDescription()).append(": ");
+				Money.append(text, entry.getAmount()).append("  (balance ");
+				Money.append(text, entry.getBalance()).append(')');
+			}
+
+			text.append("\n\nBalance: ");
+			Money.append(text, controller.getBalance(customer.getCustNo()));
+
+			choice = JOptionPane.showOptionDialog(null, text.toString(), "Payment history",
+					JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, options, options[2]);
+
+			if (choice == 0)
+				from = Math.max(0, from - PAGE_SIZE);
+			else if (choice == 1 && from + PAGE_SIZE < size)
+				from += PAGE_SIZE;
+		} while (choice == 0 || choice == 1);
+	}
+
 	/* 
 	 * Listen for Return hire button click.
 	 * Prompt user for hire ID when button is pressed.
@@ -168,6 +310,21 @@ public class HireViewPanel extends JPanel
 		{
 			pressed = (JButton) e.getSource();
 
+			if (pressed == paymentsBtn)
+			{
+				String customerID = JOptionPane.showInputDialog("Please enter a customer ID");
+
+				if (customerID != null)
+				{
+					Customer customer = controller.findCustomer(customerID);
+
+					if (customer != null)
+						showPayments(customer);
+					else
+						JOptionPane.showMessageDialog(null, "Customer ID not recognised. Please try again.");
+				}
+			}
+
 			if (pressed == returnBtn)
 			{
 				Hire hire = null;
@@ -184,46 +341,45 @@ public class HireViewPanel extends JPanel
 					if (hireID == null)
 						break;
 
-					// Search for hire ID
-					for (int i = 0; i < controller.getHires().size(); i++)
-					{
-						if (hireID.compareToIgnoreCase(controller.getHires().get(i).getHireID()) == 0)
-						{
-							found = true;
+					// Look up hire ID
+					Hire match = controller.findHire(hireID);
 
-							// Check if hire is eligible for return
-							if (controller.getHires().get(i).getState() instanceof Complete)
-							{
-								JOptionPane.showMessageDialog(null, "Hire not suitable for return. Please try again.");
-								break;
-							}
-							else
-							{
+					if (match != null)
+					{
+						found = true;
 
-								hire = controller.getHires().get(i);
+						// Check if hire is eligible for return
+						if (match.getState() instanceof Complete)
+						{
+							JOptionPane.showMessageDialog(null, "Hire not suitable for return. Please try again.");
+						}
+						else
+						{
 
-								// Check for damage
-								int bikeIsDamaged = JOptionPane.showConfirmDialog(null, 
-										"Is the bike damaged?", 
-										"Damage Check", 
-										JOptionPane.YES_NO_OPTION);
+							hire = match;
 
-								// Break if user has closed the prompt window
-								if (bikeIsDamaged == JOptionPane.CLOSED_OPTION)
-									break;
+							// Check for damage
+							int bikeIsDamaged = JOptionPane.showConfirmDialog(null, 
+									"Is the bike damaged?", 
+									"Damage Check", 
+									JOptionPane.YES_NO_OPTION);
 
+							// Stop if user has closed the prompt window
+							if (bikeIsDamaged != JOptionPane.CLOSED_OPTION)
+							{
 								if (bikeIsDamaged == JOptionPane.YES_OPTION)
-									hire.returnHire(true);
+									controller.returnHire(hire, true);
 								else if (bikeIsDamaged == JOptionPane.NO_OPTION)
-									hire.returnHire(false);
+									controller.returnHire(hire, false);
 
 								// Display invoice and confirm return
 								InvoiceIn invoice = new InvoiceIn(hire);
 								controller.addInvoiceIn(invoice);
-								JOptionPane.showMessageDialog(null, "Hire returned \n\n" + invoice.toString());
+								JOptionPane.showMessageDialog(null, "Hire returned \n\n" + invoice.toString()
+										+ "\n\nCustomer balance: " 
+										+ Money.format(controller.getBalance(hire.getCustomer().getCustNo())));
 								
 								initPanel();
-								break;
 							}
 						}
 					}
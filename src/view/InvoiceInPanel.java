@@ -2,18 +2,23 @@ package view;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
-import java.text.DecimalFormat;
 
+import javax.swing.JCheckBox;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
-import javax.swing.SwingConstants;
+import javax.swing.JTextField;
 
 import controller.Controller;
+import controller.index.EntityID;
+import controller.index.HireHistory;
+import controller.query.InvoiceInQuery;
+import controller.query.Query;
+import model.invoice.Money;
 
 /*
  * A panel that contains a table populated with the details 
- * of all InvoiceIn objects.
+ * of all InvoiceIn objects, which can be filtered and sorted.
  */
 public class InvoiceInPanel extends JPanel
 {
@@ -22,66 +27,113 @@ public class InvoiceInPanel extends JPanel
 	private Controller controller;
 
 	private JTable invoiceInTable;
+	private InvoiceInTableModel invoiceInModel;
 	private String[] columns = {"Invoice ID", "Hire ID", "Customer ID", 
 								"Bike ID", "Days late", "Late fee", "Bike damaged?"};
-	private String[][] data;
 	private JScrollPane scrollPane;
-	private final DecimalFormat POUND = new DecimalFormat("£###,###,#00.00");
 
 	public InvoiceInPanel()
 	{
 		controller = Controller.getInstance();
 		
 		setLayout(new BorderLayout());
-		initTable();
+		drawTable();
+		add(new InvoiceInFilters(), BorderLayout.PAGE_START);
+		add(scrollPane, BorderLayout.CENTER);
 	}
 
-	
 	/*
-	 * Initialises the table to ensure all data is up-to-date.
+	 * Draws the table with the appropriate dimensions. The table reads
+	 * the history of returned hires as it is painted, so it stays
+	 * up-to-date, and is sorted by clicking a column's header.
 	 */
-	public void initTable()
+	private void drawTable()
 	{
-		removeAll();
-		drawTable();
-		add(scrollPane, SwingConstants.CENTER);
+		invoiceInModel = new InvoiceInTableModel();
+		invoiceInTable = new JTable(invoiceInModel);
+		invoiceInModel.sortByHeader(invoiceInTable);
+		invoiceInTable.setPreferredScrollableViewportSize(new Dimension(800, 200));
+		scrollPane = new JScrollPane(invoiceInTable);
 	}
 
 	/*
-	 * Draws the table with the appropriate dimensions.
+	 * Filters the returns by customer, return date and lateness.
 	 */
-	public void drawTable()
+	private class InvoiceInFilters extends FilterBar
 	{
-		populateTable();
-		invoiceInTable = new JTable(data, columns);
-		invoiceInTable.setPreferredScrollableViewportSize(new Dimension(800, 200));
-		scrollPane = new JScrollPane(invoiceInTable);
+		private static final long serialVersionUID = 1L;
+		private JTextField customerID;
+		private JTextField from;
+		private JTextField to;
+		private JCheckBox lateOnly;
+
+		private InvoiceInFilters()
+		{
+			super(invoiceInModel);
+			customerID = addFilter("Customer ID:", new JTextField(8));
+			from = addFilter("Returned from:", new JTextField(8));
+			to = addFilter("to:", new JTextField(8));
+			lateOnly = addFilter("", new JCheckBox("Late only"));
+			addButtons(customerID, from, to, lateOnly);
+		}
+
+		protected Query filter(Query query)
+		{
+			return ((InvoiceInQuery) query).withCustomer(customerNo(customerID))
+					.withReturnedBetween(day(from), day(to)).withLateOnly(lateOnly.isSelected());
+		}
 	}
 
 	/*
-	 * Populates the table with up-to-date data.
+	 * The details of each InvoiceIn, read from the history of returned
+	 * hires through a cursor, which is reopened if the history is rebuilt.
 	 */
-	private void populateTable()
+	private class InvoiceInTableModel extends LiveTableModel
 	{
-		data = new String[controller.getInvoicesIn().size()][7];
+		private static final long serialVersionUID = 1L;
+		private HireHistory history;
+		private HireHistory.Row hire;
 
-		int row = 0;
+		private InvoiceInTableModel()
+		{
+			super(columns, EntityID.INVOICES_IN, new InvoiceInQuery());
+		}
+
+		protected int size()
+		{
+			return controller.getHireHistory().size();
+		}
 
-		while(row != controller.getInvoicesIn().size())
+		protected Object valueAt(int row, int column)
 		{
-			data[row][0] = controller.getInvoicesIn().get(row).getInvoiceInID();
-			data[row][1] = controller.getInvoicesIn().get(row).getHire().getHireID();
-			data[row][2] = controller.getInvoicesIn().get(row).getHire().getCustomer().getCustomerID();
-			data[row][3] = controller.getInvoicesIn().get(row).getHire().getBike().getBikeID();
-			data[row][4] = Integer.toString(controller.getInvoicesIn().get(row).getHire().getDaysLate());
-			data[row][5] = POUND.format(controller.getInvoicesIn().get(row).getLateFee());
-			
-			if (controller.getInvoicesIn().get(row).wasBikeDamaged())
-				data[row][6] = "yes";
-			else
-				data[row][6] = "no";
-			row++;
+			if (history != controller.getHireHistory())
+			{
+				history = controller.getHireHistory();
+				hire = history.row();
+			}
+
+			if (row >= history.size())
+				return null;
+
+			hire.moveTo(row);
+
+			switch (column)
+			{
+			case 0:
+				return EntityID.INVOICE_IN + hire.getInvoiceNo();
+			case 1:
+				return EntityID.HIRE + hire.getHireNo();
+			case 2:
+				return EntityID.CUSTOMER + hire.getCustomerNo();
+			case 3:
+				return EntityID.BIKE + hire.getBikeNo();
+			case 4:
+				return Integer.toString(hire.getDaysLate());
+			case 5:
+				return Money.format(hire.getLateFee());
+			default:
+				return hire.wasBikeDamaged() ? "yes" : "no";
+			}
 		}
 	}
 }
-
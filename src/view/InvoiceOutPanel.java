@@ -2,18 +2,23 @@ package view;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
-import java.text.DecimalFormat;
 
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
-import javax.swing.SwingConstants;
+import javax.swing.JTextField;
 
 import controller.Controller;
+import controller.index.EntityID;
+import controller.query.InvoiceOutQuery;
+import controller.query.Query;
+import model.invoice.InvoiceOut;
+import model.invoice.Money;
 
 /*
  * A panel that contains a table populated with the details 
- * of all InvoiceOut objects.
+ * of all InvoiceOut objects, which can be filtered by customer
+ * and sorted.
  */
 public class InvoiceOutPanel extends JPanel
 {
@@ -22,61 +27,102 @@ public class InvoiceOutPanel extends JPanel
 	private Controller controller;
 
 	private JTable invoiceOutTable;
+	private InvoiceOutTableModel invoiceOutModel;
 	private String[] columns = {"Invoice ID", "Hire ID", "Customer ID", 
 								"Bike ID", "Bike cost", "Deposit", "Total"};
-	private String[][] data;
 	private JScrollPane scrollPane;
-	private final DecimalFormat POUND = new DecimalFormat("£###,###,#00.00");
 
 	public InvoiceOutPanel()
 	{
 		controller = Controller.getInstance();
 
 		setLayout(new BorderLayout());
-		initTable();
+		drawTable();
+		add(new InvoiceOutFilters(), BorderLayout.PAGE_START);
+		add(scrollPane, BorderLayout.CENTER);
 	}
 
 	/*
-	 * Initialises the table to ensure all data is up-to-date.
+	 * Draws the table with the appropriate dimensions. The table reads
+	 * the invoicesOut list as it is painted, so it stays up-to-date, and
+	 * is sorted by clicking a column's header.
 	 */
-	public void initTable()
+	private void drawTable()
 	{
-		removeAll();
-		drawTable();
-		add(scrollPane, SwingConstants.CENTER);
+		invoiceOutModel = new InvoiceOutTableModel();
+		invoiceOutTable = new JTable(invoiceOutModel);
+		invoiceOutModel.sortByHeader(invoiceOutTable);
+		invoiceOutTable.setPreferredScrollableViewportSize(new Dimension(800, 200));
+		scrollPane = new JScrollPane(invoiceOutTable);
 	}
 
 	/*
-	 * Draws the table with the appropriate dimensions.
+	 * Filters the invoices by customer and the start date of the hire.
 	 */
-	public void drawTable()
+	private class InvoiceOutFilters extends FilterBar
 	{
-		populateTable();
-		invoiceOutTable = new JTable(data, columns);
-		invoiceOutTable.setPreferredScrollableViewportSize(new Dimension(800, 200));
-		scrollPane = new JScrollPane(invoiceOutTable);
+		private static final long serialVersionUID = 1L;
+		private JTextField customerID;
+		private JTextField from;
+		private JTextField to;
+
+		private InvoiceOutFilters()
+		{
+			super(invoiceOutModel);
+			customerID = addFilter("Customer ID:", new JTextField(8));
+			from = addFilter("Hire started from:", new JTextField(8));
+			to = addFilter("to:", new JTextField(8));
+			addButtons(customerID, from, to);
+		}
+
+		protected Query filter(Query query)
+		{
+			return ((InvoiceOutQuery) query).withCustomer(customerNo(customerID))
+					.withStartBetween(day(from), day(to));
+		}
 	}
 
 	/*
-	 * Populates the table with up-to-date data.
+	 * The details of each InvoiceOut, read from the invoicesOut list.
 	 */
-	private void populateTable()
+	private class InvoiceOutTableModel extends LiveTableModel
 	{
-		data = new String[controller.getInvoicesOut().size()][7];
+		private static final long serialVersionUID = 1L;
+
+		private InvoiceOutTableModel()
+		{
+			super(columns, EntityID.INVOICES_OUT, new InvoiceOutQuery());
+		}
 
-		int row = 0;
+		protected int size()
+		{
+			return controller.getInvoicesOut().publishedSize();
+		}
 
-		while(row != controller.getInvoicesOut().size())
+		protected Object valueAt(int row, int column)
 		{
-			data[row][0] = controller.getInvoicesOut().get(row).getInvoiceOutID();
-			data[row][1] = controller.getInvoicesOut().get(row).getHire().getHireID();
-			data[row][2] = controller.getInvoicesOut().get(row).getHire().getCustomer().getCustomerID();
-			data[row][3] = controller.getInvoicesOut().get(row).getHire().getBike().getBikeID();
-			data[row][4] = POUND.format(controller.getInvoicesOut().get(row).getHire().getCost());
-			data[row][5] = POUND.format(controller.getInvoicesOut().get(row).getHire().getBike().getDeposit());
-			data[row][6] = POUND.format(controller.getInvoicesOut().get(row).getTotal());
-			row++;
+			InvoiceOut invoice = controller.getInvoicesOut().getPublished(row);
+
+			if (invoice == null)
+				return null;
+
+			switch (column)
+			{
+			case 0:
+				return invoice.getInvoiceOutID();
+			case 1:
+				return EntityID.HIRE + invoice.getHireNo();
+			case 2:
+				return invoice.getHire().getCustomer().getCustomerID();
+			case 3:
+				return invoice.getHire().getBike().getBikeID();
+			case 4:
+				return Money.format(invoice.getCostPence());
+			case 5:
+				return Money.format(invoice.getDepositPence());
+			default:
+				return Money.format(invoice.getTotalPence());
+			}
 		}
 	}
 }
-
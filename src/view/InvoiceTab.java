@@ -25,18 +25,4 @@ public class InvoiceTab extends JTabbedPane
 		invoiceIn = new InvoiceInPanel();
 		addTab("In", null, invoiceIn, null);
 	}
-	
-	/*
-	 * Required by the AppFrame object that contains 
-	 * this tabbed pane.
-	 * 
-	 * Intends to update invoice table to reflect any new 
-	 * invoices added every time the user clicks on the 
-	 * invoice tab.
-	 */
-	public void refreshTab()
-	{
-		((InvoiceOutPanel) invoiceOut).initTable();
-		((InvoiceInPanel) invoiceIn).initTable();
-	}
 }
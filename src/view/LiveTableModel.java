@@ -0,0 +1,312 @@
+package view;
+
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+import controller.Controller;
+import controller.DataListener;
+import controller.Report;
+import controller.query.Query;
+import controller.query.QueryResult;
+
+/*
+ * A table model that reads its cells from one of the Controller's lists
+ * as they are painted, rather than copying the list, so a table only
+ * ever formats the rows in view, however long the list grows. Worker
+ * threads append to the lists meanwhile, so the lists are read through
+ * IndexedList.publishedSize() and getPublished(int).
+ *
+ * The model listens for changes to its list and passes them on to the
+ * table on the event dispatch thread: appended entities as inserted
+ * rows, and other changes as updated rows, which repaints only those
+ * in view. Notifications arriving before the last has been handled are
+ * folded into it.
+ *
+ * While a query filters or sorts the rows, the table instead shows the
+ * rows the query selected, in its order. The query is run in the
+ * background, again after each change to the list, and the table reads
+ * the positions of the rows in view a page at a time from its result.
+ */
+public abstract class LiveTableModel extends AbstractTableModel implements DataListener
+{
+	private static final long serialVersionUID = 1L;
+
+	private final String[] columns;
+	private final int kind;
+
+	// Rows the table has been told of, read and written on the EDT
+	private int rows;
+	private final AtomicBoolean pending = new AtomicBoolean();
+	private final AtomicBoolean updated = new AtomicBoolean();
+
+	// Positions of the rows read from a query's result at a time
+	private static final int PAGE_SIZE = 256;
+
+	// The query, its latest result (null while the rows are unfiltered)
+	// and the page of it last read, all on the EDT
+	private Query query;
+	private QueryResult result;
+	private int[] page = new int[0];
+	private int pageFrom;
+	private boolean running;
+	private boolean stale;
+
+	/*
+	 * @param	columns	the column names.
+	 * @param	kind	the kind of entity listed, e.g. EntityID.HIRES.
+	 * @param	query	an unfiltered query of the list, whose columns are
+	 * 					those of the table.
+	 */
+	protected LiveTableModel(String[] columns, int kind, Query query)
+	{
+		this.columns = columns;
+		this.kind = kind;
+		this.query = query;
+		rows = size();
+		Controller.getInstance().addDataListener(this);
+	}
+
+	/*
+	 * @return	the number of entities in the list now, as published to
+	 * 			the reading thread.
+	 */
+	protected abstract int size();
+
+	/*
+	 * @param	row		the entity's position in the list.
+	 * @param	column	the column.
+	 * @return	the value shown in the cell. null if the list no longer
+	 * 			holds the row.
+	 */
+	protected abstract Object valueAt(int row, int column);
+
+	public int getRowCount()
+	{
+		return rows;
+	}
+
+	public int getColumnCount()
+	{
+		return columns.length;
+	}
+
+	@Override
+	public String getColumnName(int column)
+	{
+		return columns[column];
+	}
+
+	public Object getValueAt(int row, int column)
+	{
+		if (result != null)
+			row = position(row);
+
+		// The list may have been replaced since the table was last told
+		if (row < 0 || row >= size())
+			return null;
+
+		return valueAt(row, column);
+	}
+
+	/*
+	 * @return	the query the rows are shown by.
+	 */
+	public Query getQuery()
+	{
+		return query;
+	}
+
+	/*
+	 * Shows the rows selected by a query, once it has been run, or all
+	 * of the rows if it neither filters nor sorts them.
+	 *
+	 * @param	query	the query, whose columns are those of the table.
+	 */
+	public void setQuery(Query query)
+	{
+		this.query = query;
+
+		if (query.isFiltered())
+		{
+			run();
+			return;
+		}
+
+		result = null;
+		rows = size();
+		fireTableDataChanged();
+	}
+
+	/*
+	 * Sorts the rows by a column, or the other way if they are already
+	 * sorted by it.
+	 *
+	 * @param	column	the column.
+	 */
+	public void sortBy(int column)
+	{
+		boolean descending = column == query.getSortColumn() && !query.isDescending();
+
+		setQuery(query.sortedBy(column, descending));
+	}
+
+	/*
+	 * Sorts the rows by the column whose header is clicked.
+	 *
+	 * @param	table	the table showing the model.
+	 */
+	public void sortByHeader(final JTable table)
+	{
+		table.getTableHeader().addMouseListener(new MouseAdapter()
+		{
+			@Override
+			public void mouseClicked(MouseEvent e)
+			{
+				int column = table.columnAtPoint(e.getPoint());
+
+				if (column >= 0)
+					sortBy(table.convertColumnIndexToModel(column));
+			}
+		});
+	}
+
+	/*
+	 * @return	the position in the list of a row of the result, read
+	 * 			through the page holding it.
+	 */
+	private int position(int row)
+	{
+		if (row < pageFrom || row >= pageFrom + page.length)
+		{
+			pageFrom = row - row % PAGE_SIZE;
+			page = result.page(pageFrom, PAGE_SIZE);
+		}
+
+		return row - pageFrom < page.length ? page[row - pageFrom] : -1;
+	}
+
+	/*
+	 * Runs the query in the background, or again once the run under way
+	 * has finished, then shows its result if the query is still the
+	 * one shown.
+	 */
+	private void run()
+	{
+		if (running)
+		{
+			stale = true;
+			return;
+		}
+
+		running = true;
+		stale = false;
+		new Run(query).submit();
+	}
+
+	private class Run extends ReportQuery
+	{
+		private final Query run;
+		private QueryResult selected;
+
+		private Run(Query run)
+		{
+			this.run = run;
+		}
+
+		protected void compute(Report report)
+		{
+			selected = run.run();
+		}
+
+		protected void show()
+		{
+			running = false;
+
+			if (stale || run != query)
+			{
+				if (query.isFiltered())
+					run();
+
+				return;
+			}
+
+			result = selected;
+			page = new int[0];
+			rows = result.size();
+			fireTableDataChanged();
+		}
+
+		@Override
+		protected void failed(Throwable failure)
+		{
+			running = false;
+			super.failed(failure);
+		}
+	}
+
+	public void rowsAdded(int kind)
+	{
+		if (kind == this.kind)
+			schedule();
+	}
+
+	public void rowsUpdated(int kind)
+	{
+		if (kind != this.kind)
+			return;
+
+		updated.set(true);
+		schedule();
+	}
+
+	private void schedule()
+	{
+		if (!pending.compareAndSet(false, true))
+			return;
+
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				pending.set(false);
+				refresh();
+			}
+		});
+	}
+
+	/*
+	 * Tells the table of the changes since it was last told.
+	 */
+	private void refresh()
+	{
+		if (query.isFiltered())
+		{
+			updated.set(false);
+			run();
+			return;
+		}
+
+		int size = size();
+		int previous = rows;
+		boolean changed = updated.getAndSet(false);
+		rows = size;
+
+		if (size < previous)
+		{
+			fireTableDataChanged();
+			return;
+		}
+
+		if (changed && previous > 0)
+			fireTableRowsUpdated(0, previous - 1);
+
+		if (size > previous)
+			fireTableRowsInserted(previous, size - 1);
+	}
+
+}
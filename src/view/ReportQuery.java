@@ -0,0 +1,77 @@
+package view;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import javax.swing.SwingUtilities;
+
+import controller.Controller;
+import controller.Report;
+
+/*
+ * A query of the Report's statistics made for a panel: the statistics
+ * are read on the report's background thread, and shown once read on
+ * the event dispatch thread, so that the panel stays responsive however
+ * long they take.
+ *
+ * A query is submitted once. What compute() stores in its fields is
+ * visible to show().
+ */
+abstract class ReportQuery
+{
+	private static final Executor EDT = new Executor()
+	{
+		public void execute(Runnable command)
+		{
+			SwingUtilities.invokeLater(command);
+		}
+	};
+
+	/*
+	 * Reads the statistics, on the report's background thread.
+	 */
+	protected abstract void compute(Report report);
+
+	/*
+	 * Shows the statistics read, on the event dispatch thread.
+	 */
+	protected abstract void show();
+
+	/*
+	 * Reports a failure to read the statistics, on the event dispatch
+	 * thread.
+	 */
+	protected void failed(Throwable failure)
+	{
+		failure.printStackTrace();
+	}
+
+	/*
+	 * @return	the future completion of the query, once shown.
+	 */
+	public CompletableFuture<ReportQuery> submit()
+	{
+		final Report report = Controller.getInstance().getReport();
+
+		return report.submit(new Supplier<ReportQuery>()
+		{
+			public ReportQuery get()
+			{
+				compute(report);
+				return ReportQuery.this;
+			}
+		}).whenCompleteAsync(new BiConsumer<ReportQuery, Throwable>()
+		{
+			public void accept(ReportQuery query, Throwable failure)
+			{
+				if (failure != null)
+					failed(failure);
+				else
+					show();
+			}
+		}, EDT);
+	}
+
+}